@@ -5,12 +5,19 @@
 set -euo pipefail
 : ${CORE_PEER_TLS_ENABLED:="false"}
 : ${DEBUG:="false"}
+: ${CHAINCODE_HOME:="/opt/chaincode"}
+
+# The runtime and the AppCDS archive come from the chaincodeImage task; the JVM starts
+# without the archive if it does not match the jar.
+JAVA="${CHAINCODE_HOME}/runtime/bin/java"
+JAVA_OPTS="-Xshare:auto -XX:SharedArchiveFile=${CHAINCODE_HOME}/chaincode.jsa"
+CHAINCODE_JAR="${CHAINCODE_HOME}/chaincode.jar"
 
 if [ "${DEBUG,,}" = "true" ]; then
-   exec java -agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=0.0.0.0:8000 -jar /chaincode.jar
+   exec "${JAVA}" ${JAVA_OPTS} -agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=0.0.0.0:8000 -jar "${CHAINCODE_JAR}"
 elif [ "${CORE_PEER_TLS_ENABLED,,}" = "true" ]; then
-   exec java -jar /chaincode.jar # todo
+   exec "${JAVA}" ${JAVA_OPTS} -jar "${CHAINCODE_JAR}" # todo
 else
-   exec java -jar /chaincode.jar
+   exec "${JAVA}" ${JAVA_OPTS} -jar "${CHAINCODE_JAR}"
 fi
 
@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.benchmark;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.codec.Compression;
+import org.hyperledger.fabric.samples.ehr.codec.EHRDataCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Weighs the storage compression saves against the CPU it costs.
+ *
+ * Records with clinical text data of several sizes are encoded and decoded with and
+ * without compression, in both state formats. Besides the time per operation, every
+ * encode reports the bytes it would write to the world state as the storedBytes
+ * counter, next to the rawBytes of the same record stored uncompressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final String[] PHRASES = {
+        "Patient reports intermittent chest pain on exertion.",
+        "No shortness of breath at rest.",
+        "BP 128/82, HR 76, SpO2 98% on room air.",
+        "Continue metoprolol 25 mg twice daily.",
+        "Follow up in cardiology clinic in two weeks.",
+        "ECG shows normal sinus rhythm without acute ST changes.",
+        "Lipid panel ordered.",
+        "Advised smoking cessation and a low sodium diet.",
+    };
+
+    /**
+     * The size of the text data, in bytes.
+     */
+    @Param({"512", "4096", "65536", "1048576"})
+    private int textSize;
+
+    @Param({"JSON", "BINARY"})
+    private EHRDataCodec.Format format;
+
+    /**
+     * The compression threshold; 0 stores the text data uncompressed.
+     */
+    @Param({"0", "1024"})
+    private int threshold;
+
+    private EHRDataCodec codec;
+
+    private EHRData ehrData;
+
+    private byte[] stored;
+
+    private int rawBytes;
+
+    /**
+     * The sizes written by the encode benchmark, accumulated per iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StoredSize {
+
+        public long storedBytes;
+
+        public long rawBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            storedBytes = 0;
+            rawBytes = 0;
+        }
+    }
+
+    /**
+     * Builds a record whose text data reads like a clinical note.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(textSize);
+        StringBuilder text = new StringBuilder(textSize + 64);
+        while (text.length() < textSize) {
+            text.append(PHRASES[random.nextInt(PHRASES.length)]).append(' ');
+        }
+        text.setLength(textSize);
+
+        ehrData = new EHRData("2bb3260-e24-f036-8c-360da8156", text.toString(), "Annette KOEPP",
+                textSize + " B", false, "", "", null, new Date(1660000000000L));
+        codec = new EHRDataCodec(format, new Compression(threshold));
+        stored = codec.encode(ehrData);
+        rawBytes = new EHRDataCodec(format).encode(ehrData).length;
+    }
+
+    /**
+     * Encodes the record for the world state.
+     *
+     * @param size the sizes written
+     * @return the stored bytes
+     */
+    @Benchmark
+    public byte[] encode(final StoredSize size) {
+        byte[] value = codec.encode(ehrData);
+        size.storedBytes += value.length;
+        size.rawBytes += rawBytes;
+        return value;
+    }
+
+    /**
+     * Decodes the full record, inflating its text data.
+     *
+     * @return the record
+     */
+    @Benchmark
+    public EHRData decode() {
+        return codec.decode(stored);
+    }
+
+    /**
+     * Decodes the summary of the record, which never inflates the text data.
+     *
+     * @return the summary
+     */
+    @Benchmark
+    public Object decodeSummary() {
+        return codec.decodeSummary(stored);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRSmartContract;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Measures the contract transactions against an in-process world state holding 1k,
+ * 100k and 1M records.
+ *
+ * Every invocation is simulated as its own transaction on an {@link InMemoryLedger},
+ * goes through a fresh transaction context, ends with the afterTransaction hook as
+ * it does under the shim, and is committed. Building the context parses the
+ * creator certificate; {@link #newContext()} measures that cost on its own so it can
+ * be told apart from the contract's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContractBenchmark {
+
+    private static final String[] FILE_TYPES = {"pdf", "png", "txt", "dcm"};
+
+    private static final int LOAD_CHUNK = 1000;
+
+    /**
+     * The number of records in the world state before the measurement starts.
+     */
+    @Param({"1000", "100000", "1000000"})
+    private int records;
+
+    /**
+     * The page size of paginated queries.
+     */
+    @Param({"100"})
+    private int pageSize;
+
+    private final Genson genson = new Genson();
+
+    private final EHRSmartContract contract = new EHRSmartContract();
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    private InMemoryLedger ledger;
+
+    /**
+     * Loads the world state through CreateEHRData, so it holds the same keys and index
+     * entries as a ledger populated by clients. Records are loaded a thousand to a
+     * context to keep the setup of the largest world state short.
+     */
+    @Setup
+    public void setUp() {
+        ledger = new InMemoryLedger();
+        for (int chunk = 0; chunk < records; chunk += LOAD_CHUNK) {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            Context ctx = contract.createContext(stub);
+            for (int i = chunk; i < Math.min(records, chunk + LOAD_CHUNK); i++) {
+                contract.CreateEHRData(ctx, payload(id(i), i));
+            }
+            contract.afterTransaction(ctx, null);
+            ledger.commit(stub);
+        }
+        nextId.set(records);
+    }
+
+    /**
+     * Builds a transaction context without running a transaction.
+     *
+     * @return the context
+     */
+    @Benchmark
+    public Context newContext() {
+        return contract.createContext(ledger.newTransaction());
+    }
+
+    /**
+     * Creates a new record.
+     *
+     * @return the created record
+     */
+    @Benchmark
+    public String createEHRData() {
+        long sequence = nextId.getAndIncrement();
+        String payload = payload(id(sequence), sequence);
+        return invoke(ctx -> contract.CreateEHRData(ctx, payload));
+    }
+
+    /**
+     * Reads a random existing record.
+     *
+     * @return the record
+     */
+    @Benchmark
+    public EHRData readEHRData() {
+        String id = id(ThreadLocalRandom.current().nextInt(records));
+        return invoke(ctx -> contract.ReadEHRData(ctx, id));
+    }
+
+    /**
+     * Reads every record.
+     *
+     * @return the records
+     */
+    @Benchmark
+    public String getAllEHRData() {
+        return invoke(contract::GetAllEHRData);
+    }
+
+    /**
+     * Reads the first page of records of a file type.
+     *
+     * @return the page
+     */
+    @Benchmark
+    public String getPaginatedEHRData() {
+        String query = "{\"selector\":{\"fileType\":\""
+                + FILE_TYPES[ThreadLocalRandom.current().nextInt(FILE_TYPES.length)] + "\"}}";
+        return invoke(ctx -> contract.GetPaginatedEHRData(ctx, query, Integer.toString(pageSize), ""));
+    }
+
+    private <T> T invoke(final Function<Context, T> transaction) {
+        InMemoryChaincodeStub stub = ledger.newTransaction();
+        Context ctx = contract.createContext(stub);
+        T result = transaction.apply(ctx);
+        contract.afterTransaction(ctx, result);
+        ledger.commit(stub);
+        return result;
+    }
+
+    private String payload(final String id, final long sequence) {
+        return genson.serialize(new EHRData(id, "Sample Text Data " + sequence, "Patient " + sequence % 1000,
+                "100 kB", sequence % 2 == 0, FILE_TYPES[(int) (sequence % FILE_TYPES.length)],
+                "record-" + sequence + ".pdf", null, null));
+    }
+
+    private static String id(final long sequence) {
+        return String.format("ehr-%010d", sequence);
+    }
+}
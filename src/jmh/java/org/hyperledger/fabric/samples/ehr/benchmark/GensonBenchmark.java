@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.benchmark;
+
+import java.util.Base64;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Measures Genson serialization of EHR data as the contract does it, across inline
+ * attachment sizes from none to 10 MB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GensonBenchmark {
+
+    /**
+     * The decoded size of the inline attachment, in bytes.
+     */
+    @Param({"0", "1024", "102400", "1048576", "10485760"})
+    private int attachmentSize;
+
+    private final Genson genson = new Genson();
+
+    private EHRData ehrData;
+
+    private String json;
+
+    /**
+     * Builds the EHR data and its JSON form for the attachment size.
+     */
+    @Setup
+    public void setUp() {
+        byte[] attachment = new byte[attachmentSize];
+        new Random(attachmentSize).nextBytes(attachment);
+
+        ehrData = new EHRData("2bb3260-e24-f036-8c-360da8156", "Sample Text Data", "Annette KOEPP",
+                attachmentSize + " B", true, "pdf", "report.pdf",
+                Base64.getEncoder().encodeToString(attachment), new Date());
+        json = genson.serialize(ehrData);
+    }
+
+    /**
+     * Serializes the EHR data to JSON.
+     *
+     * @return the JSON
+     */
+    @Benchmark
+    public String serialize() {
+        return genson.serialize(ehrData);
+    }
+
+    /**
+     * Deserializes the EHR data from JSON.
+     *
+     * @return the EHR data
+     */
+    @Benchmark
+    public EHRData deserialize() {
+        return genson.deserialize(json, EHRData.class);
+    }
+}
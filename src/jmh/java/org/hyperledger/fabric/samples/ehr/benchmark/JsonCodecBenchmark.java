@@ -0,0 +1,143 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRDataJsonCodec;
+import org.hyperledger.fabric.samples.ehr.codec.JsonCodecs;
+import org.hyperledger.fabric.samples.ehr.utils.PageResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Compares the generated JSON codec with Genson on the paths the contract takes:
+ * encoding a record to the bytes stored in the world state, decoding them back, and
+ * serializing a page of records as a response. Both sides produce the same bytes;
+ * run with the gc profiler to compare the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * The decoded size of the inline attachment, in bytes.
+     */
+    @Param({"0", "1024", "102400"})
+    private int attachmentSize;
+
+    private final Genson genson = new Genson();
+
+    private EHRData ehrData;
+
+    private byte[] json;
+
+    private PageResult page;
+
+    /**
+     * Builds the record, its stored JSON and a page of records for the attachment size.
+     */
+    @Setup
+    public void setUp() {
+        byte[] attachment = new byte[attachmentSize];
+        new Random(attachmentSize).nextBytes(attachment);
+
+        ehrData = new EHRData("2bb3260-e24-f036-8c-360da8156", "Temperature 37.2 \u00b0C, BP 120/80", "Annette KOEPP",
+                attachmentSize + " B", true, "pdf", "report.pdf",
+                attachmentSize == 0 ? null : Base64.getEncoder().encodeToString(attachment), new Date(),
+                null, 0L, null, 1L, attachmentSize);
+        json = genson.serialize(ehrData).getBytes(StandardCharsets.UTF_8);
+
+        List<EHRData> records = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            records.add(ehrData);
+        }
+        page = new PageResult(records, "", ehrData.getId());
+    }
+
+    /**
+     * Encodes the record with Genson.
+     *
+     * @return the JSON bytes
+     */
+    @Benchmark
+    public byte[] gensonEncode() {
+        return genson.serialize(ehrData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes the record with the generated codec.
+     *
+     * @return the JSON bytes
+     */
+    @Benchmark
+    public byte[] generatedEncode() {
+        return EHRDataJsonCodec.INSTANCE.toBytes(ehrData);
+    }
+
+    /**
+     * Decodes the record with Genson.
+     *
+     * @return the record
+     */
+    @Benchmark
+    public EHRData gensonDecode() {
+        return genson.deserialize(new String(json, StandardCharsets.UTF_8), EHRData.class);
+    }
+
+    /**
+     * Decodes the record with the generated codec.
+     *
+     * @return the record
+     */
+    @Benchmark
+    public EHRData generatedDecode() {
+        return EHRDataJsonCodec.INSTANCE.fromBytes(json);
+    }
+
+    /**
+     * Serializes a page of records with Genson.
+     *
+     * @return the JSON response
+     */
+    @Benchmark
+    public String gensonPage() {
+        return genson.serialize(page);
+    }
+
+    /**
+     * Serializes a page of records with the generated codecs.
+     *
+     * @return the JSON response
+     */
+    @Benchmark
+    public String generatedPage() {
+        return JsonCodecs.toJson(page);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Watches the worker threads for lock contention while a load step runs.
+ *
+ * Thread contention monitoring gives the time each worker spent blocked on monitors
+ * and waiting on locks. A sampler thread also looks at the workers at a fixed
+ * interval and, for each one that is blocked or parked, records the lock and the
+ * application frame it was trying to enter, so the report can name the shared state
+ * the workers queue on.
+ */
+final class ContentionMonitor {
+
+    private static final String APPLICATION_PACKAGE = "org.hyperledger.fabric.samples.ehr";
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final long intervalMillis;
+    private final Map<String, LongAdder> samples = new ConcurrentHashMap<>();
+    private final LongAdder sampleCount = new LongAdder();
+    private final Map<Long, long[]> baseline = new HashMap<>();
+
+    private volatile boolean running;
+    private Thread sampler;
+    private long[] workerIds;
+
+    ContentionMonitor(final long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+        if (threads.isThreadContentionMonitoringSupported()) {
+            threads.setThreadContentionMonitoringEnabled(true);
+        }
+    }
+
+    void start(final List<Thread> workers) {
+        workerIds = workers.stream().mapToLong(Thread::getId).toArray();
+        for (ThreadInfo info : threads.getThreadInfo(workerIds)) {
+            if (info != null) {
+                baseline.put(info.getThreadId(), new long[] {info.getBlockedCount(), info.getBlockedTime(),
+                    info.getWaitedCount(), info.getWaitedTime()});
+            }
+        }
+
+        running = true;
+        sampler = new Thread(this::sample, "contention-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Stops sampling and returns what the workers were blocked on.
+     *
+     * @return the contention seen since {@link #start}
+     */
+    Report stop() throws InterruptedException {
+        running = false;
+        sampler.join();
+
+        Report report = new Report();
+        for (ThreadInfo info : threads.getThreadInfo(workerIds)) {
+            if (info == null) {
+                continue;
+            }
+            long[] start = baseline.getOrDefault(info.getThreadId(), new long[4]);
+            report.blockedCount += info.getBlockedCount() - start[0];
+            report.blockedMillis += Math.max(0, info.getBlockedTime() - start[1]);
+            report.waitedCount += info.getWaitedCount() - start[2];
+            report.waitedMillis += Math.max(0, info.getWaitedTime() - start[3]);
+        }
+        report.samples = sampleCount.sum();
+        List<Map.Entry<String, LongAdder>> hotspots = new ArrayList<>(samples.entrySet());
+        hotspots.sort((left, right) -> Long.compare(right.getValue().sum(), left.getValue().sum()));
+        for (Map.Entry<String, LongAdder> hotspot : hotspots) {
+            report.hotspots.put(hotspot.getKey(), hotspot.getValue().sum());
+        }
+        return report;
+    }
+
+    private void sample() {
+        while (running) {
+            for (ThreadInfo info : threads.getThreadInfo(workerIds, Integer.MAX_VALUE)) {
+                if (info == null) {
+                    continue;
+                }
+                sampleCount.increment();
+                Thread.State state = info.getThreadState();
+                if (state == Thread.State.BLOCKED
+                        || (state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING)
+                        && info.getLockName() != null) {
+                    samples.computeIfAbsent(describe(info), key -> new LongAdder()).increment();
+                }
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static String describe(final ThreadInfo info) {
+        String lock = info.getLockName() == null ? "?" : info.getLockName().replaceAll("@[0-9a-f]+$", "");
+        for (StackTraceElement frame : info.getStackTrace()) {
+            if (frame.getClassName().startsWith(APPLICATION_PACKAGE)
+                    && !frame.getClassName().startsWith(LoadGenerator.class.getPackage().getName())) {
+                return info.getThreadState() + " on " + lock + " at " + frame;
+            }
+        }
+        StackTraceElement[] stack = info.getStackTrace();
+        return info.getThreadState() + " on " + lock + (stack.length > 0 ? " at " + stack[0] : "");
+    }
+
+    /**
+     * The contention seen during one load step.
+     */
+    static final class Report {
+
+        private long blockedCount;
+        private long blockedMillis;
+        private long waitedCount;
+        private long waitedMillis;
+        private long samples;
+        private final Map<String, Long> hotspots = new LinkedHashMap<>();
+
+        long getBlockedCount() {
+            return blockedCount;
+        }
+
+        long getBlockedMillis() {
+            return blockedMillis;
+        }
+
+        long getWaitedCount() {
+            return waitedCount;
+        }
+
+        long getWaitedMillis() {
+            return waitedMillis;
+        }
+
+        long getSamples() {
+            return samples;
+        }
+
+        Map<String, Long> getHotspots() {
+            return hotspots;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.load;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRSmartContract;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryLedger;
+import org.hyperledger.fabric.samples.ehr.startup.VirtualThreadDispatch;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.impl.InvocationTaskExecutor;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Compares the throughput and latency of ReadEHRData evaluates on the shim's pool of
+ * platform threads and on virtual threads, with many evaluates in flight.
+ *
+ * The invocations run on the shim's own executor, configured as the shim configures
+ * it by default, or switched to virtual threads by {@link VirtualThreadDispatch}.
+ * Every state request of an invocation blocks until a simulated peer answers it after
+ * a fixed round trip, the way the shim's invocation tasks wait for the peer, so the
+ * pool is limited by waiting threads rather than by the CPU. A closed loop keeps the
+ * given number of evaluates in flight; the latency of an evaluate includes the time it
+ * queued for a thread. Virtual threads are only measured on JDK 21 and later.
+ *
+ * Options, all optional: --concurrency=64,256,1024 --warmup=2 --duration=5 (seconds),
+ * --records=1000 (preloaded), --roundTrip=500 (microseconds per state request),
+ * --poolSize=5 (the shim's TP_CORE_POOL_SIZE and TP_MAX_POOL_SIZE) and
+ * --maxVirtualThreads=10000.
+ */
+public final class DispatchBenchmark {
+
+    private static final int QUEUE_SIZE = 5000;
+
+    private static final long KEEP_ALIVE_MILLIS = 5000;
+
+    private static final int PEER_THREADS = 4;
+
+    private final Settings settings;
+    private final EHRSmartContract contract = new EHRSmartContract();
+    private final InMemoryLedger ledger = new InMemoryLedger();
+    private final List<String> ids = new ArrayList<>();
+    private final ScheduledExecutorService peer = Executors.newScheduledThreadPool(PEER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "peer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private DispatchBenchmark(final Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args the options
+     * @throws InterruptedException if interrupted while waiting for the evaluates
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        DispatchBenchmark benchmark = new DispatchBenchmark(Settings.parse(args));
+        boolean completed = benchmark.run();
+        System.exit(completed ? 0 : 1);
+    }
+
+    private boolean run() throws InterruptedException {
+        preload();
+        boolean virtual = VirtualThreadDispatch.isAvailable();
+        System.out.printf("Java: %s, processors: %d, records: %d, round trip: %d us, pool size: %d%n",
+                Runtime.version(), Runtime.getRuntime().availableProcessors(), settings.records,
+                settings.roundTripMicros, settings.poolSize);
+        if (!virtual) {
+            System.out.printf("Virtual threads need JDK 21, measuring the pool only%n");
+        }
+
+        System.out.printf("%n%-8s %11s %10s %9s %9s %9s %9s %8s %7s%n", "threads", "concurrency", "ops/s",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms", "largest", "failed");
+        boolean completed = true;
+        for (int concurrency : settings.concurrency) {
+            completed &= measure("platform", concurrency, false);
+            if (virtual) {
+                completed &= measure("virtual", concurrency, true);
+            }
+        }
+        return completed;
+    }
+
+    private void preload() {
+        Genson genson = new Genson();
+        InMemoryChaincodeStub stub = ledger.newTransaction();
+        Context ctx = contract.createContext(stub);
+        for (int i = 0; i < settings.records; i++) {
+            EHRData ehrData = new EHRData(String.format("ehr-%010d", i), "Sample Text Data " + i, "Patient " + i,
+                    "100 kB", true, "txt", "record-" + i + ".txt", null, null);
+            contract.CreateEHRData(ctx, genson.serialize(ehrData));
+            ids.add(ehrData.getId());
+        }
+        contract.afterTransaction(ctx, null);
+        ledger.commit(stub);
+    }
+
+    private boolean measure(final String threads, final int concurrency, final boolean virtual)
+            throws InterruptedException {
+        ThreadPoolExecutor executor = newShimExecutor();
+        if (virtual) {
+            VirtualThreadDispatch.dispatch(executor, settings.maxVirtualThreads);
+        }
+
+        Semaphore inFlight = new Semaphore(concurrency);
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder failures = new LongAdder();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(settings.durationSeconds);
+        while (System.nanoTime() < end) {
+            inFlight.acquire();
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    evaluate();
+                    long now = System.nanoTime();
+                    if (submitted >= warmupEnd && now <= end) {
+                        synchronized (latencies) {
+                            latencies.record(now - submitted);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failures.increment();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        inFlight.acquire(concurrency);
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        double seconds = settings.durationSeconds;
+        System.out.printf("%-8s %11d %10.0f %9.2f %9.2f %9.2f %9.2f %8d %7d%n", threads, concurrency,
+                latencies.getCount() / seconds, millis(latencies.percentile(50)), millis(latencies.percentile(99)),
+                millis(latencies.percentile(99.9)), millis(latencies.getMax()), executor.getLargestPoolSize(),
+                failures.sum());
+        return failures.sum() == 0;
+    }
+
+    /**
+     * Creates the executor the shim invokes transactions on, with its default settings.
+     */
+    private ThreadPoolExecutor newShimExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return new InvocationTaskExecutor(settings.poolSize, settings.poolSize, KEEP_ALIVE_MILLIS,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(QUEUE_SIZE),
+                runnable -> new Thread(runnable, "fabric-txinvoke:" + count.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private void evaluate() {
+        ChaincodeStub stub = withRoundTrips(ledger.newTransaction());
+        Context ctx = contract.createContext(stub);
+        String id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        EHRData ehrData = contract.ReadEHRData(ctx, id);
+        contract.afterTransaction(ctx, ehrData);
+        if (!id.equals(ehrData.getId())) {
+            throw new IllegalStateException("Read " + ehrData.getId() + " for " + id);
+        }
+    }
+
+    /**
+     * Makes every ledger read of a stub wait for the simulated peer, as the shim does.
+     */
+    private ChaincodeStub withRoundTrips(final InMemoryChaincodeStub stub) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().startsWith("getState") || method.getName().startsWith("getQueryResult")
+                    || method.getName().equals("getHistoryForKey")) {
+                ArrayBlockingQueue<Boolean> postbox = new ArrayBlockingQueue<>(1);
+                peer.schedule(() -> postbox.add(Boolean.TRUE), settings.roundTripMicros, TimeUnit.MICROSECONDS);
+                postbox.take();
+            }
+            try {
+                return method.invoke(stub, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(),
+                new Class<?>[] {ChaincodeStub.class}, handler);
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static final class Settings {
+
+        private int[] concurrency = {64, 256, 1024};
+        private int warmupSeconds = 2;
+        private int durationSeconds = 5;
+        private int records = 1000;
+        private long roundTripMicros = 500;
+        private int poolSize = 5;
+        private int maxVirtualThreads = 10_000;
+
+        static Settings parse(final String[] args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --option=value, not " + arg);
+                }
+                String value = arg.substring(equals + 1);
+                switch (arg.substring(2, equals)) {
+                    case "concurrency":
+                        settings.concurrency = Arrays.stream(value.split(",")).map(String::trim)
+                                .mapToInt(Integer::parseInt).toArray();
+                        break;
+                    case "warmup":
+                        settings.warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "duration":
+                        settings.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "records":
+                        settings.records = Integer.parseInt(value);
+                        break;
+                    case "roundTrip":
+                        settings.roundTripMicros = Long.parseLong(value);
+                        break;
+                    case "poolSize":
+                        settings.poolSize = Integer.parseInt(value);
+                        break;
+                    case "maxVirtualThreads":
+                        settings.maxVirtualThreads = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (settings.records < 1) {
+                throw new IllegalArgumentException("At least one record must be preloaded");
+            }
+            if (Arrays.stream(settings.concurrency).anyMatch(value -> value < 1 || value > QUEUE_SIZE)) {
+                throw new IllegalArgumentException("The concurrency must be between 1 and " + QUEUE_SIZE);
+            }
+            return settings;
+        }
+    }
+}
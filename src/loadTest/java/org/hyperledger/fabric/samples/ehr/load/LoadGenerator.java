@@ -0,0 +1,553 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRSmartContract;
+import org.hyperledger.fabric.samples.ehr.ledger.EHRDataIndex;
+import org.hyperledger.fabric.samples.ehr.ledger.EHRDataStats;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryLedger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Drives concurrent endorsements of one shared {@link EHRSmartContract} against an
+ * {@link InMemoryLedger}, the way the shim's executor does, and reports how the
+ * contract scales with the number of threads.
+ *
+ * For every thread count the workers run a weighted mix of CreateEHRData,
+ * ReadEHRData, EHRDataExists and GetPaginatedEHRData calls. The report gives the
+ * throughput, the latency percentiles per call, the CPU cores the workers actually
+ * kept busy, MVCC conflicts, and where the workers were blocked on locks. Every
+ * result is checked against what was written, so a data race in shared contract
+ * state shows up as a mismatch; the world state is checked for consistency once all
+ * steps have run. The process exits with status 1 if any check failed.
+ *
+ * Options, all optional: --threads=1,2,4,8 --warmup=3 --duration=10 (seconds),
+ * --records=10000 (preloaded), --pageSize=20 and
+ * --mix=create:10,read:60,exists:20,query:10.
+ */
+public final class LoadGenerator {
+
+    private static final String[] FILE_TYPES = {"pdf", "png", "txt", "dcm"};
+
+    private static final int LOAD_CHUNK = 1000;
+
+    private static final int MAX_REPORTED_PROBLEMS = 10;
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 5;
+
+    private final Settings settings;
+    private final EHRSmartContract contract = new EHRSmartContract();
+    private final InMemoryLedger ledger = new InMemoryLedger();
+    private final Genson genson = new Genson();
+    private final Map<String, EHRData> expected = new ConcurrentHashMap<>();
+    private final List<String> preloadedIds = new ArrayList<>();
+    private final ConcurrentLinkedQueue<String> problems = new ConcurrentLinkedQueue<>();
+    private final LongAdder problemCount = new LongAdder();
+
+    private LoadGenerator(final Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Runs the load steps and prints the report.
+     *
+     * @param args the options
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        LoadGenerator generator = new LoadGenerator(Settings.parse(args));
+        boolean consistent = generator.run();
+        System.exit(consistent ? 0 : 1);
+    }
+
+    private boolean run() throws InterruptedException {
+        System.out.printf("Processors: %d, records: %d, mix: %s, warmup: %ds, duration: %ds%n",
+                Runtime.getRuntime().availableProcessors(), settings.records, settings.mix,
+                settings.warmupSeconds, settings.durationSeconds);
+        auditSharedState();
+        preload();
+
+        System.out.printf("%n%7s %10s %9s %9s %9s %9s %6s %9s %10s %10s%n", "threads", "ops/s", "p50 us",
+                "p99 us", "p99.9 us", "max us", "cores", "conflicts", "blocked ms", "waited ms");
+        List<StepResult> results = new ArrayList<>();
+        for (int step = 0; step < settings.threads.length; step++) {
+            StepResult result = runStep(step, settings.threads[step]);
+            results.add(result);
+            System.out.printf("%7d %10.0f %9.1f %9.1f %9.1f %9.1f %6.2f %9d %10d %10d%n", result.threads,
+                    result.throughput(), micros(result.overall.percentile(50)),
+                    micros(result.overall.percentile(99)), micros(result.overall.percentile(99.9)),
+                    micros(result.overall.getMax()), result.cores(), result.conflicts,
+                    result.contention.getBlockedMillis(), result.contention.getWaitedMillis());
+        }
+
+        for (StepResult result : results) {
+            printDetails(result);
+        }
+
+        verifyWorldState();
+        if (problemCount.sum() == 0) {
+            System.out.printf("%nNo data races or inconsistencies found.%n");
+            return true;
+        }
+        System.out.printf("%n%d problems found, first %d:%n", problemCount.sum(), problems.size());
+        for (String problem : problems) {
+            System.out.println("  " + problem);
+        }
+        return false;
+    }
+
+    /**
+     * Lists the instance and static fields of the contract, which every endorsement
+     * shares, and flags those that are not final.
+     */
+    private void auditSharedState() {
+        System.out.printf("%nShared state of %s:%n", EHRSmartContract.class.getSimpleName());
+        for (Field field : EHRSmartContract.class.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            boolean isFinal = Modifier.isFinal(modifiers);
+            System.out.printf("  %-6s %-5s %-22s %s%s%n", Modifier.isStatic(modifiers) ? "static" : "",
+                    isFinal ? "final" : "", field.getName(), field.getType().getName(),
+                    isFinal ? "" : "  <- mutable, shared by concurrent endorsements");
+            if (!isFinal) {
+                report("Non-final shared field " + field.getName());
+            }
+        }
+    }
+
+    private void preload() {
+        long start = System.nanoTime();
+        for (int chunk = 0; chunk < settings.records; chunk += LOAD_CHUNK) {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            Context ctx = contract.createContext(stub);
+            for (int i = chunk; i < Math.min(settings.records, chunk + LOAD_CHUNK); i++) {
+                EHRData ehrData = newEHRData(String.format("ehr-%010d", i), i);
+                contract.CreateEHRData(ctx, genson.serialize(ehrData));
+                expected.put(ehrData.getId(), ehrData);
+                preloadedIds.add(ehrData.getId());
+            }
+            contract.afterTransaction(ctx, null);
+            ledger.commit(stub);
+        }
+        System.out.printf("%nPreloaded %d records in %d ms%n", settings.records,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private StepResult runStep(final int step, final int threadCount) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(threadCount);
+        CountDownLatch measuring = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(threadCount);
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Worker worker = new Worker(step, i, started, measuring, finished);
+            workers.add(worker);
+            Thread thread = new Thread(worker, "endorser-" + step + "-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+
+        started.await();
+        TimeUnit.SECONDS.sleep(settings.warmupSeconds);
+
+        ContentionMonitor monitor = new ContentionMonitor(SAMPLE_INTERVAL_MILLIS);
+        monitor.start(threads);
+        long start = System.nanoTime();
+        measuring.countDown();
+        TimeUnit.SECONDS.sleep(settings.durationSeconds);
+        // Thread statistics are gone once a thread ends, so take them while the workers run.
+        ContentionMonitor.Report contention = monitor.stop();
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+        finished.await();
+        long elapsed = System.nanoTime() - start;
+
+        StepResult result = new StepResult(threadCount, elapsed, contention);
+        for (Worker worker : workers) {
+            result.add(worker);
+        }
+        return result;
+    }
+
+    private void printDetails(final StepResult result) {
+        System.out.printf("%n%d threads:%n", result.threads);
+        System.out.printf("  %-7s %10s %9s %9s %9s %9s %7s%n", "call", "ops/s", "p50 us", "p90 us", "p99 us",
+                "max us", "errors");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = result.latencies.get(operation);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            System.out.printf("  %-7s %10.0f %9.1f %9.1f %9.1f %9.1f %7d%n", operation.name().toLowerCase(Locale.ROOT),
+                    histogram.getCount() / seconds(result.elapsedNanos), micros(histogram.percentile(50)),
+                    micros(histogram.percentile(90)), micros(histogram.percentile(99)), micros(histogram.getMax()),
+                    result.errors.get(operation).sum());
+        }
+
+        ContentionMonitor.Report contention = result.contention;
+        System.out.printf("  blocked %d times for %d ms, waited %d times for %d ms%n", contention.getBlockedCount(),
+                contention.getBlockedMillis(), contention.getWaitedCount(), contention.getWaitedMillis());
+        int shown = 0;
+        for (Map.Entry<String, Long> hotspot : contention.getHotspots().entrySet()) {
+            if (shown++ == 3) {
+                break;
+            }
+            System.out.printf("  %5.1f%% of samples %s%n", 100.0 * hotspot.getValue() / contention.getSamples(),
+                    hotspot.getKey());
+        }
+    }
+
+    /**
+     * Checks that every committed record reads back as written, that the statistics
+     * count every record once they are compacted, and that the world state holds
+     * exactly one record key, one content key and the index entries per record besides
+     * the compacted statistics.
+     */
+    private void verifyWorldState() {
+        for (EHRData ehrData : expected.values()) {
+            EHRData actual = contract.ReadEHRData(contract.createContext(ledger.newTransaction()), ehrData.getId());
+            checkRecord(ehrData, actual, "world state");
+        }
+
+        compactStats();
+        long statsKeys = 0;
+        for (EHRDataStats.Dimension dimension : EHRDataStats.Dimension.values()) {
+            JSONObject stats = new JSONObject(contract.GetEHRDataStats(
+                    contract.createContext(ledger.newTransaction()), dimension.getFieldName()));
+            long count = 0;
+            for (String value : stats.keySet()) {
+                count += stats.getJSONObject(value).getLong("count");
+            }
+            if (count != expected.size()) {
+                report(String.format("Statistics by %s count %d records, expected %d", dimension.getFieldName(),
+                        count, expected.size()));
+            }
+            statsKeys += stats.length();
+        }
+
+        int keysPerRecord = 2 + EHRDataIndex.Attribute.values().length;
+        if (ledger.size() != (long) expected.size() * keysPerRecord + statsKeys) {
+            report(String.format("World state holds %d keys, expected %d for %d records", ledger.size(),
+                    (long) expected.size() * keysPerRecord + statsKeys, expected.size()));
+        }
+    }
+
+    private void compactStats() {
+        int compacted;
+        do {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            Context ctx = contract.createContext(stub);
+            compacted = contract.CompactEHRDataStats(ctx, Integer.toString(LOAD_CHUNK));
+            contract.afterTransaction(ctx, compacted);
+            ledger.commit(stub);
+        } while (compacted > 0);
+    }
+
+    private void checkRecord(final EHRData written, final EHRData actual, final String source) {
+        if (actual == null || !Objects.equals(written.getId(), actual.getId())
+                || !Objects.equals(written.getTextData(), actual.getTextData())
+                || !Objects.equals(written.getName(), actual.getName())
+                || !Objects.equals(written.getSize(), actual.getSize())
+                || written.isDoc() != actual.isDoc()
+                || !Objects.equals(written.getFileType(), actual.getFileType())
+                || !Objects.equals(written.getFileName(), actual.getFileName())) {
+            report(String.format("Record %s read from %s does not match what was written: %s", written.getId(),
+                    source, actual));
+        }
+    }
+
+    private void report(final String problem) {
+        problemCount.increment();
+        if (problems.size() < MAX_REPORTED_PROBLEMS) {
+            problems.add(problem);
+        }
+    }
+
+    private static EHRData newEHRData(final String id, final long sequence) {
+        return new EHRData(id, "Sample Text Data " + sequence, "Patient " + sequence % 1000, "100 kB",
+                sequence % 2 == 0, FILE_TYPES[(int) (sequence % FILE_TYPES.length)], "record-" + sequence + ".pdf",
+                null, null);
+    }
+
+    private static double micros(final long nanos) {
+        return nanos / 1_000.0;
+    }
+
+    private static double seconds(final long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+
+    /**
+     * One endorsing thread. It only shares the contract and the ledger with the others.
+     */
+    private final class Worker implements Runnable {
+
+        private final int step;
+        private final int index;
+        private final CountDownLatch started;
+        private final CountDownLatch measuring;
+        private final CountDownLatch finished;
+        private final Random random;
+        private final Genson payloads = new Genson();
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        private final Operation[] schedule;
+
+        private volatile boolean running = true;
+        private long conflicts;
+        private long cpuNanos;
+        private long sequence;
+
+        Worker(final int step, final int index, final CountDownLatch started, final CountDownLatch measuring,
+               final CountDownLatch finished) {
+            this.step = step;
+            this.index = index;
+            this.started = started;
+            this.measuring = measuring;
+            this.finished = finished;
+            this.random = new Random(31L * step + index);
+            this.schedule = settings.schedule();
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                errors.put(operation, 0L);
+            }
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        @Override
+        public void run() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            try {
+                started.countDown();
+                while (measuring.getCount() > 0) {
+                    invoke(schedule[random.nextInt(schedule.length)], false);
+                }
+
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                while (running) {
+                    invoke(schedule[random.nextInt(schedule.length)], true);
+                }
+                cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        private void invoke(final Operation operation, final boolean record) {
+            long start = System.nanoTime();
+            try {
+                switch (operation) {
+                    case CREATE:
+                        create();
+                        break;
+                    case READ:
+                        read();
+                        break;
+                    case EXISTS:
+                        exists();
+                        break;
+                    case QUERY:
+                        query();
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation " + operation);
+                }
+            } catch (RuntimeException e) {
+                errors.merge(operation, 1L, Long::sum);
+                report(operation + " failed on " + Thread.currentThread().getName() + ": " + e);
+            }
+            if (record) {
+                latencies.get(operation).record(System.nanoTime() - start);
+            }
+        }
+
+        private void create() {
+            EHRData ehrData = newEHRData(String.format("load-%d-%d-%d", step, index, sequence), sequence++);
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            Context ctx = contract.createContext(stub);
+            String result = contract.CreateEHRData(ctx, payloads.serialize(ehrData));
+            contract.afterTransaction(ctx, result);
+            if (ledger.commit(stub) == InMemoryLedger.ValidationCode.VALID) {
+                expected.put(ehrData.getId(), ehrData);
+            } else {
+                conflicts++;
+            }
+        }
+
+        private void read() {
+            String id = preloadedIds.get(random.nextInt(preloadedIds.size()));
+            EHRData actual = contract.ReadEHRData(contract.createContext(ledger.newTransaction()), id);
+            checkRecord(expected.get(id), actual, "ReadEHRData");
+        }
+
+        private void exists() {
+            boolean present = random.nextInt(10) != 0;
+            String id = present ? preloadedIds.get(random.nextInt(preloadedIds.size())) : "missing-" + random.nextLong();
+            if (contract.EHRDataExists(contract.createContext(ledger.newTransaction()), id) != present) {
+                report(String.format("EHRDataExists(%s) returned %s", id, !present));
+            }
+        }
+
+        private void query() {
+            String fileType = FILE_TYPES[random.nextInt(FILE_TYPES.length)];
+            String page = contract.GetPaginatedEHRData(contract.createContext(ledger.newTransaction()),
+                    "{\"selector\":{\"fileType\":\"" + fileType + "\"}}", Integer.toString(settings.pageSize), "");
+            JSONArray data = new JSONObject(page).getJSONArray("data");
+            for (int i = 0; i < data.length(); i++) {
+                JSONObject ehrData = data.getJSONObject(i);
+                if (!fileType.equals(ehrData.optString("fileType"))) {
+                    report(String.format("GetPaginatedEHRData for %s returned %s", fileType, ehrData.opt("id")));
+                }
+            }
+        }
+    }
+
+    /**
+     * The merged results of the workers of one load step.
+     */
+    private static final class StepResult {
+
+        private final int threads;
+        private final long elapsedNanos;
+        private final ContentionMonitor.Report contention;
+        private final LatencyHistogram overall = new LatencyHistogram();
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+        private long conflicts;
+        private long cpuNanos;
+
+        StepResult(final int threads, final long elapsedNanos, final ContentionMonitor.Report contention) {
+            this.threads = threads;
+            this.elapsedNanos = elapsedNanos;
+            this.contention = contention;
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                errors.put(operation, new LongAdder());
+            }
+        }
+
+        void add(final Worker worker) {
+            for (Operation operation : Operation.values()) {
+                latencies.get(operation).merge(worker.latencies.get(operation));
+                overall.merge(worker.latencies.get(operation));
+                errors.get(operation).add(worker.errors.get(operation));
+            }
+            conflicts += worker.conflicts;
+            cpuNanos += worker.cpuNanos;
+        }
+
+        double throughput() {
+            return overall.getCount() / seconds(elapsedNanos);
+        }
+
+        double cores() {
+            return (double) cpuNanos / elapsedNanos;
+        }
+    }
+
+    /**
+     * The options of a run.
+     */
+    private static final class Settings {
+
+        private int[] threads = {1, 2, 4, 8};
+        private int warmupSeconds = 3;
+        private int durationSeconds = 10;
+        private int records = 10_000;
+        private int pageSize = 20;
+        private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+
+        static Settings parse(final String[] args) {
+            Settings settings = new Settings();
+            settings.mix.put(Operation.CREATE, 10);
+            settings.mix.put(Operation.READ, 60);
+            settings.mix.put(Operation.EXISTS, 20);
+            settings.mix.put(Operation.QUERY, 10);
+
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --option=value, not " + arg);
+                }
+                String value = arg.substring(equals + 1);
+                switch (arg.substring(2, equals)) {
+                    case "threads":
+                        settings.threads = Arrays.stream(value.split(",")).map(String::trim)
+                                .mapToInt(Integer::parseInt).toArray();
+                        break;
+                    case "warmup":
+                        settings.warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "duration":
+                        settings.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "records":
+                        settings.records = Integer.parseInt(value);
+                        break;
+                    case "pageSize":
+                        settings.pageSize = Integer.parseInt(value);
+                        break;
+                    case "mix":
+                        settings.mix.clear();
+                        for (String weight : value.split(",")) {
+                            String[] parts = weight.split(":");
+                            settings.mix.put(Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)),
+                                    Integer.parseInt(parts[1].trim()));
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (settings.records < 1) {
+                throw new IllegalArgumentException("At least one record must be preloaded");
+            }
+            return settings;
+        }
+
+        /**
+         * Expands the mix into a table an operation can be drawn from uniformly.
+         */
+        Operation[] schedule() {
+            List<Operation> schedule = new ArrayList<>();
+            for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+                for (int i = 0; i < weight.getValue(); i++) {
+                    schedule.add(weight.getKey());
+                }
+            }
+            if (schedule.isEmpty()) {
+                throw new IllegalArgumentException("The operation mix is empty");
+            }
+            return schedule.toArray(new Operation[0]);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.load;
+
+/**
+ * The contract calls the load generator mixes.
+ */
+enum Operation {
+    CREATE,
+    READ,
+    EXISTS,
+    QUERY
+}
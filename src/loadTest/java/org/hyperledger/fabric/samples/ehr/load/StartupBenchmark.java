@@ -0,0 +1,211 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.load;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the chaincode takes from the launch of its JVM until its server
+ * accepts connections, which is how long a peer waits for it after a restart or a
+ * scale-out.
+ *
+ * Every run starts a new JVM serving the chaincode jar on a free port, polls the port
+ * until it accepts a connection and kills the JVM. The launchers are measured in turns:
+ * the shim's ContractRouter, which scans the classpath for contracts, the
+ * IndexedContractRouter, which reads the index generated at build time, and, when an
+ * AppCDS archive is given, the IndexedContractRouter with that archive. The process
+ * exits with status 1 if the chaincode failed to start.
+ *
+ * Options: --jar=build/chaincode/chaincode.jar (required), --java=&lt;the java
+ * running the benchmark&gt;, --cds=&lt;AppCDS archive&gt;, --runs=10, --warmup=1 and
+ * --timeout=60 (seconds).
+ */
+public final class StartupBenchmark {
+
+    private static final String SCANNING_ROUTER = "org.hyperledger.fabric.contract.ContractRouter";
+
+    private static final String INDEXED_ROUTER = "org.hyperledger.fabric.contract.IndexedContractRouter";
+
+    private static final long POLL_INTERVAL_MILLIS = 5;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 100;
+
+    private final Settings settings;
+
+    private StartupBenchmark(final Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args the options
+     * @throws Exception if a chaincode JVM cannot be started or does not become ready
+     */
+    public static void main(final String[] args) throws Exception {
+        StartupBenchmark benchmark = new StartupBenchmark(Settings.parse(args));
+        benchmark.run();
+    }
+
+    private void run() throws Exception {
+        Map<String, List<String>> launchers = new LinkedHashMap<>();
+        launchers.put("classpath scan", Arrays.asList("-cp", settings.jar.toString(), SCANNING_ROUTER));
+        launchers.put("contract index", Arrays.asList("-cp", settings.jar.toString(), INDEXED_ROUTER));
+        if (settings.cds != null) {
+            launchers.put("index + AppCDS", Arrays.asList("-Xshare:on", "-XX:SharedArchiveFile=" + settings.cds,
+                    "-cp", settings.jar.toString(), INDEXED_ROUTER));
+        }
+
+        System.out.printf("Java: %s, jar: %s, runs: %d%n", settings.java, settings.jar, settings.runs);
+        Map<String, long[]> results = new LinkedHashMap<>();
+        for (String launcher : launchers.keySet()) {
+            results.put(launcher, new long[settings.runs]);
+        }
+        for (int run = -settings.warmup; run < settings.runs; run++) {
+            // Measure the launchers in turns, so that they share any drift of the machine.
+            for (Map.Entry<String, List<String>> launcher : launchers.entrySet()) {
+                long nanos = measure(launcher.getValue());
+                if (run >= 0) {
+                    results.get(launcher.getKey())[run] = nanos;
+                }
+            }
+        }
+
+        System.out.printf("%n%-16s %9s %9s %9s %9s%n", "launcher", "min ms", "p50 ms", "p90 ms", "max ms");
+        for (Map.Entry<String, long[]> result : results.entrySet()) {
+            long[] nanos = result.getValue();
+            Arrays.sort(nanos);
+            System.out.printf("%-16s %9.0f %9.0f %9.0f %9.0f%n", result.getKey(), millis(nanos[0]),
+                    millis(percentile(nanos, 50)), millis(percentile(nanos, 90)), millis(nanos[nanos.length - 1]));
+        }
+    }
+
+    /**
+     * Starts a chaincode JVM and waits until its server accepts a connection.
+     *
+     * @return the nanoseconds from the launch of the JVM until its server was ready
+     */
+    private long measure(final List<String> launcher) throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(settings.java.toString());
+        command.addAll(launcher);
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        builder.environment().put("CHAINCODE_SERVER_ADDRESS", "127.0.0.1:" + port);
+        builder.environment().put("CORE_CHAINCODE_ID_NAME", "ehr:startup-benchmark");
+        builder.environment().put("CORE_PEER_TLS_ENABLED", "false");
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = start + TimeUnit.SECONDS.toNanos(settings.timeoutSeconds);
+            while (!accepts(port)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(String.join(" ", command) + " exited with status "
+                            + process.exitValue() + " before serving");
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException(String.join(" ", command) + " did not serve within "
+                            + settings.timeoutSeconds + "s");
+                }
+                TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MILLIS);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static boolean accepts(final int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), CONNECT_TIMEOUT_MILLIS);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long percentile(final long[] sorted, final double percentile) {
+        int rank = (int) Math.ceil(sorted.length * percentile / 100);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static final class Settings {
+
+        private Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+        private Path jar;
+        private Path cds;
+        private int runs = 10;
+        private int warmup = 1;
+        private int timeoutSeconds = 60;
+
+        static Settings parse(final String[] args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --option=value, not " + arg);
+                }
+                String value = arg.substring(equals + 1);
+                switch (arg.substring(2, equals)) {
+                    case "java":
+                        settings.java = Paths.get(value);
+                        break;
+                    case "jar":
+                        settings.jar = Paths.get(value).toAbsolutePath();
+                        break;
+                    case "cds":
+                        settings.cds = value.isEmpty() ? null : Paths.get(value).toAbsolutePath();
+                        break;
+                    case "runs":
+                        settings.runs = Integer.parseInt(value);
+                        break;
+                    case "warmup":
+                        settings.warmup = Integer.parseInt(value);
+                        break;
+                    case "timeout":
+                        settings.timeoutSeconds = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (settings.jar == null || !Files.isRegularFile(settings.jar)) {
+                throw new IllegalArgumentException("--jar must name the chaincode jar");
+            }
+            if (settings.cds != null && !Files.isRegularFile(settings.cds)) {
+                throw new IllegalArgumentException("No AppCDS archive at " + settings.cds);
+            }
+            if (settings.runs < 1) {
+                throw new IllegalArgumentException("At least one run is needed");
+            }
+            return settings;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.contract;
+
+import org.hyperledger.fabric.Logger;
+import org.hyperledger.fabric.contract.metadata.MetadataBuilder;
+import org.hyperledger.fabric.samples.ehr.startup.ContractIndex;
+import org.hyperledger.fabric.samples.ehr.startup.VirtualThreadDispatch;
+import org.hyperledger.fabric.samples.ehr.utils.EHRConfig;
+import org.hyperledger.fabric.shim.ChaincodeServer;
+import org.hyperledger.fabric.shim.NettyChaincodeServer;
+
+/**
+ * Starts the chaincode as {@link ContractRouter#main(String[])} does, but registers the
+ * contracts and data types of the {@link ContractIndex} generated at build time
+ * instead of scanning the classpath for them. Without an index in the jar it falls
+ * back to the scan. With EHR_VIRTUAL_THREADS set it invokes transactions on virtual
+ * threads, see {@link VirtualThreadDispatch}.
+ *
+ * The class lives in the package of the router because the router only exposes its
+ * registries there.
+ */
+public final class IndexedContractRouter {
+
+    /**
+     * The system property that makes the chaincode exit once it is ready to serve,
+     * which the build uses to record the classes of the AppCDS archive.
+     */
+    public static final String TRAINING_RUN = "ehr.trainingRun";
+
+    private static final Logger LOGGER = Logger.getLogger(IndexedContractRouter.class);
+
+    private IndexedContractRouter() {
+    }
+
+    /**
+     * Starts the chaincode.
+     *
+     * @param args the command line options of the shim
+     * @throws Exception if the chaincode cannot start
+     */
+    public static void main(final String[] args) throws Exception {
+        ContractRouter router = new ContractRouter(args);
+        ClassLoader classLoader = IndexedContractRouter.class.getClassLoader();
+        ContractIndex index = ContractIndex.load(classLoader);
+        if (index == null) {
+            LOGGER.info("No " + ContractIndex.RESOURCE + " in the chaincode, scanning the classpath");
+            router.findAllContracts();
+        } else {
+            index.register(router.getRoutingRegistry(), router.getTypeRegistry(), classLoader);
+        }
+        MetadataBuilder.initialize(router.getRoutingRegistry(), router.getTypeRegistry());
+
+        if (EHRConfig.isVirtualThreads()) {
+            try {
+                VirtualThreadDispatch.install(router.getChaincodeConfig(), EHRConfig.getMaxVirtualThreads());
+                LOGGER.info("Invoking transactions on up to " + EHRConfig.getMaxVirtualThreads() + " virtual threads");
+            } catch (UnsupportedOperationException e) {
+                LOGGER.error("Invoking transactions on the shim's thread pool: " + e.getMessage());
+            }
+        }
+
+        boolean trainingRun = Boolean.getBoolean(TRAINING_RUN);
+        if (router.isServer()) {
+            LOGGER.info("Starting chaincode as server");
+            ChaincodeServer server = new NettyChaincodeServer(router, router.getChaincodeServerConfig());
+            if (!trainingRun) {
+                server.start();
+            }
+        } else if (!trainingRun) {
+            LOGGER.info("Starting chaincode as client");
+            router.startRouting();
+        }
+    }
+}
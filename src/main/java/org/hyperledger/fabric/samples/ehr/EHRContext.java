@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.ehr.events.EHRDataChange;
+import org.hyperledger.fabric.samples.ehr.ledger.CachingChaincodeStub;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Transaction context of the EHR contract.
+ *
+ * The stub handed to the transaction functions memoizes world state reads and
+ * buffers writes until the transaction completes, so a key is fetched from the
+ * peer at most once per invocation. The context also remembers when the
+ * transaction started, for the contract's metrics, and collects the record
+ * changes the transaction publishes in its chaincode event.
+ */
+public final class EHRContext extends Context {
+
+    private final List<EHRDataChange> changes = new ArrayList<>();
+
+    private long startNanos = System.nanoTime();
+
+    public EHRContext(final ChaincodeStub stub) {
+        super(new CachingChaincodeStub(stub));
+    }
+
+    /**
+     * Marks the start of the transaction function.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the time elapsed since the transaction function started.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Returns the name of the transaction function, without the contract name.
+     *
+     * @return the name, or unknown if the stub does not carry one
+     */
+    public String getTransactionName() {
+        String function = getStub().getFunction();
+        if (function == null) {
+            return "unknown";
+        }
+        return function.substring(function.indexOf(':') + 1);
+    }
+
+    /**
+     * Returns the size of the arguments of the transaction function.
+     *
+     * @return the number of bytes
+     */
+    public long getPayloadBytes() {
+        List<byte[]> args = getStub().getArgs();
+        long bytes = 0;
+        for (int i = 1; i < args.size(); i++) {
+            bytes += args.get(i).length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the stub of the transaction, which counts the state accesses it serves.
+     *
+     * @return the caching stub
+     */
+    public CachingChaincodeStub getCachingStub() {
+        return (CachingChaincodeStub) getStub();
+    }
+
+    /**
+     * Records a change to publish when the transaction completes.
+     *
+     * @param change the change
+     */
+    public void addChange(final EHRDataChange change) {
+        changes.add(change);
+    }
+
+    /**
+     * Returns the changes made by the transaction so far.
+     *
+     * @return the changes, in the order they were made
+     */
+    public List<EHRDataChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Sends the writes buffered during the transaction to the peer.
+     */
+    public void flush() {
+        ((CachingChaincodeStub) getStub()).flush();
+    }
+}
@@ -1,5 +1,6 @@
 package org.hyperledger.fabric.samples.ehr;
 
+import com.owlike.genson.annotation.JsonCreator;
 import com.owlike.genson.annotation.JsonProperty;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
@@ -37,6 +38,72 @@ public final class EHRData {
     @Property()
     private final Date createdAt;
 
+    @Property()
+    private final String attachmentDigest;
+
+    @Property()
+    private final long attachmentSize;
+
+    @Property()
+    private final String textDataEncoding;
+
+    @Property()
+    private final long version;
+
+    @Property()
+    private final long byteSize;
+
+    public EHRData(
+            final String id,
+            final String textData,
+            final String name,
+            final String size,
+            final boolean doc,
+            final String fileType,
+            final String fileName,
+            final String base64String,
+            final Date createdAt
+    ) {
+        this(id, textData, name, size, doc, fileType, fileName, base64String, createdAt, null, 0L);
+    }
+
+    public EHRData(
+            final String id,
+            final String textData,
+            final String name,
+            final String size,
+            final boolean doc,
+            final String fileType,
+            final String fileName,
+            final String base64String,
+            final Date createdAt,
+            final String attachmentDigest,
+            final long attachmentSize
+    ) {
+        this(id, textData, name, size, doc, fileType, fileName, base64String, createdAt, attachmentDigest,
+                attachmentSize, null, 0L);
+    }
+
+    public EHRData(
+            final String id,
+            final String textData,
+            final String name,
+            final String size,
+            final boolean doc,
+            final String fileType,
+            final String fileName,
+            final String base64String,
+            final Date createdAt,
+            final String attachmentDigest,
+            final long attachmentSize,
+            final String textDataEncoding,
+            final long version
+    ) {
+        this(id, textData, name, size, doc, fileType, fileName, base64String, createdAt, attachmentDigest,
+                attachmentSize, textDataEncoding, version, 0L);
+    }
+
+    @JsonCreator
     public EHRData(
             @JsonProperty("id") final String id,
             @JsonProperty("textData") final String textData,
@@ -46,7 +113,12 @@ public final class EHRData {
             @JsonProperty("fileType") final String fileType,
             @JsonProperty("fileName") final String fileName,
             @JsonProperty("base64String") final String base64String,
-            @JsonProperty("createdAt") final Date createdAt
+            @JsonProperty("createdAt") final Date createdAt,
+            @JsonProperty("attachmentDigest") final String attachmentDigest,
+            @JsonProperty("attachmentSize") final long attachmentSize,
+            @JsonProperty("textDataEncoding") final String textDataEncoding,
+            @JsonProperty("version") final long version,
+            @JsonProperty("byteSize") final long byteSize
     ) {
         this.id = id;
         this.textData = textData;
@@ -56,7 +128,12 @@ public final class EHRData {
         this.fileType = fileType;
         this.fileName = fileName;
         this.base64String = base64String;
-        this.createdAt = createdAt;
+        this.createdAt = createdAt == null ? null : new Date(createdAt.getTime());
+        this.attachmentDigest = attachmentDigest;
+        this.attachmentSize = attachmentSize;
+        this.textDataEncoding = textDataEncoding;
+        this.version = version;
+        this.byteSize = byteSize;
     }
 
     public String getId() {
@@ -91,8 +168,54 @@ public final class EHRData {
         return base64String;
     }
 
+    /**
+     * Returns the time the record was created. The date is a copy, so that changing it
+     * does not change the record, which may be shared with other transactions.
+     *
+     * @return the creation time, or null for a record written before it was kept
+     */
     public Date getCreatedAt() {
-        return createdAt;
+        return createdAt == null ? null : new Date(createdAt.getTime());
+    }
+
+    public String getAttachmentDigest() {
+        return attachmentDigest;
+    }
+
+    public long getAttachmentSize() {
+        return attachmentSize;
+    }
+
+    /**
+     * Returns how the text data is encoded in the world state. Records returned by
+     * the contract always carry plain text data.
+     *
+     * @return deflate when the text data is compressed, null when it is plain
+     */
+    public String getTextDataEncoding() {
+        return textDataEncoding;
+    }
+
+    /**
+     * Returns the version of the record, which every update increments. Records from
+     * version 1 on keep their text data under a separate content key; version 0
+     * records were written before and carry it inline.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the size of the content of the record, unlike the free-form size given
+     * by the client. The contract sets it when the record is written; records written
+     * before it was kept have 0.
+     *
+     * @return the UTF-8 bytes of the text data plus the bytes of the attachment
+     */
+    public long getByteSize() {
+        return byteSize;
     }
 
     @Override
@@ -114,7 +237,9 @@ public final class EHRData {
                         getSize(),
                         getFileType(),
                         getFileName(),
-                        getBase64String()
+                        getBase64String(),
+                        getAttachmentDigest(),
+                        getTextDataEncoding()
                 },
                 new String[]{
                         other.getId(),
@@ -123,7 +248,9 @@ public final class EHRData {
                         other.getSize(),
                         other.getFileType(),
                         other.getFileName(),
-                        other.getBase64String()
+                        other.getBase64String(),
+                        other.getAttachmentDigest(),
+                        other.getTextDataEncoding()
                 }
         ) && Objects.deepEquals(
                 new boolean[]{
@@ -132,6 +259,17 @@ public final class EHRData {
                 new boolean[]{
                         other.isDoc()
                 }
+        ) && Objects.deepEquals(
+                new long[]{
+                        getAttachmentSize(),
+                        getVersion(),
+                        getByteSize()
+                },
+                new long[]{
+                        other.getAttachmentSize(),
+                        other.getVersion(),
+                        other.getByteSize()
+                }
         ) && Objects.deepEquals(
                 new Date[] {
                         getCreatedAt()
@@ -153,7 +291,12 @@ public final class EHRData {
                 getFileType(),
                 getFileName(),
                 getBase64String(),
-                getCreatedAt()
+                getCreatedAt(),
+                getAttachmentDigest(),
+                getAttachmentSize(),
+                getTextDataEncoding(),
+                getVersion(),
+                getByteSize()
         );
     }
 
@@ -168,6 +311,11 @@ public final class EHRData {
                 + " fileType=" + fileType + ","
                 + " fileName=" + fileName + ","
                 + " base64String=" + base64String + "]"
-                + " createdAt=" + createdAt + "]";
+                + " createdAt=" + createdAt + ","
+                + " attachmentDigest=" + attachmentDigest + ","
+                + " attachmentSize=" + attachmentSize + ","
+                + " textDataEncoding=" + textDataEncoding + ","
+                + " version=" + version + ","
+                + " byteSize=" + byteSize + "]";
     }
 }
@@ -0,0 +1,92 @@
+package org.hyperledger.fabric.samples.ehr;
+
+import com.owlike.genson.annotation.JsonProperty;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * One entry of the history of an EHR data record: the transaction that wrote the
+ * record key and the value it wrote, or null when the transaction deleted it.
+ */
+@DataType()
+public final class EHRDataModification {
+
+    @Property()
+    private final String txId;
+
+    @Property()
+    private final Date timestamp;
+
+    @Property()
+    private final boolean deleted;
+
+    @Property()
+    private final EHRData value;
+
+    public EHRDataModification(
+            @JsonProperty("txId") final String txId,
+            @JsonProperty("timestamp") final Date timestamp,
+            @JsonProperty("deleted") final boolean deleted,
+            @JsonProperty("value") final EHRData value
+    ) {
+        this.txId = txId;
+        this.timestamp = timestamp;
+        this.deleted = deleted;
+        this.value = value;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public EHRData getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        EHRDataModification other = (EHRDataModification) obj;
+
+        return Objects.equals(getTxId(), other.getTxId())
+                && Objects.equals(getTimestamp(), other.getTimestamp())
+                && isDeleted() == other.isDeleted()
+                && Objects.equals(getValue(), other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(
+                getTxId(),
+                getTimestamp(),
+                isDeleted(),
+                getValue()
+        );
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + "["
+                + "txId=" + txId + ","
+                + " timestamp=" + timestamp + ","
+                + " deleted=" + deleted + ","
+                + " value=" + value + "]";
+    }
+}
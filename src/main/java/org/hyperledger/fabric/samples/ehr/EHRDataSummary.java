@@ -0,0 +1,146 @@
+package org.hyperledger.fabric.samples.ehr;
+
+import com.owlike.genson.annotation.JsonProperty;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.Date;
+import java.util.Objects;
+
+@DataType()
+public final class EHRDataSummary {
+
+    @Property()
+    private final String id;
+
+    @Property()
+    private final String name;
+
+    @Property()
+    private final String size;
+
+    @Property()
+    private final boolean doc;
+
+    @Property()
+    private final String fileType;
+
+    @Property()
+    private final String fileName;
+
+    @Property()
+    private final Date createdAt;
+
+    @Property()
+    private final long attachmentSize;
+
+    public EHRDataSummary(
+            @JsonProperty("id") final String id,
+            @JsonProperty("name") final String name,
+            @JsonProperty("size") final String size,
+            @JsonProperty("doc") final boolean doc,
+            @JsonProperty("fileType") final String fileType,
+            @JsonProperty("fileName") final String fileName,
+            @JsonProperty("createdAt") final Date createdAt,
+            @JsonProperty("attachmentSize") final long attachmentSize
+    ) {
+        this.id = id;
+        this.name = name;
+        this.size = size;
+        this.doc = doc;
+        this.fileType = fileType;
+        this.fileName = fileName;
+        this.createdAt = createdAt;
+        this.attachmentSize = attachmentSize;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSize() {
+        return size;
+    }
+
+    public boolean isDoc() {
+        return doc;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getAttachmentSize() {
+        return attachmentSize;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        EHRDataSummary other = (EHRDataSummary) obj;
+
+        return Objects.deepEquals(
+                new String[]{
+                        getId(),
+                        getName(),
+                        getSize(),
+                        getFileType(),
+                        getFileName()
+                },
+                new String[]{
+                        other.getId(),
+                        other.getName(),
+                        other.getSize(),
+                        other.getFileType(),
+                        other.getFileName()
+                }
+        ) && isDoc() == other.isDoc()
+                && getAttachmentSize() == other.getAttachmentSize()
+                && Objects.equals(getCreatedAt(), other.getCreatedAt());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(
+                getId(),
+                getName(),
+                getSize(),
+                isDoc(),
+                getFileType(),
+                getFileName(),
+                getCreatedAt(),
+                getAttachmentSize()
+        );
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + "["
+                + "id=" + id + ","
+                + " name=" + name + ","
+                + " size=" + size + ","
+                + " doc=" + doc + ","
+                + " fileType=" + fileType + ","
+                + " fileName=" + fileName + ","
+                + " createdAt=" + createdAt + ","
+                + " attachmentSize=" + attachmentSize + "]";
+    }
+}
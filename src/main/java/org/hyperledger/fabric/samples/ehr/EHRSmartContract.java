@@ -4,9 +4,17 @@
 
 package org.hyperledger.fabric.samples.ehr;
 
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.hyperledger.fabric.Logger;
 import org.hyperledger.fabric.contract.Context;
@@ -18,15 +26,41 @@ import org.hyperledger.fabric.contract.annotation.Info;
 import org.hyperledger.fabric.contract.annotation.License;
 import org.hyperledger.fabric.contract.annotation.Transaction;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.samples.ehr.codec.Compression;
+import org.hyperledger.fabric.samples.ehr.codec.DecodeCache;
+import org.hyperledger.fabric.samples.ehr.codec.EHRDataCodec;
+import org.hyperledger.fabric.samples.ehr.codec.JsonCodecs;
 import org.hyperledger.fabric.samples.ehr.enums.Errors;
+import org.hyperledger.fabric.samples.ehr.events.ChangeFeed;
+import org.hyperledger.fabric.samples.ehr.events.EHRDataChange;
+import org.hyperledger.fabric.samples.ehr.ledger.AttachmentManifest;
+import org.hyperledger.fabric.samples.ehr.ledger.AttachmentStore;
+import org.hyperledger.fabric.samples.ehr.ledger.ChunkedAttachmentStore;
+import org.hyperledger.fabric.samples.ehr.ledger.EHRDataContentStore;
+import org.hyperledger.fabric.samples.ehr.ledger.EHRDataIndex;
+import org.hyperledger.fabric.samples.ehr.ledger.EHRDataStats;
+import org.hyperledger.fabric.samples.ehr.metrics.EHRMetrics;
+import org.hyperledger.fabric.samples.ehr.metrics.MetricsServer;
+import org.hyperledger.fabric.samples.ehr.query.CouchDBIndex;
+import org.hyperledger.fabric.samples.ehr.query.EHRDataQuery;
+import org.hyperledger.fabric.samples.ehr.query.RichQueryPlanner;
+import org.hyperledger.fabric.samples.ehr.utils.BatchItemError;
+import org.hyperledger.fabric.samples.ehr.utils.BatchReadResult;
+import org.hyperledger.fabric.samples.ehr.utils.EHRConfig;
+import org.hyperledger.fabric.samples.ehr.utils.JsonMergePatch;
 import org.hyperledger.fabric.samples.ehr.utils.PageResult;
+import org.hyperledger.fabric.samples.ehr.utils.PageWriter;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 
 import com.owlike.genson.Genson;
+import com.owlike.genson.JsonBindingException;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 @Contract(
         name = "ehr",
@@ -46,8 +80,103 @@ public final class EHRSmartContract implements ContractInterface {
 
     public static final Logger LOGGER = Logger.getLogger(EHRSmartContract.class);
 
+    private static final AtomicBoolean METRICS_SERVER_STARTED = new AtomicBoolean();
+
+    private static final Set<String> MUTABLE_FIELDS = new HashSet<>(
+            Arrays.asList("name", "size", "doc", "fileType", "fileName"));
+
     private final Genson genson = new Genson();
 
+    private final Compression compression = new Compression(EHRConfig.getCompressionThreshold());
+
+    private final EHRDataCodec codec = new EHRDataCodec(EHRConfig.getStateFormat(), compression,
+            DecodeCache.global());
+
+    private final int maxBatchSize = EHRConfig.getMaxBatchSize();
+
+    private final int maxChunkSize = EHRConfig.getMaxChunkSize();
+
+    private final int maxPageSize = EHRConfig.getMaxPageSize();
+
+    private final RichQueryPlanner queryPlanner = new RichQueryPlanner(CouchDBIndex.SHIPPED);
+
+    private final boolean requireIndexedQueries = EHRConfig.isIndexedQueryRequired();
+
+    private final EHRMetrics metrics = EHRMetrics.global();
+
+    /**
+     * Creates the contract and, when EHR_METRICS_PORT is set, starts the Prometheus
+     * metrics endpoint of the process.
+     */
+    public EHRSmartContract() {
+        int metricsPort = EHRConfig.getMetricsPort();
+        if (metricsPort > 0 && METRICS_SERVER_STARTED.compareAndSet(false, true)) {
+            try {
+                MetricsServer.start(metricsPort, metrics);
+                LOGGER.info("Serving metrics on port " + metricsPort);
+            } catch (UncheckedIOException e) {
+                LOGGER.error("Could not serve metrics on port " + metricsPort + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Creates the transaction context, whose stub memoizes reads and buffers writes
+     * for the life of the transaction.
+     *
+     * @param stub the stub of the transaction
+     * @return the transaction context
+     */
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new EHRContext(stub);
+    }
+
+    /**
+     * Marks the start of a transaction and counts it as started.
+     *
+     * @param ctx the transaction context
+     */
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        if (ctx instanceof EHRContext) {
+            EHRContext context = (EHRContext) ctx;
+            context.start();
+            metrics.started(context.getTransactionName());
+        }
+    }
+
+    /**
+     * Publishes the record changes of a successful transaction as its chaincode
+     * event, writes the state buffered during the transaction to the peer and records
+     * its metrics. Failed transactions never get here, so they only count as started.
+     *
+     * @param ctx the transaction context
+     * @param result the value returned by the transaction function
+     */
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        if (ctx instanceof EHRContext) {
+            EHRContext context = (EHRContext) ctx;
+            if (!context.getChanges().isEmpty()) {
+                context.getStub().setEvent(ChangeFeed.EVENT_NAME, ChangeFeed.encode(context.getChanges()));
+            }
+            context.flush();
+            metrics.completed(context.getTransactionName(), context.getElapsedNanos(),
+                    context.getPayloadBytes(), responseBytes(result), context.getCachingStub());
+        }
+    }
+
+    private static long responseBytes(final Object result) {
+        if (result instanceof String) {
+            return ((String) result).getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (result instanceof byte[]) {
+            return ((byte[]) result).length;
+        }
+        return -1;
+    }
+
     /**
      * Creates initial EHR data on the ledger.
      *
@@ -75,14 +204,15 @@ public final class EHRSmartContract implements ContractInterface {
     /**
      * Creates a new EHR data on the ledger.
      *
+     * The attachment carried in base64String is moved to the content-addressed
+     * attachment store; the stored record only keeps its digest and byte length.
+     *
      * @param ctx the transaction context
      * @param payload the stringified list of the new EHR data
      * @return the payload
      */
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public String CreateEHRData(final Context ctx, final String payload) {
-        ChaincodeStub stub = ctx.getStub();
-
         EHRData payloadObject = genson.deserialize(payload, EHRData.class);
 
         if (EHRDataExists(ctx, payloadObject.getId())) {
@@ -90,22 +220,70 @@ public final class EHRSmartContract implements ContractInterface {
             LOGGER.error(errorMessage);
             throw new ChaincodeException(errorMessage, Errors.EHR_ALREADY_EXISTS.toString());
         }
-        EHRData ehrData = new EHRData(
-                payloadObject.getId(),
-                payloadObject.getTextData(),
-                payloadObject.getName(),
-                payloadObject.getSize(),
-                payloadObject.isDoc(),
-                payloadObject.getFileType(),
-                payloadObject.getFileName(),
-                payloadObject.getBase64String(),
-                new Date());
-        String sortedJSON = genson.serialize(ehrData);
-        stub.putStringState(ehrData.getId(), sortedJSON);
+
+        putEHRData(ctx, payloadObject, decodeAttachment(payloadObject));
 
         return payload;
     }
 
+    /**
+     * Creates a batch of new EHR data on the ledger in a single transaction.
+     *
+     * Every record is validated before anything is written; if any record is invalid,
+     * a duplicate within the batch or already on the ledger, the whole batch is
+     * rejected with a report of the failing records.
+     *
+     * @param ctx the transaction context
+     * @param payload the stringified array of the new EHR data
+     * @return array of the IDs of the created EHR data
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CreateEHRDataBatch(final Context ctx, final String payload) {
+        EHRData[] payloadObjects = genson.deserialize(payload, EHRData[].class);
+
+        if (payloadObjects.length > maxBatchSize) {
+            String errorMessage = String.format("EHR Data batch of %d records exceeds the maximum batch size of %d",
+                    payloadObjects.length, maxBatchSize);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_BATCH_TOO_LARGE.toString());
+        }
+
+        List<BatchItemError> batchErrors = new ArrayList<>();
+        Set<String> batchIds = new HashSet<>();
+        byte[][] attachments = new byte[payloadObjects.length][];
+        for (int i = 0; i < payloadObjects.length; i++) {
+            String ehrDataId = payloadObjects[i].getId();
+
+            if (ehrDataId == null || ehrDataId.isEmpty()) {
+                batchErrors.add(new BatchItemError(i, ehrDataId, Errors.EHR_INVALID_ID.toString()));
+            } else if (!batchIds.add(ehrDataId)) {
+                batchErrors.add(new BatchItemError(i, ehrDataId, Errors.EHR_DUPLICATE_IN_BATCH.toString()));
+            } else if (EHRDataExists(ctx, ehrDataId)) {
+                batchErrors.add(new BatchItemError(i, ehrDataId, Errors.EHR_ALREADY_EXISTS.toString()));
+            } else {
+                try {
+                    attachments[i] = decodeAttachment(payloadObjects[i]);
+                } catch (ChaincodeException e) {
+                    batchErrors.add(new BatchItemError(i, ehrDataId, Errors.EHR_INVALID_ATTACHMENT.toString()));
+                }
+            }
+        }
+
+        if (!batchErrors.isEmpty()) {
+            String errorMessage = String.format("EHR Data batch rejected, %d of %d records are invalid: %s",
+                    batchErrors.size(), payloadObjects.length, genson.serialize(batchErrors));
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_BATCH_REJECTED.toString());
+        }
+
+        List<String> createdIds = new ArrayList<>(payloadObjects.length);
+        for (int i = 0; i < payloadObjects.length; i++) {
+            createdIds.add(putEHRData(ctx, payloadObjects[i], attachments[i]).getId());
+        }
+
+        return genson.serialize(createdIds);
+    }
+
     /**
      * Retrieves an EHR data with the specified ID from the ledger.
      *
@@ -115,17 +293,334 @@ public final class EHRSmartContract implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public EHRData ReadEHRData(final Context ctx, final String ehrDataId) {
+        EHRData ehrData = withContent(ctx.getStub(), readMetadata(ctx, ehrDataId));
+        return ehrData;
+    }
+
+    /**
+     * Retrieves several EHR data in one evaluate, so a client pays one round trip to
+     * the peer instead of one per record.
+     *
+     * The shim has one state request of a transaction in flight at a time, so the
+     * records are read back to back within the transaction; each key is read once,
+     * however often it is asked for. The summary projection reads only the metadata
+     * of each record, without its text data or attachment.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataIds the stringified array of the IDs of the EHR data
+     * @param projection full for the EHR data, summary for their summaries
+     * @return the EHR data found on the ledger in the order asked for, and the IDs of
+     *         the EHR data that do not exist
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String ReadEHRDataBatch(final Context ctx, final String ehrDataIds, final String projection) {
+        ChaincodeStub stub = ctx.getStub();
+        Set<String> ids = new LinkedHashSet<>(Arrays.asList(genson.deserialize(ehrDataIds, String[].class)));
+
+        if (ids.size() > maxBatchSize) {
+            String errorMessage = String.format("EHR Data batch of %d records exceeds the maximum batch size of %d",
+                    ids.size(), maxBatchSize);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_BATCH_TOO_LARGE.toString());
+        }
+        boolean summary = "summary".equals(projection);
+        if (!summary && !"full".equals(projection)) {
+            String errorMessage = String.format("EHR Data projection %s is not full or summary", projection);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_UNKNOWN_PROJECTION.toString());
+        }
+
+        List<Object> found = new ArrayList<>(ids.size());
+        List<String> missingIds = new ArrayList<>();
+        for (String ehrDataId : ids) {
+            byte[] ehrDataState = ehrDataId == null || ehrDataId.isEmpty() ? null : stub.getState(ehrDataId);
+            if (ehrDataState == null || ehrDataState.length == 0) {
+                missingIds.add(ehrDataId);
+            } else if (summary) {
+                found.add(codec.decodeSummary(ehrDataState));
+            } else {
+                found.add(withContent(stub, codec.decode(ehrDataState)));
+            }
+        }
+
+        final String response = genson.serialize(new BatchReadResult(found, missingIds));
+
+        return response;
+    }
+
+    /**
+     * Updates the metadata of an EHR data with a JSON merge patch.
+     *
+     * Only name, size, doc, fileType and fileName can be patched. The text data and
+     * the attachment are immutable and kept under their own keys, so an update
+     * neither reads nor rewrites them. A record written before metadata and content
+     * were split has its text data moved to the content key on its first update.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data
+     * @param patch the JSON merge patch of the metadata
+     * @param expectedVersion the version the patch was made against; any other value,
+     *        one that is not a number included, is a version conflict
+     * @return the updated metadata, without the text data
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String UpdateEHRData(final Context ctx, final String ehrDataId, final String patch,
+                                final String expectedVersion) {
+        EHRData current = readMetadata(ctx, ehrDataId);
+
+        boolean atExpectedVersion;
+        try {
+            atExpectedVersion = current.getVersion() == Long.parseLong(expectedVersion);
+        } catch (NumberFormatException e) {
+            // No version matches what is not a number.
+            atExpectedVersion = false;
+        }
+        if (!atExpectedVersion) {
+            String errorMessage = String.format("EHRData %s is at version %d, not %s", ehrDataId,
+                    current.getVersion(), expectedVersion);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_VERSION_CONFLICT.toString());
+        }
+
+        EHRData patched;
+        try {
+            JSONObject patchObject = new JSONObject(patch);
+            for (String field : patchObject.keySet()) {
+                if (!MUTABLE_FIELDS.contains(field)) {
+                    throw new IllegalArgumentException(String.format("field %s cannot be patched", field));
+                }
+            }
+            Object merged = JsonMergePatch.apply(new JSONObject(genson.serialize(current)), patchObject);
+            patched = genson.deserialize(merged.toString(), EHRData.class);
+        } catch (JSONException | JsonBindingException | IllegalArgumentException e) {
+            String errorMessage = String.format("Patch %s of EHRData %s is invalid: %s", patch, ehrDataId,
+                    e.getMessage());
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_PATCH.toString());
+        }
+
+        return genson.serialize(putMetadata(ctx, current, patched));
+    }
+
+    /**
+     * Retrieves the summary of an EHR data with the specified ID from the ledger,
+     * without decoding its text data or attachment.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data
+     * @return the summary of the EHR data found on the ledger if there was one
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public EHRDataSummary ReadEHRDataSummary(final Context ctx, final String ehrDataId) {
         ChaincodeStub stub = ctx.getStub();
-        String ehrDataJSON = stub.getStringState(ehrDataId);
+        byte[] ehrDataState = stub.getState(ehrDataId);
 
-        if (ehrDataJSON == null || ehrDataJSON.isEmpty()) {
+        if (ehrDataState == null || ehrDataState.length == 0) {
             String errorMessage = String.format("EHRData %s does not exist", ehrDataId);
             LOGGER.error(errorMessage);
             throw new ChaincodeException(errorMessage, Errors.EHRData_NOT_FOUND.toString());
         }
 
-        EHRData ehrData = genson.deserialize(ehrDataJSON, EHRData.class);
-        return ehrData;
+        return codec.decodeSummary(ehrDataState);
+    }
+
+    /**
+     * Retrieves the attachment of the EHR data with the specified ID from the ledger.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data
+     * @return the base64 encoded attachment, empty if the EHR data has none
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String ReadEHRAttachment(final Context ctx, final String ehrDataId) {
+        EHRData ehrData = readMetadata(ctx, ehrDataId);
+
+        if (ehrData.getAttachmentDigest() == null) {
+            // Records written before attachments were split out still carry them inline.
+            return ehrData.getBase64String() == null ? "" : ehrData.getBase64String();
+        }
+
+        byte[] attachment = new AttachmentStore(ctx.getStub(), compression).get(ehrData.getAttachmentDigest());
+        if (attachment == null && uploads(ctx).getManifest(ehrDataId) != null) {
+            String errorMessage = String.format("Attachment of EHRData %s was uploaded in chunks, "
+                    + "read it with ReadEHRAttachmentChunk", ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_ATTACHMENT_CHUNKED.toString());
+        }
+        if (attachment == null) {
+            String errorMessage = String.format("Attachment %s of EHRData %s does not exist",
+                    ehrData.getAttachmentDigest(), ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_ATTACHMENT_NOT_FOUND.toString());
+        }
+
+        return Base64.getEncoder().encodeToString(attachment);
+    }
+
+    /**
+     * Begins uploading the attachment of an EHR data in chunks.
+     *
+     * Large documents do not fit in one transaction, so they are uploaded with
+     * AppendEHRAttachmentChunk, one chunk per transaction, and linked to the EHR data
+     * with FinalizeEHRAttachmentUpload. Beginning again before finalizing restarts the
+     * upload.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data, which must not have an attachment yet
+     * @return the manifest of the upload
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String BeginEHRAttachmentUpload(final Context ctx, final String ehrDataId) {
+        EHRDataSummary ehrDataSummary = ReadEHRDataSummary(ctx, ehrDataId);
+        ChunkedAttachmentStore uploads = uploads(ctx);
+        AttachmentManifest manifest = uploads.getManifest(ehrDataId);
+
+        if (ehrDataSummary.getAttachmentSize() > 0 || (manifest != null && manifest.isComplete())) {
+            String errorMessage = String.format("EHRData %s already has an attachment", ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_ATTACHMENT_EXISTS.toString());
+        }
+
+        return genson.serialize(uploads.begin(ehrDataId));
+    }
+
+    /**
+     * Appends the next chunk to the attachment upload of an EHR data.
+     *
+     * Chunks must be appended in order; the returned manifest carries the running
+     * digest the client can check against its own.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data
+     * @param index the index of the chunk, starting at 0
+     * @param chunk the base64 encoded chunk
+     * @return the manifest of the upload
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String AppendEHRAttachmentChunk(final Context ctx, final String ehrDataId, final String index,
+                                           final String chunk) {
+        ChunkedAttachmentStore uploads = uploads(ctx);
+        AttachmentManifest manifest = getUpload(uploads, ehrDataId);
+
+        if (chunkIndex(ehrDataId, index) != manifest.getChunks()) {
+            String errorMessage = String.format("Chunk %s of the attachment of EHRData %s is out of order, "
+                    + "expected chunk %d", index, ehrDataId, manifest.getChunks());
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_CHUNK_OUT_OF_ORDER.toString());
+        }
+
+        byte[] content;
+        try {
+            content = Base64.getDecoder().decode(chunk);
+        } catch (IllegalArgumentException e) {
+            content = new byte[0];
+        }
+        if (content.length == 0) {
+            String errorMessage = String.format("Chunk %s of the attachment of EHRData %s is empty or invalid base64",
+                    index, ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_ATTACHMENT.toString());
+        }
+        if (content.length > maxChunkSize) {
+            String errorMessage = String.format("Chunk %s of the attachment of EHRData %s has %d bytes, "
+                    + "more than the maximum of %d", index, ehrDataId, content.length, maxChunkSize);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_CHUNK_TOO_LARGE.toString());
+        }
+
+        return genson.serialize(uploads.append(manifest, content));
+    }
+
+    /**
+     * Finalizes the attachment upload of an EHR data and links the attachment to it.
+     *
+     * Once the running digest matches, every chunk is read back to compute the SHA-256
+     * of the whole content, which becomes the attachment digest of the record as it is
+     * for attachments stored in one piece.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data
+     * @param digest the running digest of all chunks as computed by the client
+     * @return the manifest of the completed upload
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String FinalizeEHRAttachmentUpload(final Context ctx, final String ehrDataId, final String digest) {
+        ChaincodeStub stub = ctx.getStub();
+        ChunkedAttachmentStore uploads = uploads(ctx);
+        AttachmentManifest manifest = getUpload(uploads, ehrDataId);
+
+        if (manifest.getChunks() == 0 || !manifest.getDigest().equals(digest)) {
+            String errorMessage = String.format("Attachment of EHRData %s has digest %s over %d chunks, not %s",
+                    ehrDataId, manifest.getDigest(), manifest.getChunks(), digest);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_ATTACHMENT_DIGEST_MISMATCH.toString());
+        }
+
+        EHRData ehrData = readMetadata(ctx, ehrDataId);
+        putMetadata(ctx, ehrData, new EHRData(
+                ehrData.getId(),
+                ehrData.getTextData(),
+                ehrData.getName(),
+                ehrData.getSize(),
+                ehrData.isDoc(),
+                ehrData.getFileType(),
+                ehrData.getFileName(),
+                ehrData.getBase64String(),
+                ehrData.getCreatedAt(),
+                uploads.contentDigest(manifest),
+                manifest.getSize()));
+
+        return genson.serialize(uploads.complete(manifest));
+    }
+
+    /**
+     * Retrieves the manifest of the chunked attachment upload of an EHR data, which
+     * tells a client how many chunks to read.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data
+     * @return the manifest of the upload
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String ReadEHRAttachmentManifest(final Context ctx, final String ehrDataId) {
+        AttachmentManifest manifest = uploads(ctx).getManifest(ehrDataId);
+
+        if (manifest == null) {
+            String errorMessage = String.format("EHRData %s has no attachment upload", ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_UPLOAD_NOT_FOUND.toString());
+        }
+
+        return genson.serialize(manifest);
+    }
+
+    /**
+     * Retrieves one chunk of an attachment uploaded in chunks, so a client can stream
+     * the document without the peer ever holding all of it.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data
+     * @param index the index of the chunk, starting at 0
+     * @return the base64 encoded chunk
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String ReadEHRAttachmentChunk(final Context ctx, final String ehrDataId, final String index) {
+        ChunkedAttachmentStore uploads = uploads(ctx);
+        AttachmentManifest manifest = uploads.getManifest(ehrDataId);
+        int chunkIndex = chunkIndex(ehrDataId, index);
+
+        byte[] chunk = null;
+        if (manifest != null && manifest.isComplete() && chunkIndex < manifest.getChunks()) {
+            chunk = uploads.getChunk(ehrDataId, chunkIndex);
+        }
+        if (chunk == null) {
+            String errorMessage = String.format("Chunk %s of the attachment of EHRData %s does not exist",
+                    index, ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_CHUNK_NOT_FOUND.toString());
+        }
+
+        return Base64.getEncoder().encodeToString(chunk);
     }
 
     /**
@@ -138,14 +633,172 @@ public final class EHRSmartContract implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public boolean EHRDataExists(final Context ctx, final String ehrDataId) {
         ChaincodeStub stub = ctx.getStub();
-        String ehrJSON = stub.getStringState(ehrDataId);
+        byte[] ehrDataState = stub.getState(ehrDataId);
+
+        return (ehrDataState != null && ehrDataState.length > 0);
+    }
+
+    /**
+     * Retrieves a page of the change history of an EHR data record, newest first.
+     *
+     * Peers return the whole history of a key at once, so the entries are serialized
+     * one at a time as they are iterated and the page stops at the page size. The
+     * returned bookmark is the transaction ID of the first entry not returned and is
+     * empty once the history is exhausted. Each entry holds the record metadata as it
+     * was written; the text data never changes and is read with ReadEHRData. The page
+     * size must be positive and is capped to EHR_MAX_PAGE_SIZE.
+     *
+     * @param ctx the transaction context
+     * @param ehrDataId the ID of the EHR data
+     * @param pageSize the maximum number of entries in the page
+     * @param bookmark the bookmark returned by the previous page, empty to start at the newest entry
+     * @param fromTime the epoch milliseconds of the oldest entry to return, empty for no lower bound
+     * @param toTime the epoch milliseconds the entries must precede, empty for no upper bound; both
+     *        bounds must be non-negative numbers
+     * @param excludeAttachments true to leave inline attachment bodies out of the entries
+     * @return page of history entries of the EHR data
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetEHRDataHistory(final Context ctx, final String ehrDataId, final String pageSize,
+                                    final String bookmark, final String fromTime, final String toTime,
+                                    final String excludeAttachments) {
+        ChaincodeStub stub = ctx.getStub();
+
+        final int maxEntries = positive("page size", pageSize, maxPageSize);
+        final long from = rangeBound("history time", fromTime, Long.MIN_VALUE);
+        final long to = rangeBound("history time", toTime, Long.MAX_VALUE);
+        final boolean withAttachments = !Boolean.parseBoolean(excludeAttachments);
+        final String previousBookMark = bookmark == null ? "" : bookmark;
+        String resultBookMark = "";
+        boolean exists = false;
+        boolean resumed = previousBookMark.isEmpty();
+        PageWriter page = new PageWriter(Integer.MAX_VALUE);
+
+        for (KeyModification modification : stub.getHistoryForKey(ehrDataId)) {
+            exists = true;
+            if (!resumed && !modification.getTxId().equals(previousBookMark)) {
+                continue;
+            }
+            resumed = true;
+
+            long timestamp = modification.getTimestamp().toEpochMilli();
+            if (timestamp < from || timestamp >= to) {
+                continue;
+            }
+            if (page.getCount() == maxEntries) {
+                resultBookMark = modification.getTxId();
+                break;
+            }
+            page.append(toModification(modification, withAttachments));
+        }
+
+        if (!exists) {
+            String errorMessage = String.format("EHRData %s does not exist", ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHRData_NOT_FOUND.toString());
+        }
+        if (!resumed) {
+            String errorMessage = String.format("Bookmark %s is not in the history of EHRData %s",
+                    previousBookMark, ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_BOOKMARK.toString());
+        }
 
-        return (ehrJSON != null && !ehrJSON.isEmpty());
+        final String response = page.toJson(previousBookMark, resultBookMark);
+
+        return response;
+    }
+
+    /**
+     * Retrieves the number of EHR data records and the bytes of their text data and
+     * attachments, overall or by file type or name.
+     *
+     * The aggregates are maintained by the transactions that write records, so this
+     * reads one key per aggregate and per transaction since the last compaction,
+     * never the records themselves. Records written before the statistics were kept
+     * are only counted once UpgradeEHRData or an update has reached them.
+     *
+     * @param ctx the transaction context
+     * @param dimension total, fileType or name
+     * @return the aggregates by value of the dimension
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetEHRDataStats(final Context ctx, final String dimension) {
+        EHRDataStats.Dimension statsDimension = EHRDataStats.Dimension.forFieldName(dimension);
+        if (statsDimension == null) {
+            String errorMessage = String.format("EHR Data statistics are not kept by %s", dimension);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_UNKNOWN_STATS_DIMENSION.toString());
+        }
+
+        final String response = genson.serialize(new EHRDataStats(ctx.getStub(), genson).get(statsDimension));
+
+        return response;
+    }
+
+    /**
+     * Folds the statistics deltas written by past transactions into the compacted
+     * aggregates, so that reading the statistics stays cheap. Meant to be submitted
+     * periodically; a compaction that conflicts with concurrent writes is retried.
+     *
+     * @param ctx the transaction context
+     * @param maxDeltas the maximum number of deltas to fold in this transaction, which
+     *        must be positive and is capped to EHR_MAX_PAGE_SIZE
+     * @return the number of deltas folded, 0 once nothing is left to compact
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int CompactEHRDataStats(final Context ctx, final String maxDeltas) {
+        return new EHRDataStats(ctx.getStub(), genson).compact(positive("max deltas", maxDeltas, maxPageSize));
+    }
+
+    /**
+     * Brings EHR data written before records were versioned up to date, a bounded
+     * number of records per transaction. Their text data moves to the content key and
+     * they are indexed and counted like the records created since. Until then index
+     * queries do not find them and the statistics leave them out, so after upgrading
+     * the chaincode on a ledger that already holds EHR data this is to be submitted
+     * from an empty bookmark, then from each returned bookmark until it comes back
+     * empty. Records already upgraded are left as they are, so running it again is
+     * harmless.
+     *
+     * Paginated queries are not allowed in transactions that write, so the records
+     * are read with a range query from the bookmark on; a record created in that range
+     * before the transaction commits fails its validation, and it is then retried.
+     *
+     * @param ctx the transaction context
+     * @param recordBudget the maximum number of records to read
+     * @param bookmark the bookmark returned by the previous transaction, empty to start
+     * @return the key of the first record not read, empty once every record was read
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String UpgradeEHRData(final Context ctx, final String recordBudget, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        final int maxRecords = positive("record budget", recordBudget, maxPageSize);
+        String resultBookMark = "";
+        int records = 0;
+
+        for (KeyValue result : stub.getStateByRange(bookmark == null ? "" : bookmark, "")) {
+            if (records == maxRecords) {
+                resultBookMark = result.getKey();
+                break;
+            }
+            records++;
+            EHRData ehrData = codec.decode(result.getValue());
+            if (ehrData.getVersion() == 0) {
+                putMetadata(ctx, ehrData, ehrData);
+            }
+        }
+
+        return resultBookMark;
     }
 
     /**
      * Retrieves all EHR data from the ledger.
      *
+     * Records are serialized one at a time as they are iterated; use ScanEHRData to
+     * read large ledgers in bounded pages.
+     *
      * @param ctx the transaction context
      * @return array of EHR data found on the ledger
      */
@@ -153,7 +806,7 @@ public final class EHRSmartContract implements ContractInterface {
     public String GetAllEHRData(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
 
-        List<EHRData> queryResults = new ArrayList<>();
+        PageWriter page = new PageWriter(Integer.MAX_VALUE);
 
         // To retrieve all EHR data from the ledger use getStateByRange with empty startKey & endKey.
         // Giving empty startKey & endKey is interpreted as all the keys from beginning to end.
@@ -161,11 +814,56 @@ public final class EHRSmartContract implements ContractInterface {
         // then getStateByRange will retrieve asset with keys between asset0 (inclusive) and asset9 (exclusive) in lexical order.
         QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "");
         for (KeyValue result: results) {
-            EHRData ehrData = genson.deserialize(result.getStringValue(), EHRData.class);
-            queryResults.add(ehrData);
+            EHRData ehrData = withContent(stub, codec.decode(result.getValue()));
+            page.append(ehrData);
         }
 
-        final String response = genson.serialize(queryResults);
+        final String response = page.toJsonArray();
+
+        return response;
+    }
+
+    /**
+     * Scans the EHR data on the ledger in key order, one bounded page at a time.
+     *
+     * A page ends when either budget is reached; the returned bookmark is the key of
+     * the first record not returned and is empty once the scan is complete. At least
+     * one record is returned per page, even when it alone exceeds the byte budget.
+     * Both budgets must be positive, and the record budget is capped to
+     * EHR_MAX_PAGE_SIZE.
+     *
+     * @param ctx the transaction context
+     * @param recordBudget the maximum number of records in the page
+     * @param byteBudget the maximum size in bytes of the serialized records in the page
+     * @param bookmark the bookmark returned by the previous page, empty to start a scan
+     * @return page of EHR data found on the ledger
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String ScanEHRData(final Context ctx, final String recordBudget,
+                              final String byteBudget, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        final int maxRecords = positive("record budget", recordBudget, maxPageSize);
+        final String previousBookMark = bookmark == null ? "" : bookmark;
+        String resultBookMark = "";
+        PageWriter page = new PageWriter(positive("byte budget", byteBudget, Integer.MAX_VALUE));
+
+        // Fetch one record past the budget to learn where the next page starts.
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub
+                .getStateByRangeWithPagination(previousBookMark, "", maxRecords + 1, "");
+        for (KeyValue result : results) {
+            if (page.getCount() == maxRecords) {
+                resultBookMark = result.getKey();
+                break;
+            }
+            EHRData ehrData = withContent(stub, codec.decode(result.getValue()));
+            if (!page.append(ehrData)) {
+                resultBookMark = result.getKey();
+                break;
+            }
+        }
+
+        final String response = page.toJson(previousBookMark, resultBookMark);
 
         return response;
     }
@@ -188,19 +886,536 @@ public final class EHRSmartContract implements ContractInterface {
         String resultBookMark = "";
 
         QueryResultsIteratorWithMetadata<KeyValue> results = stub
-                .getQueryResultWithPagination(query, Integer.parseInt(pageSize), bookmark);
+                .getQueryResultWithPagination(indexQuery(query), Integer.parseInt(pageSize), bookmark);
         if (results != null) {
             ChaincodeShim.QueryResponseMetadata metadata = results.getMetadata();
             for (KeyValue result : results) {
-                EHRData ehrData = genson.deserialize(result.getStringValue(), EHRData.class);
+                EHRData ehrData = withContent(stub, codec.decode(result.getValue()));
                 queryResults.add(ehrData);
             }
             resultBookMark = metadata.getBookmark();
         }
 
-        final String response = genson.serialize(
+        final String response = JsonCodecs.toJson(
                 new PageResult(queryResults, previousBookMark, resultBookMark));
 
         return response;
     }
+
+    /**
+     * Retrieves a page of EHR data matching a typed query.
+     *
+     * The query is a JSON object with any of the filters name, fileType, doc,
+     * createdFrom and createdTo (epoch milliseconds, the latter exclusive), and
+     * optionally sortBy createdAt with descending. It is turned into a CouchDB
+     * selector that names the shipped index serving it.
+     *
+     * @param ctx the transaction context
+     * @param query the typed query
+     * @param pageSize the page size
+     * @param bookmark the bookmark returned by the previous page
+     * @return page of EHR data found on the ledger
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryEHRData(final Context ctx, final String query,
+                               final String pageSize, final String bookmark) {
+        String richQuery;
+        try {
+            richQuery = genson.deserialize(query, EHRDataQuery.class).toRichQuery().toString();
+        } catch (IllegalArgumentException e) {
+            String errorMessage = String.format("EHR Data query %s is invalid: %s", query, e.getMessage());
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_QUERY.toString());
+        }
+
+        String indexedQuery = queryPlanner.withIndex(richQuery);
+        if (indexedQuery == null) {
+            String errorMessage = String.format("No index can serve EHR Data query %s", richQuery);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_UNINDEXED_QUERY.toString());
+        }
+
+        return GetPaginatedEHRData(ctx, indexedQuery, pageSize, bookmark);
+    }
+
+    /**
+     * Retrieves a page of EHR data summaries from the ledger.
+     *
+     * With an empty query the summaries are read in key order through a paginated
+     * range query, which also works on LevelDB peers; otherwise the query is run as
+     * a paginated CouchDB rich query.
+     *
+     * @param ctx the transaction context
+     * @param query the rich query selector, empty to page through all EHR data
+     * @param pageSize the page size
+     * @param bookmark the bookmark returned by the previous page
+     * @return page of EHR data summaries found on the ledger
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetPaginatedEHRDataSummaries(final Context ctx, final String query,
+                                               final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        List<EHRDataSummary> queryResults = new ArrayList<>();
+        final String previousBookMark = bookmark;
+        String resultBookMark = "";
+
+        QueryResultsIteratorWithMetadata<KeyValue> results = (query == null || query.isEmpty())
+                ? stub.getStateByRangeWithPagination("", "", Integer.parseInt(pageSize), bookmark)
+                : stub.getQueryResultWithPagination(indexQuery(query), Integer.parseInt(pageSize), bookmark);
+        if (results != null) {
+            ChaincodeShim.QueryResponseMetadata metadata = results.getMetadata();
+            for (KeyValue result : results) {
+                queryResults.add(codec.decodeSummary(result.getValue()));
+            }
+            resultBookMark = metadata.getBookmark();
+        }
+
+        final String response = JsonCodecs.toJson(
+                new PageResult(queryResults, previousBookMark, resultBookMark));
+
+        return response;
+    }
+
+    /**
+     * Retrieves a page of EHR data by the value of an indexed attribute.
+     *
+     * The lookup resolves through composite key secondary indexes, so it does not
+     * need a CouchDB state database. Records written before the indexes were kept are
+     * only found once UpgradeEHRData or an update has indexed them.
+     *
+     * @param ctx the transaction context
+     * @param attribute the indexed attribute: fileType, name, doc, createdAt or byteSize
+     * @param value the attribute value, empty to page through the whole index in attribute order
+     * @param pageSize the page size
+     * @param bookmark the bookmark returned by the previous page
+     * @return page of EHR data found on the ledger
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryEHRDataByIndex(final Context ctx, final String attribute, final String value,
+                                      final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        EHRDataIndex.Attribute indexAttribute = EHRDataIndex.Attribute.forFieldName(attribute);
+        if (indexAttribute == null) {
+            String errorMessage = String.format("EHR Data attribute %s is not indexed", attribute);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_UNKNOWN_INDEX.toString());
+        }
+
+        EHRDataIndex index = new EHRDataIndex(stub);
+        List<EHRData> queryResults = new ArrayList<>();
+        final String previousBookMark = bookmark;
+        String resultBookMark = "";
+
+        QueryResultsIteratorWithMetadata<KeyValue> results;
+        try {
+            results = index.lookup(indexAttribute, value, Integer.parseInt(pageSize), bookmark);
+        } catch (IllegalArgumentException e) {
+            String errorMessage = String.format("EHR Data query by %s is invalid: %s", attribute, e.getMessage());
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_QUERY.toString());
+        }
+        if (results != null) {
+            ChaincodeShim.QueryResponseMetadata metadata = results.getMetadata();
+            for (KeyValue result : results) {
+                byte[] ehrDataState = stub.getState(index.idOf(result));
+                if (ehrDataState != null && ehrDataState.length > 0) {
+                    queryResults.add(withContent(stub, codec.decode(ehrDataState)));
+                }
+            }
+            resultBookMark = metadata.getBookmark();
+        }
+
+        final String response = JsonCodecs.toJson(
+                new PageResult(queryResults, previousBookMark, resultBookMark));
+
+        return response;
+    }
+
+    /**
+     * Retrieves a page of EHR data created in a time range, oldest first. The creation
+     * time is the timestamp of the transaction that created the record, so every
+     * endorser indexes it alike.
+     *
+     * @param ctx the transaction context
+     * @param from the start of the range in epoch milliseconds, inclusive, empty for no start
+     * @param to the end of the range in epoch milliseconds, exclusive, empty for no end
+     * @param pageSize the page size
+     * @param bookmark the bookmark returned by the previous page
+     * @return page of EHR data found on the ledger
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryEHRDataByCreatedAtRange(final Context ctx, final String from, final String to,
+                                               final String pageSize, final String bookmark) {
+        return queryRange(ctx, EHRDataIndex.Attribute.CREATED_AT, from, to, pageSize, bookmark);
+    }
+
+    /**
+     * Retrieves a page of EHR data whose byte size is in a range, smallest first.
+     *
+     * @param ctx the transaction context
+     * @param from the smallest byte size, inclusive, empty for no lower bound
+     * @param to the largest byte size, exclusive, empty for no upper bound
+     * @param pageSize the page size
+     * @param bookmark the bookmark returned by the previous page
+     * @return page of EHR data found on the ledger
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryEHRDataBySizeRange(final Context ctx, final String from, final String to,
+                                          final String pageSize, final String bookmark) {
+        return queryRange(ctx, EHRDataIndex.Attribute.BYTE_SIZE, from, to, pageSize, bookmark);
+    }
+
+    /**
+     * Reads a page of the index of a numeric attribute from the lower bound of a range
+     * and resolves its entries up to the upper bound. The page ends without a bookmark
+     * once an entry is past the upper bound. The page size is capped like any other.
+     */
+    private String queryRange(final Context ctx, final EHRDataIndex.Attribute attribute, final String from,
+                              final String to, final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        long lower = rangeBound(attribute.getFieldName(), from, 0L);
+        long upper = rangeBound(attribute.getFieldName(), to, Long.MAX_VALUE);
+        if (lower > upper) {
+            String errorMessage = String.format("EHR Data %s range %s to %s is empty", attribute.getFieldName(),
+                    from, to);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_RANGE.toString());
+        }
+
+        int size = positive("page size", pageSize, maxPageSize);
+
+        EHRDataIndex index = new EHRDataIndex(stub);
+        List<EHRData> queryResults = new ArrayList<>();
+        final String previousBookMark = bookmark;
+        String resultBookMark = "";
+
+        QueryResultsIteratorWithMetadata<KeyValue> results;
+        try {
+            results = index.range(attribute, lower, size, bookmark);
+        } catch (IllegalArgumentException e) {
+            String errorMessage = e.getMessage();
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_BOOKMARK.toString());
+        }
+        if (results != null) {
+            resultBookMark = results.getMetadata().getBookmark();
+            for (KeyValue result : results) {
+                if (index.numberOf(result) >= upper) {
+                    resultBookMark = "";
+                    break;
+                }
+                byte[] ehrDataState = stub.getState(index.idOf(result));
+                if (ehrDataState != null && ehrDataState.length > 0) {
+                    queryResults.add(withContent(stub, codec.decode(ehrDataState)));
+                }
+            }
+        }
+
+        final String response = JsonCodecs.toJson(
+                new PageResult(queryResults, previousBookMark, resultBookMark));
+
+        return response;
+    }
+
+    private static long rangeBound(final String name, final String value, final long unbounded) {
+        if (value == null || value.isEmpty()) {
+            return unbounded;
+        }
+
+        try {
+            long bound = Long.parseLong(value);
+            if (bound >= 0) {
+                return bound;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        String errorMessage = String.format("EHR Data %s bound %s is not a non-negative number", name, value);
+        LOGGER.error(errorMessage);
+        throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_RANGE.toString());
+    }
+
+    /**
+     * Parses the index of an attachment chunk, which must not be negative.
+     */
+    private static int chunkIndex(final String ehrDataId, final String index) {
+        try {
+            int chunkIndex = Integer.parseInt(index);
+            if (chunkIndex >= 0) {
+                return chunkIndex;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        String errorMessage = String.format("Chunk index %s of the attachment of EHRData %s is not a non-negative "
+                + "number", index, ehrDataId);
+        LOGGER.error(errorMessage);
+        throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_CHUNK_INDEX.toString());
+    }
+
+    /**
+     * Parses the page size or budget of a query, which must be positive; a larger one
+     * than the maximum is capped to it.
+     */
+    private static int positive(final String name, final String value, final int max) {
+        try {
+            int size = Integer.parseInt(value);
+            if (size > 0) {
+                return Math.min(size, max);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        String errorMessage = String.format("EHR Data %s %s is not a positive number", name, value);
+        LOGGER.error(errorMessage);
+        throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_QUERY.toString());
+    }
+
+    /**
+     * Points a client rich query at the shipped index that serves it. Queries that no
+     * index can serve are logged, or rejected when indexed queries are required.
+     */
+    private String indexQuery(final String query) {
+        if (query == null || query.isEmpty()) {
+            return query;
+        }
+
+        String indexedQuery;
+        try {
+            indexedQuery = queryPlanner.withIndex(query);
+        } catch (JSONException e) {
+            String errorMessage = String.format("EHR Data query %s is invalid: %s", query, e.getMessage());
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_QUERY.toString());
+        }
+
+        if (indexedQuery == null) {
+            String errorMessage = String.format("No index can serve EHR Data query %s", query);
+            if (requireIndexedQueries) {
+                LOGGER.error(errorMessage);
+                throw new ChaincodeException(errorMessage, Errors.EHR_UNINDEXED_QUERY.toString());
+            }
+            LOGGER.warning(errorMessage);
+            return query;
+        }
+        return indexedQuery;
+    }
+
+    private ChunkedAttachmentStore uploads(final Context ctx) {
+        return new ChunkedAttachmentStore(ctx.getStub(), genson, compression);
+    }
+
+    private AttachmentManifest getUpload(final ChunkedAttachmentStore uploads, final String ehrDataId) {
+        AttachmentManifest manifest = uploads.getManifest(ehrDataId);
+
+        if (manifest == null || manifest.isComplete()) {
+            String errorMessage = String.format("EHRData %s has no attachment upload in progress", ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_UPLOAD_NOT_FOUND.toString());
+        }
+        return manifest;
+    }
+
+    private byte[] decodeAttachment(final EHRData ehrData) {
+        String base64String = ehrData.getBase64String();
+        if (base64String == null || base64String.isEmpty()) {
+            return new byte[0];
+        }
+
+        try {
+            return Base64.getDecoder().decode(base64String);
+        } catch (IllegalArgumentException e) {
+            String errorMessage = String.format("EHR Data %s has an invalid base64 attachment", ehrData.getId());
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHR_INVALID_ATTACHMENT.toString());
+        }
+    }
+
+    private EHRDataModification toModification(final KeyModification modification,
+                                               final boolean withAttachments) {
+        byte[] value = modification.getValue();
+        EHRData ehrData = modification.isDeleted() || value == null || value.length == 0
+                ? null
+                : codec.decode(value);
+
+        if (ehrData != null && !withAttachments && ehrData.getBase64String() != null) {
+            ehrData = new EHRData(
+                    ehrData.getId(),
+                    ehrData.getTextData(),
+                    ehrData.getName(),
+                    ehrData.getSize(),
+                    ehrData.isDoc(),
+                    ehrData.getFileType(),
+                    ehrData.getFileName(),
+                    null,
+                    ehrData.getCreatedAt(),
+                    ehrData.getAttachmentDigest(),
+                    ehrData.getAttachmentSize(),
+                    ehrData.getTextDataEncoding(),
+                    ehrData.getVersion(),
+                    ehrData.getByteSize());
+        }
+
+        return new EHRDataModification(modification.getTxId(), Date.from(modification.getTimestamp()),
+                modification.isDeleted(), ehrData);
+    }
+
+    /**
+     * Reads the metadata of an EHR data, without its text data unless the record
+     * predates the split of metadata and content.
+     */
+    private EHRData readMetadata(final Context ctx, final String ehrDataId) {
+        byte[] ehrDataState = ctx.getStub().getState(ehrDataId);
+
+        if (ehrDataState == null || ehrDataState.length == 0) {
+            String errorMessage = String.format("EHRData %s does not exist", ehrDataId);
+            LOGGER.error(errorMessage);
+            throw new ChaincodeException(errorMessage, Errors.EHRData_NOT_FOUND.toString());
+        }
+
+        return codec.decode(ehrDataState);
+    }
+
+    /**
+     * Joins the metadata of an EHR data with the text data kept under its content key.
+     */
+    private EHRData withContent(final ChaincodeStub stub, final EHRData metadata) {
+        if (metadata.getVersion() == 0) {
+            return metadata;
+        }
+
+        return new EHRData(
+                metadata.getId(),
+                new EHRDataContentStore(stub, compression).get(metadata.getId()),
+                metadata.getName(),
+                metadata.getSize(),
+                metadata.isDoc(),
+                metadata.getFileType(),
+                metadata.getFileName(),
+                metadata.getBase64String(),
+                metadata.getCreatedAt(),
+                metadata.getAttachmentDigest(),
+                metadata.getAttachmentSize(),
+                null,
+                metadata.getVersion(),
+                metadata.getByteSize());
+    }
+
+    /**
+     * Writes the next version of the metadata of an EHR data and moves the index
+     * entries and statistics of the attributes that changed. Text data still inline in
+     * a record that predates the split is moved to the content key, and the record is
+     * indexed and counted afresh, since nothing was kept for it before.
+     */
+    private EHRData putMetadata(final Context ctx, final EHRData current, final EHRData updated) {
+        ChaincodeStub stub = ctx.getStub();
+        if (current.getVersion() == 0) {
+            new EHRDataContentStore(stub, compression).put(current.getId(), current.getTextData());
+        }
+        long currentByteSize = byteSize(stub, current);
+
+        EHRData metadata = new EHRData(
+                current.getId(),
+                null,
+                updated.getName(),
+                updated.getSize(),
+                updated.isDoc(),
+                updated.getFileType(),
+                updated.getFileName(),
+                current.getBase64String(),
+                current.getCreatedAt(),
+                updated.getAttachmentDigest(),
+                updated.getAttachmentSize(),
+                null,
+                current.getVersion() + 1,
+                currentByteSize - current.getAttachmentSize() + updated.getAttachmentSize());
+        byte[] state = codec.encode(metadata);
+        stub.putState(metadata.getId(), state);
+        publish(ctx, EHRDataChange.Operation.UPDATE, metadata, state);
+        EHRDataIndex index = new EHRDataIndex(stub);
+        EHRDataStats stats = new EHRDataStats(stub, genson);
+        if (current.getVersion() == 0) {
+            // Removing first drops the entries of a record indexed before it was versioned.
+            index.remove(current);
+            index.add(metadata);
+            stats.add(metadata);
+        } else {
+            index.update(current, metadata);
+            stats.update(current, currentByteSize, metadata);
+        }
+
+        return metadata;
+    }
+
+    private EHRData putEHRData(final Context ctx, final EHRData payloadObject, final byte[] attachment) {
+        ChaincodeStub stub = ctx.getStub();
+        String attachmentDigest = null;
+        long attachmentSize = 0;
+        if (attachment.length > 0) {
+            attachmentDigest = new AttachmentStore(stub, compression).retain(attachment);
+            attachmentSize = attachment.length;
+        }
+
+        EHRData ehrData = new EHRData(
+                payloadObject.getId(),
+                null,
+                payloadObject.getName(),
+                payloadObject.getSize(),
+                payloadObject.isDoc(),
+                payloadObject.getFileType(),
+                payloadObject.getFileName(),
+                null,
+                Date.from(stub.getTxTimestamp()),
+                attachmentDigest,
+                attachmentSize,
+                null,
+                1L,
+                textBytes(payloadObject.getTextData()) + attachmentSize);
+        new EHRDataContentStore(stub, compression).put(ehrData.getId(), payloadObject.getTextData());
+        byte[] state = codec.encode(ehrData);
+        stub.putState(ehrData.getId(), state);
+        publish(ctx, EHRDataChange.Operation.CREATE, ehrData, state);
+        new EHRDataIndex(stub).add(ehrData);
+        new EHRDataStats(stub, genson).add(ehrData);
+
+        return ehrData;
+    }
+
+    /**
+     * Adds a record change to the chaincode event of the transaction.
+     */
+    private static void publish(final Context ctx, final EHRDataChange.Operation operation,
+                                final EHRData ehrData, final byte[] state) {
+        if (ctx instanceof EHRContext) {
+            ((EHRContext) ctx).addChange(new EHRDataChange(
+                    ehrData.getId(),
+                    operation,
+                    ehrData.getVersion(),
+                    AttachmentStore.digest(state),
+                    ehrData.getName(),
+                    ehrData.getFileType(),
+                    ehrData.isDoc(),
+                    ehrData.getAttachmentSize()));
+        }
+    }
+
+    /**
+     * Returns the byte size of an EHR data, computing it from the text data for a
+     * record written before the byte size was kept.
+     */
+    private long byteSize(final ChaincodeStub stub, final EHRData ehrData) {
+        if (ehrData.getByteSize() > 0) {
+            return ehrData.getByteSize();
+        }
+        String textData = ehrData.getVersion() == 0
+                ? ehrData.getTextData()
+                : new EHRDataContentStore(stub, compression).get(ehrData.getId());
+        return textBytes(textData) + ehrData.getAttachmentSize();
+    }
+
+    private static long textBytes(final String textData) {
+        return textData == null ? 0 : textData.getBytes(StandardCharsets.UTF_8).length;
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses large values before they are written to the world state.
+ *
+ * Values are compressed with zlib deflate at a fixed level and the default strategy,
+ * so every endorser running the chaincode image produces the same bytes for the same
+ * input and the endorsements match. Values smaller than the threshold, and values
+ * that deflate does not shrink, are left as they are.
+ */
+public final class Compression {
+
+    /**
+     * The name of the encoding of compressed values.
+     */
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The deflate level; changing it changes the bytes written by the endorsers.
+     */
+    public static final int LEVEL = 6;
+
+    public static final Compression DISABLED = new Compression(0);
+
+    static final byte PLAIN = 0;
+    static final byte DEFLATED = 1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int threshold;
+
+    /**
+     * Creates a compression of values of at least the threshold.
+     *
+     * @param threshold the size in bytes from which values are compressed, 0 to never compress
+     */
+    public Compression(final int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Compresses a value if it is large enough and compresses.
+     *
+     * @param value the value
+     * @return the deflated value, or null if the value is to be stored as it is
+     */
+    public byte[] compress(final byte[] value) {
+        if (threshold <= 0 || value.length < threshold) {
+            return null;
+        }
+
+        Deflater deflater = new Deflater(LEVEL);
+        try {
+            deflater.setInput(value);
+            deflater.finish();
+            byte[] deflated = new byte[value.length];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == deflated.length) {
+                    return null;
+                }
+                length += deflater.deflate(deflated, length, deflated.length - length);
+            }
+            if (length >= value.length) {
+                return null;
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(deflated, 0, result, 0, length);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Encodes a value as a flag byte followed by the value, deflated if that pays off,
+     * for values whose key does not tell how they are stored.
+     *
+     * @param value the value
+     * @return the flagged value
+     */
+    public byte[] encode(final byte[] value) {
+        byte[] deflated = compress(value);
+        byte[] body = deflated != null ? deflated : value;
+        byte[] encoded = new byte[body.length + 1];
+        encoded[0] = deflated != null ? DEFLATED : PLAIN;
+        System.arraycopy(body, 0, encoded, 1, body.length);
+        return encoded;
+    }
+
+    /**
+     * Restores a value encoded by {@link #encode}.
+     *
+     * @param encoded the flagged value
+     * @return the value
+     * @throws IllegalArgumentException if the flag is unknown or the value is malformed
+     */
+    public static byte[] decode(final byte[] encoded) {
+        if (encoded.length == 0 || (encoded[0] != PLAIN && encoded[0] != DEFLATED)) {
+            throw new IllegalArgumentException(String.format("Unknown compression flag 0x%02x",
+                    encoded.length == 0 ? 0 : encoded[0]));
+        }
+        byte[] body = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 1, body, 0, body.length);
+        return encoded[0] == DEFLATED ? inflate(body) : body;
+    }
+
+    /**
+     * Restores a value compressed by {@link #compress}.
+     *
+     * @param deflated the deflated value
+     * @return the value
+     * @throws IllegalArgumentException if the bytes are not a complete deflate stream
+     */
+    public static byte[] inflate(final byte[] deflated) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream value = new ByteArrayOutputStream(deflated.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated deflate stream");
+                }
+                value.write(buffer, 0, length);
+            }
+            return value.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed deflate stream", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.utils.EHRConfig;
+
+/**
+ * A least recently used cache of decoded EHR data, shared by the transactions of the
+ * process, so that records read again and again are not parsed on every read.
+ *
+ * Entries are keyed by the SHA-256 of the exact bytes stored in the world state
+ * rather than by ledger key. Decoding is a pure function of those bytes, so an entry
+ * can never be stale and nothing has to be invalidated when a record changes: the new
+ * value simply misses, and the old entry ages out. EHRData is immutable, its
+ * creation date included, which it copies in and out, so decoded records are handed
+ * to concurrent transactions as they are.
+ *
+ * The cache is bounded by an estimate of the heap its entries retain. An entry
+ * larger than a sixteenth of the ceiling is not kept, so that one large record does
+ * not evict the working set.
+ */
+public final class DecodeCache {
+
+    /**
+     * A cache that keeps nothing and decodes every value.
+     */
+    public static final DecodeCache DISABLED = new DecodeCache(0);
+
+    /**
+     * The estimated heap retained by an entry besides its strings: the EHRData, its
+     * date, the digest key and the map entry.
+     */
+    static final long ENTRY_OVERHEAD = 256;
+
+    static final long STRING_OVERHEAD = 56;
+
+    private static final int LARGEST_ENTRY_FRACTION = 16;
+
+    private static final DecodeCache GLOBAL = new DecodeCache(EHRConfig.getDecodeCacheMaxBytes());
+
+    private final long maxBytes;
+    private final LinkedHashMap<ByteBuffer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxBytes the estimated heap the entries may retain, 0 to disable the cache
+     */
+    public DecodeCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cache shared by every contract instance of the process, bounded by
+     * EHR_DECODE_CACHE_MAX_BYTES.
+     *
+     * @return the process-wide cache
+     */
+    public static DecodeCache global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Returns the EHR data decoded from a stored value, decoding it only if the same
+     * bytes are not cached.
+     *
+     * @param value the bytes stored in the world state
+     * @param decoder decodes the value on a miss
+     * @return the EHR data
+     */
+    public EHRData get(final byte[] value, final Function<byte[], EHRData> decoder) {
+        if (maxBytes == 0) {
+            return decoder.apply(value);
+        }
+
+        ByteBuffer key = ByteBuffer.wrap(sha256(value));
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.increment();
+            return entry.ehrData;
+        }
+
+        misses.increment();
+        EHRData ehrData = decoder.apply(value);
+        long weight = weigh(ehrData);
+        if (weight <= maxBytes / LARGEST_ENTRY_FRACTION) {
+            put(key, new Entry(ehrData, weight));
+        }
+        return ehrData;
+    }
+
+    private synchronized void put(final ByteBuffer key, final Entry entry) {
+        Entry previous = entries.put(key, entry);
+        bytes += entry.weight - (previous == null ? 0 : previous.weight);
+
+        Iterator<Map.Entry<ByteBuffer, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the estimated heap retained by the entries.
+     *
+     * @return the estimate in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    /**
+     * Estimates the heap retained by decoded EHR data, counting two bytes per character
+     * so that the estimate holds whether or not strings are compacted.
+     *
+     * @param ehrData the EHR data
+     * @return the estimate in bytes
+     */
+    static long weigh(final EHRData ehrData) {
+        return ENTRY_OVERHEAD
+                + weigh(ehrData.getId())
+                + weigh(ehrData.getTextData())
+                + weigh(ehrData.getName())
+                + weigh(ehrData.getSize())
+                + weigh(ehrData.getFileType())
+                + weigh(ehrData.getFileName())
+                + weigh(ehrData.getBase64String())
+                + weigh(ehrData.getAttachmentDigest())
+                + weigh(ehrData.getTextDataEncoding());
+    }
+
+    private static long weigh(final String value) {
+        return value == null ? 0 : STRING_OVERHEAD + 2L * value.length();
+    }
+
+    private static byte[] sha256(final byte[] value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Decoded EHR data and its estimated size.
+     */
+    private static final class Entry {
+
+        private final EHRData ehrData;
+        private final long weight;
+
+        Entry(final EHRData ehrData, final long weight) {
+            this.ehrData = ehrData;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRDataJsonCodec;
+import org.hyperledger.fabric.samples.ehr.EHRDataSummary;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Encodes EHR data for the world state and decodes it back.
+ *
+ * Two formats are understood on read: the legacy Genson JSON document, which always
+ * starts with '{', and a compact binary format that starts with a format tag byte.
+ * The binary body uses the protobuf wire format, so field names are not repeated in
+ * every record and inline attachments and digests are kept as raw bytes instead of
+ * base64 or hex text. Records are written in the configured format, which migrates
+ * a legacy record lazily the next time it is written.
+ *
+ * The JSON format stays the default because CouchDB rich queries and indexes can only
+ * see inside JSON values. It is read and written by the generated EHRDataJsonCodec,
+ * which produces the same bytes Genson did, so existing values read back unchanged.
+ *
+ * Text data at least as large as the compression threshold is stored deflated: as
+ * base64 with a textDataEncoding of deflate in JSON, and as raw bytes under its own
+ * field number in the binary format. It is only inflated when the full record is
+ * decoded; summaries step over it.
+ */
+public final class EHRDataCodec {
+
+    /**
+     * The storage formats a record can be written in.
+     */
+    public enum Format {
+        JSON,
+        BINARY
+    }
+
+    public static final byte FORMAT_PROTO_V1 = 0x01;
+
+    static final int ID = 1;
+    static final int TEXT_DATA = 2;
+    static final int NAME = 3;
+    static final int SIZE = 4;
+    static final int DOC = 5;
+    static final int FILE_TYPE = 6;
+    static final int FILE_NAME = 7;
+    static final int INLINE_ATTACHMENT = 8;
+    static final int CREATED_AT = 9;
+    static final int ATTACHMENT_DIGEST = 10;
+    static final int ATTACHMENT_SIZE = 11;
+    static final int ATTACHMENT_DIGEST_TEXT = 12;
+    static final int DEFLATED_TEXT_DATA = 13;
+    static final int VERSION = 14;
+    static final int BYTE_SIZE = 15;
+
+    private static final int SHA256_HEX_LENGTH = 64;
+
+    private final Format format;
+    private final Compression compression;
+    private final DecodeCache cache;
+
+    public EHRDataCodec(final Format format) {
+        this(format, Compression.DISABLED);
+    }
+
+    public EHRDataCodec(final Format format, final Compression compression) {
+        this(format, compression, DecodeCache.DISABLED);
+    }
+
+    public EHRDataCodec(final Format format, final Compression compression, final DecodeCache cache) {
+        this.format = format;
+        this.compression = compression;
+        this.cache = cache;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Encodes the EHR data in the configured format.
+     *
+     * @param ehrData the EHR data
+     * @return the bytes to store in the world state
+     */
+    public byte[] encode(final EHRData ehrData) {
+        byte[] textData = ehrData.getTextData() == null ? null : ehrData.getTextData().getBytes(StandardCharsets.UTF_8);
+        byte[] deflatedTextData = textData == null ? null : compression.compress(textData);
+
+        if (format == Format.JSON) {
+            EHRData stored = ehrData;
+            if (deflatedTextData != null && base64Length(deflatedTextData) < textData.length) {
+                stored = withTextData(ehrData, Base64.getEncoder().encodeToString(deflatedTextData),
+                        Compression.DEFLATE);
+            }
+            return EHRDataJsonCodec.INSTANCE.toBytes(stored);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(FORMAT_PROTO_V1);
+            CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+
+            writeString(output, ID, ehrData.getId());
+            if (deflatedTextData != null) {
+                output.writeByteArray(DEFLATED_TEXT_DATA, deflatedTextData);
+            } else {
+                writeString(output, TEXT_DATA, ehrData.getTextData());
+            }
+            writeString(output, NAME, ehrData.getName());
+            writeString(output, SIZE, ehrData.getSize());
+            if (ehrData.isDoc()) {
+                output.writeBool(DOC, true);
+            }
+            writeString(output, FILE_TYPE, ehrData.getFileType());
+            writeString(output, FILE_NAME, ehrData.getFileName());
+            if (ehrData.getBase64String() != null) {
+                output.writeByteArray(INLINE_ATTACHMENT, Base64.getDecoder().decode(ehrData.getBase64String()));
+            }
+            if (ehrData.getCreatedAt() != null) {
+                output.writeInt64(CREATED_AT, ehrData.getCreatedAt().getTime());
+            }
+            writeDigest(output, ehrData.getAttachmentDigest());
+            if (ehrData.getAttachmentSize() != 0) {
+                output.writeInt64(ATTACHMENT_SIZE, ehrData.getAttachmentSize());
+            }
+            if (ehrData.getVersion() != 0) {
+                output.writeInt64(VERSION, ehrData.getVersion());
+            }
+            if (ehrData.getByteSize() != 0) {
+                output.writeInt64(BYTE_SIZE, ehrData.getByteSize());
+            }
+
+            output.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes EHR data stored in either format, or takes it from the decode cache when
+     * the same bytes were decoded before.
+     *
+     * @param value the bytes stored in the world state
+     * @return the EHR data
+     */
+    public EHRData decode(final byte[] value) {
+        return cache.get(value, this::decodeValue);
+    }
+
+    private EHRData decodeValue(final byte[] value) {
+        if (isJson(value)) {
+            EHRData ehrData = EHRDataJsonCodec.INSTANCE.fromBytes(value);
+            if (ehrData.getTextDataEncoding() == null) {
+                return ehrData;
+            }
+            if (!Compression.DEFLATE.equals(ehrData.getTextDataEncoding()) || ehrData.getTextData() == null) {
+                throw new IllegalArgumentException("Unknown text data encoding " + ehrData.getTextDataEncoding());
+            }
+            byte[] textData = Compression.inflate(Base64.getDecoder().decode(ehrData.getTextData()));
+            return withTextData(ehrData, new String(textData, StandardCharsets.UTF_8), null);
+        }
+
+        CodedInputStream input = binaryBody(value);
+        String id = null;
+        String textData = null;
+        String name = null;
+        String size = null;
+        boolean doc = false;
+        String fileType = null;
+        String fileName = null;
+        String base64String = null;
+        Date createdAt = null;
+        String attachmentDigest = null;
+        long attachmentSize = 0;
+        long version = 0;
+        long byteSize = 0;
+
+        try {
+            for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case ID:
+                        id = input.readStringRequireUtf8();
+                        break;
+                    case TEXT_DATA:
+                        textData = input.readStringRequireUtf8();
+                        break;
+                    case DEFLATED_TEXT_DATA:
+                        textData = new String(Compression.inflate(input.readByteArray()), StandardCharsets.UTF_8);
+                        break;
+                    case NAME:
+                        name = input.readStringRequireUtf8();
+                        break;
+                    case SIZE:
+                        size = input.readStringRequireUtf8();
+                        break;
+                    case DOC:
+                        doc = input.readBool();
+                        break;
+                    case FILE_TYPE:
+                        fileType = input.readStringRequireUtf8();
+                        break;
+                    case FILE_NAME:
+                        fileName = input.readStringRequireUtf8();
+                        break;
+                    case INLINE_ATTACHMENT:
+                        base64String = Base64.getEncoder().encodeToString(input.readByteArray());
+                        break;
+                    case CREATED_AT:
+                        createdAt = new Date(input.readInt64());
+                        break;
+                    case ATTACHMENT_DIGEST:
+                        attachmentDigest = Hex.encode(input.readByteArray());
+                        break;
+                    case ATTACHMENT_DIGEST_TEXT:
+                        attachmentDigest = input.readStringRequireUtf8();
+                        break;
+                    case ATTACHMENT_SIZE:
+                        attachmentSize = input.readInt64();
+                        break;
+                    case VERSION:
+                        version = input.readInt64();
+                        break;
+                    case BYTE_SIZE:
+                        byteSize = input.readInt64();
+                        break;
+                    default:
+                        input.skipField(tag);
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed binary EHR data", e);
+        }
+
+        return new EHRData(id, textData, name, size, doc, fileType, fileName, base64String, createdAt,
+                attachmentDigest, attachmentSize, null, version, byteSize);
+    }
+
+    /**
+     * Decodes the summary of EHR data stored in either format, stepping over the
+     * text data and any inline attachment without allocating them.
+     *
+     * @param value the bytes stored in the world state
+     * @return the summary of the EHR data
+     */
+    public EHRDataSummary decodeSummary(final byte[] value) {
+        if (isJson(value)) {
+            return EHRDataSummaryReader.read(value);
+        }
+
+        CodedInputStream input = binaryBody(value);
+        String id = null;
+        String name = null;
+        String size = null;
+        boolean doc = false;
+        String fileType = null;
+        String fileName = null;
+        Date createdAt = null;
+        long attachmentSize = 0;
+        long inlineAttachmentSize = 0;
+
+        try {
+            for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case ID:
+                        id = input.readStringRequireUtf8();
+                        break;
+                    case NAME:
+                        name = input.readStringRequireUtf8();
+                        break;
+                    case SIZE:
+                        size = input.readStringRequireUtf8();
+                        break;
+                    case DOC:
+                        doc = input.readBool();
+                        break;
+                    case FILE_TYPE:
+                        fileType = input.readStringRequireUtf8();
+                        break;
+                    case FILE_NAME:
+                        fileName = input.readStringRequireUtf8();
+                        break;
+                    case INLINE_ATTACHMENT:
+                        inlineAttachmentSize = input.readRawVarint32();
+                        input.skipRawBytes((int) inlineAttachmentSize);
+                        break;
+                    case CREATED_AT:
+                        createdAt = new Date(input.readInt64());
+                        break;
+                    case ATTACHMENT_SIZE:
+                        attachmentSize = input.readInt64();
+                        break;
+                    default:
+                        input.skipField(tag);
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed binary EHR data", e);
+        }
+
+        return new EHRDataSummary(id, name, size, doc, fileType, fileName, createdAt,
+                attachmentSize != 0 ? attachmentSize : inlineAttachmentSize);
+    }
+
+    private static EHRData withTextData(final EHRData ehrData, final String textData, final String encoding) {
+        return new EHRData(ehrData.getId(), textData, ehrData.getName(), ehrData.getSize(), ehrData.isDoc(),
+                ehrData.getFileType(), ehrData.getFileName(), ehrData.getBase64String(), ehrData.getCreatedAt(),
+                ehrData.getAttachmentDigest(), ehrData.getAttachmentSize(), encoding, ehrData.getVersion(),
+                ehrData.getByteSize());
+    }
+
+    private static int base64Length(final byte[] value) {
+        return (value.length + 2) / 3 * 4;
+    }
+
+    static boolean isJson(final byte[] value) {
+        for (byte current : value) {
+            if (current != ' ' && current != '\n' && current != '\r' && current != '\t') {
+                return current == '{';
+            }
+        }
+        return false;
+    }
+
+    private static CodedInputStream binaryBody(final byte[] value) {
+        if (value.length == 0 || value[0] != FORMAT_PROTO_V1) {
+            throw new IllegalArgumentException(String.format("Unknown EHR data format 0x%02x",
+                    value.length == 0 ? 0 : value[0]));
+        }
+        return CodedInputStream.newInstance(value, 1, value.length - 1);
+    }
+
+    private static void writeString(final CodedOutputStream output, final int field, final String value)
+            throws IOException {
+        if (value != null) {
+            output.writeString(field, value);
+        }
+    }
+
+    private static void writeDigest(final CodedOutputStream output, final String digest) throws IOException {
+        if (digest == null) {
+            return;
+        }
+        if (digest.length() == SHA256_HEX_LENGTH && digest.chars().allMatch(c -> Character.digit(c, 16) >= 0
+                && !Character.isUpperCase(c))) {
+            output.writeByteArray(ATTACHMENT_DIGEST, Hex.decode(digest));
+        } else {
+            output.writeString(ATTACHMENT_DIGEST_TEXT, digest);
+        }
+    }
+}
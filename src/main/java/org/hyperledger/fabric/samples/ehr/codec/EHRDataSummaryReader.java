@@ -0,0 +1,262 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.hyperledger.fabric.samples.ehr.EHRDataSummary;
+
+/**
+ * Reads an {@link EHRDataSummary} straight from the stored JSON bytes of an EHR data.
+ *
+ * Only the summary fields are decoded; every other value, including an inline
+ * base64String attachment, is stepped over byte by byte without being allocated,
+ * so the cost of a summary does not depend on the size of the record.
+ */
+public final class EHRDataSummaryReader {
+
+    private final byte[] json;
+    private int position;
+
+    private String id;
+    private String name;
+    private String size;
+    private boolean doc;
+    private String fileType;
+    private String fileName;
+    private Date createdAt;
+    private long attachmentSize = -1;
+    private long inlineAttachmentSize;
+
+    private EHRDataSummaryReader(final byte[] json) {
+        this.json = json;
+    }
+
+    /**
+     * Reads the summary of a stored EHR data.
+     *
+     * @param json the stored JSON bytes of the EHR data
+     * @return the summary of the EHR data
+     */
+    public static EHRDataSummary read(final byte[] json) {
+        return new EHRDataSummaryReader(json).readObject();
+    }
+
+    private EHRDataSummary readObject() {
+        expect('{');
+        if (peek() != '}') {
+            do {
+                String field = readString();
+                expect(':');
+                readField(field);
+            } while (consumeIf(','));
+        }
+        expect('}');
+
+        return new EHRDataSummary(id, name, size, doc, fileType, fileName, createdAt,
+                attachmentSize >= 0 ? attachmentSize : inlineAttachmentSize);
+    }
+
+    private void readField(final String field) {
+        switch (field) {
+            case "id":
+                id = readNullableString();
+                break;
+            case "name":
+                name = readNullableString();
+                break;
+            case "size":
+                size = readNullableString();
+                break;
+            case "doc":
+                doc = readBoolean();
+                break;
+            case "fileType":
+                fileType = readNullableString();
+                break;
+            case "fileName":
+                fileName = readNullableString();
+                break;
+            case "createdAt":
+                Long millis = readNullableLong();
+                createdAt = millis == null ? null : new Date(millis);
+                break;
+            case "attachmentSize":
+                Long length = readNullableLong();
+                attachmentSize = length == null ? -1 : length;
+                break;
+            case "base64String":
+                inlineAttachmentSize = skipBase64();
+                break;
+            default:
+                skipValue();
+                break;
+        }
+    }
+
+    private String readNullableString() {
+        if (peek() == 'n') {
+            skipLiteral();
+            return null;
+        }
+        return readString();
+    }
+
+    private String readString() {
+        expect('"');
+        int start = position;
+        while (json[position] != '"') {
+            if (json[position] == '\\') {
+                return readEscapedString(start);
+            }
+            position++;
+        }
+        String value = new String(json, start, position - start, StandardCharsets.UTF_8);
+        position++;
+        return value;
+    }
+
+    private String readEscapedString(final int start) {
+        skipStringBody();
+        String raw = new String(json, start, position - 1 - start, StandardCharsets.UTF_8);
+
+        StringBuilder value = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char current = raw.charAt(i);
+            if (current != '\\') {
+                value.append(current);
+                continue;
+            }
+            char escaped = raw.charAt(++i);
+            switch (escaped) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    value.append(escaped);
+                    break;
+            }
+        }
+        return value.toString();
+    }
+
+    private boolean readBoolean() {
+        boolean value = peek() == 't';
+        skipLiteral();
+        return value;
+    }
+
+    private Long readNullableLong() {
+        skipWhitespace();
+        int start = position;
+        skipLiteral();
+        String literal = new String(json, start, position - start, StandardCharsets.US_ASCII);
+        return "null".equals(literal) ? null : Long.valueOf(literal);
+    }
+
+    /**
+     * Steps over an inline base64 attachment and returns its decoded length.
+     */
+    private long skipBase64() {
+        if (peek() == 'n') {
+            skipLiteral();
+            return 0;
+        }
+        expect('"');
+        int start = position;
+        skipStringBody();
+        int length = position - 1 - start;
+        int padding = 0;
+        while (padding < 2 && length - padding > 0 && json[start + length - padding - 1] == '=') {
+            padding++;
+        }
+        return (long) length / 4 * 3 - padding;
+    }
+
+    private void skipValue() {
+        byte next = peek();
+        if (next == '"') {
+            position++;
+            skipStringBody();
+        } else if (next == '{' || next == '[') {
+            int depth = 0;
+            do {
+                byte current = json[position++];
+                if (current == '"') {
+                    skipStringBody();
+                } else if (current == '{' || current == '[') {
+                    depth++;
+                } else if (current == '}' || current == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        } else {
+            skipLiteral();
+        }
+    }
+
+    private void skipStringBody() {
+        while (json[position] != '"') {
+            position += json[position] == '\\' ? 2 : 1;
+        }
+        position++;
+    }
+
+    private void skipLiteral() {
+        skipWhitespace();
+        while (position < json.length && json[position] != ',' && json[position] != '}'
+                && json[position] != ']' && !isWhitespace(json[position])) {
+            position++;
+        }
+    }
+
+    private byte peek() {
+        skipWhitespace();
+        return json[position];
+    }
+
+    private boolean consumeIf(final char expected) {
+        if (peek() == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char expected) {
+        if (peek() != expected) {
+            throw new IllegalArgumentException(
+                    String.format("Expected '%s' at offset %d of EHR data JSON", expected, position));
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length && isWhitespace(json[position])) {
+            position++;
+        }
+    }
+
+    private static boolean isWhitespace(final byte value) {
+        return value == ' ' || value == '\n' || value == '\r' || value == '\t';
+    }
+}
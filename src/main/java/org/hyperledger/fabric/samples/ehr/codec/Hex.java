@@ -0,0 +1,55 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+/**
+ * Lowercase hex encoding of the digests that address attachments.
+ */
+public final class Hex {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private Hex() {
+    }
+
+    /**
+     * Encodes bytes as lowercase hex.
+     *
+     * @param raw the bytes
+     * @return two lowercase hex digits per byte
+     */
+    public static String encode(final byte[] raw) {
+        char[] hex = new char[raw.length * 2];
+        for (int i = 0; i < raw.length; i++) {
+            hex[i * 2] = DIGITS[(raw[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = DIGITS[raw[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Decodes hex into bytes.
+     *
+     * @param hex an even number of hex digits, in either case
+     * @return one byte per two digits
+     * @throws IllegalArgumentException if the text is not an even number of hex digits
+     */
+    public static byte[] decode(final String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException(String.format("Odd number of hex digits in %s", hex));
+        }
+
+        byte[] raw = new byte[hex.length() / 2];
+        for (int i = 0; i < raw.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException(String.format("%s is not hex", hex));
+            }
+            raw[i] = (byte) (high << 4 | low);
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+/**
+ * Writes a type to JSON bytes and reads it back without reflection or intermediate
+ * trees. Implementations are generated at build time for the {@code @DataType} and
+ * {@link JsonSerializable} classes, as {@code <Type>JsonCodec} next to the type, and
+ * write exactly the bytes Genson writes for the same object.
+ *
+ * @param <T> the type
+ */
+public interface JsonCodec<T> {
+
+    /**
+     * Writes a value of the type, which is not null.
+     *
+     * @param value the value
+     * @param out where to write it
+     */
+    void write(T value, JsonOutput out);
+
+    /**
+     * Reads a value of the type, positioned at its opening brace or at null.
+     *
+     * @param in where to read it from
+     * @return the value, or null
+     */
+    T read(JsonInput in);
+
+    /**
+     * Writes a value to a new array of JSON bytes.
+     *
+     * @param value the value
+     * @return the UTF-8 JSON bytes
+     */
+    default byte[] toBytes(final T value) {
+        JsonOutput out = new JsonOutput();
+        out.value(value, this);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a value from JSON bytes that hold nothing else.
+     *
+     * @param json the UTF-8 JSON bytes
+     * @return the value, or null
+     */
+    default T fromBytes(final byte[] json) {
+        JsonInput in = new JsonInput(json);
+        T value = read(in);
+        in.end();
+        return value;
+    }
+}
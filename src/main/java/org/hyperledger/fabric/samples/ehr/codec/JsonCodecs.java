@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds the generated {@link JsonCodec} of a class at run time, for values whose
+ * type is only known then, such as the data of a page.
+ */
+public final class JsonCodecs {
+
+    static final String SUFFIX = "JsonCodec";
+
+    private static final ClassValue<JsonCodec<?>> CODECS = new ClassValue<JsonCodec<?>>() {
+        @Override
+        protected JsonCodec<?> computeValue(final Class<?> type) {
+            try {
+                Class<?> codec = Class.forName(codecName(type), true, type.getClassLoader());
+                return (JsonCodec<?>) codec.getField("INSTANCE").get(null);
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                return null;
+            }
+        }
+    };
+
+    private JsonCodecs() {
+    }
+
+    /**
+     * Returns the generated codec of a class.
+     *
+     * @param type the class
+     * @param <T> the type
+     * @return the codec, or null if none was generated
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonCodec<T> find(final Class<T> type) {
+        return (JsonCodec<T>) CODECS.get(type);
+    }
+
+    /**
+     * Serializes a value to the JSON Genson would produce for it.
+     *
+     * @param value the value, or null
+     * @return the UTF-8 JSON bytes
+     * @throws IllegalArgumentException if the value holds an object without a generated codec
+     */
+    public static byte[] toBytes(final Object value) {
+        JsonOutput out = new JsonOutput();
+        out.value(value);
+        return out.toByteArray();
+    }
+
+    /**
+     * Serializes a value to the JSON Genson would produce for it.
+     *
+     * @param value the value, or null
+     * @return the JSON
+     * @throws IllegalArgumentException if the value holds an object without a generated codec
+     */
+    public static String toJson(final Object value) {
+        return new String(toBytes(value), StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    static void write(final Object value, final JsonOutput out) {
+        JsonCodec<Object> codec = (JsonCodec<Object>) CODECS.get(value.getClass());
+        if (codec == null) {
+            throw new IllegalArgumentException("No JSON codec was generated for " + value.getClass().getName());
+        }
+        codec.write(value, out);
+    }
+
+    /**
+     * Returns the name of the codec generated for a class: its name with nested class
+     * names joined by underscores, followed by JsonCodec.
+     */
+    static String codecName(final Class<?> type) {
+        return type.getName().replace('$', '_') + SUFFIX;
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads JSON straight from UTF-8 bytes, one value at a time, for the generated
+ * {@link JsonCodec}s. Property names are matched against the expected names byte by
+ * byte, so reading an object allocates nothing but its values, and strings without
+ * escapes are decoded in one step.
+ *
+ * Like Genson, it reads null into a primitive as its default value and steps over
+ * properties it does not expect.
+ */
+public final class JsonInput {
+
+    /**
+     * Returned by {@link #nextField} once the object is closed.
+     */
+    public static final int END = -1;
+
+    /**
+     * Returned by {@link #nextField} for a property that was not expected; its value
+     * must be skipped.
+     */
+    public static final int UNKNOWN = -2;
+
+    private static final byte[] NULL = JsonOutput.ascii("null");
+    private static final byte[] TRUE = JsonOutput.ascii("true");
+    private static final byte[] FALSE = JsonOutput.ascii("false");
+
+    private static final int MAX_FAST_DIGITS = 18;
+    private static final int HEX_DIGITS = 4;
+    private static final int HEX_RADIX = 16;
+
+    private final byte[] json;
+    private int position;
+
+    public JsonInput(final byte[] json) {
+        this.json = json;
+    }
+
+    /**
+     * Prepares the property names of a type for {@link #nextField}.
+     *
+     * @param names the names, in the order of the indexes to return
+     * @return the prepared names
+     */
+    public static Names names(final String... names) {
+        return new Names(names);
+    }
+
+    /**
+     * Consumes a null literal if one comes next.
+     *
+     * @return whether the next value was null
+     */
+    public boolean readNull() {
+        if (peek() != 'n') {
+            return false;
+        }
+        literal(NULL);
+        return true;
+    }
+
+    /**
+     * Consumes the opening brace of an object.
+     */
+    public void beginObject() {
+        expect('{');
+    }
+
+    /**
+     * Consumes the name of the next property of an object, and the colon after it.
+     *
+     * @param names the expected names
+     * @return the index of the name, {@link #UNKNOWN}, or {@link #END} after consuming
+     *         the closing brace
+     */
+    public int nextField(final Names names) {
+        byte next = peek();
+        if (next == '}') {
+            position++;
+            return END;
+        }
+        if (next == ',') {
+            position++;
+        }
+
+        expect('"');
+        int start = position;
+        boolean escaped = false;
+        while (byteAt(position) != '"') {
+            escaped |= json[position] == '\\';
+            position += json[position] == '\\' ? 2 : 1;
+        }
+        int length = position - start;
+        position++;
+        expect(':');
+
+        if (escaped) {
+            return names.indexOf(unescape(start, start + length));
+        }
+        for (int i = 0; i < names.bytes.length; i++) {
+            byte[] name = names.bytes[i];
+            if (name.length == length && Arrays.equals(name, 0, length, json, start, start + length)) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Reads a string.
+     *
+     * @return the string, or null
+     */
+    public String readString() {
+        if (readNull()) {
+            return null;
+        }
+        expect('"');
+        int start = position;
+        while (byteAt(position) != '"') {
+            if (json[position] == '\\') {
+                skipStringBody();
+                return unescape(start, position - 1);
+            }
+            position++;
+        }
+        return new String(json, start, position++ - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a boolean.
+     *
+     * @return the boolean, false for null
+     */
+    public boolean readBoolean() {
+        byte next = peek();
+        if (next == 't') {
+            literal(TRUE);
+            return true;
+        }
+        if (next == 'f') {
+            literal(FALSE);
+        } else {
+            literal(NULL);
+        }
+        return false;
+    }
+
+    /**
+     * Reads an integer without allocating.
+     *
+     * @return the integer, 0 for null
+     */
+    public long readLong() {
+        if (readNull()) {
+            return 0;
+        }
+        int start = position;
+        boolean negative = byteAt(position) == '-';
+        if (negative) {
+            position++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (position < json.length && json[position] >= '0' && json[position] <= '9') {
+            value = value * 10 + (json[position++] - '0');
+            digits++;
+        }
+        if (digits == 0 || position < json.length && isFraction(json[position])) {
+            throw error("Expected an integer");
+        }
+        if (digits > MAX_FAST_DIGITS) {
+            return Long.parseLong(new String(json, start, position - start, StandardCharsets.US_ASCII));
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a number as a double.
+     *
+     * @return the double, 0 for null
+     */
+    public double readDouble() {
+        if (readNull()) {
+            return 0;
+        }
+        if (peek() == '"') {
+            return Double.parseDouble(readString());
+        }
+        return Double.parseDouble(number());
+    }
+
+    /**
+     * Reads a date written as milliseconds since the epoch.
+     *
+     * @return the date, or null
+     */
+    public Date readDate() {
+        if (readNull()) {
+            return null;
+        }
+        return new Date(readLong());
+    }
+
+    /**
+     * Reads a value of any type the way Genson reads it into an Object: objects as
+     * maps, arrays as lists, integers as longs and other numbers as doubles.
+     *
+     * @return the value, or null
+     */
+    public Object readValue() {
+        byte next = peek();
+        switch (next) {
+            case 'n':
+                literal(NULL);
+                return null;
+            case 't':
+            case 'f':
+                return readBoolean();
+            case '"':
+                return readString();
+            case '[':
+                position++;
+                List<Object> elements = new ArrayList<>();
+                if (!consumeIf(']')) {
+                    do {
+                        elements.add(readValue());
+                    } while (consumeIf(','));
+                    expect(']');
+                }
+                return elements;
+            case '{':
+                position++;
+                Map<String, Object> entries = new LinkedHashMap<>();
+                if (!consumeIf('}')) {
+                    do {
+                        String name = readString();
+                        expect(':');
+                        entries.put(name, readValue());
+                    } while (consumeIf(','));
+                    expect('}');
+                }
+                return entries;
+            default:
+                String number = number();
+                for (int i = 0; i < number.length(); i++) {
+                    if (isFraction((byte) number.charAt(i))) {
+                        return Double.valueOf(number);
+                    }
+                }
+                return Long.valueOf(number);
+        }
+    }
+
+    /**
+     * Steps over the next value, whatever it is.
+     */
+    public void skipValue() {
+        byte next = peek();
+        if (next == '"') {
+            position++;
+            skipStringBody();
+        } else if (next == '{' || next == '[') {
+            int depth = 0;
+            do {
+                byte current = byteAt(position++);
+                if (current == '"') {
+                    skipStringBody();
+                } else if (current == '{' || current == '[') {
+                    depth++;
+                } else if (current == '}' || current == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        } else {
+            while (position < json.length && !isDelimiter(json[position])) {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Checks that nothing but whitespace follows the value read.
+     */
+    public void end() {
+        skipWhitespace();
+        if (position != json.length) {
+            throw error("Unexpected content after the value");
+        }
+    }
+
+    private String number() {
+        skipWhitespace();
+        int start = position;
+        while (position < json.length && !isDelimiter(json[position])) {
+            position++;
+        }
+        if (start == position) {
+            throw error("Expected a value");
+        }
+        return new String(json, start, position - start, StandardCharsets.US_ASCII);
+    }
+
+    private String unescape(final int start, final int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        int run = start;
+        for (int i = start; i < end; i++) {
+            if (json[i] != '\\') {
+                continue;
+            }
+            value.append(new String(json, run, i - run, StandardCharsets.UTF_8));
+            byte escaped = json[++i];
+            switch (escaped) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    if (i + HEX_DIGITS >= end) {
+                        throw error("Truncated unicode escape");
+                    }
+                    value.append((char) Integer.parseInt(
+                            new String(json, i + 1, HEX_DIGITS, StandardCharsets.US_ASCII), HEX_RADIX));
+                    i += HEX_DIGITS;
+                    break;
+                default:
+                    value.append((char) escaped);
+                    break;
+            }
+            run = i + 1;
+        }
+        value.append(new String(json, run, end - run, StandardCharsets.UTF_8));
+        return value.toString();
+    }
+
+    private void skipStringBody() {
+        while (byteAt(position) != '"') {
+            position += json[position] == '\\' ? 2 : 1;
+        }
+        position++;
+    }
+
+    private void literal(final byte[] literal) {
+        if (position + literal.length > json.length
+                || !Arrays.equals(literal, 0, literal.length, json, position, position + literal.length)) {
+            throw error("Expected " + new String(literal, StandardCharsets.US_ASCII));
+        }
+        position += literal.length;
+    }
+
+    private boolean consumeIf(final char expected) {
+        if (peek() == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char expected) {
+        if (peek() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    private byte peek() {
+        skipWhitespace();
+        return byteAt(position);
+    }
+
+    private byte byteAt(final int index) {
+        if (index >= json.length) {
+            throw error("Unexpected end of JSON");
+        }
+        return json[index];
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length && isWhitespace(json[position])) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(String.format("%s at offset %d of JSON", message, position));
+    }
+
+    private static boolean isWhitespace(final byte value) {
+        return value == ' ' || value == '\n' || value == '\r' || value == '\t';
+    }
+
+    private static boolean isDelimiter(final byte value) {
+        return value == ',' || value == '}' || value == ']' || isWhitespace(value);
+    }
+
+    private static boolean isFraction(final byte value) {
+        return value == '.' || value == 'e' || value == 'E';
+    }
+
+    /**
+     * The property names of a type, as UTF-8 bytes to match without decoding.
+     */
+    public static final class Names {
+
+        private final String[] strings;
+        private final byte[][] bytes;
+
+        private Names(final String[] strings) {
+            this.strings = strings.clone();
+            this.bytes = new byte[strings.length][];
+            for (int i = 0; i < strings.length; i++) {
+                bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        private int indexOf(final String name) {
+            for (int i = 0; i < strings.length; i++) {
+                if (strings[i].equals(name)) {
+                    return i;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes JSON as UTF-8 bytes into a growing buffer, formatted the way Genson formats
+ * it: no whitespace, control characters other than the short escapes and the line
+ * and paragraph separators as lowercase {@code \\u} escapes, every other character
+ * as is, and a lone surrogate as '?', as {@link String#getBytes} encodes it.
+ */
+public final class JsonOutput {
+
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] LONG_MIN_VALUE = ascii(Long.toString(Long.MIN_VALUE));
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    private static final char LINE_SEPARATOR = '\u2028';
+    private static final char PARAGRAPH_SEPARATOR = '\u2029';
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int MAX_ESCAPE_LENGTH = 6;
+    private static final int MAX_LONG_DIGITS = 20;
+
+    private byte[] buffer;
+    private int size;
+
+    public JsonOutput() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public JsonOutput(final int capacity) {
+        this.buffer = new byte[Math.max(capacity, MAX_LONG_DIGITS)];
+    }
+
+    /**
+     * Returns the ASCII bytes of a constant, such as a literal or an object prefix.
+     *
+     * @param value the constant
+     * @return its bytes
+     */
+    public static byte[] ascii(final String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns what precedes the value of a property: the opening brace of the object
+     * for its first property or a comma for the others, then the quoted name and a
+     * colon.
+     *
+     * @param first whether the property is the first of its object
+     * @param name the name of the property
+     * @return the bytes to write before the value
+     */
+    public static byte[] field(final boolean first, final String name) {
+        JsonOutput out = new JsonOutput();
+        out.raw(first ? '{' : ',');
+        out.string(name);
+        out.raw(':');
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes bytes that are already JSON.
+     *
+     * @param bytes the bytes
+     */
+    public void raw(final byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Writes an ASCII structural character.
+     *
+     * @param value the character
+     */
+    public void raw(final char value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void nullValue() {
+        raw(NULL);
+    }
+
+    public void bool(final boolean value) {
+        raw(value ? TRUE : FALSE);
+    }
+
+    /**
+     * Writes an integer in decimal without allocating.
+     *
+     * @param value the integer
+     */
+    public void number(final long value) {
+        if (value == Long.MIN_VALUE) {
+            raw(LONG_MIN_VALUE);
+            return;
+        }
+        ensureCapacity(MAX_LONG_DIGITS);
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[size++] = '-';
+            remaining = -remaining;
+        }
+        int end = size + digits(remaining);
+        int position = end;
+        do {
+            buffer[--position] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        size = end;
+    }
+
+    /**
+     * Writes a double as {@link Double#toString} does, and NaN and the infinities as
+     * strings.
+     *
+     * @param value the double
+     */
+    public void number(final double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            string(Double.toString(value));
+        } else {
+            raw(ascii(Double.toString(value)));
+        }
+    }
+
+    /**
+     * Writes a float as {@link Float#toString} does, and NaN and the infinities as
+     * strings.
+     *
+     * @param value the float
+     */
+    public void number(final float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            string(Float.toString(value));
+        } else {
+            raw(ascii(Float.toString(value)));
+        }
+    }
+
+    /**
+     * Writes a date as its milliseconds since the epoch.
+     *
+     * @param value the date, or null
+     */
+    public void date(final Date value) {
+        if (value == null) {
+            nullValue();
+        } else {
+            number(value.getTime());
+        }
+    }
+
+    /**
+     * Writes a string, quoted and escaped, encoding it to UTF-8 in place.
+     *
+     * @param value the string, or null
+     */
+    public void string(final String value) {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+
+        // Reserve a byte per character, the common case, and grow when a character
+        // could need more than what is left.
+        int length = value.length();
+        ensureCapacity(length + MAX_ESCAPE_LENGTH + 2);
+        byte[] bytes = buffer;
+        int position = size;
+        bytes[position++] = '"';
+        for (int i = 0; i < length; i++) {
+            if (bytes.length - position <= MAX_ESCAPE_LENGTH) {
+                size = position;
+                ensureCapacity(length - i + MAX_ESCAPE_LENGTH + 1);
+                bytes = buffer;
+            }
+            char current = value.charAt(i);
+            if (current < 0x80) {
+                if (current >= 0x20 && current != '"' && current != '\\') {
+                    bytes[position++] = (byte) current;
+                } else {
+                    position = escape(bytes, position, current);
+                }
+            } else if (current < 0x800) {
+                bytes[position++] = (byte) (0xC0 | current >> 6);
+                bytes[position++] = (byte) (0x80 | current & 0x3F);
+            } else if (current == LINE_SEPARATOR || current == PARAGRAPH_SEPARATOR) {
+                position = escape(bytes, position, current);
+            } else if (Character.isHighSurrogate(current) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(current, value.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(current)) {
+                bytes[position++] = '?';
+            } else {
+                bytes[position++] = (byte) (0xE0 | current >> 12);
+                bytes[position++] = (byte) (0x80 | current >> 6 & 0x3F);
+                bytes[position++] = (byte) (0x80 | current & 0x3F);
+            }
+        }
+        bytes[position++] = '"';
+        size = position;
+    }
+
+    /**
+     * Writes a value with its codec.
+     *
+     * @param value the value, or null
+     * @param codec the codec of its type
+     * @param <T> the type of the value
+     */
+    public <T> void value(final T value, final JsonCodec<T> codec) {
+        if (value == null) {
+            nullValue();
+        } else {
+            codec.write(value, this);
+        }
+    }
+
+    /**
+     * Writes a value whose type is only known at run time: a string, number, boolean,
+     * date, collection, array or map, or an object with a generated codec.
+     *
+     * @param value the value, or null
+     * @throws IllegalArgumentException if no codec was generated for the class of an object
+     */
+    public void value(final Object value) {
+        if (value == null) {
+            nullValue();
+        } else if (value instanceof String) {
+            string((String) value);
+        } else if (value instanceof Boolean) {
+            bool((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            number(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            number(((Double) value).doubleValue());
+        } else if (value instanceof Float) {
+            number(((Float) value).floatValue());
+        } else if (value instanceof Number) {
+            raw(ascii(value.toString()));
+        } else if (value instanceof Date) {
+            date((Date) value);
+        } else if (value instanceof Collection) {
+            array(((Collection<?>) value).iterator());
+        } else if (value instanceof Object[]) {
+            array(Arrays.asList((Object[]) value).iterator());
+        } else if (value instanceof Map) {
+            object((Map<?, ?>) value);
+        } else {
+            JsonCodecs.write(value, this);
+        }
+    }
+
+    private void array(final Iterator<?> elements) {
+        raw('[');
+        while (elements.hasNext()) {
+            value(elements.next());
+            if (elements.hasNext()) {
+                raw(',');
+            }
+        }
+        raw(']');
+    }
+
+    private void object(final Map<?, ?> entries) {
+        raw('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            if (!first) {
+                raw(',');
+            }
+            string(String.valueOf(entry.getKey()));
+            raw(':');
+            value(entry.getValue());
+            first = false;
+        }
+        raw('}');
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of the bytes written.
+     *
+     * @return the JSON bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private int escape(final byte[] bytes, final int start, final char value) {
+        int position = start;
+        bytes[position++] = '\\';
+        switch (value) {
+            case '"':
+            case '\\':
+                bytes[position++] = (byte) value;
+                break;
+            case '\b':
+                bytes[position++] = 'b';
+                break;
+            case '\f':
+                bytes[position++] = 'f';
+                break;
+            case '\n':
+                bytes[position++] = 'n';
+                break;
+            case '\r':
+                bytes[position++] = 'r';
+                break;
+            case '\t':
+                bytes[position++] = 't';
+                break;
+            default:
+                bytes[position++] = 'u';
+                bytes[position++] = HEX[value >> 12 & 0xF];
+                bytes[position++] = HEX[value >> 8 & 0xF];
+                bytes[position++] = HEX[value >> 4 & 0xF];
+                bytes[position++] = HEX[value & 0xF];
+                break;
+        }
+        return position;
+    }
+
+    private static int digits(final long value) {
+        int digits = 1;
+        for (long bound = 10; digits < MAX_LONG_DIGITS - 1 && value >= bound; bound *= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+}
@@ -2,5 +2,28 @@ package org.hyperledger.fabric.samples.ehr.enums;
 
 public enum Errors {
     EHRData_NOT_FOUND,
-    EHR_ALREADY_EXISTS
+    EHR_ALREADY_EXISTS,
+    EHR_INVALID_ATTACHMENT,
+    EHR_ATTACHMENT_NOT_FOUND,
+    EHR_INVALID_ID,
+    EHR_DUPLICATE_IN_BATCH,
+    EHR_BATCH_TOO_LARGE,
+    EHR_BATCH_REJECTED,
+    EHR_UNKNOWN_INDEX,
+    EHR_INVALID_QUERY,
+    EHR_UNINDEXED_QUERY,
+    EHR_ATTACHMENT_EXISTS,
+    EHR_ATTACHMENT_CHUNKED,
+    EHR_UPLOAD_NOT_FOUND,
+    EHR_CHUNK_OUT_OF_ORDER,
+    EHR_CHUNK_TOO_LARGE,
+    EHR_CHUNK_NOT_FOUND,
+    EHR_INVALID_CHUNK_INDEX,
+    EHR_ATTACHMENT_DIGEST_MISMATCH,
+    EHR_VERSION_CONFLICT,
+    EHR_INVALID_PATCH,
+    EHR_INVALID_BOOKMARK,
+    EHR_UNKNOWN_STATS_DIMENSION,
+    EHR_INVALID_RANGE,
+    EHR_UNKNOWN_PROJECTION
 }
@@ -0,0 +1,52 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.events;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import com.owlike.genson.Genson;
+import com.owlike.genson.GensonBuilder;
+
+/**
+ * The chaincode event through which the contract publishes its changes.
+ *
+ * Fabric keeps a single event per transaction, so a transaction that changes several
+ * records publishes them together: the payload is a JSON array of
+ * {@link EHRDataChange}s, without null fields.
+ */
+public final class ChangeFeed {
+
+    /**
+     * The name of the chaincode event.
+     */
+    public static final String EVENT_NAME = "EHRDataChanged";
+
+    private static final Genson GENSON = new GensonBuilder().setSkipNull(true).create();
+
+    private ChangeFeed() {
+    }
+
+    /**
+     * Encodes the changes of a transaction as an event payload.
+     *
+     * @param changes the changes
+     * @return the payload
+     */
+    public static byte[] encode(final List<EHRDataChange> changes) {
+        return GENSON.serialize(changes).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes an event payload.
+     *
+     * @param payload the payload
+     * @return the changes, in the order the transaction made them
+     */
+    public static List<EHRDataChange> decode(final byte[] payload) {
+        return Arrays.asList(GENSON.deserialize(new String(payload, StandardCharsets.UTF_8), EHRDataChange[].class));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.events;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import com.owlike.genson.Genson;
+import com.owlike.genson.GensonBuilder;
+
+/**
+ * Applies the change feed of the contract to an {@link EHRDataView} and checkpoints
+ * the view with the block it has been applied up to, so that readers query the view
+ * instead of the peer and a restarted consumer resumes where it stopped.
+ *
+ * The consumer does not depend on a client SDK. With the Fabric Gateway client it
+ * is fed as follows:
+ *
+ * <pre>
+ * ChangeFeedConsumer consumer = new ChangeFeedConsumer(view, Paths.get("ehr-view.ndjson"), 100);
+ * ChaincodeEventsRequest request = network.newChaincodeEventsRequest("ehr")
+ *         .startBlock(consumer.getStartBlock()).build();
+ * try (CloseableIterator&lt;ChaincodeEvent&gt; events = request.getEvents()) {
+ *     events.forEachRemaining(event -&gt; consumer.accept(event.getBlockNumber(),
+ *             event.getEventName(), event.getPayload()));
+ * }
+ * </pre>
+ *
+ * The checkpoint file holds the block to resume from on its first line and the view
+ * as one change per line after it. It is written to a temporary file and moved into
+ * place, so a crash leaves either the previous checkpoint or the new one. Events of
+ * the resumed block may be delivered again; the view ignores changes it already has.
+ */
+public final class ChangeFeedConsumer {
+
+    private static final Genson GENSON = new GensonBuilder().setSkipNull(true).create();
+
+    private final EHRDataView view;
+    private final Path checkpointFile;
+    private final int checkpointInterval;
+
+    private long checkpointBlock;
+    private long currentBlock = -1;
+
+    /**
+     * Creates a consumer, restoring the view from the checkpoint file if there is one.
+     *
+     * @param view the empty view to maintain
+     * @param checkpointFile the checkpoint file
+     * @param checkpointInterval the number of blocks between checkpoints
+     * @throws IOException if the checkpoint file cannot be read
+     */
+    public ChangeFeedConsumer(final EHRDataView view, final Path checkpointFile, final int checkpointInterval)
+            throws IOException {
+        this.view = view;
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = checkpointInterval;
+
+        if (Files.exists(checkpointFile)) {
+            restore();
+        }
+    }
+
+    /**
+     * Returns the block to request chaincode events from.
+     *
+     * @return the block number
+     */
+    public synchronized long getStartBlock() {
+        return checkpointBlock;
+    }
+
+    /**
+     * Applies a chaincode event. Events must be delivered in block order; events
+     * other than the change feed are skipped.
+     *
+     * @param blockNumber the number of the block holding the transaction
+     * @param eventName the name of the event
+     * @param payload the payload of the event
+     * @return the number of changes applied to the view
+     * @throws IOException if a checkpoint is due and cannot be written
+     */
+    public synchronized int accept(final long blockNumber, final String eventName, final byte[] payload)
+            throws IOException {
+        if (blockNumber > currentBlock) {
+            if (currentBlock < 0) {
+                // The blocks before the first delivered event hold no change for the view.
+                checkpointBlock = Math.max(checkpointBlock, blockNumber);
+            } else if (blockNumber - checkpointBlock >= checkpointInterval) {
+                // Every block before this one has been applied in full.
+                save(blockNumber);
+            }
+            currentBlock = blockNumber;
+        }
+
+        if (!ChangeFeed.EVENT_NAME.equals(eventName)) {
+            return 0;
+        }
+
+        int applied = 0;
+        for (EHRDataChange change : ChangeFeed.decode(payload)) {
+            if (view.apply(change)) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Writes a checkpoint now, for instance before shutting down. A consumer restored
+     * from it resumes at the last block seen, which is delivered again.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        save(Math.max(checkpointBlock, currentBlock));
+    }
+
+    private void save(final long resumeBlock) throws IOException {
+        Path directory = checkpointFile.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, checkpointFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(Long.toString(resumeBlock));
+                writer.newLine();
+                for (EHRDataChange change : view.getAll()) {
+                    writer.write(GENSON.serialize(change));
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        checkpointBlock = resumeBlock;
+    }
+
+    private void restore() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+            String block = reader.readLine();
+            if (block == null) {
+                return;
+            }
+            checkpointBlock = Long.parseLong(block.trim());
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.isEmpty()) {
+                    view.apply(GENSON.deserialize(line, EHRDataChange.class));
+                }
+            }
+        }
+    }
+}
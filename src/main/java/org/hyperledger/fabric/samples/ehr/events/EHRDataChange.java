@@ -0,0 +1,131 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.events;
+
+import java.util.Objects;
+
+import com.owlike.genson.annotation.JsonCreator;
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * A change to one EHR data record, as published in the change feed.
+ *
+ * A change carries the small metadata a view needs to index the record, never its
+ * text data or attachment. The digest is the SHA-256 of the record value written to
+ * the world state, so a consumer can tell whether its copy matches the ledger. The
+ * version increases with every change of a record, which makes applying a change
+ * twice harmless.
+ */
+public final class EHRDataChange {
+
+    /**
+     * The operation that changed the record.
+     */
+    public enum Operation {
+        CREATE,
+        UPDATE
+    }
+
+    private final String id;
+    private final Operation operation;
+    private final long version;
+    private final String digest;
+    private final String name;
+    private final String fileType;
+    private final boolean doc;
+    private final long attachmentSize;
+
+    @JsonCreator
+    public EHRDataChange(
+            @JsonProperty("id") final String id,
+            @JsonProperty("operation") final Operation operation,
+            @JsonProperty("version") final long version,
+            @JsonProperty("digest") final String digest,
+            @JsonProperty("name") final String name,
+            @JsonProperty("fileType") final String fileType,
+            @JsonProperty("doc") final boolean doc,
+            @JsonProperty("attachmentSize") final long attachmentSize
+    ) {
+        this.id = id;
+        this.operation = operation;
+        this.version = version;
+        this.digest = digest;
+        this.name = name;
+        this.fileType = fileType;
+        this.doc = doc;
+        this.attachmentSize = attachmentSize;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public boolean isDoc() {
+        return doc;
+    }
+
+    public long getAttachmentSize() {
+        return attachmentSize;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        EHRDataChange other = (EHRDataChange) obj;
+
+        return Objects.equals(id, other.id)
+                && operation == other.operation
+                && version == other.version
+                && Objects.equals(digest, other.digest)
+                && Objects.equals(name, other.name)
+                && Objects.equals(fileType, other.fileType)
+                && doc == other.doc
+                && attachmentSize == other.attachmentSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, operation, version, digest, name, fileType, doc, attachmentSize);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + "["
+                + "id=" + id + ","
+                + " operation=" + operation + ","
+                + " version=" + version + ","
+                + " digest=" + digest + ","
+                + " name=" + name + ","
+                + " fileType=" + fileType + ","
+                + " doc=" + doc + ","
+                + " attachmentSize=" + attachmentSize + "]";
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An off-chain view of the EHR data records, built from the change feed and indexed
+ * by file type and by name.
+ *
+ * A change whose version is not newer than the one already applied to its record is
+ * ignored, so replaying part of the feed after a restart leaves the view unchanged.
+ * The view may be queried while changes are applied.
+ */
+public final class EHRDataView {
+
+    private final Map<String, EHRDataChange> records = new HashMap<>();
+    private final Map<String, NavigableSet<String>> byFileType = new TreeMap<>();
+    private final Map<String, NavigableSet<String>> byName = new TreeMap<>();
+
+    /**
+     * Applies a change to the view.
+     *
+     * @param change the change
+     * @return true if the change was applied, false if the view already had it
+     */
+    public synchronized boolean apply(final EHRDataChange change) {
+        EHRDataChange previous = records.get(change.getId());
+        if (previous != null && previous.getVersion() >= change.getVersion()) {
+            return false;
+        }
+
+        if (previous != null) {
+            unindex(byFileType, previous.getFileType(), previous.getId());
+            unindex(byName, previous.getName(), previous.getId());
+        }
+        records.put(change.getId(), change);
+        index(byFileType, change.getFileType(), change.getId());
+        index(byName, change.getName(), change.getId());
+        return true;
+    }
+
+    /**
+     * Returns the latest change of a record.
+     *
+     * @param ehrDataId the ID of the EHR data
+     * @return the change, or null if the view has no such record
+     */
+    public synchronized EHRDataChange get(final String ehrDataId) {
+        return records.get(ehrDataId);
+    }
+
+    /**
+     * Returns the records with a file type, in ID order.
+     *
+     * @param fileType the file type
+     * @return the latest change of every matching record
+     */
+    public synchronized List<EHRDataChange> findByFileType(final String fileType) {
+        return lookup(byFileType, fileType);
+    }
+
+    /**
+     * Returns the records with a name, in ID order.
+     *
+     * @param name the name
+     * @return the latest change of every matching record
+     */
+    public synchronized List<EHRDataChange> findByName(final String name) {
+        return lookup(byName, name);
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * Returns the latest change of every record, in ID order.
+     *
+     * @return the changes
+     */
+    public synchronized List<EHRDataChange> getAll() {
+        List<EHRDataChange> all = new ArrayList<>(records.values());
+        all.sort((left, right) -> left.getId().compareTo(right.getId()));
+        return all;
+    }
+
+    private List<EHRDataChange> lookup(final Map<String, NavigableSet<String>> index, final String value) {
+        NavigableSet<String> ids = index.get(value == null ? "" : value);
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+
+        List<EHRDataChange> matches = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            matches.add(records.get(id));
+        }
+        return matches;
+    }
+
+    private static void index(final Map<String, NavigableSet<String>> index, final String value,
+                              final String ehrDataId) {
+        index.computeIfAbsent(value == null ? "" : value, key -> new TreeSet<>()).add(ehrDataId);
+    }
+
+    private static void unindex(final Map<String, NavigableSet<String>> index, final String value,
+                                final String ehrDataId) {
+        String key = value == null ? "" : value;
+        NavigableSet<String> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(ehrDataId);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
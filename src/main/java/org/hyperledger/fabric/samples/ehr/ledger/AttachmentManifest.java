@@ -0,0 +1,79 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import com.owlike.genson.annotation.JsonCreator;
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * The state of a chunked attachment upload.
+ *
+ * The digest is a running SHA-256 chain over the chunks: it starts empty, and every
+ * appended chunk replaces it with the SHA-256 of the previous digest's bytes followed
+ * by the chunk. A client computes the same chain to check each append and to finalize
+ * the upload. The EHR data record carries the SHA-256 of the whole content instead, so
+ * its attachment digest means the same for chunked and single-piece attachments.
+ */
+public final class AttachmentManifest {
+
+    private final String ehrDataId;
+    private final int chunks;
+    private final long size;
+    private final String digest;
+    private final int allocatedChunks;
+    private final boolean complete;
+
+    @JsonCreator
+    public AttachmentManifest(
+            @JsonProperty("ehrDataId") final String ehrDataId,
+            @JsonProperty("chunks") final int chunks,
+            @JsonProperty("size") final long size,
+            @JsonProperty("digest") final String digest,
+            @JsonProperty("allocatedChunks") final int allocatedChunks,
+            @JsonProperty("complete") final boolean complete
+    ) {
+        this.ehrDataId = ehrDataId;
+        this.chunks = chunks;
+        this.size = size;
+        this.digest = digest;
+        this.allocatedChunks = allocatedChunks;
+        this.complete = complete;
+    }
+
+    public String getEhrDataId() {
+        return ehrDataId;
+    }
+
+    /**
+     * Returns the number of chunks appended so far, which is also the index of the next chunk.
+     *
+     * @return the number of chunks
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Returns the number of chunk keys that may hold data, including chunks left over
+     * from an upload that was restarted before it was finalized.
+     *
+     * @return the number of chunk keys
+     */
+    public int getAllocatedChunks() {
+        return allocatedChunks;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+}
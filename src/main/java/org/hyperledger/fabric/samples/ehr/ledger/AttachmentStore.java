@@ -0,0 +1,151 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.hyperledger.fabric.samples.ehr.codec.Compression;
+import org.hyperledger.fabric.samples.ehr.codec.Hex;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Content-addressed store for EHR attachments.
+ *
+ * Attachments are kept under their own composite keys, addressed by the SHA-256
+ * digest of their decoded bytes, so that EHR records only carry the digest and the
+ * byte length. Identical documents are stored once and shared through a reference
+ * count kept under a separate key, which avoids rewriting the blob when the count
+ * changes. Composite keys are never returned by {@code getStateByRange}, so the
+ * attachments stay out of plain record scans.
+ *
+ * Attachments that compress are stored deflated under a separate object type, so the
+ * stored bytes describe themselves: a reader looks up the plain key first, which also
+ * serves attachments stored before compression, and then the deflated one.
+ */
+public final class AttachmentStore {
+
+    static final String ATTACHMENT_OBJECT_TYPE = "ehr~attachment";
+    static final String DEFLATED_ATTACHMENT_OBJECT_TYPE = "ehr~attachmentDeflated";
+    static final String REFERENCE_OBJECT_TYPE = "ehr~attachmentRefs";
+
+    private final ChaincodeStub stub;
+    private final Compression compression;
+
+    public AttachmentStore(final ChaincodeStub stub) {
+        this(stub, Compression.DISABLED);
+    }
+
+    public AttachmentStore(final ChaincodeStub stub, final Compression compression) {
+        this.stub = stub;
+        this.compression = compression;
+    }
+
+    /**
+     * Stores the content if it is not already present and takes a reference on it.
+     *
+     * @param content the decoded attachment bytes
+     * @return the digest addressing the content
+     */
+    public String retain(final byte[] content) {
+        String digest = digest(content);
+        long references = getReferences(digest);
+
+        if (references == 0) {
+            byte[] deflated = compression.compress(content);
+            if (deflated != null) {
+                stub.putState(deflatedAttachmentKey(digest), deflated);
+            } else {
+                stub.putState(attachmentKey(digest), content);
+            }
+        }
+        putReferences(digest, references + 1);
+
+        return digest;
+    }
+
+    /**
+     * Drops a reference on the content, deleting it once nothing refers to it.
+     *
+     * @param digest the digest addressing the content
+     */
+    public void release(final String digest) {
+        long references = getReferences(digest);
+
+        if (references <= 1) {
+            stub.delState(attachmentKey(digest));
+            stub.delState(deflatedAttachmentKey(digest));
+            stub.delState(referencesKey(digest));
+        } else {
+            putReferences(digest, references - 1);
+        }
+    }
+
+    /**
+     * Retrieves the content stored under the digest.
+     *
+     * @param digest the digest addressing the content
+     * @return the attachment bytes, or null when nothing is stored under the digest
+     */
+    public byte[] get(final String digest) {
+        byte[] content = stub.getState(attachmentKey(digest));
+        if (content != null && content.length > 0) {
+            return content;
+        }
+
+        byte[] deflated = stub.getState(deflatedAttachmentKey(digest));
+        return (deflated == null || deflated.length == 0) ? null : Compression.inflate(deflated);
+    }
+
+    /**
+     * Retrieves the number of records referring to the content.
+     *
+     * @param digest the digest addressing the content
+     * @return the reference count, zero when the content is not stored
+     */
+    public long getReferences(final String digest) {
+        byte[] references = stub.getState(referencesKey(digest));
+
+        if (references == null || references.length == 0) {
+            return 0;
+        }
+        return Long.parseLong(new String(references, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Computes the digest addressing the given content.
+     *
+     * @param content the attachment bytes
+     * @return the lowercase hex SHA-256 digest of the content
+     */
+    public static String digest(final byte[] content) {
+        return Hex.encode(sha256().digest(content));
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private void putReferences(final String digest, final long references) {
+        stub.putState(referencesKey(digest), Long.toString(references).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String attachmentKey(final String digest) {
+        return stub.createCompositeKey(ATTACHMENT_OBJECT_TYPE, digest).toString();
+    }
+
+    private String deflatedAttachmentKey(final String digest) {
+        return stub.createCompositeKey(DEFLATED_ATTACHMENT_OBJECT_TYPE, digest).toString();
+    }
+
+    private String referencesKey(final String digest) {
+        return stub.createCompositeKey(REFERENCE_OBJECT_TYPE, digest).toString();
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.protos.peer.ProposalPackage;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * A {@link ChaincodeStub} that memoizes world state reads and buffers writes for the
+ * life of one transaction.
+ *
+ * The first {@code getState} of a key goes to the peer; later reads of the same key,
+ * including reads of keys written earlier in the transaction, are answered locally.
+ * Writes and deletes are held back until {@link #flush()} sends them to the peer in
+ * the order they were first made. Range, composite key, rich and history queries are
+ * passed straight through and, as with the plain stub, do not see buffered writes.
+ *
+ * The stub also counts what the transaction asked of the peer: reads sent to the
+ * peer and answered from the cache, writes and deletes flushed, records iterated by
+ * queries, and the time spent waiting on reads and queries.
+ *
+ * Instances are not thread-safe; a new one is created for every transaction.
+ */
+public final class CachingChaincodeStub implements ChaincodeStub {
+
+    private static final byte[] ABSENT = new byte[0];
+
+    private final ChaincodeStub stub;
+    private final Map<String, byte[]> reads = new HashMap<>();
+    private final Map<String, byte[]> writes = new LinkedHashMap<>();
+
+    private int peerReads;
+    private int cacheHits;
+    private int flushedWrites;
+    private int flushedDeletes;
+    private long recordsIterated;
+    private long stateReadNanos;
+    private long queryNanos;
+
+    public CachingChaincodeStub(final ChaincodeStub stub) {
+        this.stub = stub;
+    }
+
+    /**
+     * Returns the stub the reads and writes are forwarded to.
+     *
+     * @return the wrapped stub
+     */
+    public ChaincodeStub getDelegate() {
+        return stub;
+    }
+
+    /**
+     * Sends the buffered writes and deletes to the peer.
+     */
+    public void flush() {
+        for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+            if (write.getValue() == ABSENT) {
+                stub.delState(write.getKey());
+                flushedDeletes++;
+            } else {
+                stub.putState(write.getKey(), write.getValue());
+                flushedWrites++;
+            }
+        }
+        writes.clear();
+    }
+
+    public int getPeerReads() {
+        return peerReads;
+    }
+
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    public int getWrites() {
+        return flushedWrites;
+    }
+
+    public int getDeletes() {
+        return flushedDeletes;
+    }
+
+    public long getRecordsIterated() {
+        return recordsIterated;
+    }
+
+    public long getStateReadNanos() {
+        return stateReadNanos;
+    }
+
+    /**
+     * Returns the time spent in range, composite key, rich and history queries,
+     * including the iteration of their results.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getQueryNanos() {
+        return queryNanos;
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        byte[] value = writes.get(key);
+        if (value == null) {
+            value = reads.get(key);
+        }
+        if (value == null) {
+            long start = System.nanoTime();
+            value = stub.getState(key);
+            stateReadNanos += System.nanoTime() - start;
+            peerReads++;
+            reads.put(key, value == null ? ABSENT : value);
+        } else {
+            cacheHits++;
+        }
+        return value == ABSENT ? null : value;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        writes.put(key, value == null ? ABSENT : value);
+    }
+
+    @Override
+    public void delState(final String key) {
+        writes.put(key, ABSENT);
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return stub.getArgs();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return stub.getStringArgs();
+    }
+
+    @Override
+    public String getFunction() {
+        return stub.getFunction();
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return stub.getParameters();
+    }
+
+    @Override
+    public String getTxId() {
+        return stub.getTxId();
+    }
+
+    @Override
+    public String getChannelId() {
+        return stub.getChannelId();
+    }
+
+    @Override
+    public Chaincode.Response invokeChaincode(final String chaincodeName, final List<byte[]> args,
+                                             final String channel) {
+        return stub.invokeChaincode(chaincodeName, args, channel);
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        return stub.getStateValidationParameter(key);
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+        stub.setStateValidationParameter(key, value);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        long start = System.nanoTime();
+        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+        queryNanos += System.nanoTime() - start;
+        return counting(results);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+            final String startKey, final String endKey, final int pageSize, final String bookmark) {
+        long start = System.nanoTime();
+        QueryResultsIteratorWithMetadata<KeyValue> results =
+                stub.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark);
+        queryNanos += System.nanoTime() - start;
+        return countingWithMetadata(results);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        long start = System.nanoTime();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(compositeKey);
+        queryNanos += System.nanoTime() - start;
+        return counting(results);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType,
+                                                                        final String... attributes) {
+        long start = System.nanoTime();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(objectType, attributes);
+        queryNanos += System.nanoTime() - start;
+        return counting(results);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        long start = System.nanoTime();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(compositeKey);
+        queryNanos += System.nanoTime() - start;
+        return counting(results);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+        long start = System.nanoTime();
+        QueryResultsIteratorWithMetadata<KeyValue> results =
+                stub.getStateByPartialCompositeKeyWithPagination(compositeKey, pageSize, bookmark);
+        queryNanos += System.nanoTime() - start;
+        return countingWithMetadata(results);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return stub.createCompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return stub.splitCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        long start = System.nanoTime();
+        QueryResultsIterator<KeyValue> results = stub.getQueryResult(query);
+        queryNanos += System.nanoTime() - start;
+        return counting(results);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(
+            final String query, final int pageSize, final String bookmark) {
+        long start = System.nanoTime();
+        QueryResultsIteratorWithMetadata<KeyValue> results =
+                stub.getQueryResultWithPagination(query, pageSize, bookmark);
+        queryNanos += System.nanoTime() - start;
+        return countingWithMetadata(results);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        long start = System.nanoTime();
+        QueryResultsIterator<KeyModification> results = stub.getHistoryForKey(key);
+        queryNanos += System.nanoTime() - start;
+        return counting(results);
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        return stub.getPrivateData(collection, key);
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        return stub.getPrivateDataHash(collection, key);
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        return stub.getPrivateDataValidationParameter(collection, key);
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        stub.putPrivateData(collection, key, value);
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key,
+                                                  final byte[] value) {
+        stub.setPrivateDataValidationParameter(collection, key, value);
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        stub.delPrivateData(collection, key);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(final String collection, final String startKey,
+                                                                final String endKey) {
+        return stub.getPrivateDataByRange(collection, startKey, endKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final String compositeKey) {
+        return stub.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final CompositeKey compositeKey) {
+        return stub.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final String objectType,
+                                                                              final String... attributes) {
+        return stub.getPrivateDataByPartialCompositeKey(collection, objectType, attributes);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        return stub.getPrivateDataQueryResult(collection, query);
+    }
+
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+        stub.setEvent(name, payload);
+    }
+
+    @Override
+    public ChaincodeEventPackage.ChaincodeEvent getEvent() {
+        return stub.getEvent();
+    }
+
+    @Override
+    public ProposalPackage.SignedProposal getSignedProposal() {
+        return stub.getSignedProposal();
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return stub.getTxTimestamp();
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return stub.getCreator();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return stub.getTransient();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return stub.getBinding();
+    }
+
+    @Override
+    public String getMspId() {
+        return stub.getMspId();
+    }
+
+    /**
+     * Wraps query results to count them, passing on the null a stub returns for no results.
+     */
+    private <T> QueryResultsIterator<T> counting(final QueryResultsIterator<T> results) {
+        return results == null ? null : new CountingResults<>(results);
+    }
+
+    private QueryResultsIteratorWithMetadata<KeyValue> countingWithMetadata(
+            final QueryResultsIteratorWithMetadata<KeyValue> results) {
+        return results == null ? null : new CountingResultsWithMetadata(results);
+    }
+
+    /**
+     * Counts the records a query hands out and the time spent fetching them.
+     */
+    private final class CountingIterator<T> implements Iterator<T> {
+
+        private final Iterator<T> iterator;
+
+        CountingIterator(final Iterator<T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            boolean hasNext = iterator.hasNext();
+            queryNanos += System.nanoTime() - start;
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            long start = System.nanoTime();
+            T next = iterator.next();
+            queryNanos += System.nanoTime() - start;
+            recordsIterated++;
+            return next;
+        }
+    }
+
+    private final class CountingResults<T> implements QueryResultsIterator<T> {
+
+        private final QueryResultsIterator<T> results;
+
+        CountingResults(final QueryResultsIterator<T> results) {
+            this.results = results;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new CountingIterator<>(results.iterator());
+        }
+
+        @Override
+        public void close() throws Exception {
+            results.close();
+        }
+    }
+
+    private final class CountingResultsWithMetadata implements QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final QueryResultsIteratorWithMetadata<KeyValue> results;
+
+        CountingResultsWithMetadata(final QueryResultsIteratorWithMetadata<KeyValue> results) {
+            this.results = results;
+        }
+
+        @Override
+        public ChaincodeShim.QueryResponseMetadata getMetadata() {
+            return results.getMetadata();
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return new CountingIterator<>(results.iterator());
+        }
+
+        @Override
+        public void close() throws Exception {
+            results.close();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.hyperledger.fabric.samples.ehr.codec.Compression;
+import org.hyperledger.fabric.samples.ehr.codec.Hex;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Store for attachments uploaded in chunks over several transactions.
+ *
+ * Every EHR data record can have one chunked upload. Its {@link AttachmentManifest}
+ * is kept under an {@code ehr~upload} composite key and each chunk under its own
+ * {@code ehr~chunk} key, so no transaction reads or writes more than one chunk while
+ * uploading or downloading. Finalizing reads every chunk, one at a time, to link the
+ * record to the SHA-256 of the whole content. Chunks are stored as
+ * {@link Compression#encode flagged values}, deflated when that pays off.
+ */
+public final class ChunkedAttachmentStore {
+
+    static final String MANIFEST_OBJECT_TYPE = "ehr~upload";
+    static final String CHUNK_OBJECT_TYPE = "ehr~chunk";
+
+    private final ChaincodeStub stub;
+    private final Genson genson;
+    private final Compression compression;
+
+    public ChunkedAttachmentStore(final ChaincodeStub stub, final Genson genson, final Compression compression) {
+        this.stub = stub;
+        this.genson = genson;
+        this.compression = compression;
+    }
+
+    /**
+     * Retrieves the manifest of the upload of an EHR data.
+     *
+     * @param ehrDataId the ID of the EHR data
+     * @return the manifest, or null when no upload was begun
+     */
+    public AttachmentManifest getManifest(final String ehrDataId) {
+        byte[] manifest = stub.getState(manifestKey(ehrDataId));
+
+        if (manifest == null || manifest.length == 0) {
+            return null;
+        }
+        return genson.deserialize(new String(manifest, StandardCharsets.UTF_8), AttachmentManifest.class);
+    }
+
+    /**
+     * Begins an upload, or restarts an upload that was not finalized.
+     *
+     * @param ehrDataId the ID of the EHR data
+     * @return the manifest of the empty upload
+     */
+    public AttachmentManifest begin(final String ehrDataId) {
+        AttachmentManifest previous = getManifest(ehrDataId);
+        int allocatedChunks = previous == null ? 0 : previous.getAllocatedChunks();
+
+        return putManifest(new AttachmentManifest(ehrDataId, 0, 0, "", allocatedChunks, false));
+    }
+
+    /**
+     * Writes the next chunk of an upload and advances its running digest.
+     *
+     * @param manifest the manifest of the upload
+     * @param chunk the chunk
+     * @return the updated manifest
+     */
+    public AttachmentManifest append(final AttachmentManifest manifest, final byte[] chunk) {
+        int index = manifest.getChunks();
+        stub.putState(chunkKey(manifest.getEhrDataId(), index), compression.encode(chunk));
+
+        return putManifest(new AttachmentManifest(manifest.getEhrDataId(), index + 1,
+                manifest.getSize() + chunk.length, chain(manifest.getDigest(), chunk),
+                Math.max(manifest.getAllocatedChunks(), index + 1), false));
+    }
+
+    /**
+     * Completes an upload, deleting any chunks left over from a restarted upload.
+     *
+     * @param manifest the manifest of the upload
+     * @return the completed manifest
+     */
+    public AttachmentManifest complete(final AttachmentManifest manifest) {
+        for (int index = manifest.getChunks(); index < manifest.getAllocatedChunks(); index++) {
+            stub.delState(chunkKey(manifest.getEhrDataId(), index));
+        }
+
+        return putManifest(new AttachmentManifest(manifest.getEhrDataId(), manifest.getChunks(),
+                manifest.getSize(), manifest.getDigest(), manifest.getChunks(), true));
+    }
+
+    /**
+     * Retrieves one chunk of an upload.
+     *
+     * @param ehrDataId the ID of the EHR data
+     * @param index the index of the chunk
+     * @return the chunk, or null when nothing is stored at the index
+     */
+    public byte[] getChunk(final String ehrDataId, final int index) {
+        byte[] stored = stub.getState(chunkKey(ehrDataId, index));
+
+        if (stored == null || stored.length == 0) {
+            return null;
+        }
+        return Compression.decode(stored);
+    }
+
+    /**
+     * Computes the SHA-256 of the whole content of an upload, reading one chunk at a time.
+     *
+     * @param manifest the manifest of the upload
+     * @return the lowercase hex SHA-256 of the chunks in order, as
+     *         {@link AttachmentStore#digest} computes it for content stored in one piece
+     * @throws IllegalStateException if a chunk of the upload is missing
+     */
+    public String contentDigest(final AttachmentManifest manifest) {
+        MessageDigest sha256 = AttachmentStore.sha256();
+
+        for (int index = 0; index < manifest.getChunks(); index++) {
+            byte[] chunk = getChunk(manifest.getEhrDataId(), index);
+            if (chunk == null) {
+                throw new IllegalStateException(String.format("Chunk %d of the attachment of EHR Data %s is missing",
+                        index, manifest.getEhrDataId()));
+            }
+            sha256.update(chunk);
+        }
+        return Hex.encode(sha256.digest());
+    }
+
+    /**
+     * Advances a running digest over a chunk.
+     *
+     * @param digest the lowercase hex running digest, empty before the first chunk
+     * @param chunk the chunk
+     * @return the lowercase hex SHA-256 of the digest's bytes followed by the chunk
+     */
+    public static String chain(final String digest, final byte[] chunk) {
+        MessageDigest sha256 = AttachmentStore.sha256();
+        sha256.update(Hex.decode(digest));
+        return Hex.encode(sha256.digest(chunk));
+    }
+
+    private AttachmentManifest putManifest(final AttachmentManifest manifest) {
+        stub.putState(manifestKey(manifest.getEhrDataId()),
+                genson.serialize(manifest).getBytes(StandardCharsets.UTF_8));
+        return manifest;
+    }
+
+    private String manifestKey(final String ehrDataId) {
+        return stub.createCompositeKey(MANIFEST_OBJECT_TYPE, ehrDataId).toString();
+    }
+
+    private String chunkKey(final String ehrDataId, final int index) {
+        return stub.createCompositeKey(CHUNK_OBJECT_TYPE, ehrDataId, String.format("%010d", index)).toString();
+    }
+}
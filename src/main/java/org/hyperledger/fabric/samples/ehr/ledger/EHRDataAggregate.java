@@ -0,0 +1,51 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import com.owlike.genson.annotation.JsonCreator;
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * The number of EHR data records sharing a value, such as a file type, and the bytes
+ * of text data and attachments they hold.
+ */
+public final class EHRDataAggregate {
+
+    static final EHRDataAggregate ZERO = new EHRDataAggregate(0, 0);
+
+    private final long count;
+    private final long bytes;
+
+    @JsonCreator
+    public EHRDataAggregate(
+            @JsonProperty("count") final long count,
+            @JsonProperty("bytes") final long bytes
+    ) {
+        this.count = count;
+        this.bytes = bytes;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Adds another aggregate, or a delta, to this one.
+     *
+     * @param other the aggregate to add
+     * @return the sum
+     */
+    public EHRDataAggregate plus(final EHRDataAggregate other) {
+        return new EHRDataAggregate(count + other.count, bytes + other.bytes);
+    }
+
+    boolean isZero() {
+        return count == 0 && bytes == 0;
+    }
+}
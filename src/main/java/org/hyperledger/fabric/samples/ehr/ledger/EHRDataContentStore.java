@@ -0,0 +1,63 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.nio.charset.StandardCharsets;
+
+import org.hyperledger.fabric.samples.ehr.codec.Compression;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Store for the immutable content of EHR data records.
+ *
+ * The text data of a record is written once under an {@code ehr~content} composite
+ * key, apart from the record key that holds the mutable metadata. Updating the
+ * metadata then neither rewrites nor reads the content, which keeps the write set of
+ * an update small and lets it commit alongside concurrent readers of the content.
+ * Content is stored as a {@link Compression#encode flagged value}.
+ */
+public final class EHRDataContentStore {
+
+    static final String CONTENT_OBJECT_TYPE = "ehr~content";
+
+    private final ChaincodeStub stub;
+    private final Compression compression;
+
+    public EHRDataContentStore(final ChaincodeStub stub, final Compression compression) {
+        this.stub = stub;
+        this.compression = compression;
+    }
+
+    /**
+     * Stores the text data of a record; null text data is not stored.
+     *
+     * @param ehrDataId the ID of the EHR data
+     * @param textData the text data
+     */
+    public void put(final String ehrDataId, final String textData) {
+        if (textData != null) {
+            stub.putState(contentKey(ehrDataId), compression.encode(textData.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Retrieves the text data of a record.
+     *
+     * @param ehrDataId the ID of the EHR data
+     * @return the text data, or null when the record has none
+     */
+    public String get(final String ehrDataId) {
+        byte[] content = stub.getState(contentKey(ehrDataId));
+
+        if (content == null || content.length == 0) {
+            return null;
+        }
+        return new String(Compression.decode(content), StandardCharsets.UTF_8);
+    }
+
+    private String contentKey(final String ehrDataId) {
+        return stub.createCompositeKey(CONTENT_OBJECT_TYPE, ehrDataId).toString();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Secondary indexes over EHR data attributes, kept as composite keys.
+ *
+ * Every indexed attribute has an {@code attribute~id} composite key per record whose
+ * value is a single null byte, written in the same transaction as the record. A
+ * lookup is a paginated partial composite key query on the attribute value, which
+ * works on both LevelDB and CouchDB peers. Numeric attributes are zero-padded so that
+ * their entries sort in numeric order and can be read by range.
+ */
+public final class EHRDataIndex {
+
+    /**
+     * The indexed attributes of EHR data.
+     */
+    public enum Attribute {
+        FILE_TYPE("fileType", EHRData::getFileType),
+        NAME("name", EHRData::getName),
+        DOC("doc", ehrData -> Boolean.toString(ehrData.isDoc())),
+        CREATED_AT("createdAt", ehrData -> formatTime(ehrData.getCreatedAt())),
+        BYTE_SIZE("byteSize", ehrData -> formatNumber(ehrData.getByteSize()));
+
+        private final String fieldName;
+        private final Function<EHRData, String> extractor;
+
+        Attribute(final String fieldName, final Function<EHRData, String> extractor) {
+            this.fieldName = fieldName;
+            this.extractor = extractor;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        /**
+         * Returns the object type of the composite keys of the index.
+         *
+         * @return the object type, such as fileType~id
+         */
+        public String getObjectType() {
+            return fieldName + "~id";
+        }
+
+        String valueOf(final EHRData ehrData) {
+            String value = extractor.apply(ehrData);
+            return value == null ? "" : value;
+        }
+
+        /**
+         * Looks an attribute up by the name of the EHR data field it indexes.
+         *
+         * @param fieldName the field name, such as fileType
+         * @return the attribute, or null if the field is not indexed
+         */
+        public static Attribute forFieldName(final String fieldName) {
+            for (Attribute attribute : values()) {
+                if (attribute.fieldName.equals(fieldName)) {
+                    return attribute;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final byte[] MARKER = {0x00};
+
+    private static final int NUMBER_DIGITS = 19;
+
+    private final ChaincodeStub stub;
+
+    public EHRDataIndex(final ChaincodeStub stub) {
+        this.stub = stub;
+    }
+
+    /**
+     * Adds the index entries of the EHR data.
+     *
+     * @param ehrData the EHR data
+     */
+    public void add(final EHRData ehrData) {
+        for (Attribute attribute : Attribute.values()) {
+            stub.putState(entryKey(attribute, ehrData), MARKER);
+        }
+    }
+
+    /**
+     * Removes the index entries of the EHR data.
+     *
+     * @param ehrData the EHR data as it was indexed
+     */
+    public void remove(final EHRData ehrData) {
+        for (Attribute attribute : Attribute.values()) {
+            stub.delState(entryKey(attribute, ehrData));
+        }
+    }
+
+    /**
+     * Moves the index entries of the attributes that changed between two versions of
+     * the EHR data, leaving the others untouched.
+     *
+     * @param previous the EHR data as it was indexed
+     * @param updated the updated EHR data
+     */
+    public void update(final EHRData previous, final EHRData updated) {
+        for (Attribute attribute : Attribute.values()) {
+            if (!attribute.valueOf(previous).equals(attribute.valueOf(updated))) {
+                stub.delState(entryKey(attribute, previous));
+                stub.putState(entryKey(attribute, updated), MARKER);
+            }
+        }
+    }
+
+    /**
+     * Returns a page of index entries for an attribute value. An empty value selects
+     * every entry of the index, in attribute order.
+     *
+     * @param attribute the indexed attribute
+     * @param value the attribute value
+     * @param pageSize the page size
+     * @param bookmark the bookmark returned by the previous page
+     * @return the index entries, to be resolved with {@link #idOf(KeyValue)}
+     * @throws IllegalArgumentException if the attribute is numeric and the value is not
+     *         a number
+     */
+    public QueryResultsIteratorWithMetadata<KeyValue> lookup(final Attribute attribute, final String value,
+                                                             final int pageSize, final String bookmark) {
+        CompositeKey prefix = value.isEmpty()
+                ? stub.createCompositeKey(attribute.getObjectType())
+                : stub.createCompositeKey(attribute.getObjectType(), normalize(attribute, value));
+
+        return stub.getStateByPartialCompositeKeyWithPagination(prefix, pageSize, bookmark);
+    }
+
+    /**
+     * Returns a page of index entries of a numeric attribute from a lower bound on, in
+     * attribute order.
+     *
+     * The shim rejects composite keys as the bounds of a range query, see
+     * {@code CompositeKey.validateSimpleKeys}, so the page is a partial composite key
+     * query over the whole index with the entry of the lower bound passed as its
+     * bookmark. This depends on the peer resuming a paginated range query at its
+     * bookmark, inclusive. The shim does not guarantee that and no test here verifies
+     * it against a peer; the in-memory ledger only models it. The caller stops at the
+     * first entry past its upper bound, see {@link #numberOf}.
+     *
+     * @param attribute the indexed numeric attribute
+     * @param from the lower bound, inclusive
+     * @param pageSize the page size
+     * @param bookmark the bookmark returned by the previous page
+     * @return the index entries, to be resolved with {@link #idOf(KeyValue)}
+     * @throws IllegalArgumentException if the bookmark is not an entry of the index
+     *         at or after the lower bound
+     */
+    public QueryResultsIteratorWithMetadata<KeyValue> range(final Attribute attribute, final long from,
+                                                            final int pageSize, final String bookmark) {
+        CompositeKey prefix = stub.createCompositeKey(attribute.getObjectType());
+        String start = stub.createCompositeKey(attribute.getObjectType(), formatNumber(from)).toString();
+        if (!bookmark.isEmpty() && (!bookmark.startsWith(prefix.toString()) || bookmark.compareTo(start) < 0)) {
+            throw new IllegalArgumentException(String.format("Bookmark %s is not in the %s range", bookmark,
+                    attribute.getFieldName()));
+        }
+
+        return stub.getStateByPartialCompositeKeyWithPagination(prefix, pageSize,
+                bookmark.isEmpty() ? start : bookmark);
+    }
+
+    /**
+     * Returns the value of a numeric attribute an index entry was made for.
+     *
+     * @param entry the index entry
+     * @return the value
+     */
+    public long numberOf(final KeyValue entry) {
+        return Long.parseLong(stub.splitCompositeKey(entry.getKey()).getAttributes().get(0));
+    }
+
+    /**
+     * Returns the ID of the EHR data an index entry points to.
+     *
+     * @param entry the index entry
+     * @return the ID of the EHR data
+     */
+    public String idOf(final KeyValue entry) {
+        List<String> attributes = stub.splitCompositeKey(entry.getKey()).getAttributes();
+        return attributes.get(attributes.size() - 1);
+    }
+
+    /**
+     * Formats a time so that its index entries sort chronologically.
+     *
+     * @param time the time
+     * @return the zero-padded epoch milliseconds of the time, empty for null
+     */
+    public static String formatTime(final Date time) {
+        return time == null ? "" : formatTime(time.getTime());
+    }
+
+    static String formatTime(final long epochMillis) {
+        return formatNumber(epochMillis);
+    }
+
+    static String formatNumber(final long value) {
+        return String.format(Locale.ROOT, "%0" + NUMBER_DIGITS + "d", value);
+    }
+
+    private String entryKey(final Attribute attribute, final EHRData ehrData) {
+        return stub.createCompositeKey(attribute.getObjectType(), attribute.valueOf(ehrData), ehrData.getId())
+                .toString();
+    }
+
+    private static String normalize(final Attribute attribute, final String value) {
+        if (attribute == Attribute.CREATED_AT || attribute == Attribute.BYTE_SIZE) {
+            try {
+                return formatNumber(Long.parseLong(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("%s %s is not a number",
+                        attribute.getFieldName(), value), e);
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Aggregate counts and bytes of EHR data, maintained on the write path.
+ *
+ * A single counter key per aggregate would be read and written by every transaction
+ * that creates a record, so concurrent creates would fail MVCC validation. Instead
+ * each transaction adds its changes to {@code ehr~statsDelta} keys of its own, named
+ * after its transaction ID, which no other transaction touches. Reading an aggregate
+ * sums its compacted {@code ehr~stats} key and the deltas written since, and
+ * {@link #compact} periodically folds the deltas into the compacted keys.
+ *
+ * Only records that were added are moved by {@link #update} or taken away by
+ * {@link #remove}. Records written before the statistics were kept have to be added
+ * instead, which the contract does when it first updates or upgrades them.
+ */
+public final class EHRDataStats {
+
+    /**
+     * The dimensions the aggregates are kept by.
+     */
+    public enum Dimension {
+        TOTAL("total", ehrData -> ""),
+        FILE_TYPE("fileType", EHRData::getFileType),
+        NAME("name", EHRData::getName);
+
+        private final String fieldName;
+        private final Function<EHRData, String> extractor;
+
+        Dimension(final String fieldName, final Function<EHRData, String> extractor) {
+            this.fieldName = fieldName;
+            this.extractor = extractor;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        String valueOf(final EHRData ehrData) {
+            String value = extractor.apply(ehrData);
+            return value == null ? "" : value;
+        }
+
+        /**
+         * Looks a dimension up by the name of the EHR data field it aggregates by.
+         *
+         * @param fieldName the field name, such as fileType, or total
+         * @return the dimension, or null if the field is not aggregated by
+         */
+        public static Dimension forFieldName(final String fieldName) {
+            for (Dimension dimension : values()) {
+                if (dimension.fieldName.equals(fieldName)) {
+                    return dimension;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final String STATS_OBJECT_TYPE = "ehr~stats";
+    static final String DELTA_OBJECT_TYPE = "ehr~statsDelta";
+
+    private final ChaincodeStub stub;
+    private final Genson genson;
+
+    public EHRDataStats(final ChaincodeStub stub, final Genson genson) {
+        this.stub = stub;
+        this.genson = genson;
+    }
+
+    /**
+     * Counts a new record with its byte size.
+     *
+     * @param ehrData the EHR data
+     */
+    public void add(final EHRData ehrData) {
+        for (Dimension dimension : Dimension.values()) {
+            addDelta(dimension, dimension.valueOf(ehrData), new EHRDataAggregate(1, ehrData.getByteSize()));
+        }
+    }
+
+    /**
+     * Counts a record that was deleted.
+     *
+     * @param ehrData the EHR data as it was counted
+     */
+    public void remove(final EHRData ehrData) {
+        for (Dimension dimension : Dimension.values()) {
+            addDelta(dimension, dimension.valueOf(ehrData), new EHRDataAggregate(-1, -ehrData.getByteSize()));
+        }
+    }
+
+    /**
+     * Moves a record between the aggregates whose value changed, and accounts for a
+     * change in its byte size in the others.
+     *
+     * @param previous the EHR data as it was counted, which it must have been
+     * @param previousBytes the bytes it was counted with, which records written before
+     *        the byte size was kept do not carry
+     * @param updated the updated EHR data
+     */
+    public void update(final EHRData previous, final long previousBytes, final EHRData updated) {
+        long bytesDelta = updated.getByteSize() - previousBytes;
+
+        for (Dimension dimension : Dimension.values()) {
+            String previousValue = dimension.valueOf(previous);
+            String updatedValue = dimension.valueOf(updated);
+            if (previousValue.equals(updatedValue)) {
+                if (bytesDelta != 0) {
+                    addDelta(dimension, updatedValue, new EHRDataAggregate(0, bytesDelta));
+                }
+                continue;
+            }
+            addDelta(dimension, previousValue, new EHRDataAggregate(-1, -previousBytes));
+            addDelta(dimension, updatedValue, new EHRDataAggregate(1, updated.getByteSize()));
+        }
+    }
+
+    /**
+     * Reads the aggregates of a dimension, compacted and pending deltas together.
+     *
+     * @param dimension the dimension
+     * @return the aggregates by value, in value order
+     */
+    public Map<String, EHRDataAggregate> get(final Dimension dimension) {
+        Map<String, EHRDataAggregate> aggregates = new TreeMap<>();
+
+        for (KeyValue result : stub.getStateByPartialCompositeKey(STATS_OBJECT_TYPE, dimension.getFieldName())) {
+            aggregates.merge(valueOf(result), decode(result.getValue()), EHRDataAggregate::plus);
+        }
+        for (KeyValue result : stub.getStateByPartialCompositeKey(DELTA_OBJECT_TYPE, dimension.getFieldName())) {
+            aggregates.merge(valueOf(result), decode(result.getValue()), EHRDataAggregate::plus);
+        }
+        aggregates.values().removeIf(EHRDataAggregate::isZero);
+
+        return aggregates;
+    }
+
+    /**
+     * Folds pending deltas into the compacted aggregates and deletes them.
+     *
+     * The compaction reads the range of pending deltas, so it fails validation if a
+     * transaction adds a delta before it commits and has to be retried; the
+     * transactions writing deltas never conflict with it.
+     *
+     * @param maxDeltas the maximum number of deltas to fold
+     * @return the number of deltas folded
+     */
+    public int compact(final int maxDeltas) {
+        Map<List<String>, EHRDataAggregate> folded = new LinkedHashMap<>();
+        int deltas = 0;
+
+        for (KeyValue result : stub.getStateByPartialCompositeKey(stub.createCompositeKey(DELTA_OBJECT_TYPE))) {
+            if (deltas == maxDeltas) {
+                break;
+            }
+            List<String> attributes = stub.splitCompositeKey(result.getKey()).getAttributes();
+            folded.merge(attributes.subList(0, 2), decode(result.getValue()), EHRDataAggregate::plus);
+            stub.delState(result.getKey());
+            deltas++;
+        }
+
+        for (Map.Entry<List<String>, EHRDataAggregate> entry : folded.entrySet()) {
+            String key = stub.createCompositeKey(STATS_OBJECT_TYPE, entry.getKey().get(0), entry.getKey().get(1))
+                    .toString();
+            EHRDataAggregate aggregate = decode(stub.getState(key)).plus(entry.getValue());
+            if (aggregate.isZero()) {
+                stub.delState(key);
+            } else {
+                stub.putState(key, encode(aggregate));
+            }
+        }
+
+        return deltas;
+    }
+
+    /**
+     * Returns the dimension value of a statistics key; splitting a composite key drops
+     * a trailing empty attribute, such as the value of the total.
+     */
+    private String valueOf(final KeyValue result) {
+        List<String> attributes = stub.splitCompositeKey(result.getKey()).getAttributes();
+        return attributes.size() > 1 ? attributes.get(1) : "";
+    }
+
+    private void addDelta(final Dimension dimension, final String value, final EHRDataAggregate delta) {
+        String key = stub.createCompositeKey(DELTA_OBJECT_TYPE, dimension.getFieldName(), value, stub.getTxId())
+                .toString();
+        stub.putState(key, encode(decode(stub.getState(key)).plus(delta)));
+    }
+
+    private byte[] encode(final EHRDataAggregate aggregate) {
+        return genson.serialize(aggregate).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private EHRDataAggregate decode(final byte[] value) {
+        if (value == null || value.length == 0) {
+            return EHRDataAggregate.ZERO;
+        }
+        return genson.deserialize(new String(value, StandardCharsets.UTF_8), EHRDataAggregate.class);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.hyperledger.fabric.samples.ehr.codec.DecodeCache;
+import org.hyperledger.fabric.samples.ehr.ledger.CachingChaincodeStub;
+
+/**
+ * Per-transaction metrics of the EHR contract.
+ *
+ * For every transaction function the contract records the endorsement latency, the
+ * payload and response sizes, the world state reads served by the peer and by the
+ * transaction cache, the writes and deletes sent to the peer, the records iterated
+ * by range and rich queries, and the time spent waiting on state reads and queries.
+ * The time not spent waiting on the peer is the contract's own work, mostly Genson.
+ *
+ * Every value is a {@link LongAdder}, so recording does not contend across
+ * concurrent transactions and costs nothing beyond the increments when nobody
+ * scrapes; the text exposition is only built by {@link #render()}. The counters and
+ * size of the {@link DecodeCache} are rendered with them; its hit rate is hits over
+ * hits plus misses.
+ */
+public final class EHRMetrics {
+
+    private static final EHRMetrics GLOBAL = new EHRMetrics(DecodeCache.global());
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final ConcurrentMap<String, TransactionMetrics> transactions = new ConcurrentHashMap<>();
+
+    private final DecodeCache decodeCache;
+
+    public EHRMetrics() {
+        this(DecodeCache.DISABLED);
+    }
+
+    public EHRMetrics(final DecodeCache decodeCache) {
+        this.decodeCache = decodeCache;
+    }
+
+    /**
+     * Returns the metrics shared by every contract instance of the process.
+     *
+     * @return the process-wide metrics
+     */
+    public static EHRMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Counts a transaction as started.
+     *
+     * @param transaction the name of the transaction function
+     */
+    public void started(final String transaction) {
+        of(transaction).started.increment();
+    }
+
+    /**
+     * Records a transaction that completed without an error.
+     *
+     * @param transaction the name of the transaction function
+     * @param nanos the time the transaction took
+     * @param payloadBytes the size of the transaction arguments
+     * @param responseBytes the size of the response, or -1 if it is not known
+     * @param stub the stub the transaction ran on
+     */
+    public void completed(final String transaction, final long nanos, final long payloadBytes,
+                          final long responseBytes, final CachingChaincodeStub stub) {
+        TransactionMetrics metrics = of(transaction);
+        metrics.duration.record(nanos);
+        metrics.payloadBytes.add(payloadBytes);
+        if (responseBytes >= 0) {
+            metrics.responseBytes.add(responseBytes);
+        }
+        metrics.peerReads.add(stub.getPeerReads());
+        metrics.cacheHits.add(stub.getCacheHits());
+        metrics.writes.add(stub.getWrites());
+        metrics.deletes.add(stub.getDeletes());
+        metrics.recordsIterated.add(stub.getRecordsIterated());
+        metrics.stateReadNanos.add(stub.getStateReadNanos());
+        metrics.queryNanos.add(stub.getQueryNanos());
+    }
+
+    /**
+     * Returns the metrics in the Prometheus text exposition format.
+     *
+     * @return the exposition
+     */
+    public String render() {
+        Map<String, TransactionMetrics> sorted = new TreeMap<>(transactions);
+        StringBuilder out = new StringBuilder();
+
+        out.append("# HELP ehr_transaction_duration_seconds Latency of transactions that completed.\n")
+                .append("# TYPE ehr_transaction_duration_seconds histogram\n");
+        for (Map.Entry<String, TransactionMetrics> entry : sorted.entrySet()) {
+            entry.getValue().duration.render(out, "ehr_transaction_duration_seconds", label(entry.getKey()));
+        }
+
+        counter(out, sorted, "ehr_transactions_started_total",
+                "Transactions started; started minus completed is the number that failed.", m -> m.started);
+        counter(out, sorted, "ehr_transaction_payload_bytes_total",
+                "Bytes of arguments of completed transactions.", m -> m.payloadBytes);
+        counter(out, sorted, "ehr_transaction_response_bytes_total",
+                "Bytes of string responses of completed transactions.", m -> m.responseBytes);
+        counter(out, sorted, "ehr_state_peer_reads_total",
+                "World state reads sent to the peer.", m -> m.peerReads);
+        counter(out, sorted, "ehr_state_cache_hits_total",
+                "World state reads answered by the transaction cache.", m -> m.cacheHits);
+        counter(out, sorted, "ehr_state_writes_total",
+                "World state writes sent to the peer.", m -> m.writes);
+        counter(out, sorted, "ehr_state_deletes_total",
+                "World state deletes sent to the peer.", m -> m.deletes);
+        counter(out, sorted, "ehr_records_iterated_total",
+                "Records iterated by range, composite key and rich queries.", m -> m.recordsIterated);
+        seconds(out, sorted, "ehr_state_read_seconds_total",
+                "Time spent waiting on world state reads from the peer.", m -> m.stateReadNanos);
+        seconds(out, sorted, "ehr_query_seconds_total",
+                "Time spent waiting on queries and iterating their results.", m -> m.queryNanos);
+
+        value(out, "ehr_decode_cache_hits_total", "counter",
+                "Records taken decoded from the decode cache.", decodeCache.getHits());
+        value(out, "ehr_decode_cache_misses_total", "counter",
+                "Records the decode cache did not hold and that were parsed.", decodeCache.getMisses());
+        value(out, "ehr_decode_cache_evictions_total", "counter",
+                "Records evicted from the decode cache to stay under its ceiling.", decodeCache.getEvictions());
+        value(out, "ehr_decode_cache_entries", "gauge",
+                "Records held by the decode cache.", decodeCache.getEntries());
+        value(out, "ehr_decode_cache_bytes", "gauge",
+                "Estimated heap retained by the decode cache.", decodeCache.getBytes());
+        value(out, "ehr_decode_cache_max_bytes", "gauge",
+                "Ceiling of the decode cache, EHR_DECODE_CACHE_MAX_BYTES.", decodeCache.getMaxBytes());
+        return out.toString();
+    }
+
+    private TransactionMetrics of(final String transaction) {
+        TransactionMetrics metrics = transactions.get(transaction);
+        return metrics != null ? metrics : transactions.computeIfAbsent(transaction, name -> new TransactionMetrics());
+    }
+
+    private static void counter(final StringBuilder out, final Map<String, TransactionMetrics> transactions,
+                                final String name, final String help,
+                                final Function<TransactionMetrics, LongAdder> value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, TransactionMetrics> entry : transactions.entrySet()) {
+            out.append(name).append('{').append(label(entry.getKey())).append("} ")
+                    .append(value.apply(entry.getValue()).sum()).append('\n');
+        }
+    }
+
+    private static void seconds(final StringBuilder out, final Map<String, TransactionMetrics> transactions,
+                                final String name, final String help,
+                                final Function<TransactionMetrics, LongAdder> nanos) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, TransactionMetrics> entry : transactions.entrySet()) {
+            out.append(name).append('{').append(label(entry.getKey())).append("} ")
+                    .append(nanos.apply(entry.getValue()).sum() / NANOS_PER_SECOND).append('\n');
+        }
+    }
+
+    private static void value(final StringBuilder out, final String name, final String type, final String help,
+                              final long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n')
+                .append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String label(final String transaction) {
+        return "transaction=\"" + transaction.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * The metrics of one transaction function.
+     */
+    private static final class TransactionMetrics {
+
+        private final LatencyHistogram duration = new LatencyHistogram();
+        private final LongAdder started = new LongAdder();
+        private final LongAdder payloadBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder peerReads = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+        private final LongAdder writes = new LongAdder();
+        private final LongAdder deletes = new LongAdder();
+        private final LongAdder recordsIterated = new LongAdder();
+        private final LongAdder stateReadNanos = new LongAdder();
+        private final LongAdder queryNanos = new LongAdder();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A CouchDB index shipped with the chaincode under META-INF/statedb/couchdb/indexes.
+ */
+public final class CouchDBIndex {
+
+    /**
+     * The indexes shipped with the chaincode; this list must match the index files.
+     */
+    public static final List<CouchDBIndex> SHIPPED = Collections.unmodifiableList(Arrays.asList(
+            new CouchDBIndex("indexIdDoc", "indexId", "id"),
+            new CouchDBIndex("indexNameDoc", "indexName", "name"),
+            new CouchDBIndex("indexFileTypeDoc", "indexFileType", "fileType"),
+            new CouchDBIndex("indexDocDoc", "indexDoc", "doc"),
+            new CouchDBIndex("indexCreatedAtDoc", "indexCreatedAt", "createdAt"),
+            new CouchDBIndex("indexFileTypeCreatedAtDoc", "indexFileTypeCreatedAt", "fileType", "createdAt"),
+            new CouchDBIndex("indexNameCreatedAtDoc", "indexNameCreatedAt", "name", "createdAt")
+    ));
+
+    private final String designDocument;
+    private final String name;
+    private final List<String> fields;
+
+    public CouchDBIndex(final String designDocument, final String name, final String... fields) {
+        this.designDocument = designDocument;
+        this.name = name;
+        this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    public String getDesignDocument() {
+        return designDocument;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Checks whether CouchDB can serve a query from this index. Every indexed field
+     * must be constrained by the selector, and the sort fields, if any, must be the
+     * trailing fields of the index.
+     *
+     * @param selectorFields the fields constrained by the selector
+     * @param sortFields the sort fields, in order
+     * @return true if the index can serve the query
+     */
+    public boolean canServe(final Set<String> selectorFields, final List<String> sortFields) {
+        if (!selectorFields.containsAll(fields)) {
+            return false;
+        }
+        if (sortFields.isEmpty()) {
+            return true;
+        }
+        return sortFields.size() <= fields.size()
+                && fields.subList(fields.size() - sortFields.size(), fields.size()).equals(sortFields);
+    }
+
+    @Override
+    public String toString() {
+        return "_design/" + designDocument + "/" + name + fields;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.query;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * A typed query over EHR data that builds CouchDB selectors only for the filter and
+ * sort combinations the shipped indexes can serve.
+ *
+ * Any combination of name, fileType, doc and a createdAt range can be filtered on,
+ * optionally sorted by createdAt.
+ */
+public final class EHRDataQuery {
+
+    static final String SORT_CREATED_AT = "createdAt";
+
+    private final String name;
+    private final String fileType;
+    private final Boolean doc;
+    private final Long createdFrom;
+    private final Long createdTo;
+    private final String sortBy;
+    private final boolean descending;
+
+    public EHRDataQuery(
+            @JsonProperty("name") final String name,
+            @JsonProperty("fileType") final String fileType,
+            @JsonProperty("doc") final Boolean doc,
+            @JsonProperty("createdFrom") final Long createdFrom,
+            @JsonProperty("createdTo") final Long createdTo,
+            @JsonProperty("sortBy") final String sortBy,
+            @JsonProperty("descending") final boolean descending
+    ) {
+        this.name = name;
+        this.fileType = fileType;
+        this.doc = doc;
+        this.createdFrom = createdFrom;
+        this.createdTo = createdTo;
+        this.sortBy = sortBy;
+        this.descending = descending;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public Boolean getDoc() {
+        return doc;
+    }
+
+    public Long getCreatedFrom() {
+        return createdFrom;
+    }
+
+    public Long getCreatedTo() {
+        return createdTo;
+    }
+
+    public String getSortBy() {
+        return sortBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Builds the CouchDB query.
+     *
+     * @return the rich query, without use_index
+     * @throws IllegalArgumentException if the query has no filter and no sort, or sorts on an unsupported field
+     */
+    public JSONObject toRichQuery() {
+        if (sortBy != null && !SORT_CREATED_AT.equals(sortBy)) {
+            throw new IllegalArgumentException(String.format("EHR Data can only be sorted by %s, not %s",
+                    SORT_CREATED_AT, sortBy));
+        }
+
+        JSONObject selector = new JSONObject();
+        if (name != null) {
+            selector.put("name", name);
+        }
+        if (fileType != null) {
+            selector.put("fileType", fileType);
+        }
+        if (doc != null) {
+            selector.put("doc", doc.booleanValue());
+        }
+
+        JSONObject createdAt = new JSONObject();
+        if (createdFrom != null) {
+            createdAt.put("$gte", createdFrom.longValue());
+        }
+        if (createdTo != null) {
+            createdAt.put("$lt", createdTo.longValue());
+        }
+        if (createdAt.isEmpty() && sortBy != null) {
+            // CouchDB only sorts on fields the selector constrains.
+            createdAt.put("$gt", JSONObject.NULL);
+        }
+        if (!createdAt.isEmpty()) {
+            selector.put("createdAt", createdAt);
+        }
+
+        if (selector.isEmpty()) {
+            throw new IllegalArgumentException("EHR Data query needs at least one filter or a sort");
+        }
+
+        JSONObject query = new JSONObject().put("selector", selector);
+        if (sortBy != null) {
+            query.put("sort", new JSONArray().put(new JSONObject().put(sortBy, descending ? "desc" : "asc")));
+        }
+        return query;
+    }
+}
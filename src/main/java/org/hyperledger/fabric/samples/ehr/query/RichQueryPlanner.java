@@ -0,0 +1,107 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.query;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Matches CouchDB rich queries against the shipped index definitions.
+ *
+ * A query that does not name an index gets a {@code use_index} pointing at the
+ * shipped index that serves it, so CouchDB never falls back to a full scan when an
+ * index exists. Queries no index can serve are reported to the caller.
+ */
+public final class RichQueryPlanner {
+
+    private final List<CouchDBIndex> indexes;
+
+    public RichQueryPlanner(final List<CouchDBIndex> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Returns the query with the index that serves it. A query that already names an
+     * index with use_index is returned unchanged.
+     *
+     * @param query the rich query
+     * @return the query with use_index set, or null if no shipped index can serve it
+     * @throws org.json.JSONException if the query is not a JSON object
+     */
+    public String withIndex(final String query) {
+        JSONObject json = new JSONObject(query);
+        if (json.has("use_index")) {
+            return query;
+        }
+
+        CouchDBIndex index = selectIndex(json);
+        if (index == null) {
+            return null;
+        }
+
+        json.put("use_index", new JSONArray().put("_design/" + index.getDesignDocument()).put(index.getName()));
+        return json.toString();
+    }
+
+    /**
+     * Selects the index that serves the query; when several can, the one with the
+     * most fields is preferred as the most selective.
+     *
+     * @param query the rich query
+     * @return the index, or null if no shipped index can serve the query
+     */
+    public CouchDBIndex selectIndex(final JSONObject query) {
+        Set<String> selectorFields = new HashSet<>();
+        JSONObject selector = query.optJSONObject("selector");
+        if (selector != null) {
+            collectFields(selector, selectorFields);
+        }
+        List<String> sortFields = sortFields(query.optJSONArray("sort"));
+
+        CouchDBIndex selected = null;
+        for (CouchDBIndex index : indexes) {
+            if (index.canServe(selectorFields, sortFields)
+                    && (selected == null || index.getFields().size() > selected.getFields().size())) {
+                selected = index;
+            }
+        }
+        return selected;
+    }
+
+    private static void collectFields(final JSONObject selector, final Set<String> fields) {
+        for (String key : selector.keySet()) {
+            if (!key.startsWith("$")) {
+                fields.add(key);
+            } else if ("$and".equals(key)) {
+                JSONArray conditions = selector.optJSONArray(key);
+                for (int i = 0; conditions != null && i < conditions.length(); i++) {
+                    JSONObject condition = conditions.optJSONObject(i);
+                    if (condition != null) {
+                        collectFields(condition, fields);
+                    }
+                }
+            }
+            // Fields under $or, $nor and $not do not constrain every result, so no index can rely on them.
+        }
+    }
+
+    private static List<String> sortFields(final JSONArray sort) {
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; sort != null && i < sort.length(); i++) {
+            Object field = sort.get(i);
+            if (field instanceof JSONObject) {
+                fields.addAll(((JSONObject) field).keySet());
+            } else {
+                fields.add(field.toString());
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.startup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.hyperledger.fabric.contract.ContractInterface;
+import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.contract.metadata.MetadataBuilder;
+import org.hyperledger.fabric.contract.routing.ContractDefinition;
+import org.hyperledger.fabric.contract.routing.DataTypeDefinition;
+import org.hyperledger.fabric.contract.routing.RoutingRegistry;
+import org.hyperledger.fabric.contract.routing.TypeRegistry;
+import org.hyperledger.fabric.contract.routing.impl.RoutingRegistryImpl;
+import org.hyperledger.fabric.contract.routing.impl.TypeRegistryImpl;
+
+/**
+ * The contracts and data types of the chaincode, found at build time.
+ *
+ * On startup the shim scans every class of the classpath for @Contract and @DataType
+ * annotations, which with the dependencies of the shim is most of the time it takes
+ * before the chaincode can serve. The build runs the same scan once, through
+ * {@link #main(String[])}, and stores the result in the jar; the chaincode then loads
+ * the classes it lists instead.
+ *
+ * The index lists one class per line, prefixed with its kind:
+ *
+ * <pre>
+ * contract org.hyperledger.fabric.samples.ehr.EHRSmartContract
+ * dataType org.hyperledger.fabric.samples.ehr.EHRData
+ * </pre>
+ */
+public final class ContractIndex {
+
+    /**
+     * The class path resource holding the index.
+     */
+    public static final String RESOURCE = "META-INF/ehr/contract-index";
+
+    private static final String CONTRACT = "contract";
+    private static final String DATA_TYPE = "dataType";
+
+    private final List<String> contracts;
+    private final List<String> dataTypes;
+
+    ContractIndex(final List<String> contracts, final List<String> dataTypes) {
+        this.contracts = Collections.unmodifiableList(new ArrayList<>(contracts));
+        this.dataTypes = Collections.unmodifiableList(new ArrayList<>(dataTypes));
+    }
+
+    /**
+     * Scans the classpath the way the shim does on startup.
+     *
+     * @return the index of the classes found
+     */
+    public static ContractIndex scan() {
+        RoutingRegistry registry = new RoutingRegistryImpl();
+        TypeRegistry typeRegistry = new TypeRegistryImpl();
+        registry.findAndSetContracts(typeRegistry);
+
+        TreeSet<String> contracts = new TreeSet<>();
+        for (ContractDefinition definition : registry.getAllDefinitions()) {
+            contracts.add(definition.getContractImpl().getName());
+        }
+        TreeSet<String> dataTypes = new TreeSet<>();
+        for (DataTypeDefinition definition : typeRegistry.getAllDataTypes()) {
+            dataTypes.add(definition.getTypeClass().getName());
+        }
+        return new ContractIndex(new ArrayList<>(contracts), new ArrayList<>(dataTypes));
+    }
+
+    /**
+     * Loads the index stored in the jar.
+     *
+     * @param classLoader the class loader of the chaincode
+     * @return the index, or null if the jar has none and the classpath must be scanned
+     */
+    public static ContractIndex load(final ClassLoader classLoader) {
+        try (InputStream in = classLoader.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                return null;
+            }
+            return read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + RESOURCE, e);
+        }
+    }
+
+    static ContractIndex read(final BufferedReader reader) throws IOException {
+        List<String> contracts = new ArrayList<>();
+        List<String> dataTypes = new ArrayList<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] entry = line.split("\\s+");
+            if (entry.length == 2 && CONTRACT.equals(entry[0])) {
+                contracts.add(entry[1]);
+            } else if (entry.length == 2 && DATA_TYPE.equals(entry[0])) {
+                dataTypes.add(entry[1]);
+            } else {
+                throw new IOException("Malformed entry in " + RESOURCE + ": " + line);
+            }
+        }
+        return new ContractIndex(contracts, dataTypes);
+    }
+
+    public List<String> getContracts() {
+        return contracts;
+    }
+
+    public List<String> getDataTypes() {
+        return dataTypes;
+    }
+
+    /**
+     * Registers the indexed contracts, with their transactions, and data types, as the
+     * shim's scan would.
+     *
+     * @param registry the routing registry of the router
+     * @param typeRegistry the type registry of the router
+     * @param classLoader the class loader of the chaincode
+     */
+    @SuppressWarnings("unchecked")
+    public void register(final RoutingRegistry registry, final TypeRegistry typeRegistry,
+                         final ClassLoader classLoader) {
+        for (String name : contracts) {
+            Class<?> contractClass = load(name, classLoader);
+            if (!ContractInterface.class.isAssignableFrom(contractClass)) {
+                throw new IllegalStateException(name + " in " + RESOURCE + " is not a contract");
+            }
+
+            ContractDefinition definition = registry.addNewContract((Class<ContractInterface>) contractClass);
+            for (Method method : contractClass.getMethods()) {
+                if (method.getAnnotation(Transaction.class) != null) {
+                    definition.addTxFunction(method);
+                }
+            }
+        }
+        for (String name : dataTypes) {
+            typeRegistry.addDataType(load(name, classLoader));
+        }
+    }
+
+    private static Class<?> load(final String name, final ClassLoader classLoader) {
+        try {
+            return Class.forName(name, true, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(RESOURCE + " lists " + name
+                    + ", which is not on the classpath; rebuild the chaincode", e);
+        }
+    }
+
+    /**
+     * Writes the index.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# Generated at build time by " + ContractIndex.class.getName() + ", do not edit.");
+        for (String name : contracts) {
+            lines.add(CONTRACT + " " + name);
+        }
+        for (String name : dataTypes) {
+            lines.add(DATA_TYPE + " " + name);
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates the index of the chaincode into a resource directory, failing if the
+     * contract metadata the shim builds from it on startup is not valid.
+     *
+     * @param args the resource directory
+     * @throws IOException if the resources cannot be written
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Expected the output directory");
+        }
+        Path directory = Paths.get(args[0]);
+
+        RoutingRegistry registry = new RoutingRegistryImpl();
+        TypeRegistry typeRegistry = TypeRegistry.getRegistry();
+        ContractIndex index = scan();
+        index.register(registry, typeRegistry, ContractIndex.class.getClassLoader());
+        MetadataBuilder.initialize(registry, typeRegistry);
+        MetadataBuilder.validate();
+
+        index.write(directory.resolve(RESOURCE));
+        System.out.printf("Indexed %d contracts and %d data types into %s%n", index.contracts.size(),
+                index.dataTypes.size(), directory);
+    }
+}
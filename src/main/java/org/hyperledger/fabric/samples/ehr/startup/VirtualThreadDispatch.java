@@ -0,0 +1,135 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.startup;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.metrics.Metrics;
+import org.hyperledger.fabric.metrics.MetricsProvider;
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+
+/**
+ * Invokes the transactions of the chaincode on virtual threads, on JDK 21 and later.
+ *
+ * The shim runs every invocation on a pool of five platform threads by default
+ * (TP_CORE_POOL_SIZE and TP_MAX_POOL_SIZE in config.props). An invocation holds its
+ * thread while it waits for the peer to answer each of its state requests, so a burst
+ * of evaluates such as ReadEHRData queues behind a few threads that are only waiting.
+ * A virtual thread leaves its carrier while it waits, so every invocation can have
+ * its own.
+ *
+ * The shim does not let its executor be configured, but registers it with the metrics
+ * provider when the chaincode connects to the peer, before the first invocation. This
+ * provider takes the place of the configured one, delegates to it, and switches the
+ * executor to virtual threads when it is registered. The chaincode is still built for
+ * Java 11, so virtual threads are created through reflection.
+ */
+public final class VirtualThreadDispatch implements MetricsProvider {
+
+    private static final String METRICS_ENABLED = "CHAINCODE_METRICS_ENABLED";
+
+    private static final String METRICS_PROVIDER = "CHAINCODE_METRICS_PROVIDER";
+
+    private static final String THREAD_NAME_PREFIX = "fabric-txinvoke-virtual-";
+
+    private static final int VIRTUAL_THREADS_RELEASE = 21;
+
+    private static volatile MetricsProvider delegate = new MetricsProvider() {
+    };
+
+    private static volatile int maxThreads;
+
+    /**
+     * Creates the provider; the shim does so through {@link #install(Properties, int)}.
+     */
+    public VirtualThreadDispatch() {
+    }
+
+    /**
+     * Returns whether the running JVM has virtual threads.
+     *
+     * @return true on JDK 21 and later
+     */
+    public static boolean isAvailable() {
+        return Runtime.version().feature() >= VIRTUAL_THREADS_RELEASE;
+    }
+
+    /**
+     * Makes the shim invoke transactions on virtual threads. It must be called after the
+     * router is created, which initializes the metrics, and before the chaincode
+     * connects to the peer.
+     *
+     * @param config the chaincode configuration of the router
+     * @param maxThreads the maximum number of invocations at once
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static void install(final Properties config, final int maxThreads) {
+        newThreadFactory();
+
+        VirtualThreadDispatch.delegate = Metrics.getProvider();
+        VirtualThreadDispatch.maxThreads = maxThreads;
+        Properties properties = new Properties();
+        properties.putAll(config);
+        properties.setProperty(METRICS_ENABLED, "true");
+        properties.setProperty(METRICS_PROVIDER, VirtualThreadDispatch.class.getName());
+        Metrics.initialize(properties);
+    }
+
+    /**
+     * Switches an executor to one virtual thread per task, up to a maximum. Idle threads
+     * end after the keep-alive time of the executor rather than being pooled.
+     *
+     * @param executor the executor, before it runs its first task
+     * @param maxThreads the maximum number of tasks run at once
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static void dispatch(final ThreadPoolExecutor executor, final int maxThreads) {
+        executor.setThreadFactory(newThreadFactory());
+        if (maxThreads >= executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxThreads);
+            executor.setCorePoolSize(maxThreads);
+        } else {
+            executor.setCorePoolSize(maxThreads);
+            executor.setMaximumPoolSize(maxThreads);
+        }
+        if (executor.getKeepAliveTime(TimeUnit.NANOSECONDS) > 0) {
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("Virtual threads need JDK " + VIRTUAL_THREADS_RELEASE
+                    + ", this is " + Runtime.version());
+        }
+
+        try {
+            // Thread.ofVirtual().name(THREAD_NAME_PREFIX, 0).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, THREAD_NAME_PREFIX, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Cannot create virtual threads", e);
+        }
+    }
+
+    @Override
+    public void initialize(final Properties props) {
+        // The provider replaced is already initialized.
+    }
+
+    @Override
+    public void setTaskMetricsCollector(final TaskMetricsCollector taskService) {
+        if (taskService instanceof ThreadPoolExecutor) {
+            dispatch((ThreadPoolExecutor) taskService, maxThreads);
+        }
+        delegate.setTaskMetricsCollector(taskService);
+    }
+}
@@ -0,0 +1,25 @@
+package org.hyperledger.fabric.samples.ehr.utils;
+
+public final class BatchItemError {
+    private final int index;
+    private final String id;
+    private final String error;
+
+    public BatchItemError(final int index, final String id, final String error) {
+        this.index = index;
+        this.id = id;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,21 @@
+package org.hyperledger.fabric.samples.ehr.utils;
+
+import java.util.List;
+
+public final class BatchReadResult {
+    private final List<Object> data;
+    private final List<String> missingIds;
+
+    public BatchReadResult(final List<Object> data, final List<String> missingIds) {
+        this.data = data;
+        this.missingIds = missingIds;
+    }
+
+    public List<Object> getData() {
+        return data;
+    }
+
+    public List<String> getMissingIds() {
+        return missingIds;
+    }
+}
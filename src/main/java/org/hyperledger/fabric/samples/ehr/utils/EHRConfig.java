@@ -0,0 +1,159 @@
+package org.hyperledger.fabric.samples.ehr.utils;
+
+import java.util.Locale;
+
+import org.hyperledger.fabric.samples.ehr.codec.EHRDataCodec;
+
+/**
+ * Settings read from the chaincode environment.
+ */
+public final class EHRConfig {
+
+    public static final String MAX_BATCH_SIZE = "EHR_MAX_BATCH_SIZE";
+
+    public static final String STATE_FORMAT = "EHR_STATE_FORMAT";
+
+    public static final String REQUIRE_INDEXED_QUERIES = "EHR_REQUIRE_INDEXED_QUERIES";
+
+    public static final String METRICS_PORT = "EHR_METRICS_PORT";
+
+    public static final String COMPRESSION_THRESHOLD = "EHR_COMPRESSION_THRESHOLD";
+
+    public static final String MAX_CHUNK_SIZE = "EHR_MAX_CHUNK_SIZE";
+
+    public static final String VIRTUAL_THREADS = "EHR_VIRTUAL_THREADS";
+
+    public static final String MAX_VIRTUAL_THREADS = "EHR_MAX_VIRTUAL_THREADS";
+
+    public static final String DECODE_CACHE_MAX_BYTES = "EHR_DECODE_CACHE_MAX_BYTES";
+
+    public static final String MAX_PAGE_SIZE = "EHR_MAX_PAGE_SIZE";
+
+    static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+    static final int DEFAULT_MAX_CHUNK_SIZE = 1024 * 1024;
+
+    static final int DEFAULT_MAX_VIRTUAL_THREADS = 10_000;
+
+    static final int DEFAULT_DECODE_CACHE_MAX_BYTES = 32 * 1024 * 1024;
+
+    static final int DEFAULT_MAX_PAGE_SIZE = 1000;
+
+    private EHRConfig() {
+    }
+
+    /**
+     * Returns the maximum number of records accepted by a single batch transaction.
+     *
+     * @return the value of EHR_MAX_BATCH_SIZE, or 1000 when it is not set
+     */
+    public static int getMaxBatchSize() {
+        return getInt(MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Returns the format EHR data is written to the world state in.
+     *
+     * @return the value of EHR_STATE_FORMAT, either json or binary, or json when it is not set
+     */
+    public static EHRDataCodec.Format getStateFormat() {
+        String value = System.getenv(STATE_FORMAT);
+        if (value == null || value.trim().isEmpty()) {
+            return EHRDataCodec.Format.JSON;
+        }
+        return EHRDataCodec.Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns whether rich queries that no shipped CouchDB index can serve are rejected
+     * rather than only logged.
+     *
+     * @return the value of EHR_REQUIRE_INDEXED_QUERIES, or false when it is not set
+     */
+    public static boolean isIndexedQueryRequired() {
+        String value = System.getenv(REQUIRE_INDEXED_QUERIES);
+        return value != null && Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Returns the port the Prometheus metrics endpoint listens on.
+     *
+     * @return the value of EHR_METRICS_PORT, or 0 when it is not set and the endpoint is disabled
+     */
+    public static int getMetricsPort() {
+        return getInt(METRICS_PORT, 0);
+    }
+
+    /**
+     * Returns the size from which text data and attachments are stored compressed.
+     * Like the state format, it must be the same on every endorsing peer.
+     *
+     * @return the value of EHR_COMPRESSION_THRESHOLD in bytes, 0 to disable compression,
+     *         or 1024 when it is not set
+     */
+    public static int getCompressionThreshold() {
+        return getInt(COMPRESSION_THRESHOLD, DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Returns the maximum size of a chunk of an attachment uploaded in chunks.
+     *
+     * @return the value of EHR_MAX_CHUNK_SIZE in decoded bytes, or 1048576 when it is not set
+     */
+    public static int getMaxChunkSize() {
+        return getInt(MAX_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns whether transactions are invoked on virtual threads rather than on the
+     * shim's pool of platform threads. It takes effect on JDK 21 and later.
+     *
+     * @return the value of EHR_VIRTUAL_THREADS, or false when it is not set
+     */
+    public static boolean isVirtualThreads() {
+        String value = System.getenv(VIRTUAL_THREADS);
+        return value != null && Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Returns the maximum number of transactions invoked at once on virtual threads;
+     * further invocations queue as they do for the shim's pool.
+     *
+     * @return the value of EHR_MAX_VIRTUAL_THREADS, or 10000 when it is not set
+     */
+    public static int getMaxVirtualThreads() {
+        return getInt(MAX_VIRTUAL_THREADS, DEFAULT_MAX_VIRTUAL_THREADS);
+    }
+
+    /**
+     * Returns the heap the process-wide cache of decoded EHR data may retain. Unlike
+     * the state format, it may differ between peers; it only changes how often
+     * records are parsed.
+     *
+     * @return the value of EHR_DECODE_CACHE_MAX_BYTES, 0 to disable the cache,
+     *         or 33554432 when it is not set
+     */
+    public static long getDecodeCacheMaxBytes() {
+        return getInt(DECODE_CACHE_MAX_BYTES, DEFAULT_DECODE_CACHE_MAX_BYTES);
+    }
+
+    /**
+     * Returns the maximum number of records or entries in a page of a scan or
+     * history; larger page sizes asked for are capped to it.
+     *
+     * @return the value of EHR_MAX_PAGE_SIZE, or 1000 when it is not set
+     */
+    public static int getMaxPageSize() {
+        return getInt(MAX_PAGE_SIZE, DEFAULT_MAX_PAGE_SIZE);
+    }
+
+    static int getInt(final String name, final int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+}
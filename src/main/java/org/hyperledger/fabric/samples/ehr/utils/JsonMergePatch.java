@@ -0,0 +1,42 @@
+package org.hyperledger.fabric.samples.ehr.utils;
+
+import org.json.JSONObject;
+
+/**
+ * JSON merge patch, as defined by RFC 7386.
+ *
+ * A patch object replaces the members it names, removes those it sets to null and
+ * merges nested objects recursively; any other patch value replaces the target.
+ */
+public final class JsonMergePatch {
+
+    private JsonMergePatch() {
+    }
+
+    /**
+     * Applies a merge patch to a JSON value.
+     *
+     * @param target the value to patch, which is not modified
+     * @param patch the patch
+     * @return the patched value
+     */
+    public static Object apply(final Object target, final Object patch) {
+        if (!(patch instanceof JSONObject)) {
+            return patch;
+        }
+
+        JSONObject patched = target instanceof JSONObject
+                ? new JSONObject(target.toString())
+                : new JSONObject();
+        JSONObject members = (JSONObject) patch;
+        for (String name : members.keySet()) {
+            Object value = members.get(name);
+            if (value == JSONObject.NULL) {
+                patched.remove(name);
+            } else {
+                patched.put(name, apply(patched.opt(name), value));
+            }
+        }
+        return patched;
+    }
+}
@@ -1,5 +1,8 @@
 package org.hyperledger.fabric.samples.ehr.utils;
 
+import org.hyperledger.fabric.samples.ehr.codec.JsonSerializable;
+
+@JsonSerializable
 public final class PageResult {
     private final Object data;
     private final String previousBookMark;
@@ -0,0 +1,73 @@
+package org.hyperledger.fabric.samples.ehr.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.hyperledger.fabric.samples.ehr.codec.JsonCodecs;
+
+/**
+ * Writes a {@link PageResult} shaped JSON document one record at a time into a
+ * buffer bounded by a byte budget, so that a page never has to be materialized
+ * as a list before it is serialized.
+ */
+public final class PageWriter {
+
+    private static final byte[] SEPARATOR = {','};
+
+    private final int byteBudget;
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    private int count;
+
+    public PageWriter(final int byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * Appends a record to the page if it fits in the byte budget. The first record
+     * is always accepted so that a scan makes progress even when a single record
+     * is larger than the budget.
+     *
+     * @param record the record to append
+     * @return true if the record was appended, false if the budget is exhausted
+     */
+    public boolean append(final Object record) {
+        byte[] json = JsonCodecs.toBytes(record);
+
+        if (count > 0 && data.size() + SEPARATOR.length + json.length > byteBudget) {
+            return false;
+        }
+
+        if (count > 0) {
+            data.write(SEPARATOR, 0, SEPARATOR.length);
+        }
+        data.write(json, 0, json.length);
+        count++;
+        return true;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Closes the page with its bookmarks.
+     *
+     * @param previousBookMark the bookmark the page was read from
+     * @param bookMark the bookmark to resume from, empty when the scan is complete
+     * @return the page in the same shape as a serialized {@link PageResult}
+     */
+    public String toJson(final String previousBookMark, final String bookMark) {
+        return "{\"bookMark\":" + JsonCodecs.toJson(bookMark)
+                + ",\"data\":[" + new String(data.toByteArray(), StandardCharsets.UTF_8) + "]"
+                + ",\"previousBookMark\":" + JsonCodecs.toJson(previousBookMark) + "}";
+    }
+
+    /**
+     * Returns the appended records as a JSON array.
+     *
+     * @return the JSON array of the appended records
+     */
+    public String toJsonArray() {
+        return "[" + new String(data.toByteArray(), StandardCharsets.UTF_8) + "]";
+    }
+}
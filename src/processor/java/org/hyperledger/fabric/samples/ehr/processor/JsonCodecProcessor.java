@@ -0,0 +1,431 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code JsonCodec} for every contract {@code @DataType} class and every
+ * {@code @JsonSerializable} class, so that they are read and written without Genson's
+ * reflection.
+ *
+ * The generated codec writes what Genson writes with its default settings: the
+ * properties of the public getters and public fields in the order of their names,
+ * nulls included and dates as milliseconds. It reads through the constructor Genson
+ * would use, the one annotated with {@code @JsonCreator} or else the one with the
+ * most parameters, matching parameters to properties by their {@code @JsonProperty}
+ * name or else their own name.
+ *
+ * Properties may be primitives, strings, dates, objects whose type is only known at
+ * run time, or types that have a generated codec themselves.
+ */
+@SupportedAnnotationTypes({
+        JsonCodecProcessor.DATA_TYPE,
+        JsonCodecProcessor.JSON_SERIALIZABLE
+})
+public final class JsonCodecProcessor extends AbstractProcessor {
+
+    static final String DATA_TYPE = "org.hyperledger.fabric.contract.annotation.DataType";
+    static final String JSON_SERIALIZABLE = "org.hyperledger.fabric.samples.ehr.codec.JsonSerializable";
+
+    private static final String JSON_CREATOR = "com.owlike.genson.annotation.JsonCreator";
+    private static final String JSON_PROPERTY = "com.owlike.genson.annotation.JsonProperty";
+    private static final String JSON_IGNORE = "com.owlike.genson.annotation.JsonIgnore";
+
+    private static final String CODEC_PACKAGE = "org.hyperledger.fabric.samples.ehr.codec";
+    private static final String SUFFIX = "JsonCodec";
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment round) {
+        for (TypeElement annotation : annotations) {
+            for (TypeElement type : ElementFilter.typesIn(round.getElementsAnnotatedWith(annotation))) {
+                if (generated.add(type.getQualifiedName().toString())) {
+                    generate(type);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void generate(final TypeElement type) {
+        Map<String, Property> properties;
+        ExecutableElement creator;
+        try {
+            properties = properties(type);
+            creator = creator(type);
+        } catch (UnsupportedTypeException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            return;
+        }
+        if (creator == null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "A JSON codec needs a public constructor taking the properties", type);
+            return;
+        }
+
+        String packageName = packageOf(type).getQualifiedName().toString();
+        String codecName = codecName(type);
+        String typeName = type.getQualifiedName().toString();
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import ").append(CODEC_PACKAGE).append(".JsonCodec;\n")
+                .append("import ").append(CODEC_PACKAGE).append(".JsonInput;\n")
+                .append("import ").append(CODEC_PACKAGE).append(".JsonOutput;\n\n")
+                .append("/**\n * Reads and writes {@link ").append(typeName).append("} as Genson does.\n */\n")
+                .append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n")
+                .append("public final class ").append(codecName).append(" implements JsonCodec<")
+                .append(typeName).append("> {\n\n")
+                .append("    public static final ").append(codecName).append(" INSTANCE = new ").append(codecName)
+                .append("();\n\n");
+
+        int index = 0;
+        for (Property property : properties.values()) {
+            source.append("    private static final byte[] FIELD_").append(index).append(" = JsonOutput.field(")
+                    .append(index == 0).append(", ").append(literal(property.name)).append(");\n");
+            index++;
+        }
+        if (properties.isEmpty()) {
+            source.append("    private static final byte[] EMPTY = JsonOutput.ascii(\"{}\");\n");
+        }
+        source.append('\n');
+
+        List<? extends VariableElement> parameters = creator.getParameters();
+        List<String> parameterNames = new ArrayList<>();
+        for (VariableElement parameter : parameters) {
+            parameterNames.add(literal(jsonName(parameter)));
+        }
+        source.append("    private static final JsonInput.Names NAMES = JsonInput.names(")
+                .append(String.join(", ", parameterNames)).append(");\n\n")
+                .append("    private ").append(codecName).append("() {\n    }\n\n");
+
+        source.append("    @Override\n    public void write(final ").append(typeName)
+                .append(" value, final JsonOutput out) {\n");
+        if (properties.isEmpty()) {
+            source.append("        out.raw(EMPTY);\n");
+        }
+        index = 0;
+        for (Property property : properties.values()) {
+            source.append("        out.raw(FIELD_").append(index++).append(");\n")
+                    .append("        ").append(property.kind.write("value." + property.accessor)).append(";\n");
+        }
+        if (!properties.isEmpty()) {
+            source.append("        out.raw('}');\n");
+        }
+        source.append("    }\n\n");
+
+        source.append("    @Override\n    public ").append(typeName).append(" read(final JsonInput in) {\n")
+                .append("        if (in.readNull()) {\n            return null;\n        }\n");
+        List<ValueKind> parameterKinds = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            ValueKind kind;
+            try {
+                kind = kind(parameters.get(i).asType(), parameters.get(i));
+            } catch (UnsupportedTypeException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+                return;
+            }
+            parameterKinds.add(kind);
+            source.append("        ").append(kind.javaType).append(" p").append(i).append(" = ")
+                    .append(kind.defaultValue).append(";\n");
+        }
+        source.append("        in.beginObject();\n")
+                .append("        for (int field = in.nextField(NAMES); field != JsonInput.END; "
+                        + "field = in.nextField(NAMES)) {\n")
+                .append("            switch (field) {\n");
+        for (int i = 0; i < parameters.size(); i++) {
+            source.append("                case ").append(i).append(":\n")
+                    .append("                    p").append(i).append(" = ").append(parameterKinds.get(i).read)
+                    .append(";\n                    break;\n");
+        }
+        source.append("                default:\n                    in.skipValue();\n                    break;\n")
+                .append("            }\n        }\n");
+        List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            arguments.add("p" + i);
+        }
+        source.append("        return new ").append(typeName).append("(").append(String.join(", ", arguments))
+                .append(");\n    }\n}\n");
+
+        String qualifiedName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write " + qualifiedName + ": " + e.getMessage(), type);
+        }
+    }
+
+    /**
+     * Collects the properties Genson serializes, sorted by name: the public getters,
+     * then the public fields not already covered by a getter.
+     */
+    private Map<String, Property> properties(final TypeElement type) throws UnsupportedTypeException {
+        Map<String, Property> properties = new TreeMap<>();
+        List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(type);
+
+        for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+            String name = getterName(method);
+            if (name == null || hasAnnotation(method, JSON_IGNORE)) {
+                continue;
+            }
+            String jsonName = annotatedName(method, name);
+            properties.put(jsonName, new Property(jsonName, method.getSimpleName() + "()",
+                    kind(method.getReturnType(), method)));
+        }
+        for (VariableElement field : ElementFilter.fieldsIn(members)) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                    || modifiers.contains(Modifier.TRANSIENT) || hasAnnotation(field, JSON_IGNORE)) {
+                continue;
+            }
+            String jsonName = annotatedName(field, field.getSimpleName().toString());
+            if (!properties.containsKey(jsonName)) {
+                properties.put(jsonName, new Property(jsonName, field.getSimpleName().toString(),
+                        kind(field.asType(), field)));
+            }
+        }
+        return properties;
+    }
+
+    private static String getterName(final ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                || !method.getParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID) {
+            return null;
+        }
+
+        String name = method.getSimpleName().toString();
+        String property;
+        if (name.startsWith("get") && name.length() > "get".length() && !"getClass".equals(name)) {
+            property = name.substring("get".length());
+        } else if (name.startsWith("is") && name.length() > "is".length()
+                && method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+            property = name.substring("is".length());
+        } else {
+            return null;
+        }
+        return Character.toLowerCase(property.charAt(0)) + property.substring(1);
+    }
+
+    /**
+     * Finds the constructor Genson deserializes through.
+     */
+    private static ExecutableElement creator(final TypeElement type) {
+        ExecutableElement creator = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (hasAnnotation(constructor, JSON_CREATOR)) {
+                return constructor;
+            }
+            if (constructor.getModifiers().contains(Modifier.PUBLIC)
+                    && (creator == null || constructor.getParameters().size() > creator.getParameters().size())) {
+                creator = constructor;
+            }
+        }
+        return creator;
+    }
+
+    /**
+     * Maps a Java type to the calls that write and read it.
+     */
+    private ValueKind kind(final TypeMirror type, final Element element) throws UnsupportedTypeException {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return new ValueKind("boolean", "false", "out.bool(%s)", "in.readBoolean()");
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                String integer = type.toString();
+                if ("long".equals(integer)) {
+                    return new ValueKind(integer, "0", "out.number(%s)", "in.readLong()");
+                }
+                return new ValueKind(integer, "0", "out.number((long) %s)", "(" + integer + ") in.readLong()");
+            case FLOAT:
+                return new ValueKind("float", "0", "out.number(%s)", "(float) in.readDouble()");
+            case DOUBLE:
+                return new ValueKind("double", "0", "out.number(%s)", "in.readDouble()");
+            case DECLARED:
+                TypeElement declared = (TypeElement) ((DeclaredType) type).asElement();
+                String name = declared.getQualifiedName().toString();
+                switch (name) {
+                    case "java.lang.String":
+                        return new ValueKind(name, "null", "out.string(%s)", "in.readString()");
+                    case "java.util.Date":
+                        return new ValueKind(name, "null", "out.date(%s)", "in.readDate()");
+                    case "java.lang.Object":
+                        return new ValueKind(name, "null", "out.value(%s)", "in.readValue()");
+                    default:
+                        if (hasAnnotation(declared, DATA_TYPE) || hasAnnotation(declared, JSON_SERIALIZABLE)) {
+                            String codec = packageOf(declared).getQualifiedName() + "." + codecName(declared);
+                            return new ValueKind(name, "null", "out.value(%s, " + codec + ".INSTANCE)",
+                                    codec + ".INSTANCE.read(in)");
+                        }
+                        break;
+                }
+                break;
+            default:
+                break;
+        }
+        throw new UnsupportedTypeException("A JSON codec cannot be generated for a property of type " + type,
+                element);
+    }
+
+    private static String jsonName(final VariableElement parameter) {
+        return annotatedName(parameter, parameter.getSimpleName().toString());
+    }
+
+    private static String annotatedName(final Element element, final String defaultName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (!JSON_PROPERTY.equals(annotationName(annotation))) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                    : annotation.getElementValues().entrySet()) {
+                if ("value".contentEquals(value.getKey().getSimpleName())
+                        && !value.getValue().getValue().toString().isEmpty()) {
+                    return value.getValue().getValue().toString();
+                }
+            }
+        }
+        return defaultName;
+    }
+
+    private static boolean hasAnnotation(final Element element, final String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotationName.equals(annotationName(annotation))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String annotationName(final AnnotationMirror annotation) {
+        return ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    /**
+     * Returns the simple name of the codec of a type, with the names of the classes
+     * enclosing a nested type joined by underscores.
+     */
+    private static String codecName(final TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Element enclosing = type.getEnclosingElement(); enclosing.getKind() != ElementKind.PACKAGE;
+             enclosing = enclosing.getEnclosingElement()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    private static PackageElement packageOf(final Element element) {
+        Element enclosing = element;
+        while (enclosing.getKind() != ElementKind.PACKAGE) {
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return (PackageElement) enclosing;
+    }
+
+    private static String literal(final String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char current : value.toCharArray()) {
+            if (current == '"' || current == '\\') {
+                literal.append('\\').append(current);
+            } else if (current < ' ' || current > '~') {
+                literal.append(String.format("\\u%04x", (int) current));
+            } else {
+                literal.append(current);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    /**
+     * A serialized property and the expression reading it from a value.
+     */
+    private static final class Property {
+
+        private final String name;
+        private final String accessor;
+        private final ValueKind kind;
+
+        Property(final String name, final String accessor, final ValueKind kind) {
+            this.name = name;
+            this.accessor = accessor;
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * How a Java type is written and read.
+     */
+    private static final class ValueKind {
+
+        private final String javaType;
+        private final String defaultValue;
+        private final String write;
+        private final String read;
+
+        ValueKind(final String javaType, final String defaultValue, final String write, final String read) {
+            this.javaType = javaType;
+            this.defaultValue = defaultValue;
+            this.write = write;
+            this.read = read;
+        }
+
+        String write(final String value) {
+            return String.format(write, value);
+        }
+    }
+
+    /**
+     * A property whose type has no JSON mapping.
+     */
+    private static final class UnsupportedTypeException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        UnsupportedTypeException(final String message, final Element element) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
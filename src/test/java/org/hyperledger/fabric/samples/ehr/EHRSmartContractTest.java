@@ -4,25 +4,104 @@
 
 package org.hyperledger.fabric.samples.ehr;
 
+import com.google.protobuf.ByteString;
+import com.owlike.genson.Genson;
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.protos.msp.Identities;
+import org.hyperledger.fabric.samples.ehr.events.ChangeFeed;
+import org.hyperledger.fabric.samples.ehr.events.EHRDataChange;
+import org.hyperledger.fabric.samples.ehr.ledger.AttachmentStore;
+import org.hyperledger.fabric.samples.ehr.ledger.ChunkedAttachmentStore;
+import org.hyperledger.fabric.samples.ehr.ledger.EHRDataStats;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryLedger;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.ThrowableAssert.catchThrowable;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.inOrder;
 
 public final class EHRSmartContractTest {
 
+    private static final String ATTACHMENT_BASE64 = "U2FtcGxlIEF0dGFjaG1lbnQ=";
+
+    private static final byte[] ATTACHMENT_BASE64_DECODED = "Sample Attachment".getBytes(StandardCharsets.UTF_8);
+
+    private static final String ATTACHMENT_DIGEST = AttachmentStore.digest(ATTACHMENT_BASE64_DECODED);
+
+    static final byte[] CREATOR = Identities.SerializedIdentity.newBuilder()
+            .setMspid("Org1MSP")
+            .setIdBytes(ByteString.copyFromUtf8("-----BEGIN CERTIFICATE-----\n"
+                    + "MIICMjCCAdmgAwIBAgIUIWU5lBcC20rKmxmp45T6f8GcesAwCgYIKoZIzj0EAwIw\n"
+                    + "bjELMAkGA1UEBhMCVVMxFzAVBgNVBAgMDk5vcnRoIENhcm9saW5hMRQwEgYDVQQK\n"
+                    + "DAtIeXBlcmxlZGdlcjEPMA0GA1UECwwGY2xpZW50MR8wHQYDVQQDDBZVc2VyMUBv\n"
+                    + "cmcxLmV4YW1wbGUuY29tMCAXDTI2MTAxODA4MDEzMFoYDzIxMjYwOTI0MDgwMTMw\n"
+                    + "WjBuMQswCQYDVQQGEwJVUzEXMBUGA1UECAwOTm9ydGggQ2Fyb2xpbmExFDASBgNV\n"
+                    + "BAoMC0h5cGVybGVkZ2VyMQ8wDQYDVQQLDAZjbGllbnQxHzAdBgNVBAMMFlVzZXIx\n"
+                    + "QG9yZzEuZXhhbXBsZS5jb20wWTATBgcqhkjOPQIBBggqhkjOPQMBBwNCAAQ18wm0\n"
+                    + "sCtSmfHW3ybi1r7mwe5zgMNyIq0Ni64W8SF626ulIbG/hqy2PN9ETa9xmZ8HV68e\n"
+                    + "UHZG1luATJZDtDs6o1MwUTAdBgNVHQ4EFgQUddHRT9Tf6oJcrOux1VZJbchMMfww\n"
+                    + "HwYDVR0jBBgwFoAUddHRT9Tf6oJcrOux1VZJbchMMfwwDwYDVR0TAQH/BAUwAwEB\n"
+                    + "/zAKBggqhkjOPQQDAgNHADBEAiAi9EF/EHL8jdfPL1IH6S5AhrF6mN9h9t5STlOt\n"
+                    + "dBSwGwIgYLxF4SB6bnrFBN/hv9lnC3cwTgnjnXC6vnNq+N06awI=\n"
+                    + "-----END CERTIFICATE-----\n"))
+            .build()
+            .toByteArray();
+
+    static ChaincodeStub mockStubWithCompositeKeys() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.createCompositeKey(anyString(), any())).thenAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            List<String> attributes = new ArrayList<>();
+            for (int i = 1; i < arguments.length; i++) {
+                if (arguments[i] instanceof String[]) {
+                    attributes.addAll(Arrays.asList((String[]) arguments[i]));
+                } else {
+                    attributes.add((String) arguments[i]);
+                }
+            }
+            return new CompositeKey((String) arguments[0], attributes);
+        });
+        when(stub.splitCompositeKey(anyString()))
+                .thenAnswer(invocation -> CompositeKey.parseCompositeKey(invocation.getArgument(0)));
+        when(stub.getTxId()).thenReturn("9f3c6a1e");
+        when(stub.getTxTimestamp()).thenReturn(Instant.parse("2026-10-18T08:00:00Z"));
+        return stub;
+    }
+
     @Test
     public void invokeUnknownTransaction() {
         EHRSmartContract contract = new EHRSmartContract();
@@ -37,6 +116,29 @@ public final class EHRSmartContractTest {
         verifyZeroInteractions(ctx);
     }
 
+    @Nested
+    class TransactionContext {
+
+        @Test
+        public void memoizesReadsAndBuffersWrites() {
+            EHRSmartContract contract = new EHRSmartContract();
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(stub.getCreator()).thenReturn(CREATOR);
+            Context ctx = contract.createContext(stub);
+
+            contract.CreateEHRData(ctx, "{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"name\": \"Annette KOEPP\" }");
+            EHRData ehrData = contract.ReadEHRData(ctx, "2bb3260-e24-f036-8c-360da8156");
+
+            assertThat(ehrData.getName()).isEqualTo("Annette KOEPP");
+            verify(stub, times(1)).getState("2bb3260-e24-f036-8c-360da8156");
+            verify(stub, never()).putState(anyString(), any());
+
+            contract.afterTransaction(ctx, null);
+
+            verify(stub).putState(eq("2bb3260-e24-f036-8c-360da8156"), any());
+        }
+    }
+
     @Nested
     class InvokeReadEHRTransaction {
 
@@ -46,8 +148,8 @@ public final class EHRSmartContractTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("2bb3260-e24-f036-8c-360da8156"))
-                    .thenReturn("{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"textData\": \"Sample Text Data\", \"name\": \"Annette KOEPP\", \"size\": \"100 kB\", \"doc\": false, \"fileType\": \"\", \"fileName\": \"\", \"base64String\": \"\" }");
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156"))
+                    .thenReturn("{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"textData\": \"Sample Text Data\", \"name\": \"Annette KOEPP\", \"size\": \"100 kB\", \"doc\": false, \"fileType\": \"\", \"fileName\": \"\", \"base64String\": \"\" }".getBytes(StandardCharsets.UTF_8));
 
             EHRData ehrData = contract.ReadEHRData(ctx, "2bb3260-e24-f036-8c-360da8156");
 
@@ -70,7 +172,7 @@ public final class EHRSmartContractTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("2bb3260-e24-f036-8c-360da8156")).thenReturn("");
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156")).thenReturn(new byte[0]);
 
             Throwable thrown = catchThrowable(() -> {
                 contract.ReadEHRData(ctx, "2bb3260-e24-f036-8c-360da8156");
@@ -89,9 +191,9 @@ public final class EHRSmartContractTest {
         public void whenEHRDataDoesNotExist() {
             EHRSmartContract contract = new EHRSmartContract();
             Context ctx = mock(Context.class);
-            ChaincodeStub stub = mock(ChaincodeStub.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("2bb3260-e24-f036-8c-360da8156")).thenReturn("");
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156")).thenReturn(new byte[0]);
 
             String payload = "{\n"
                     +
@@ -117,49 +219,1265 @@ public final class EHRSmartContractTest {
 
             assertThat(ehrData).isEqualTo(ehrData);
         }
+
+        @Test
+        public void indexesEHRData() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+
+            contract.CreateEHRData(ctx, "{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"name\": \"Annette KOEPP\", "
+                    + "\"doc\": true, \"fileType\": \"pdf\" }");
+
+            byte[] marker = {0x00};
+            verify(stub).putState(new CompositeKey("fileType~id", "pdf", "2bb3260-e24-f036-8c-360da8156").toString(),
+                    marker);
+            verify(stub).putState(new CompositeKey("name~id", "Annette KOEPP", "2bb3260-e24-f036-8c-360da8156")
+                    .toString(), marker);
+            verify(stub).putState(new CompositeKey("doc~id", "true", "2bb3260-e24-f036-8c-360da8156").toString(),
+                    marker);
+            verify(stub).putState(argThat(key -> key.startsWith(new CompositeKey("createdAt~id").toString())),
+                    eq(marker));
+        }
+
+        @Test
+        public void whenEHRDataHasAttachment() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156")).thenReturn(new byte[0]);
+
+            String payload = "{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"textData\": \"Sample Text Data\", "
+                    + "\"name\": \"Annette KOEPP\", \"size\": \"100 kB\", \"doc\": true, \"fileType\": \"pdf\", "
+                    + "\"fileName\": \"report.pdf\", \"base64String\": \"" + ATTACHMENT_BASE64 + "\" }";
+
+            contract.CreateEHRData(ctx, payload);
+
+            verify(stub).putState(new CompositeKey("ehr~attachment", ATTACHMENT_DIGEST).toString(),
+                    ATTACHMENT_BASE64_DECODED);
+            verify(stub).putState(new CompositeKey("ehr~attachmentRefs", ATTACHMENT_DIGEST).toString(),
+                    "1".getBytes(StandardCharsets.UTF_8));
+
+            ArgumentCaptor<byte[]> record = ArgumentCaptor.forClass(byte[].class);
+            verify(stub).putState(eq("2bb3260-e24-f036-8c-360da8156"), record.capture());
+            assertThat(new String(record.getValue(), StandardCharsets.UTF_8))
+                    .contains("\"attachmentDigest\":\"" + ATTACHMENT_DIGEST + "\"")
+                    .contains("\"attachmentSize\":" + ATTACHMENT_BASE64_DECODED.length)
+                    .doesNotContain(ATTACHMENT_BASE64);
+        }
+
+        @Test
+        public void whenAttachmentIsNotBase64() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156")).thenReturn(new byte[0]);
+
+            Throwable thrown = catchThrowable(() -> contract.CreateEHRData(ctx,
+                    "{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"base64String\": \"not base64!\" }"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHR Data 2bb3260-e24-f036-8c-360da8156 has an invalid base64 attachment");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_ATTACHMENT".getBytes());
+        }
+    }
+
+    @Nested
+    class InvokeCreateEHRDataBatchTransaction {
+
+        @Test
+        public void whenAllEHRDataAreNew() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+
+            String createdIds = contract.CreateEHRDataBatch(ctx, "[{ \"id\": \"2bb3260-e24-f036-8c-360da8156\" }, "
+                    + "{ \"id\": \"66faa1f-021a-bfc7-43e7-470cbdebac3\", \"base64String\": \"" + ATTACHMENT_BASE64 + "\" }]");
+
+            assertThat(createdIds).isEqualTo("[\"2bb3260-e24-f036-8c-360da8156\",\"66faa1f-021a-bfc7-43e7-470cbdebac3\"]");
+            verify(stub).putState(eq("2bb3260-e24-f036-8c-360da8156"), any());
+            verify(stub).putState(eq("66faa1f-021a-bfc7-43e7-470cbdebac3"), any());
+            verify(stub).putState(new CompositeKey("ehr~attachment", ATTACHMENT_DIGEST).toString(),
+                    ATTACHMENT_BASE64_DECODED);
+        }
+
+        @Test
+        public void whenSomeEHRDataAreInvalid() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("66faa1f-021a-bfc7-43e7-470cbdebac3"))
+                    .thenReturn("{ \"id\": \"66faa1f-021a-bfc7-43e7-470cbdebac3\" }".getBytes(StandardCharsets.UTF_8));
+
+            Throwable thrown = catchThrowable(() -> contract.CreateEHRDataBatch(ctx, "["
+                    + "{ \"id\": \"2bb3260-e24-f036-8c-360da8156\" }, "
+                    + "{ \"id\": \"2bb3260-e24-f036-8c-360da8156\" }, "
+                    + "{ \"id\": \"66faa1f-021a-bfc7-43e7-470cbdebac3\" }, "
+                    + "{ \"id\": \"\" }, "
+                    + "{ \"id\": \"8fd2e4c-5e1b-4b0d-9b8a-2e0c4c7f2a1\", \"base64String\": \"not base64!\" }]"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHR Data batch rejected, 4 of 5 records are invalid: ["
+                            + "{\"error\":\"EHR_DUPLICATE_IN_BATCH\",\"id\":\"2bb3260-e24-f036-8c-360da8156\",\"index\":1},"
+                            + "{\"error\":\"EHR_ALREADY_EXISTS\",\"id\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\",\"index\":2},"
+                            + "{\"error\":\"EHR_INVALID_ID\",\"id\":\"\",\"index\":3},"
+                            + "{\"error\":\"EHR_INVALID_ATTACHMENT\",\"id\":\"8fd2e4c-5e1b-4b0d-9b8a-2e0c4c7f2a1\",\"index\":4}]");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_BATCH_REJECTED".getBytes());
+            verify(stub, never()).putState(anyString(), any());
+        }
+
+        @Test
+        public void whenBatchIsTooLarge() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+
+            StringBuilder payload = new StringBuilder("[");
+            for (int i = 0; i <= 1000; i++) {
+                payload.append(i == 0 ? "" : ",").append("{ \"id\": \"").append(i).append("\" }");
+            }
+            payload.append("]");
+
+            Throwable thrown = catchThrowable(() -> contract.CreateEHRDataBatch(ctx, payload.toString()));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHR Data batch of 1001 records exceeds the maximum batch size of 1000");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_BATCH_TOO_LARGE".getBytes());
+            verifyZeroInteractions(stub);
+        }
+    }
+
+    @Nested
+    class InvokeReadEHRDataBatchTransaction {
+
+        private EHRSmartContract contract;
+        private InMemoryLedger ledger;
+
+        @BeforeEach
+        public void setUp() {
+            contract = new EHRSmartContract();
+            ledger = new InMemoryLedger();
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            Context ctx = contract.createContext(stub);
+            contract.CreateEHRData(ctx, "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\",\"textData\":\"abc\","
+                    + "\"base64String\":\"" + ATTACHMENT_BASE64 + "\"}");
+            contract.CreateEHRData(ctx, "{\"id\":\"ehr-2\",\"name\":\"Tony RUTHERFORD\",\"textData\":\"def\"}");
+            contract.afterTransaction(ctx, null);
+            assertThat(ledger.commit(stub)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+        }
+
+        private JSONObject readBatch(final String ehrDataIds, final String projection) {
+            return new JSONObject(contract.ReadEHRDataBatch(contract.createContext(ledger.newTransaction()),
+                    ehrDataIds, projection));
+        }
+
+        @Test
+        public void returnsFoundRecordsAndMissingIds() {
+            JSONObject batch = readBatch("[\"ehr-2\",\"ehr-3\",\"ehr-1\"]", "full");
+
+            JSONArray data = batch.getJSONArray("data");
+            assertThat(data.length()).isEqualTo(2);
+            assertThat(data.getJSONObject(0).getString("id")).isEqualTo("ehr-2");
+            assertThat(data.getJSONObject(0).getString("textData")).isEqualTo("def");
+            assertThat(data.getJSONObject(1).getString("id")).isEqualTo("ehr-1");
+            assertThat(data.getJSONObject(1).getLong("attachmentSize")).isEqualTo(ATTACHMENT_BASE64_DECODED.length);
+            assertThat(batch.getJSONArray("missingIds").toList()).containsExactly("ehr-3");
+        }
+
+        @Test
+        public void projectsSummaries() {
+            JSONObject batch = readBatch("[\"ehr-1\",\"ehr-2\"]", "summary");
+
+            JSONObject summary = batch.getJSONArray("data").getJSONObject(0);
+            assertThat(summary.getString("name")).isEqualTo("Annette KOEPP");
+            assertThat(summary.getLong("attachmentSize")).isEqualTo(ATTACHMENT_BASE64_DECODED.length);
+            assertThat(summary.has("base64String")).isFalse();
+            assertThat(summary.has("textData")).isFalse();
+            assertThat(batch.getJSONArray("missingIds").isEmpty()).isTrue();
+        }
+
+        @Test
+        public void readsEachRecordOnce() {
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("ehr-1")).thenReturn("{\"id\":\"ehr-1\"}".getBytes(StandardCharsets.UTF_8));
+
+            JSONObject batch = new JSONObject(contract.ReadEHRDataBatch(ctx, "[\"ehr-1\",\"ehr-1\",\"\"]", "full"));
+
+            assertThat(batch.getJSONArray("data").length()).isEqualTo(1);
+            assertThat(batch.getJSONArray("missingIds").toList()).containsExactly("");
+            verify(stub, times(1)).getState("ehr-1");
+            verify(stub, never()).getState("");
+        }
+
+        @Test
+        public void whenProjectionIsUnknown() {
+            Throwable thrown = catchThrowable(() -> readBatch("[\"ehr-1\"]", "attachments"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHR Data projection attachments is not full or summary");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_UNKNOWN_PROJECTION".getBytes());
+        }
+    }
+
+    @Nested
+    class InvokeReadEHRDataSummaryTransaction {
+
+        @Test
+        public void whenEHRDataExists() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156"))
+                    .thenReturn(("{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"textData\": \"Sample Text Data\", "
+                            + "\"name\": \"Annette KOEPP\", \"size\": \"100 kB\", \"doc\": false, \"fileType\": \"\", "
+                            + "\"fileName\": \"\", \"base64String\": \"" + ATTACHMENT_BASE64 + "\" }")
+                            .getBytes(StandardCharsets.UTF_8));
+
+            EHRDataSummary summary = contract.ReadEHRDataSummary(ctx, "2bb3260-e24-f036-8c-360da8156");
+
+            assertThat(summary).isEqualTo(new EHRDataSummary(
+                    "2bb3260-e24-f036-8c-360da8156",
+                    "Annette KOEPP",
+                    "100 kB",
+                    false,
+                    "",
+                    "",
+                    null,
+                    ATTACHMENT_BASE64_DECODED.length
+            ));
+        }
+
+        @Test
+        public void whenEHRDataDoesNotExist() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> contract.ReadEHRDataSummary(ctx, "2bb3260-e24-f036-8c-360da8156"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHRData 2bb3260-e24-f036-8c-360da8156 does not exist");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHRData_NOT_FOUND".getBytes());
+        }
     }
 
     @Test
-    void invokeGetAllEHRDataTransaction() {
+    void invokeGetPaginatedEHRDataSummariesTransaction() {
         EHRSmartContract contract = new EHRSmartContract();
         Context ctx = mock(Context.class);
         ChaincodeStub stub = mock(ChaincodeStub.class);
         when(ctx.getStub()).thenReturn(stub);
-        when(stub.getStateByRange("", "")).thenReturn(new MockEHRDataResultsIterator());
+        when(stub.getStateByRangeWithPagination("", "", 10, ""))
+                .thenReturn(new MockEHRDataResultsInteratorWithMetadata());
 
-        String ehrData = contract.GetAllEHRData(ctx);
+        String page = contract.GetPaginatedEHRDataSummaries(ctx, "", "10", "");
 
-        assertThat(ehrData).isEqualTo("[{\"base64String\":\"\",\"createdAt\":null,\"doc\":false,\"fileName\":\"\",\"fileType\":\"\",\"id\":\"2bb3260-e24-f036-8c-360da8156\",\"name\":\"Annette KOEPP\",\"size\":\"100 kB\",\"textData\":\"Sample Text Data\"},{\"base64String\":\"\",\"createdAt\":null,\"doc\":false,\"fileName\":\"\",\"fileType\":\"\",\"id\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\",\"name\":\"Tony RUTHERFORD\",\"size\":\"100 kB\",\"textData\":\"Sample Text Data\"}]");
+        assertThat(page).isEqualTo("{\"bookMark\":\"\",\"data\":["
+                + "{\"attachmentSize\":0,\"createdAt\":null,\"doc\":false,\"fileName\":\"\",\"fileType\":\"\","
+                + "\"id\":\"2bb3260-e24-f036-8c-360da8156\",\"name\":\"Annette KOEPP\",\"size\":\"100 kB\"},"
+                + "{\"attachmentSize\":0,\"createdAt\":null,\"doc\":false,\"fileName\":\"\",\"fileType\":\"\","
+                + "\"id\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\",\"name\":\"Tony RUTHERFORD\",\"size\":\"100 kB\"}],"
+                + "\"previousBookMark\":\"\"}");
     }
 
-//    @Test
-    void invokeInitLedgerTransaction() {
-        EHRSmartContract ehrSmartContract = new EHRSmartContract();
-        Context ctx = mock(Context.class);
-        ChaincodeStub stub = mock(ChaincodeStub.class);
-        when(ctx.getStub()).thenReturn(stub);
+    @Nested
+    class InvokeQueryEHRDataByIndexTransaction {
 
-        ehrSmartContract.InitLedger(ctx);
+        @Test
+        public void whenAttributeIsIndexed() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKeyWithPagination(
+                    argThat(key -> key.toString().equals(new CompositeKey("fileType~id", "pdf").toString())),
+                    eq(10), eq("")))
+                    .thenReturn(new MockEHRDataResultsInteratorWithMetadata(Arrays.asList(
+                            new MockKeyValue(new CompositeKey("fileType~id", "pdf", "2bb3260-e24-f036-8c-360da8156")
+                                    .toString(), "\u0000"),
+                            new MockKeyValue(new CompositeKey("fileType~id", "pdf", "66faa1f-021a-bfc7-43e7-470cbdebac3")
+                                    .toString(), "\u0000"))));
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156"))
+                    .thenReturn("{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"fileType\": \"pdf\" }"
+                            .getBytes(StandardCharsets.UTF_8));
 
-        InOrder inOrder = inOrder(stub);
-        inOrder.verify(stub).putStringState("2bb3260-e24-f036-8c-360da8156", "{\"base64String\":\"\",\"createdAt\":" + new Date() + ",\"doc\":false,\"fileName\":\"\",\"fileType\":\"\",\"id\":\"2bb3260-e24-f036-8c-360da8156\",\"name\":\"Annette KOEPP\",\"size\":\"100 kB\",\"textData\":\"Sample Text Data\"}");
+            String page = contract.QueryEHRDataByIndex(ctx, "fileType", "pdf", "10", "");
+
+            assertThat(page).contains("\"id\":\"2bb3260-e24-f036-8c-360da8156\"")
+                    .doesNotContain("66faa1f-021a-bfc7-43e7-470cbdebac3");
+        }
+
+        @Test
+        public void whenAttributeIsNotIndexed() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> contract.QueryEHRDataByIndex(ctx, "textData", "x", "10", ""));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHR Data attribute textData is not indexed");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_UNKNOWN_INDEX".getBytes());
+        }
+
+        @Test
+        public void whenValueIsNotANumber() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> contract.QueryEHRDataByIndex(ctx, "byteSize", "large", "10", ""));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHR Data query by byteSize is invalid: byteSize large is not a number");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+        }
+
+        @Test
+        public void findsLegacyRecordsOnceUpgraded() {
+            EHRSmartContract contract = new EHRSmartContract();
+            InMemoryLedger ledger = new InMemoryLedger();
+            InMemoryChaincodeStub legacy = ledger.newTransaction();
+            legacy.putState("ehr-1", new Genson().serialize(new EHRData("ehr-1", "Legacy Text Data", "Annette KOEPP",
+                    "100 kB", false, "pdf", "report.pdf", null, null)).getBytes(StandardCharsets.UTF_8));
+            ledger.commit(legacy);
+            Function<String, Integer> byFileType = fileType -> new JSONObject(contract.QueryEHRDataByIndex(
+                    contract.createContext(ledger.newTransaction()), "fileType", fileType, "10", ""))
+                    .getJSONArray("data").length();
+            assertThat(byFileType.apply("pdf")).isZero();
+
+            InMemoryChaincodeStub upgrade = ledger.newTransaction();
+            Context ctx = contract.createContext(upgrade);
+            contract.afterTransaction(ctx, contract.UpgradeEHRData(ctx, "10", ""));
+            assertThat(ledger.commit(upgrade)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+
+            assertThat(byFileType.apply("pdf")).isEqualTo(1);
+            assertThat(contract.ReadEHRData(contract.createContext(ledger.newTransaction()), "ehr-1").getTextData())
+                    .isEqualTo("Legacy Text Data");
+        }
+    }
+
+    @Nested
+    class InvokeReadEHRAttachmentTransaction {
+
+        @Test
+        public void whenAttachmentIsStored() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156"))
+                    .thenReturn(("{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"attachmentDigest\": \""
+                            + ATTACHMENT_DIGEST + "\", \"attachmentSize\": " + ATTACHMENT_BASE64_DECODED.length + " }").getBytes(StandardCharsets.UTF_8));
+            when(stub.getState(new CompositeKey("ehr~attachment", ATTACHMENT_DIGEST).toString()))
+                    .thenReturn(ATTACHMENT_BASE64_DECODED);
+
+            String attachment = contract.ReadEHRAttachment(ctx, "2bb3260-e24-f036-8c-360da8156");
+
+            assertThat(attachment).isEqualTo(ATTACHMENT_BASE64);
+        }
+
+        @Test
+        public void whenAttachmentIsInline() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156"))
+                    .thenReturn(("{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"base64String\": \""
+                            + ATTACHMENT_BASE64 + "\" }").getBytes(StandardCharsets.UTF_8));
+
+            String attachment = contract.ReadEHRAttachment(ctx, "2bb3260-e24-f036-8c-360da8156");
+
+            assertThat(attachment).isEqualTo(ATTACHMENT_BASE64);
+        }
+
+        @Test
+        public void whenAttachmentIsMissing() {
+            EHRSmartContract contract = new EHRSmartContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStubWithCompositeKeys();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("2bb3260-e24-f036-8c-360da8156"))
+                    .thenReturn(("{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"attachmentDigest\": \""
+                            + ATTACHMENT_DIGEST + "\" }").getBytes(StandardCharsets.UTF_8));
+
+            Throwable thrown = catchThrowable(() -> contract.ReadEHRAttachment(ctx, "2bb3260-e24-f036-8c-360da8156"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Attachment " + ATTACHMENT_DIGEST
+                            + " of EHRData 2bb3260-e24-f036-8c-360da8156 does not exist");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_ATTACHMENT_NOT_FOUND".getBytes());
+        }
     }
 
     @Test
-    void invokeGetPaginatedEHRDataTransaction() {
+    void invokeGetAllEHRDataTransaction() {
         EHRSmartContract contract = new EHRSmartContract();
         Context ctx = mock(Context.class);
         ChaincodeStub stub = mock(ChaincodeStub.class);
         when(ctx.getStub()).thenReturn(stub);
-        when(stub
-                .getStateByRangeWithPagination(
-                        "",
-                        "",
-                        10,
-                        "")).thenReturn(new MockEHRDataResultsInteratorWithMetadata());
+        when(stub.getStateByRange("", "")).thenReturn(new MockEHRDataResultsIterator());
 
-        contract.GetPaginatedEHRData(ctx, "", "1", "");
+        String ehrData = contract.GetAllEHRData(ctx);
 
-        assertTrue(true);
+        assertThat(ehrData).isEqualTo("[{\"attachmentDigest\":null,\"attachmentSize\":0,\"base64String\":\"\",\"byteSize\":0,\"createdAt\":null,\"doc\":false,\"fileName\":\"\",\"fileType\":\"\",\"id\":\"2bb3260-e24-f036-8c-360da8156\",\"name\":\"Annette KOEPP\",\"size\":\"100 kB\",\"textData\":\"Sample Text Data\",\"textDataEncoding\":null,\"version\":0},{\"attachmentDigest\":null,\"attachmentSize\":0,\"base64String\":\"\",\"byteSize\":0,\"createdAt\":null,\"doc\":false,\"fileName\":\"\",\"fileType\":\"\",\"id\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\",\"name\":\"Tony RUTHERFORD\",\"size\":\"100 kB\",\"textData\":\"Sample Text Data\",\"textDataEncoding\":null,\"version\":0}]");
+    }
+
+    @Nested
+    class InvokeScanEHRDataTransaction {
+
+        private ChaincodeStub stub;
+
+        private Context ctx;
+
+        private EHRSmartContract contract;
+
+        @BeforeEach
+        public void setUp() {
+            contract = new EHRSmartContract();
+            ctx = mock(Context.class);
+            stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByRangeWithPagination(eq(""), eq(""), anyInt(), eq("")))
+                    .thenReturn(new MockEHRDataResultsInteratorWithMetadata());
+        }
+
+        @Test
+        public void whenAllRecordsFit() {
+            String page = contract.ScanEHRData(ctx, "10", "1048576", "");
+
+            verify(stub).getStateByRangeWithPagination("", "", 11, "");
+            assertThat(page).startsWith("{\"bookMark\":\"\",\"data\":[{")
+                    .contains("\"id\":\"2bb3260-e24-f036-8c-360da8156\"")
+                    .contains("\"id\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\"")
+                    .endsWith("}],\"previousBookMark\":\"\"}");
+        }
+
+        @Test
+        public void whenRecordBudgetIsReached() {
+            String page = contract.ScanEHRData(ctx, "1", "1048576", "");
+
+            verify(stub).getStateByRangeWithPagination("", "", 2, "");
+            assertThat(page).startsWith("{\"bookMark\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\",\"data\":[{")
+                    .contains("\"id\":\"2bb3260-e24-f036-8c-360da8156\"")
+                    .doesNotContain("\"id\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\"");
+        }
+
+        @Test
+        public void whenByteBudgetIsReached() {
+            String page = contract.ScanEHRData(ctx, "10", "1", "");
+
+            assertThat(page).startsWith("{\"bookMark\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\",\"data\":[{")
+                    .contains("\"id\":\"2bb3260-e24-f036-8c-360da8156\"")
+                    .doesNotContain("\"id\":\"66faa1f-021a-bfc7-43e7-470cbdebac3\"");
+        }
+
+        @Test
+        public void capsTheRecordBudget() {
+            contract.ScanEHRData(ctx, Integer.toString(Integer.MAX_VALUE), "1048576", "");
+
+            verify(stub).getStateByRangeWithPagination("", "", 1001, "");
+        }
+
+        @Test
+        public void whenBudgetIsNotPositive() {
+            Throwable noRecords = catchThrowable(() -> contract.ScanEHRData(ctx, "0", "1048576", ""));
+            Throwable noBytes = catchThrowable(() -> contract.ScanEHRData(ctx, "10", "-1", ""));
+            Throwable notANumber = catchThrowable(() -> contract.ScanEHRData(ctx, "ten", "1048576", ""));
+
+            assertThat(noRecords).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHR Data record budget 0 is not a positive number");
+            assertThat(((ChaincodeException) noRecords).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+            assertThat(((ChaincodeException) noBytes).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+            assertThat(((ChaincodeException) notANumber).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+            verify(stub, never()).getStateByRangeWithPagination(anyString(), anyString(), anyInt(), anyString());
+        }
+    }
+
+    @Nested
+    class InvokeQueryEHRDataTransaction {
+
+        private EHRSmartContract contract;
+        private Context ctx;
+        private ChaincodeStub stub;
+
+        @BeforeEach
+        public void setUp() {
+            contract = new EHRSmartContract();
+            ctx = mock(Context.class);
+            stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getQueryResultWithPagination(anyString(), anyInt(), anyString()))
+                    .thenReturn(new MockEHRDataResultsInteratorWithMetadata());
+        }
+
+        @Test
+        public void whenQueryIsServedByAnIndex() {
+            contract.QueryEHRData(ctx, "{\"fileType\":\"pdf\",\"sortBy\":\"createdAt\",\"descending\":true}",
+                    "10", "");
+
+            ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+            verify(stub).getQueryResultWithPagination(query.capture(), eq(10), eq(""));
+            assertThat(query.getValue())
+                    .contains("\"use_index\":[\"_design/indexFileTypeCreatedAtDoc\",\"indexFileTypeCreatedAt\"]")
+                    .contains("\"sort\":[{\"createdAt\":\"desc\"}]");
+        }
+
+        @Test
+        public void whenQueryIsEmpty() {
+            Throwable thrown = catchThrowable(() -> contract.QueryEHRData(ctx, "{}", "10", ""));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+        }
+
+        @Test
+        public void whenSortIsNotSupported() {
+            Throwable thrown = catchThrowable(() -> contract.QueryEHRData(ctx, "{\"sortBy\":\"name\"}", "10", ""));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+        }
+
+        @Test
+        public void whenRichQueryIsServedByAnIndex() {
+            contract.GetPaginatedEHRData(ctx, "{\"selector\":{\"name\":\"Annette KOEPP\"}}", "10", "");
+
+            verify(stub).getQueryResultWithPagination(
+                    argThat(query -> query.contains("\"use_index\":[\"_design/indexNameDoc\",\"indexName\"]")),
+                    eq(10), eq(""));
+        }
+
+        @Test
+        public void whenRichQueryNamesAnIndex() {
+            String query = "{\"selector\":{\"textData\":\"x\"},\"use_index\":\"_design/custom\"}";
+
+            contract.GetPaginatedEHRData(ctx, query, "10", "");
+
+            verify(stub).getQueryResultWithPagination(query, 10, "");
+        }
+
+        @Test
+        public void whenRichQueryIsNotIndexed() {
+            String query = "{\"selector\":{\"textData\":\"x\"}}";
+
+            contract.GetPaginatedEHRData(ctx, query, "10", "");
+
+            verify(stub).getQueryResultWithPagination(query, 10, "");
+        }
+
+        @Test
+        public void whenRichQueryIsMalformed() {
+            Throwable thrown = catchThrowable(() -> contract.GetPaginatedEHRData(ctx, "{\"selector\":", "10", ""));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+            verify(stub, never()).getQueryResultWithPagination(anyString(), anyInt(), anyString());
+        }
+    }
+
+//    @Test
+    void invokeInitLedgerTransaction() {
+        EHRSmartContract ehrSmartContract = new EHRSmartContract();
+        Context ctx = mock(Context.class);
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(ctx.getStub()).thenReturn(stub);
+
+        ehrSmartContract.InitLedger(ctx);
+
+        InOrder inOrder = inOrder(stub);
+        inOrder.verify(stub).putStringState("2bb3260-e24-f036-8c-360da8156", "{\"base64String\":\"\",\"createdAt\":" + new Date() + ",\"doc\":false,\"fileName\":\"\",\"fileType\":\"\",\"id\":\"2bb3260-e24-f036-8c-360da8156\",\"name\":\"Annette KOEPP\",\"size\":\"100 kB\",\"textData\":\"Sample Text Data\"}");
+    }
+
+    @Test
+    void invokeGetPaginatedEHRDataTransaction() {
+        EHRSmartContract contract = new EHRSmartContract();
+        Context ctx = mock(Context.class);
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(ctx.getStub()).thenReturn(stub);
+        when(stub
+                .getStateByRangeWithPagination(
+                        "",
+                        "",
+                        10,
+                        "")).thenReturn(new MockEHRDataResultsInteratorWithMetadata());
+
+        contract.GetPaginatedEHRData(ctx, "", "1", "");
+
+        assertTrue(true);
+    }
+
+    /**
+     * Runs transactions of one contract against an in-memory ledger.
+     */
+    abstract class OnInMemoryLedger {
+
+        EHRSmartContract contract;
+        InMemoryLedger ledger;
+
+        @BeforeEach
+        public void setUpLedger() {
+            contract = new EHRSmartContract();
+            ledger = new InMemoryLedger();
+        }
+
+        /**
+         * Simulates a transaction and commits it, which must succeed.
+         */
+        <T> T submit(final InMemoryChaincodeStub stub, final Function<Context, T> transaction) {
+            Context ctx = contract.createContext(stub);
+            T result = transaction.apply(ctx);
+            contract.afterTransaction(ctx, result);
+            assertThat(ledger.commit(stub)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            return result;
+        }
+
+        <T> T submit(final Function<Context, T> transaction) {
+            return submit(ledger.newTransaction(), transaction);
+        }
+
+        /**
+         * Simulates a transaction without committing it.
+         */
+        InMemoryChaincodeStub simulate(final Function<Context, ?> transaction) {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            Context ctx = contract.createContext(stub);
+            contract.afterTransaction(ctx, transaction.apply(ctx));
+            return stub;
+        }
+
+        <T> T evaluate(final Function<Context, T> transaction) {
+            return transaction.apply(contract.createContext(ledger.newTransaction()));
+        }
+
+        byte[] payload(final Throwable thrown) {
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            return ((ChaincodeException) thrown).getPayload();
+        }
+    }
+
+    @Nested
+    class InvokeChunkedAttachmentUpload extends OnInMemoryLedger {
+
+        private final byte[] first = "Imaging report, part one. ".getBytes(StandardCharsets.UTF_8);
+        private final byte[] second = "Imaging report, part two.".getBytes(StandardCharsets.UTF_8);
+
+        @BeforeEach
+        public void setUp() {
+            submit(ctx -> contract.CreateEHRData(ctx, "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\"}"));
+        }
+
+        private String append(final int index, final byte[] chunk) {
+            return submit(ctx -> contract.AppendEHRAttachmentChunk(ctx, "ehr-1", Integer.toString(index),
+                    Base64.getEncoder().encodeToString(chunk)));
+        }
+
+        @Test
+        public void uploadsAndDownloadsInChunks() {
+            String digest = ChunkedAttachmentStore.chain(ChunkedAttachmentStore.chain("", first), second);
+
+            submit(ctx -> contract.BeginEHRAttachmentUpload(ctx, "ehr-1"));
+            assertThat(append(0, first)).contains("\"chunks\":1");
+            assertThat(append(1, second)).contains("\"digest\":\"" + digest + "\"");
+            String manifest = submit(ctx -> contract.FinalizeEHRAttachmentUpload(ctx, "ehr-1", digest));
+            assertThat(manifest).contains("\"complete\":true");
+
+            EHRData ehrData = evaluate(ctx -> contract.ReadEHRData(ctx, "ehr-1"));
+            assertThat(ehrData.getAttachmentDigest()).isEqualTo(AttachmentStore.digest(
+                    "Imaging report, part one. Imaging report, part two.".getBytes(StandardCharsets.UTF_8)));
+            assertThat(ehrData.getAttachmentSize()).isEqualTo(first.length + second.length);
+            manifest = evaluate(ctx -> contract.ReadEHRAttachmentManifest(ctx, "ehr-1"));
+            assertThat(manifest).contains("\"chunks\":2");
+            String chunk = evaluate(ctx -> contract.ReadEHRAttachmentChunk(ctx, "ehr-1", "1"));
+            assertThat(Base64.getDecoder().decode(chunk)).isEqualTo(second);
+            assertThat(payload(catchThrowable(() -> evaluate(ctx -> contract.ReadEHRAttachment(ctx, "ehr-1")))))
+                    .isEqualTo("EHR_ATTACHMENT_CHUNKED".getBytes());
+        }
+
+        @Test
+        public void whenChunkIsOutOfOrder() {
+            submit(ctx -> contract.BeginEHRAttachmentUpload(ctx, "ehr-1"));
+
+            assertThat(payload(catchThrowable(() -> append(1, first))))
+                    .isEqualTo("EHR_CHUNK_OUT_OF_ORDER".getBytes());
+        }
+
+        @Test
+        public void whenChunkIndexIsNotANumber() {
+            submit(ctx -> contract.BeginEHRAttachmentUpload(ctx, "ehr-1"));
+            append(0, first);
+
+            assertThat(payload(catchThrowable(() -> submit(ctx -> contract.AppendEHRAttachmentChunk(ctx, "ehr-1",
+                    "second", Base64.getEncoder().encodeToString(second))))))
+                    .isEqualTo("EHR_INVALID_CHUNK_INDEX".getBytes());
+            submit(ctx -> contract.FinalizeEHRAttachmentUpload(ctx, "ehr-1", ChunkedAttachmentStore.chain("", first)));
+            assertThat(payload(catchThrowable(() -> evaluate(ctx -> contract.ReadEHRAttachmentChunk(ctx, "ehr-1",
+                    "-1"))))).isEqualTo("EHR_INVALID_CHUNK_INDEX".getBytes());
+        }
+
+        @Test
+        public void whenDigestDoesNotMatch() {
+            submit(ctx -> contract.BeginEHRAttachmentUpload(ctx, "ehr-1"));
+            append(0, first);
+
+            Throwable thrown = catchThrowable(() -> submit(ctx -> contract.FinalizeEHRAttachmentUpload(ctx, "ehr-1",
+                    ChunkedAttachmentStore.chain("", second))));
+
+            assertThat(payload(thrown)).isEqualTo("EHR_ATTACHMENT_DIGEST_MISMATCH".getBytes());
+        }
+
+        @Test
+        public void whenUploadIsRestarted() {
+            submit(ctx -> contract.BeginEHRAttachmentUpload(ctx, "ehr-1"));
+            append(0, second);
+            append(1, second);
+            submit(ctx -> contract.BeginEHRAttachmentUpload(ctx, "ehr-1"));
+            append(0, first);
+            int keys = ledger.size();
+
+            submit(ctx -> contract.FinalizeEHRAttachmentUpload(ctx, "ehr-1", ChunkedAttachmentStore.chain("", first)));
+
+            // One stale chunk is deleted; the attachment size is added to every statistics dimension.
+            assertThat(ledger.size()).isEqualTo(keys - 1 + EHRDataStats.Dimension.values().length);
+            assertThat(payload(catchThrowable(() -> submit(ctx -> contract.BeginEHRAttachmentUpload(ctx, "ehr-1")))))
+                    .isEqualTo("EHR_ATTACHMENT_EXISTS".getBytes());
+        }
+
+        @Test
+        public void whenNoUploadIsInProgress() {
+            assertThat(payload(catchThrowable(() -> append(0, first))))
+                    .isEqualTo("EHR_UPLOAD_NOT_FOUND".getBytes());
+            assertThat(payload(catchThrowable(() -> evaluate(ctx -> contract.ReadEHRAttachmentChunk(ctx, "ehr-1", "0")))))
+                    .isEqualTo("EHR_CHUNK_NOT_FOUND".getBytes());
+        }
+    }
+
+    @Nested
+    class InvokeUpdateEHRDataTransaction extends OnInMemoryLedger {
+
+        @BeforeEach
+        public void setUp() {
+            submit(ctx -> contract.CreateEHRData(ctx,
+                    "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\",\"textData\":\"Sample Text Data\"}"));
+        }
+
+        private InMemoryChaincodeStub update(final String ehrDataId, final String patch,
+                                             final String expectedVersion) {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            submit(stub, ctx -> contract.UpdateEHRData(ctx, ehrDataId, patch, expectedVersion));
+            return stub;
+        }
+
+        private InMemoryChaincodeStub update(final String patch, final String expectedVersion) {
+            return update("ehr-1", patch, expectedVersion);
+        }
+
+        private EHRData read() {
+            return evaluate(ctx -> contract.ReadEHRData(ctx, "ehr-1"));
+        }
+
+        private byte[] payload(final String patch, final String expectedVersion) {
+            return payload(catchThrowable(() -> update(patch, expectedVersion)));
+        }
+
+        @Test
+        public void patchesMetadataWithoutRewritingContent() {
+            InMemoryChaincodeStub stub = update("{\"name\":\"Tony RUTHERFORD\",\"fileType\":null}", "1");
+
+            assertThat(stub.getWriteSet().keySet()).containsExactlyInAnyOrder("ehr-1",
+                    stub.createCompositeKey("name~id", "Annette KOEPP", "ehr-1").toString(),
+                    stub.createCompositeKey("name~id", "Tony RUTHERFORD", "ehr-1").toString(),
+                    stub.createCompositeKey("ehr~statsDelta", "name", "Annette KOEPP", stub.getTxId()).toString(),
+                    stub.createCompositeKey("ehr~statsDelta", "name", "Tony RUTHERFORD", stub.getTxId()).toString());
+            EHRData ehrData = read();
+            assertThat(ehrData.getName()).isEqualTo("Tony RUTHERFORD");
+            assertThat(ehrData.getTextData()).isEqualTo("Sample Text Data");
+            assertThat(ehrData.getVersion()).isEqualTo(2);
+        }
+
+        @Test
+        public void whenVersionIsStale() {
+            update("{\"size\":\"100 kB\"}", "1");
+
+            assertThat(payload("{\"size\":\"200 kB\"}", "1")).isEqualTo("EHR_VERSION_CONFLICT".getBytes());
+            assertThat(read().getSize()).isEqualTo("100 kB");
+        }
+
+        @Test
+        public void whenVersionIsNotANumber() {
+            assertThat(payload("{\"size\":\"200 kB\"}", "v1")).isEqualTo("EHR_VERSION_CONFLICT".getBytes());
+            assertThat(read().getVersion()).isEqualTo(1);
+        }
+
+        @Test
+        public void whenPatchIsInvalid() {
+            assertThat(payload("{\"textData\":\"Rewritten\"}", "1")).isEqualTo("EHR_INVALID_PATCH".getBytes());
+            assertThat(payload("{\"name\":", "1")).isEqualTo("EHR_INVALID_PATCH".getBytes());
+            assertThat(payload("[]", "1")).isEqualTo("EHR_INVALID_PATCH".getBytes());
+        }
+
+        @Test
+        public void movesLegacyContentOnFirstUpdate() {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            stub.putState("ehr-2", new Genson().serialize(new EHRData("ehr-2", "Legacy Text Data", "Annette KOEPP",
+                    "100 kB", false, "", "", null, null)).getBytes(StandardCharsets.UTF_8));
+            ledger.commit(stub);
+
+            stub = update("ehr-2", "{\"doc\":true}", "0");
+
+            assertThat(stub.getWriteSet()).containsKey(stub.createCompositeKey("ehr~content", "ehr-2").toString());
+            assertThat(new String(stub.getWriteSet().get("ehr-2"), StandardCharsets.UTF_8))
+                    .doesNotContain("Legacy Text Data");
+            EHRData ehrData = evaluate(ctx -> contract.ReadEHRData(ctx, "ehr-2"));
+            assertThat(ehrData.isDoc()).isTrue();
+            assertThat(ehrData.getTextData()).isEqualTo("Legacy Text Data");
+            assertThat(ehrData.getVersion()).isEqualTo(1);
+        }
+
+        @Test
+        public void indexesAndCountsLegacyRecordsOnFirstUpdate() {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            stub.putState("ehr-2", new Genson().serialize(new EHRData("ehr-2", "Legacy Text Data", "Annette KOEPP",
+                    "100 kB", false, "pdf", "report.pdf", null, null)).getBytes(StandardCharsets.UTF_8));
+            ledger.commit(stub);
+
+            update("ehr-2", "{\"fileType\":\"png\"}", "0");
+
+            Context ctx = contract.createContext(ledger.newTransaction());
+            assertThat(new JSONObject(contract.QueryEHRDataByIndex(ctx, "fileType", "png", "10", ""))
+                    .getJSONArray("data").getJSONObject(0).getString("id")).isEqualTo("ehr-2");
+            assertThat(new JSONObject(contract.QueryEHRDataByIndex(ctx, "fileType", "pdf", "10", ""))
+                    .getJSONArray("data").length()).isZero();
+            assertThat(new JSONObject(contract.QueryEHRDataByIndex(ctx, "name", "Annette KOEPP", "10", ""))
+                    .getJSONArray("data").length()).isEqualTo(2);
+            JSONObject fileTypes = new JSONObject(contract.GetEHRDataStats(ctx, "fileType"));
+            assertThat(fileTypes.keySet()).containsExactlyInAnyOrder("", "png");
+            assertThat(fileTypes.getJSONObject("png").getLong("count")).isEqualTo(1);
+            assertThat(fileTypes.getJSONObject("png").getLong("bytes")).isEqualTo("Legacy Text Data".length());
+            assertThat(new JSONObject(contract.GetEHRDataStats(ctx, "total")).getJSONObject("").getLong("count"))
+                    .isEqualTo(2);
+        }
+    }
+
+    @Nested
+    class InvokeGetEHRDataHistoryTransaction extends OnInMemoryLedger {
+
+        @BeforeEach
+        public void setUp() {
+            submit(ctx -> contract.CreateEHRData(ctx, "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\"}"));
+            submit(ctx -> contract.UpdateEHRData(ctx, "ehr-1", "{\"size\":\"100 kB\"}", "1"));
+            submit(ctx -> contract.UpdateEHRData(ctx, "ehr-1", "{\"size\":\"200 kB\"}", "2"));
+        }
+
+        private JSONObject history(final String ehrDataId, final String pageSize, final String bookmark,
+                                   final String fromTime, final String toTime, final String excludeAttachments) {
+            String page = evaluate(ctx -> contract.GetEHRDataHistory(ctx, ehrDataId, pageSize, bookmark, fromTime,
+                    toTime, excludeAttachments));
+            return new JSONObject(page);
+        }
+
+        @Test
+        public void pagesThroughHistoryNewestFirst() {
+            JSONObject first = history("ehr-1", "2", "", "", "", "false");
+            JSONArray entries = first.getJSONArray("data");
+
+            assertThat(entries.length()).isEqualTo(2);
+            assertThat(entries.getJSONObject(0).getJSONObject("value").getString("size")).isEqualTo("200 kB");
+            assertThat(entries.getJSONObject(1).getJSONObject("value").getLong("version")).isEqualTo(2);
+            assertThat(first.getString("bookMark")).isNotEmpty();
+
+            JSONObject second = history("ehr-1", "2", first.getString("bookMark"), "", "", "false");
+
+            assertThat(second.getJSONArray("data").length()).isEqualTo(1);
+            assertThat(second.getJSONArray("data").getJSONObject(0).getJSONObject("value").getLong("version"))
+                    .isEqualTo(1);
+            assertThat(second.getString("bookMark")).isEmpty();
+        }
+
+        @Test
+        public void filtersByTimestamp() {
+            JSONArray entries = history("ehr-1", "10", "", "", "", "false").getJSONArray("data");
+            long newest = entries.getJSONObject(0).getLong("timestamp");
+            long oldest = entries.getJSONObject(2).getLong("timestamp");
+
+            assertThat(history("ehr-1", "10", "", Long.toString(newest), "", "false").getJSONArray("data").length())
+                    .isGreaterThanOrEqualTo(1);
+            assertThat(history("ehr-1", "10", "", "", Long.toString(oldest), "false").getJSONArray("data").length())
+                    .isZero();
+            assertThat(history("ehr-1", "10", "", Long.toString(oldest), Long.toString(newest + 1), "false")
+                    .getJSONArray("data").length()).isEqualTo(3);
+        }
+
+        @Test
+        public void excludesAttachmentBodies() {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            stub.putState("ehr-2", new Genson().serialize(new EHRData("ehr-2", "Legacy Text Data", "Annette KOEPP",
+                    "100 kB", true, "pdf", "report.pdf", ATTACHMENT_BASE64, null)).getBytes(StandardCharsets.UTF_8));
+            ledger.commit(stub);
+
+            JSONObject included = history("ehr-2", "10", "", "", "", "false").getJSONArray("data")
+                    .getJSONObject(0).getJSONObject("value");
+            JSONObject excluded = history("ehr-2", "10", "", "", "", "true").getJSONArray("data")
+                    .getJSONObject(0).getJSONObject("value");
+
+            assertThat(included.getString("base64String")).isEqualTo(ATTACHMENT_BASE64);
+            assertThat(excluded.isNull("base64String")).isTrue();
+            assertThat(excluded.getString("fileName")).isEqualTo("report.pdf");
+        }
+
+        @Test
+        public void whenRecordOrBookmarkIsUnknown() {
+            Throwable thrown = catchThrowable(() -> history("ehr-3", "10", "", "", "", "false"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHRData_NOT_FOUND".getBytes());
+
+            thrown = catchThrowable(() -> history("ehr-1", "10", "unknown", "", "", "false"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_BOOKMARK".getBytes());
+        }
+
+        @Test
+        public void whenPageSizeIsNotPositive() {
+            Throwable thrown = catchThrowable(() -> history("ehr-1", "0", "", "", "", "false"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("EHR Data page size 0 is not a positive number");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+            assertThat(history("ehr-1", Integer.toString(Integer.MAX_VALUE), "", "", "", "false")
+                    .getJSONArray("data").length()).isEqualTo(3);
+        }
+
+        @Test
+        public void whenTimeBoundIsNotANumber() {
+            Throwable from = catchThrowable(() -> history("ehr-1", "10", "", "yesterday", "", "false"));
+            Throwable to = catchThrowable(() -> history("ehr-1", "10", "", "", "-1", "false"));
+
+            assertThat(payload(from)).isEqualTo("EHR_INVALID_RANGE".getBytes());
+            assertThat(payload(to)).isEqualTo("EHR_INVALID_RANGE".getBytes());
+        }
+    }
+
+    @Nested
+    class InvokeEHRDataStatsTransactions extends OnInMemoryLedger {
+
+        private JSONObject stats(final String dimension) {
+            String stats = evaluate(ctx -> contract.GetEHRDataStats(ctx, dimension));
+            return new JSONObject(stats);
+        }
+
+        @Test
+        public void countsConcurrentCreatesWithoutConflicts() {
+            InMemoryChaincodeStub first = simulate(ctx -> contract.CreateEHRData(ctx,
+                    "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\",\"fileType\":\"pdf\",\"textData\":\"abc\"}"));
+            InMemoryChaincodeStub second = simulate(ctx -> contract.CreateEHRData(ctx,
+                    "{\"id\":\"ehr-2\",\"name\":\"Tony RUTHERFORD\",\"fileType\":\"pdf\",\"base64String\":\""
+                            + ATTACHMENT_BASE64 + "\"}"));
+
+            assertThat(ledger.commit(first)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(ledger.commit(second)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+
+            JSONObject pdf = stats("fileType").getJSONObject("pdf");
+            assertThat(pdf.getLong("count")).isEqualTo(2);
+            assertThat(pdf.getLong("bytes")).isEqualTo(3 + ATTACHMENT_BASE64_DECODED.length);
+            assertThat(stats("total").getJSONObject("").getLong("count")).isEqualTo(2);
+            assertThat(stats("name").keySet()).containsExactlyInAnyOrder("Annette KOEPP", "Tony RUTHERFORD");
+        }
+
+        @Test
+        public void movesRecordsOnUpdateAndCompacts() {
+            ledger.commit(simulate(ctx -> contract.CreateEHRData(ctx,
+                    "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\",\"fileType\":\"pdf\",\"textData\":\"abc\"}")));
+            ledger.commit(simulate(ctx -> contract.UpdateEHRData(ctx, "ehr-1", "{\"fileType\":\"png\"}", "1")));
+            String before = stats("fileType").toString();
+            int keys = ledger.size();
+
+            InMemoryChaincodeStub compaction = simulate(ctx -> contract.CompactEHRDataStats(ctx, "100"));
+
+            assertThat(ledger.commit(compaction)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(ledger.size()).isLessThan(keys);
+            assertThat(stats("fileType").toString()).isEqualTo(before);
+            assertThat(stats("fileType").keySet()).containsExactly("png");
+            assertThat(stats("fileType").getJSONObject("png").getLong("bytes")).isEqualTo(3);
+            assertThat(stats("total").getJSONObject("").getLong("count")).isEqualTo(1);
+            int compacted = evaluate(ctx -> contract.CompactEHRDataStats(ctx, "100"));
+            assertThat(compacted).isZero();
+        }
+
+        @Test
+        public void compactionConflictsOnlyWithItself() {
+            ledger.commit(simulate(ctx -> contract.CreateEHRData(ctx, "{\"id\":\"ehr-1\",\"fileType\":\"pdf\"}")));
+            InMemoryChaincodeStub compaction = simulate(ctx -> contract.CompactEHRDataStats(ctx, "100"));
+            InMemoryChaincodeStub create = simulate(ctx -> contract.CreateEHRData(ctx,
+                    "{\"id\":\"ehr-2\",\"fileType\":\"pdf\"}"));
+
+            assertThat(ledger.commit(create)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(ledger.commit(compaction)).isEqualTo(InMemoryLedger.ValidationCode.PHANTOM_READ_CONFLICT);
+            assertThat(stats("fileType").getJSONObject("pdf").getLong("count")).isEqualTo(2);
+        }
+
+        @Test
+        public void countsLegacyRecordsOnceUpgraded() {
+            ledger.commit(simulate(ctx -> contract.CreateEHRData(ctx,
+                    "{\"id\":\"ehr-2\",\"fileType\":\"pdf\",\"textData\":\"abc\"}")));
+            InMemoryChaincodeStub legacy = ledger.newTransaction();
+            for (String ehrDataId : Arrays.asList("ehr-1", "ehr-3")) {
+                legacy.putState(ehrDataId, new Genson().serialize(new EHRData(ehrDataId, "Legacy", "Annette KOEPP",
+                        "100 kB", false, "pdf", "report.pdf", null, null)).getBytes(StandardCharsets.UTF_8));
+            }
+            ledger.commit(legacy);
+            assertThat(stats("fileType").getJSONObject("pdf").getLong("count")).isEqualTo(1);
+
+            List<String> bookmarks = new ArrayList<>();
+            String bookmark = "";
+            do {
+                String from = bookmark;
+                bookmark = submit(ctx -> contract.UpgradeEHRData(ctx, "2", from));
+                bookmarks.add(bookmark);
+            } while (!bookmark.isEmpty());
+
+            assertThat(bookmarks).containsExactly("ehr-3", "");
+            JSONObject pdf = stats("fileType").getJSONObject("pdf");
+            assertThat(pdf.getLong("count")).isEqualTo(3);
+            assertThat(pdf.getLong("bytes")).isEqualTo(3 + 2 * "Legacy".length());
+            assertThat(ledger.commit(simulate(ctx -> contract.UpgradeEHRData(ctx, "10", ""))))
+                    .isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(stats("total").getJSONObject("").getLong("count")).isEqualTo(3);
+        }
+
+        @Test
+        public void whenMaxDeltasIsNotPositive() {
+            assertThat(payload(catchThrowable(() -> evaluate(ctx -> contract.CompactEHRDataStats(ctx, "0")))))
+                    .isEqualTo("EHR_INVALID_QUERY".getBytes());
+            assertThat(payload(catchThrowable(() -> evaluate(ctx -> contract.CompactEHRDataStats(ctx, "all")))))
+                    .isEqualTo("EHR_INVALID_QUERY".getBytes());
+        }
+
+        @Test
+        public void whenDimensionIsUnknown() {
+            Throwable thrown = catchThrowable(() -> stats("size"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload())
+                    .isEqualTo("EHR_UNKNOWN_STATS_DIMENSION".getBytes());
+        }
+    }
+
+    @Nested
+    class PublishChangeFeed extends OnInMemoryLedger {
+
+        private InMemoryChaincodeStub committed(final Function<Context, ?> transaction) {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            submit(stub, transaction);
+            return stub;
+        }
+
+        private List<EHRDataChange> changes(final InMemoryChaincodeStub stub) {
+            assertThat(stub.getEvent().getEventName()).isEqualTo(ChangeFeed.EVENT_NAME);
+            return ChangeFeed.decode(stub.getEvent().getPayload().toByteArray());
+        }
+
+        @Test
+        public void publishesEveryRecordOfATransaction() {
+            InMemoryChaincodeStub stub = committed(ctx -> contract.CreateEHRDataBatch(ctx,
+                    "[{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\",\"fileType\":\"pdf\",\"textData\":\"Sample\"},"
+                            + "{\"id\":\"ehr-2\",\"name\":\"Tony RUTHERFORD\"}]"));
+
+            List<EHRDataChange> changes = changes(stub);
+
+            assertThat(changes).extracting(EHRDataChange::getId).containsExactly("ehr-1", "ehr-2");
+            assertThat(changes.get(0).getOperation()).isEqualTo(EHRDataChange.Operation.CREATE);
+            assertThat(changes.get(0).getFileType()).isEqualTo("pdf");
+            assertThat(changes.get(0).getDigest()).isEqualTo(AttachmentStore.digest(ledger.getState("ehr-1")));
+            assertThat(new String(stub.getEvent().getPayload().toByteArray(), StandardCharsets.UTF_8))
+                    .doesNotContain("Sample");
+        }
+
+        @Test
+        public void publishesUpdates() {
+            submit(ctx -> contract.CreateEHRData(ctx, "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\"}"));
+
+            List<EHRDataChange> changes = changes(committed(ctx -> contract.UpdateEHRData(ctx, "ehr-1",
+                    "{\"name\":\"Tony RUTHERFORD\"}", "1")));
+
+            assertThat(changes).containsExactly(new EHRDataChange("ehr-1", EHRDataChange.Operation.UPDATE, 2,
+                    AttachmentStore.digest(ledger.getState("ehr-1")), "Tony RUTHERFORD", null, false, 0));
+        }
+
+        @Test
+        public void publishesNothingWithoutChanges() {
+            submit(ctx -> contract.CreateEHRData(ctx, "{\"id\":\"ehr-1\"}"));
+
+            assertThat(committed(ctx -> contract.ReadEHRData(ctx, "ehr-1")).getEvent()).isNull();
+            assertThat(committed(ctx -> contract.BeginEHRAttachmentUpload(ctx, "ehr-1")).getEvent()).isNull();
+        }
+    }
+
+    @Nested
+    class InvokeRangeQueryTransactions extends OnInMemoryLedger {
+
+        private static final long CREATED_AT = 1_700_000_000_000L;
+
+        @BeforeEach
+        public void setUp() {
+            create(1, "abc", 0);
+            create(2, "Sample Text Data", 1000);
+            create(3, "Sample Text Data, a longer one", 2000);
+        }
+
+        private void create(final int number, final String textData, final long offsetMillis) {
+            InMemoryChaincodeStub stub = ledger.newTransaction(String.format("%064x", number),
+                    Instant.ofEpochMilli(CREATED_AT + offsetMillis));
+            submit(stub, ctx -> contract.CreateEHRData(ctx,
+                    "{\"id\":\"ehr-" + number + "\",\"textData\":\"" + textData + "\"}"));
+        }
+
+        private JSONObject page(final Function<Context, String> query) {
+            String page = evaluate(query);
+            return new JSONObject(page);
+        }
+
+        private List<String> ids(final JSONObject page) {
+            List<String> ids = new ArrayList<>();
+            for (Object ehrData : page.getJSONArray("data")) {
+                ids.add(((JSONObject) ehrData).getString("id"));
+            }
+            return ids;
+        }
+
+        @Test
+        public void derivesCreatedAtAndByteSizeFromTheTransaction() {
+            EHRData ehrData = evaluate(ctx -> contract.ReadEHRData(ctx, "ehr-2"));
+
+            assertThat(ehrData.getCreatedAt()).isEqualTo(new Date(CREATED_AT + 1000));
+            assertThat(ehrData.getByteSize()).isEqualTo("Sample Text Data".length());
+        }
+
+        @Test
+        public void queriesByCreatedAtRange() {
+            JSONObject page = page(ctx -> contract.QueryEHRDataByCreatedAtRange(ctx,
+                    Long.toString(CREATED_AT + 1000), Long.toString(CREATED_AT + 2000), "10", ""));
+
+            assertThat(ids(page)).containsExactly("ehr-2");
+            assertThat(page.getString("bookMark")).isEmpty();
+        }
+
+        @Test
+        public void pagesThroughAnOpenRange() {
+            JSONObject first = page(ctx -> contract.QueryEHRDataByCreatedAtRange(ctx, "", "", "2", ""));
+            JSONObject second = page(ctx -> contract.QueryEHRDataByCreatedAtRange(ctx, "", "", "2",
+                    first.getString("bookMark")));
+
+            assertThat(ids(first)).containsExactly("ehr-1", "ehr-2");
+            assertThat(ids(second)).containsExactly("ehr-3");
+            assertThat(second.getString("bookMark")).isEmpty();
+        }
+
+        @Test
+        public void queriesBySizeRangeAndCountsAttachments() {
+            submit(ctx -> contract.UpdateEHRData(ctx, "ehr-1", "{\"name\":\"Annette KOEPP\"}", "1"));
+
+            JSONObject page = page(query -> contract.QueryEHRDataBySizeRange(query, "4", "", "10", ""));
+
+            assertThat(ids(page)).containsExactly("ehr-2", "ehr-3");
+            assertThat(ids(page(query -> contract.QueryEHRDataBySizeRange(query, "", "4", "10", ""))))
+                    .containsExactly("ehr-1");
+        }
+
+        @Test
+        public void whenRangeIsInvalid() {
+            Throwable reversed = catchThrowable(() -> page(ctx -> contract.QueryEHRDataBySizeRange(ctx, "10", "4",
+                    "10", "")));
+            Throwable negative = catchThrowable(() -> page(ctx -> contract.QueryEHRDataByCreatedAtRange(ctx, "-1",
+                    "", "10", "")));
+
+            assertThat(((ChaincodeException) reversed).getPayload()).isEqualTo("EHR_INVALID_RANGE".getBytes());
+            assertThat(((ChaincodeException) negative).getPayload()).isEqualTo("EHR_INVALID_RANGE".getBytes());
+        }
+
+        @Test
+        public void whenBookmarkIsOutsideTheRange() {
+            String bookmark = new CompositeKey("createdAt~id", "0000000000000000000", "ehr-1").toString();
+
+            Throwable thrown = catchThrowable(() -> page(ctx -> contract.QueryEHRDataByCreatedAtRange(ctx,
+                    Long.toString(CREATED_AT + 1000), "", "10", bookmark)));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_BOOKMARK".getBytes());
+        }
+
+        @Test
+        public void whenPageSizeIsInvalid() {
+            Throwable thrown = catchThrowable(() -> page(ctx -> contract.QueryEHRDataBySizeRange(ctx, "", "", "ten",
+                    "")));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("EHR_INVALID_QUERY".getBytes());
+        }
+    }
+
+    @Nested
+    class EndorseOnSeveralPeers {
+
+        private static final String TX_ID = "5ab1c9a3";
+
+        private final Instant txTimestamp = Instant.parse("2026-10-18T08:00:00.123Z");
+
+        private InMemoryChaincodeStub endorse(final BiFunction<EHRSmartContract, Context, ?> transaction) {
+            InMemoryLedger peer = new InMemoryLedger();
+            EHRSmartContract contract = new EHRSmartContract();
+            InMemoryChaincodeStub setUp = peer.newTransaction("0a", txTimestamp.minusSeconds(60));
+            Context setUpCtx = contract.createContext(setUp);
+            contract.afterTransaction(setUpCtx, contract.CreateEHRData(setUpCtx,
+                    "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\",\"textData\":\"abc\"}"));
+            assertThat(peer.commit(setUp)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+
+            InMemoryChaincodeStub stub = peer.newTransaction(TX_ID, txTimestamp);
+            Context ctx = contract.createContext(stub);
+            contract.afterTransaction(ctx, transaction.apply(contract, ctx));
+            return stub;
+        }
+
+        private Map<String, String> writeSet(final InMemoryChaincodeStub stub) {
+            Map<String, String> writes = new TreeMap<>();
+            stub.getWriteSet().forEach((key, value) -> writes.put(key,
+                    value == null ? null : Base64.getEncoder().encodeToString(value)));
+            return writes;
+        }
+
+        private void assertSameEndorsements(final BiFunction<EHRSmartContract, Context, ?> transaction) {
+            InMemoryChaincodeStub first = endorse(transaction);
+            InMemoryChaincodeStub second = endorse(transaction);
+
+            assertThat(writeSet(first)).isNotEmpty().isEqualTo(writeSet(second));
+            assertThat(first.getEvent().getPayload()).isEqualTo(second.getEvent().getPayload());
+        }
+
+        @Test
+        public void createProducesIdenticalWriteSets() {
+            assertSameEndorsements((contract, ctx) -> contract.CreateEHRData(ctx, "{\"id\":\"ehr-2\",\"name\":\"Tony "
+                    + "RUTHERFORD\",\"textData\":\"Sample Text Data\",\"base64String\":\"" + ATTACHMENT_BASE64
+                    + "\"}"));
+        }
+
+        @Test
+        public void updateProducesIdenticalWriteSets() {
+            assertSameEndorsements((contract, ctx) -> contract.UpdateEHRData(ctx, "ehr-1", "{\"fileType\":\"pdf\"}",
+                    "1"));
+        }
     }
 }
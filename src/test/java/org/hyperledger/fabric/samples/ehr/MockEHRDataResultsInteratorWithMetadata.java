@@ -12,6 +12,12 @@ public final class MockEHRDataResultsInteratorWithMetadata implements QueryResul
 
     private final List<KeyValue> ehrDataList;
 
+    MockEHRDataResultsInteratorWithMetadata(final List<KeyValue> ehrDataList) {
+        super();
+
+        this.ehrDataList = ehrDataList;
+    }
+
     MockEHRDataResultsInteratorWithMetadata() {
         super();
 
@@ -19,7 +25,7 @@ public final class MockEHRDataResultsInteratorWithMetadata implements QueryResul
 
         ehrDataList.add(new MockKeyValue("2bb3260-e24-f036-8c-360da8156",
                 "{ \"id\": \"2bb3260-e24-f036-8c-360da8156\", \"textData\": \"Sample Text Data\", \"name\": \"Annette KOEPP\", \"size\": \"100 kB\", \"doc\": false, \"fileType\": \"\", \"fileName\": \"\", \"base64String\": \"\" }"));
-        ehrDataList.add(new MockKeyValue("2bb3260-e24-f036-8c-360da8156",
+        ehrDataList.add(new MockKeyValue("66faa1f-021a-bfc7-43e7-470cbdebac3",
                 "{ \"id\": \"66faa1f-021a-bfc7-43e7-470cbdebac3\", \"textData\": \"Sample Text Data\", \"name\": \"Tony RUTHERFORD\", \"size\": \"100 kB\", \"doc\": false, \"fileType\": \"\", \"fileName\": \"\", \"base64String\": \"\" }"));
 
     }
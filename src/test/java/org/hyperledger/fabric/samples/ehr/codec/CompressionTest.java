@@ -0,0 +1,53 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+public final class CompressionTest {
+
+    private static final byte[] NOTE = String.join("\n", Collections.nCopies(100, "BP 120/80, HR 72, afebrile."))
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void roundTrips() {
+        byte[] deflated = new Compression(1024).compress(NOTE);
+
+        assertThat(deflated.length).isLessThan(NOTE.length / 10);
+        assertThat(Compression.inflate(deflated)).isEqualTo(NOTE);
+    }
+
+    @Test
+    public void leavesValuesBelowTheThresholdAlone() {
+        assertThat(new Compression(NOTE.length + 1).compress(NOTE)).isNull();
+        assertThat(Compression.DISABLED.compress(NOTE)).isNull();
+    }
+
+    @Test
+    public void leavesIncompressibleValuesAlone() {
+        byte[] random = new byte[4096];
+        new Random(4096).nextBytes(random);
+
+        assertThat(new Compression(1024).compress(random)).isNull();
+    }
+
+    @Test
+    public void rejectsTruncatedStreams() {
+        byte[] deflated = new Compression(1024).compress(NOTE);
+        byte[] truncated = new byte[deflated.length / 2];
+        System.arraycopy(deflated, 0, truncated, 0, truncated.length);
+
+        Throwable thrown = catchThrowable(() -> Compression.inflate(truncated));
+
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class DecodeCacheTest {
+
+    private static byte[] stored(final String id, final String textData) {
+        EHRData ehrData = new EHRData(id, textData, "Lab results", "2", false, "pdf", "labs.pdf", null,
+                new Date(1640995200000L));
+        return new EHRDataCodec(EHRDataCodec.Format.JSON).encode(ehrData);
+    }
+
+    @Test
+    public void decodesTheSameBytesOnce() {
+        DecodeCache cache = new DecodeCache(1024 * 1024);
+        EHRDataCodec codec = new EHRDataCodec(EHRDataCodec.Format.JSON, Compression.DISABLED, cache);
+        byte[] value = stored("ehr1", "BP 120/80");
+
+        EHRData first = codec.decode(value);
+        EHRData second = codec.decode(value.clone());
+
+        assertThat(second).isSameAs(first);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getEntries()).isEqualTo(1);
+        assertThat(cache.getBytes()).isEqualTo(DecodeCache.weigh(first));
+    }
+
+    @Test
+    public void sharesRecordsThatCannotBeChanged() {
+        EHRDataCodec codec = new EHRDataCodec(EHRDataCodec.Format.JSON, Compression.DISABLED,
+                new DecodeCache(1024 * 1024));
+        byte[] value = stored("ehr1", "BP 120/80");
+
+        codec.decode(value).getCreatedAt().setTime(0L);
+
+        assertThat(codec.decode(value).getCreatedAt()).isEqualTo(new Date(1640995200000L));
+    }
+
+    @Test
+    public void decodesChangedBytesAgain() {
+        DecodeCache cache = new DecodeCache(1024 * 1024);
+        EHRDataCodec codec = new EHRDataCodec(EHRDataCodec.Format.JSON, Compression.DISABLED, cache);
+
+        EHRData before = codec.decode(stored("ehr1", "BP 120/80"));
+        EHRData after = codec.decode(stored("ehr1", "BP 118/76"));
+
+        assertThat(after.getTextData()).isEqualTo("BP 118/76");
+        assertThat(before.getTextData()).isEqualTo("BP 120/80");
+        assertThat(cache.getMisses()).isEqualTo(2);
+        assertThat(cache.getHits()).isZero();
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedRecords() {
+        byte[][] values = new byte[17][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = stored("ehr" + (10 + i), "BP 120/80");
+        }
+        long weight = DecodeCache.weigh(new EHRDataCodec(EHRDataCodec.Format.JSON).decode(values[0]));
+        DecodeCache cache = new DecodeCache(16 * weight + weight / 2);
+        EHRDataCodec codec = new EHRDataCodec(EHRDataCodec.Format.JSON, Compression.DISABLED, cache);
+
+        for (int i = 0; i < 16; i++) {
+            codec.decode(values[i]);
+        }
+        codec.decode(values[0]);
+        codec.decode(values[16]);
+
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getEntries()).isEqualTo(16);
+        assertThat(cache.getBytes()).isEqualTo(16 * weight);
+
+        codec.decode(values[0]);
+        assertThat(cache.getHits()).isEqualTo(2);
+        codec.decode(values[1]);
+        assertThat(cache.getMisses()).isEqualTo(18);
+    }
+
+    @Test
+    public void keepsNothingWhenDisabled() {
+        AtomicInteger decoded = new AtomicInteger();
+        byte[] value = stored("ehr1", "BP 120/80");
+
+        DecodeCache.DISABLED.get(value, bytes -> {
+            decoded.incrementAndGet();
+            return null;
+        });
+        DecodeCache.DISABLED.get(value, bytes -> {
+            decoded.incrementAndGet();
+            return null;
+        });
+
+        assertThat(decoded).hasValue(2);
+        assertThat(DecodeCache.DISABLED.getEntries()).isZero();
+        assertThat(DecodeCache.DISABLED.getMisses()).isZero();
+    }
+
+    @Test
+    public void doesNotKeepRecordsLargerThanASixteenthOfTheCeiling() {
+        String note = String.join("\n", Collections.nCopies(1000, "BP 120/80, HR 72, afebrile."));
+        DecodeCache cache = new DecodeCache(16 * 1024);
+        EHRDataCodec codec = new EHRDataCodec(EHRDataCodec.Format.JSON, Compression.DISABLED, cache);
+        byte[] value = stored("ehr1", note);
+
+        codec.decode(value);
+        codec.decode(value);
+
+        assertThat(cache.getMisses()).isEqualTo(2);
+        assertThat(cache.getEntries()).isZero();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import com.owlike.genson.Genson;
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRDataSummary;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+public final class EHRDataCodecTest {
+
+    private static final Genson GENSON = new Genson();
+
+    private static final EHRData EHR_DATA = new EHRData(
+            "2bb3260-e24-f036-8c-360da8156",
+            "Sample Text Data",
+            "Annette KOEPP",
+            "100 kB",
+            true,
+            "pdf",
+            "report.pdf",
+            null,
+            new Date(1660000000000L),
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+            102400,
+            null,
+            0L,
+            102416
+    );
+
+    private static final EHRData LEGACY_EHR_DATA = new EHRData(
+            "66faa1f-021a-bfc7-43e7-470cbdebac3",
+            "",
+            "Tony RUTHERFORD",
+            "100 kB",
+            false,
+            "",
+            "",
+            Base64.getEncoder().encodeToString("Sample Attachment".getBytes(StandardCharsets.UTF_8)),
+            null
+    );
+
+    private final EHRDataCodec jsonCodec = new EHRDataCodec(EHRDataCodec.Format.JSON);
+
+    private final EHRDataCodec binaryCodec = new EHRDataCodec(EHRDataCodec.Format.BINARY);
+
+    @Nested
+    class Json {
+
+        @Test
+        public void encodesAsGensonJson() {
+            assertThat(new String(jsonCodec.encode(EHR_DATA), StandardCharsets.UTF_8))
+                    .isEqualTo(GENSON.serialize(EHR_DATA));
+        }
+
+        @Test
+        public void roundTrips() {
+            assertThat(jsonCodec.decode(jsonCodec.encode(EHR_DATA))).isEqualTo(EHR_DATA);
+        }
+    }
+
+    @Nested
+    class Binary {
+
+        @Test
+        public void startsWithFormatTag() {
+            assertThat(binaryCodec.encode(EHR_DATA)[0]).isEqualTo(EHRDataCodec.FORMAT_PROTO_V1);
+        }
+
+        @Test
+        public void roundTrips() {
+            assertThat(binaryCodec.decode(binaryCodec.encode(EHR_DATA))).isEqualTo(EHR_DATA);
+            assertThat(binaryCodec.decode(binaryCodec.encode(LEGACY_EHR_DATA))).isEqualTo(LEGACY_EHR_DATA);
+        }
+
+        @Test
+        public void keepsNullsAndEmptyStringsApart() {
+            EHRData ehrData = new EHRData("2bb3260-e24-f036-8c-360da8156", null, "", null, false, "", null, null, null);
+
+            assertThat(binaryCodec.decode(binaryCodec.encode(ehrData))).isEqualTo(ehrData);
+        }
+
+        @Test
+        public void isSmallerThanJson() {
+            assertThat(binaryCodec.encode(EHR_DATA).length).isLessThan(jsonCodec.encode(EHR_DATA).length / 2);
+            assertThat(binaryCodec.encode(LEGACY_EHR_DATA).length).isLessThan(jsonCodec.encode(LEGACY_EHR_DATA).length);
+        }
+
+        @Test
+        public void decodesSummary() {
+            assertThat(binaryCodec.decodeSummary(binaryCodec.encode(EHR_DATA))).isEqualTo(new EHRDataSummary(
+                    "2bb3260-e24-f036-8c-360da8156",
+                    "Annette KOEPP",
+                    "100 kB",
+                    true,
+                    "pdf",
+                    "report.pdf",
+                    new Date(1660000000000L),
+                    102400
+            ));
+            assertThat(binaryCodec.decodeSummary(binaryCodec.encode(LEGACY_EHR_DATA)).getAttachmentSize())
+                    .isEqualTo("Sample Attachment".length());
+        }
+    }
+
+    @Nested
+    class Compressed {
+
+        private final EHRData clinicalNote = new EHRData(
+                "2bb3260-e24-f036-8c-360da8156",
+                String.join(" ", Collections.nCopies(200, "Patient reports no chest pain.")),
+                "Annette KOEPP",
+                "6 kB",
+                false,
+                "",
+                "",
+                null,
+                new Date(1660000000000L)
+        );
+
+        private final Compression compression = new Compression(1024);
+
+        private final EHRDataCodec compressingJsonCodec =
+                new EHRDataCodec(EHRDataCodec.Format.JSON, compression);
+
+        private final EHRDataCodec compressingBinaryCodec =
+                new EHRDataCodec(EHRDataCodec.Format.BINARY, compression);
+
+        @Test
+        public void flagsDeflatedTextDataInJson() {
+            String stored = new String(compressingJsonCodec.encode(clinicalNote), StandardCharsets.UTF_8);
+
+            assertThat(stored).contains("\"textDataEncoding\":\"deflate\"")
+                    .doesNotContain("Patient reports");
+            assertThat(stored.length()).isLessThan(clinicalNote.getTextData().length() / 4);
+        }
+
+        @Test
+        public void roundTrips() {
+            assertThat(compressingJsonCodec.decode(compressingJsonCodec.encode(clinicalNote))).isEqualTo(clinicalNote);
+            assertThat(compressingBinaryCodec.decode(compressingBinaryCodec.encode(clinicalNote)))
+                    .isEqualTo(clinicalNote);
+            assertThat(jsonCodec.decode(compressingBinaryCodec.encode(clinicalNote))).isEqualTo(clinicalNote);
+        }
+
+        @Test
+        public void isDeterministic() {
+            assertThat(compressingJsonCodec.encode(clinicalNote)).isEqualTo(compressingJsonCodec.encode(clinicalNote));
+            assertThat(compressingBinaryCodec.encode(clinicalNote))
+                    .isEqualTo(new EHRDataCodec(EHRDataCodec.Format.BINARY, new Compression(1024))
+                            .encode(clinicalNote));
+        }
+
+        @Test
+        public void leavesSmallTextDataPlain() {
+            assertThat(compressingJsonCodec.encode(EHR_DATA)).isEqualTo(jsonCodec.encode(EHR_DATA));
+            assertThat(compressingBinaryCodec.encode(EHR_DATA)).isEqualTo(binaryCodec.encode(EHR_DATA));
+        }
+
+        @Test
+        public void decodesSummaryWithoutInflating() {
+            EHRDataSummary summary = jsonCodec.decodeSummary(jsonCodec.encode(clinicalNote));
+
+            assertThat(compressingJsonCodec.decodeSummary(compressingJsonCodec.encode(clinicalNote)))
+                    .isEqualTo(summary);
+            assertThat(compressingBinaryCodec.decodeSummary(compressingBinaryCodec.encode(clinicalNote)))
+                    .isEqualTo(summary);
+        }
+    }
+
+    @Test
+    public void readsBothFormatsWhateverItWrites() {
+        assertThat(jsonCodec.decode(binaryCodec.encode(EHR_DATA))).isEqualTo(EHR_DATA);
+        assertThat(binaryCodec.decode(jsonCodec.encode(EHR_DATA))).isEqualTo(EHR_DATA);
+        assertThat(binaryCodec.decodeSummary(jsonCodec.encode(EHR_DATA)))
+                .isEqualTo(jsonCodec.decodeSummary(binaryCodec.encode(EHR_DATA)));
+    }
+
+    @Test
+    public void rejectsUnknownFormats() {
+        Throwable thrown = catchThrowable(() -> binaryCodec.decode(new byte[]{0x7F, 0x00}));
+
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown EHR data format 0x7f");
+    }
+}
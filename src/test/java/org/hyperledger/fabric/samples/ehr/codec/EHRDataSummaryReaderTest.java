@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import org.hyperledger.fabric.samples.ehr.EHRDataSummary;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+public final class EHRDataSummaryReaderTest {
+
+    private static EHRDataSummary read(final String json) {
+        return EHRDataSummaryReader.read(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readsStoredEHRData() {
+        EHRDataSummary summary = read("{\"attachmentDigest\":\"e3b0c442\",\"attachmentSize\":2048,"
+                + "\"base64String\":null,\"createdAt\":1660000000000,\"doc\":true,\"fileName\":\"report.pdf\","
+                + "\"fileType\":\"pdf\",\"id\":\"2bb3260-e24-f036-8c-360da8156\",\"name\":\"Annette KOEPP\","
+                + "\"size\":\"2 kB\",\"textData\":\"Sample Text Data\"}");
+
+        assertThat(summary).isEqualTo(new EHRDataSummary(
+                "2bb3260-e24-f036-8c-360da8156",
+                "Annette KOEPP",
+                "2 kB",
+                true,
+                "pdf",
+                "report.pdf",
+                new Date(1660000000000L),
+                2048
+        ));
+    }
+
+    @Test
+    public void skipsInlineAttachmentAndUnknownValues() {
+        EHRDataSummary summary = read("{ \"id\": \"2bb3260-e24-f036-8c-360da8156\",\n"
+                + "  \"textData\": \"Line one\\nLine \\\"two\\\"\",\n"
+                + "  \"extra\": { \"nested\": [1, \"}]\", { \"deep\": null }] },\n"
+                + "  \"base64String\": \"U2FtcGxlIEF0dGFjaG1lbnQ=\",\n"
+                + "  \"name\": \"Annette KOEPP\", \"doc\": false, \"createdAt\": null }");
+
+        assertThat(summary).isEqualTo(new EHRDataSummary(
+                "2bb3260-e24-f036-8c-360da8156",
+                "Annette KOEPP",
+                null,
+                false,
+                null,
+                null,
+                null,
+                "Sample Attachment".length()
+        ));
+    }
+
+    @Test
+    public void unescapesSummaryFields() {
+        EHRDataSummary summary = read("{\"name\":\"Ren\\u00e9e \\\"Rae\\\" O\\\\Brien\"}");
+
+        assertThat(summary.getName()).isEqualTo("Renée \"Rae\" O\\Brien");
+    }
+
+    @Test
+    public void rejectsNonObjects() {
+        Throwable thrown = catchThrowable(() -> read("[]"));
+
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected '{' at offset 0 of EHR data JSON");
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+public final class HexTest {
+
+    @Test
+    public void encodesAndDecodesEveryByte() {
+        byte[] raw = new byte[256];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) i;
+        }
+
+        String hex = Hex.encode(raw);
+
+        assertThat(hex).startsWith("000102").contains("7e7f8081").endsWith("fdfeff").hasSize(512);
+        assertThat(Hex.decode(hex)).isEqualTo(raw);
+        assertThat(Hex.decode("7F80FF")).isEqualTo(new byte[] {0x7f, (byte) 0x80, (byte) 0xff});
+    }
+
+    @Test
+    public void whenTextIsNotHex() {
+        assertThat(catchThrowable(() -> Hex.decode("abc"))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> Hex.decode("zz"))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
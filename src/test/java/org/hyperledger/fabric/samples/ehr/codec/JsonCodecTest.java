@@ -0,0 +1,160 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.codec;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRDataJsonCodec;
+import org.hyperledger.fabric.samples.ehr.EHRDataModification;
+import org.hyperledger.fabric.samples.ehr.EHRDataModificationJsonCodec;
+import org.hyperledger.fabric.samples.ehr.EHRDataSummary;
+import org.hyperledger.fabric.samples.ehr.EHRDataSummaryJsonCodec;
+import org.hyperledger.fabric.samples.ehr.utils.PageResult;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Random;
+
+import com.owlike.genson.Genson;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+public final class JsonCodecTest {
+
+    private static final Genson GENSON = new Genson();
+
+    private static final String ODD_CHARACTERS = "\"\\/\b\f\n\r\t\u0000\u001f\u007fé\u2028\u2029€😀";
+
+    private static byte[] genson(final Object value) {
+        return GENSON.serialize(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String randomString(final Random random, final boolean loneSurrogates) {
+        if (random.nextInt(5) == 0) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = random.nextInt(40); i > 0; i--) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    value.append(ODD_CHARACTERS.charAt(random.nextInt(ODD_CHARACTERS.length() - 2)));
+                    break;
+                case 1:
+                    value.appendCodePoint(random.nextInt(0x30000));
+                    break;
+                default:
+                    value.append((char) (' ' + random.nextInt(95)));
+                    break;
+            }
+        }
+        for (int i = value.length() - 1; !loneSurrogates && i >= 0; i--) {
+            if (Character.isSurrogate(value.charAt(i))) {
+                value.setCharAt(i, 'x');
+            }
+        }
+        return value.toString();
+    }
+
+    private static EHRData randomEHRData(final Random random, final boolean loneSurrogates) {
+        return new EHRData(randomString(random, loneSurrogates), randomString(random, loneSurrogates),
+                randomString(random, loneSurrogates), randomString(random, loneSurrogates), random.nextBoolean(),
+                randomString(random, loneSurrogates), randomString(random, loneSurrogates),
+                randomString(random, loneSurrogates), random.nextBoolean() ? null : new Date(random.nextLong()),
+                randomString(random, loneSurrogates), random.nextLong(), randomString(random, loneSurrogates),
+                random.nextInt(), random.nextBoolean() ? Long.MIN_VALUE : random.nextLong());
+    }
+
+    @Test
+    public void writesTheBytesGensonWrites() {
+        Random random = new Random(2022);
+        for (int i = 0; i < 2000; i++) {
+            EHRData ehrData = randomEHRData(random, true);
+
+            assertThat(EHRDataJsonCodec.INSTANCE.toBytes(ehrData)).isEqualTo(genson(ehrData));
+        }
+    }
+
+    @Test
+    public void writesEveryDataTypeAndPagesAsGensonDoes() {
+        Random random = new Random(2023);
+        EHRData ehrData = randomEHRData(random, false);
+        EHRDataSummary summary = new EHRDataSummary("ehr1", "Lab results", null, true, "pdf", "labs.pdf",
+                new Date(1640995200000L), 102400);
+        EHRDataModification modification = new EHRDataModification("tx1", new Date(1640995200000L), false, ehrData);
+        EHRDataModification deletion = new EHRDataModification("tx2", new Date(1640995300000L), true, null);
+
+        assertThat(EHRDataSummaryJsonCodec.INSTANCE.toBytes(summary)).isEqualTo(genson(summary));
+        assertThat(EHRDataModificationJsonCodec.INSTANCE.toBytes(modification)).isEqualTo(genson(modification));
+        assertThat(EHRDataModificationJsonCodec.INSTANCE.toBytes(deletion)).isEqualTo(genson(deletion));
+
+        PageResult page = new PageResult(Arrays.asList(ehrData, randomEHRData(random, false)), "", "ehr3");
+        PageResult summaries = new PageResult(Collections.singletonList(summary), "ehr1", "");
+        PageResult empty = new PageResult(Collections.emptyList(), null, null);
+        assertThat(JsonCodecs.toBytes(page)).isEqualTo(genson(page));
+        assertThat(JsonCodecs.toBytes(summaries)).isEqualTo(genson(summaries));
+        assertThat(JsonCodecs.toBytes(empty)).isEqualTo(genson(empty));
+    }
+
+    @Test
+    public void readsWhatGensonWrites() {
+        Random random = new Random(2024);
+        for (int i = 0; i < 2000; i++) {
+            EHRData ehrData = randomEHRData(random, false);
+
+            assertThat(EHRDataJsonCodec.INSTANCE.fromBytes(genson(ehrData))).isEqualTo(ehrData);
+        }
+    }
+
+    @Test
+    public void readsPropertiesInAnyOrderAndSkipsUnknownOnes() {
+        String json = " {\n  \"version\" : 3, \"extra\": {\"nested\": [1, \"}\\\"]\", {\"a\": null}]},"
+                + " \"doc\": true, \"id\": \"ehr\\u0031\", \"createdAt\": 1640995200000,"
+                + " \"attachmentSize\": null, \"flag\": false, \"textData\": \"café \\ud83d\\ude00\" } ";
+
+        EHRData ehrData = EHRDataJsonCodec.INSTANCE.fromBytes(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(ehrData).isEqualTo(new EHRData("ehr1", "café 😀", null, null, true, null, null,
+                null, new Date(1640995200000L), null, 0, null, 3));
+        assertThat(ehrData).isEqualTo(GENSON.deserialize(json, EHRData.class));
+    }
+
+    @Test
+    public void readsNestedValues() {
+        EHRData ehrData = new EHRData("ehr1", "BP 120/80", "Lab results", "2", false, "pdf", "labs.pdf", null,
+                new Date(1640995200000L));
+        EHRDataModification modification = new EHRDataModification("tx1", new Date(1640995200000L), false, ehrData);
+
+        assertThat(EHRDataModificationJsonCodec.INSTANCE.fromBytes(genson(modification))).isEqualTo(modification);
+        assertThat(EHRDataJsonCodec.INSTANCE.fromBytes("null".getBytes(StandardCharsets.UTF_8))).isNull();
+    }
+
+    @Test
+    public void rejectsMalformedJson() {
+        byte[] json = genson(new EHRData("ehr1", "BP 120/80", null, null, false, null, null, null, null));
+
+        Throwable truncated = catchThrowable(() -> EHRDataJsonCodec.INSTANCE.fromBytes(
+                Arrays.copyOf(json, json.length - 10)));
+        Throwable trailing = catchThrowable(() -> EHRDataJsonCodec.INSTANCE.fromBytes(
+                (new String(json, StandardCharsets.UTF_8) + "}").getBytes(StandardCharsets.UTF_8)));
+        Throwable fraction = catchThrowable(() -> EHRDataJsonCodec.INSTANCE.fromBytes(
+                "{\"version\":1.5}".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(truncated).isInstanceOf(IllegalArgumentException.class);
+        assertThat(trailing).isInstanceOf(IllegalArgumentException.class);
+        assertThat(fraction).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Expected an integer");
+    }
+
+    @Test
+    public void rejectsObjectsWithoutACodec() {
+        Throwable thrown = catchThrowable(() -> JsonCodecs.toJson(Collections.singletonList(new Object())));
+
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("No JSON codec was generated for java.lang.Object");
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.events;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class ChangeFeedConsumerTest {
+
+    private static EHRDataChange change(final String id, final long version, final String name,
+                                        final String fileType) {
+        return new EHRDataChange(id, version == 1 ? EHRDataChange.Operation.CREATE : EHRDataChange.Operation.UPDATE,
+                version, "digest-" + id + "-" + version, name, fileType, false, 0);
+    }
+
+    private static byte[] event(final EHRDataChange... changes) {
+        return ChangeFeed.encode(Arrays.asList(changes));
+    }
+
+    @Test
+    public void maintainsAnIndexedView() throws IOException {
+        EHRDataView view = new EHRDataView();
+        ChangeFeedConsumer consumer = new ChangeFeedConsumer(view, Path.of("unused.ndjson"), 100);
+
+        consumer.accept(1, ChangeFeed.EVENT_NAME, event(change("ehr-1", 1, "Annette KOEPP", "pdf"),
+                change("ehr-2", 1, "Tony RUTHERFORD", "pdf")));
+        consumer.accept(2, ChangeFeed.EVENT_NAME, event(change("ehr-1", 2, "Annette KOEPP", "png")));
+        consumer.accept(2, "OtherEvent", new byte[] {'{'});
+
+        assertThat(view.size()).isEqualTo(2);
+        assertThat(view.findByFileType("pdf")).extracting(EHRDataChange::getId).containsExactly("ehr-2");
+        assertThat(view.findByFileType("png")).extracting(EHRDataChange::getId).containsExactly("ehr-1");
+        assertThat(view.findByName("Annette KOEPP")).containsExactly(change("ehr-1", 2, "Annette KOEPP", "png"));
+    }
+
+    @Test
+    public void ignoresReplayedChanges() throws IOException {
+        EHRDataView view = new EHRDataView();
+        ChangeFeedConsumer consumer = new ChangeFeedConsumer(view, Path.of("unused.ndjson"), 100);
+
+        consumer.accept(1, ChangeFeed.EVENT_NAME, event(change("ehr-1", 1, "Annette KOEPP", "pdf")));
+        consumer.accept(2, ChangeFeed.EVENT_NAME, event(change("ehr-1", 2, "Annette KOEPP", "png")));
+
+        assertThat(consumer.accept(1, ChangeFeed.EVENT_NAME, event(change("ehr-1", 1, "Annette KOEPP", "pdf"))))
+                .isZero();
+        assertThat(view.get("ehr-1").getFileType()).isEqualTo("png");
+    }
+
+    @Test
+    public void resumesFromTheCheckpoint(@TempDir final Path directory) throws IOException {
+        Path checkpointFile = directory.resolve("ehr-view.ndjson");
+        ChangeFeedConsumer consumer = new ChangeFeedConsumer(new EHRDataView(), checkpointFile, 2);
+
+        consumer.accept(5, ChangeFeed.EVENT_NAME, event(change("ehr-1", 1, "Annette KOEPP", "pdf")));
+        consumer.accept(6, ChangeFeed.EVENT_NAME, event(change("ehr-2", 1, "Tony RUTHERFORD", "png")));
+        assertThat(checkpointFile).doesNotExist();
+        consumer.accept(7, ChangeFeed.EVENT_NAME, event(change("ehr-3", 1, "Tony RUTHERFORD", "txt")));
+
+        EHRDataView restored = new EHRDataView();
+        ChangeFeedConsumer resumed = new ChangeFeedConsumer(restored, checkpointFile, 2);
+
+        assertThat(resumed.getStartBlock()).isEqualTo(7);
+        assertThat(restored.getAll()).extracting(EHRDataChange::getId).containsExactly("ehr-1", "ehr-2");
+        assertThat(resumed.accept(7, ChangeFeed.EVENT_NAME, event(change("ehr-3", 1, "Tony RUTHERFORD", "txt"))))
+                .isEqualTo(1);
+
+        resumed.checkpoint();
+
+        assertThat(new ChangeFeedConsumer(new EHRDataView(), checkpointFile, 2).getStartBlock()).isEqualTo(7);
+        assertThat(Files.readAllLines(checkpointFile)).hasSize(4);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).containsExactly(checkpointFile);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import org.hyperledger.fabric.samples.ehr.codec.Compression;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class AttachmentStoreTest {
+
+    private static final byte[] CONTENT = "Sample Attachment".getBytes(StandardCharsets.UTF_8);
+
+    private static final String DIGEST = "b51ad49d7d9aed3fc0c3b9ba1a1a78ecebd3fb8ac29fd7b6b4b8d7d0f5a1a2c4";
+
+    private static final String ATTACHMENT_KEY = new CompositeKey("ehr~attachment", DIGEST).toString();
+
+    private static final String DEFLATED_ATTACHMENT_KEY = new CompositeKey("ehr~attachmentDeflated", DIGEST).toString();
+
+    private static final String REFERENCES_KEY = new CompositeKey("ehr~attachmentRefs", DIGEST).toString();
+
+    private ChaincodeStub mockStub(final String references) {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.createCompositeKey("ehr~attachment", DIGEST)).thenReturn(new CompositeKey("ehr~attachment", DIGEST));
+        when(stub.createCompositeKey("ehr~attachmentDeflated", DIGEST))
+                .thenReturn(new CompositeKey("ehr~attachmentDeflated", DIGEST));
+        when(stub.createCompositeKey("ehr~attachmentRefs", DIGEST))
+                .thenReturn(new CompositeKey("ehr~attachmentRefs", DIGEST));
+        when(stub.getState(REFERENCES_KEY))
+                .thenReturn(references == null ? null : references.getBytes(StandardCharsets.UTF_8));
+        return stub;
+    }
+
+    @Test
+    public void digestIsLowercaseHexSha256() {
+        assertThat(AttachmentStore.digest(new byte[0]))
+                .isEqualTo("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+    }
+
+    @Nested
+    class Retain {
+
+        @Test
+        public void whenContentIsNew() {
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            String digest = AttachmentStore.digest(CONTENT);
+            when(stub.createCompositeKey("ehr~attachment", digest)).thenReturn(new CompositeKey("ehr~attachment", digest));
+            when(stub.createCompositeKey("ehr~attachmentRefs", digest))
+                    .thenReturn(new CompositeKey("ehr~attachmentRefs", digest));
+
+            assertThat(new AttachmentStore(stub).retain(CONTENT)).isEqualTo(digest);
+
+            verify(stub).putState(new CompositeKey("ehr~attachment", digest).toString(), CONTENT);
+            verify(stub).putState(new CompositeKey("ehr~attachmentRefs", digest).toString(),
+                    "1".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Nested
+    class Release {
+
+        @Test
+        public void whenContentIsShared() {
+            ChaincodeStub stub = mockStub("2");
+
+            new AttachmentStore(stub).release(DIGEST);
+
+            verify(stub).putState(REFERENCES_KEY, "1".getBytes(StandardCharsets.UTF_8));
+            verify(stub, never()).delState(any());
+        }
+
+        @Test
+        public void whenLastReferenceIsDropped() {
+            ChaincodeStub stub = mockStub("1");
+
+            new AttachmentStore(stub).release(DIGEST);
+
+            verify(stub).delState(ATTACHMENT_KEY);
+            verify(stub).delState(DEFLATED_ATTACHMENT_KEY);
+            verify(stub).delState(REFERENCES_KEY);
+        }
+    }
+
+    @Nested
+    class Compressed {
+
+        private final byte[] document = String.join("\n", Collections.nCopies(100, "Discharge summary line"))
+                .getBytes(StandardCharsets.UTF_8);
+
+        @Test
+        public void storesCompressibleContentDeflated() {
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            String digest = AttachmentStore.digest(document);
+            when(stub.createCompositeKey("ehr~attachmentDeflated", digest))
+                    .thenReturn(new CompositeKey("ehr~attachmentDeflated", digest));
+            when(stub.createCompositeKey("ehr~attachmentRefs", digest))
+                    .thenReturn(new CompositeKey("ehr~attachmentRefs", digest));
+
+            new AttachmentStore(stub, new Compression(1024)).retain(document);
+
+            verify(stub).putState(new CompositeKey("ehr~attachmentDeflated", digest).toString(),
+                    new Compression(1024).compress(document));
+            verify(stub, never()).putState(eq(new CompositeKey("ehr~attachment", digest).toString()), any());
+        }
+
+        @Test
+        public void inflatesOnRead() {
+            ChaincodeStub stub = mockStub("1");
+            when(stub.getState(DEFLATED_ATTACHMENT_KEY)).thenReturn(new Compression(1024).compress(document));
+
+            assertThat(new AttachmentStore(stub).get(DIGEST)).isEqualTo(document);
+        }
+
+        @Test
+        public void readsPlainContentFirst() {
+            ChaincodeStub stub = mockStub("1");
+            when(stub.getState(ATTACHMENT_KEY)).thenReturn(CONTENT);
+
+            assertThat(new AttachmentStore(stub, new Compression(1)).get(DIGEST)).isEqualTo(CONTENT);
+            verify(stub, never()).getState(DEFLATED_ATTACHMENT_KEY);
+        }
+    }
+}
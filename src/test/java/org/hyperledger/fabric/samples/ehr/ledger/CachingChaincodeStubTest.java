@@ -0,0 +1,174 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class CachingChaincodeStubTest {
+
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private ChaincodeStub stub;
+
+    private CachingChaincodeStub cachingStub;
+
+    @BeforeEach
+    public void setUp() {
+        stub = mock(ChaincodeStub.class);
+        cachingStub = new CachingChaincodeStub(stub);
+    }
+
+    @Nested
+    class Reads {
+
+        @Test
+        public void areMemoized() {
+            when(stub.getState("key")).thenReturn(VALUE);
+
+            assertThat(cachingStub.getState("key")).isEqualTo(VALUE);
+            assertThat(cachingStub.getState("key")).isEqualTo(VALUE);
+
+            verify(stub, times(1)).getState("key");
+        }
+
+        @Test
+        public void memoizeMissingKeys() {
+            assertThat(cachingStub.getState("key")).isNull();
+            assertThat(cachingStub.getState("key")).isNull();
+
+            verify(stub, times(1)).getState("key");
+        }
+
+        @Test
+        public void seeBufferedWrites() {
+            cachingStub.putState("key", VALUE);
+
+            assertThat(cachingStub.getState("key")).isEqualTo(VALUE);
+            assertThat(cachingStub.getStringState("key")).isEqualTo("value");
+            verify(stub, never()).getState(anyString());
+        }
+
+        @Test
+        public void seeBufferedDeletes() {
+            when(stub.getState("key")).thenReturn(VALUE);
+            cachingStub.getState("key");
+
+            cachingStub.delState("key");
+
+            assertThat(cachingStub.getState("key")).isNull();
+        }
+    }
+
+    @Nested
+    class Writes {
+
+        @Test
+        public void areBufferedUntilFlushed() {
+            cachingStub.putState("key", VALUE);
+            cachingStub.delState("other");
+
+            verify(stub, never()).putState(anyString(), any());
+            verify(stub, never()).delState(anyString());
+        }
+
+        @Test
+        public void areFlushedInOrderOfFirstWrite() {
+            byte[] updated = "updated".getBytes(StandardCharsets.UTF_8);
+            cachingStub.putState("b", VALUE);
+            cachingStub.delState("a");
+            cachingStub.putState("b", updated);
+
+            cachingStub.flush();
+
+            InOrder inOrder = inOrder(stub);
+            inOrder.verify(stub).putState("b", updated);
+            inOrder.verify(stub).delState("a");
+            verify(stub, never()).putState("b", VALUE);
+        }
+
+        @Test
+        public void areFlushedOnce() {
+            cachingStub.putState("key", VALUE);
+
+            cachingStub.flush();
+            cachingStub.flush();
+
+            verify(stub, times(1)).putState("key", VALUE);
+        }
+    }
+
+    @Nested
+    class Counters {
+
+        @Test
+        public void separatePeerReadsFromCacheHits() {
+            when(stub.getState("key")).thenReturn(VALUE);
+            cachingStub.putState("written", VALUE);
+
+            cachingStub.getState("key");
+            cachingStub.getState("key");
+            cachingStub.getState("written");
+
+            assertThat(cachingStub.getPeerReads()).isEqualTo(1);
+            assertThat(cachingStub.getCacheHits()).isEqualTo(2);
+        }
+
+        @Test
+        public void countFlushedWritesAndDeletes() {
+            cachingStub.putState("a", VALUE);
+            cachingStub.putState("a", VALUE);
+            cachingStub.delState("b");
+
+            cachingStub.flush();
+
+            assertThat(cachingStub.getWrites()).isEqualTo(1);
+            assertThat(cachingStub.getDeletes()).isEqualTo(1);
+        }
+
+        @Test
+        public void countRecordsIterated() throws Exception {
+            InMemoryLedger ledger = new InMemoryLedger();
+            InMemoryChaincodeStub setup = ledger.newTransaction();
+            setup.putStringState("a", "1");
+            setup.putStringState("b", "2");
+            ledger.commit(setup);
+            CachingChaincodeStub counting = new CachingChaincodeStub(ledger.newTransaction());
+
+            try (QueryResultsIterator<KeyValue> results = counting.getStateByRange("", "")) {
+                results.forEach(result -> { });
+            }
+
+            assertThat(counting.getRecordsIterated()).isEqualTo(2);
+            assertThat(counting.getQueryNanos()).isPositive();
+        }
+
+        @Test
+        public void passOnMissingQueryResults() {
+            assertThat(cachingStub.getStateByRange("", "")).isNull();
+            assertThat(cachingStub.getStateByRangeWithPagination("", "", 10, "")).isNull();
+            assertThat(cachingStub.getQueryResult("{}")).isNull();
+            assertThat(cachingStub.getQueryResultWithPagination("{}", 10, "")).isNull();
+            assertThat(cachingStub.getHistoryForKey("key")).isNull();
+        }
+    }
+}
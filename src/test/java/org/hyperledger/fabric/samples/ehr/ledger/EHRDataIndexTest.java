@@ -0,0 +1,66 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+public final class EHRDataIndexTest {
+
+    private InMemoryLedger ledger;
+
+    @BeforeEach
+    public void setUp() {
+        ledger = new InMemoryLedger();
+        InMemoryChaincodeStub stub = ledger.newTransaction();
+        EHRDataIndex index = new EHRDataIndex(stub);
+        for (int i = 1; i <= 4; i++) {
+            index.add(new EHRData("ehr-" + i, "", "Annette KOEPP", "1", false, "pdf", "labs.pdf", null,
+                    new Date(i * 1000L)));
+        }
+        ledger.commit(stub);
+    }
+
+    private List<String> ids(final EHRDataIndex index, final QueryResultsIteratorWithMetadata<KeyValue> page) {
+        List<String> ids = new ArrayList<>();
+        for (KeyValue entry : page) {
+            ids.add(index.idOf(entry));
+        }
+        return ids;
+    }
+
+    @Test
+    public void rangesFromTheLowerBound() {
+        EHRDataIndex index = new EHRDataIndex(ledger.newTransaction());
+
+        QueryResultsIteratorWithMetadata<KeyValue> first = index.range(EHRDataIndex.Attribute.CREATED_AT, 2000,
+                2, "");
+        List<String> firstIds = ids(index, first);
+        String bookmark = first.getMetadata().getBookmark();
+
+        assertThat(firstIds).containsExactly("ehr-2", "ehr-3");
+        assertThat(ids(index, index.range(EHRDataIndex.Attribute.CREATED_AT, 2000, 2, bookmark)))
+                .containsExactly("ehr-4");
+    }
+
+    @Test
+    public void cannotRangeFromAnExplicitCompositeKey() {
+        String start = new CompositeKey("createdAt~id", EHRDataIndex.formatNumber(2000)).toString();
+
+        assertThat(catchThrowable(() -> CompositeKey.validateSimpleKeys(start, "")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRSmartContract;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class InMemoryLedgerTest {
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static InMemoryLedger ledgerWith(final String... keysAndValues) {
+        InMemoryLedger ledger = new InMemoryLedger();
+        InMemoryChaincodeStub stub = ledger.newTransaction();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            stub.putState(keysAndValues[i], bytes(keysAndValues[i + 1]));
+        }
+        ledger.commit(stub);
+        return ledger;
+    }
+
+    private static List<String> keys(final Iterable<KeyValue> results) {
+        List<String> keys = new ArrayList<>();
+        for (KeyValue result : results) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    @Nested
+    class Commit {
+
+        @Test
+        public void readsSeeCommittedStateOnly() {
+            InMemoryLedger ledger = ledgerWith("a", "1");
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+
+            stub.putState("a", bytes("2"));
+
+            assertThat(stub.getState("a")).isEqualTo(bytes("1"));
+            assertThat(ledger.commit(stub)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(ledger.getState("a")).isEqualTo(bytes("2"));
+            assertThat(ledger.getHeight()).isEqualTo(2);
+        }
+
+        @Test
+        public void whenReadKeyChanged() {
+            InMemoryLedger ledger = ledgerWith("a", "1");
+            InMemoryChaincodeStub first = ledger.newTransaction();
+            InMemoryChaincodeStub second = ledger.newTransaction();
+
+            first.getState("a");
+            first.putState("b", bytes("from first"));
+            second.getState("a");
+            second.putState("a", bytes("from second"));
+
+            assertThat(ledger.commit(second)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(ledger.commit(first)).isEqualTo(InMemoryLedger.ValidationCode.MVCC_READ_CONFLICT);
+            assertThat(ledger.getState("b")).isNull();
+            assertThat(ledger.getCount(InMemoryLedger.ValidationCode.MVCC_READ_CONFLICT)).isEqualTo(1);
+        }
+
+        @Test
+        public void whenReadKeyWasCreated() {
+            InMemoryLedger ledger = new InMemoryLedger();
+            InMemoryChaincodeStub first = ledger.newTransaction();
+            InMemoryChaincodeStub second = ledger.newTransaction();
+
+            assertThat(first.getState("a")).isNull();
+            first.putState("a", bytes("from first"));
+            assertThat(second.getState("a")).isNull();
+            second.putState("a", bytes("from second"));
+
+            assertThat(ledger.commit(first)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(ledger.commit(second)).isEqualTo(InMemoryLedger.ValidationCode.MVCC_READ_CONFLICT);
+            assertThat(ledger.getState("a")).isEqualTo(bytes("from first"));
+        }
+
+        @Test
+        public void whenRangeGainedAKey() {
+            InMemoryLedger ledger = ledgerWith("a", "1", "c", "3");
+            InMemoryChaincodeStub first = ledger.newTransaction();
+            InMemoryChaincodeStub second = ledger.newTransaction();
+
+            keys(first.getStateByRange("a", "d"));
+            first.putState("z", bytes("26"));
+            second.putState("b", bytes("2"));
+
+            assertThat(ledger.commit(second)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(ledger.commit(first)).isEqualTo(InMemoryLedger.ValidationCode.PHANTOM_READ_CONFLICT);
+        }
+
+        @Test
+        public void whenKeyOutsideReadPageChanged() throws Exception {
+            InMemoryLedger ledger = ledgerWith("a", "1", "b", "2", "c", "3");
+            InMemoryChaincodeStub first = ledger.newTransaction();
+            InMemoryChaincodeStub second = ledger.newTransaction();
+
+            try (QueryResultsIteratorWithMetadata<KeyValue> page = first.getStateByRangeWithPagination("", "", 1, "")) {
+                assertThat(keys(page)).containsExactly("a");
+                assertThat(page.getMetadata().getBookmark()).isEqualTo("b");
+            }
+            first.putState("z", bytes("26"));
+            second.putState("c", bytes("three"));
+
+            assertThat(ledger.commit(second)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            assertThat(ledger.commit(first)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+        }
+
+        @Test
+        public void recordsHistoryNewestFirst() {
+            InMemoryLedger ledger = ledgerWith("a", "1");
+            InMemoryChaincodeStub delete = ledger.newTransaction();
+            delete.delState("a");
+            ledger.commit(delete);
+
+            List<KeyModification> history = new ArrayList<>();
+            ledger.newTransaction().getHistoryForKey("a").forEach(history::add);
+
+            assertThat(history).hasSize(2);
+            assertThat(history.get(0).isDeleted()).isTrue();
+            assertThat(history.get(0).getTxId()).isEqualTo(delete.getTxId());
+            assertThat(history.get(1).getStringValue()).isEqualTo("1");
+        }
+    }
+
+    @Nested
+    class Queries {
+
+        @Test
+        public void rangeSkipsCompositeKeys() {
+            InMemoryChaincodeStub setup = new InMemoryLedger().newTransaction();
+            String indexKey = setup.createCompositeKey("fileType~id", "pdf", "a").toString();
+            InMemoryLedger ledger = ledgerWith("a", "1", indexKey, "\u0000");
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+
+            assertThat(keys(stub.getStateByRange("", ""))).containsExactly("a");
+            assertThat(keys(stub.getStateByPartialCompositeKey("fileType~id", "pdf"))).containsExactly(indexKey);
+            assertThat(keys(stub.getStateByPartialCompositeKey("fileType~id", "png"))).isEmpty();
+        }
+
+        @Test
+        public void richQueryPagesInKeyOrder() {
+            InMemoryLedger ledger = ledgerWith(
+                    "a", "{\"fileType\":\"pdf\",\"size\":1}",
+                    "b", "{\"fileType\":\"png\",\"size\":2}",
+                    "c", "{\"fileType\":\"pdf\",\"size\":3}",
+                    "d", "{\"fileType\":\"pdf\",\"size\":4}");
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            String query = "{\"selector\":{\"fileType\":\"pdf\",\"size\":{\"$gte\":2}}}";
+
+            QueryResultsIteratorWithMetadata<KeyValue> first = stub.getQueryResultWithPagination(query, 1, "");
+            assertThat(keys(first)).containsExactly("c");
+            String bookmark = first.getMetadata().getBookmark();
+            QueryResultsIteratorWithMetadata<KeyValue> second = stub.getQueryResultWithPagination(query, 1, bookmark);
+            assertThat(keys(second)).containsExactly("d");
+            assertThat(second.getMetadata().getBookmark()).isEmpty();
+        }
+
+        @Test
+        public void richQuerySorts() {
+            InMemoryLedger ledger = ledgerWith(
+                    "a", "{\"createdAt\":30,\"doc\":true}",
+                    "b", "{\"createdAt\":10,\"doc\":false}",
+                    "c", "{\"createdAt\":20,\"doc\":true}",
+                    "d", "not a document");
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+            String query = "{\"selector\":{\"$or\":[{\"doc\":true},{\"createdAt\":{\"$in\":[10]}}]},"
+                    + "\"sort\":[{\"createdAt\":\"desc\"}]}";
+
+            QueryResultsIteratorWithMetadata<KeyValue> first = stub.getQueryResultWithPagination(query, 2, "");
+            assertThat(keys(first)).containsExactly("a", "c");
+            assertThat(keys(stub.getQueryResultWithPagination(query, 2, first.getMetadata().getBookmark())))
+                    .containsExactly("b");
+        }
+    }
+
+    @Test
+    public void runsTheContract() {
+        EHRSmartContract contract = new EHRSmartContract();
+        InMemoryLedger ledger = new InMemoryLedger();
+
+        InMemoryChaincodeStub create = ledger.newTransaction();
+        Context ctx = contract.createContext(create);
+        contract.CreateEHRData(ctx, "{\"id\":\"ehr-1\",\"name\":\"Annette KOEPP\",\"fileType\":\"pdf\"}");
+        contract.afterTransaction(ctx, null);
+        assertThat(ledger.commit(create)).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+
+        EHRData ehrData = contract.ReadEHRData(contract.createContext(ledger.newTransaction()), "ehr-1");
+        assertThat(ehrData.getName()).isEqualTo("Annette KOEPP");
+        assertThat(contract.QueryEHRDataByIndex(contract.createContext(ledger.newTransaction()), "fileType", "pdf",
+                "10", "")).contains("\"id\":\"ehr-1\"");
+    }
+}
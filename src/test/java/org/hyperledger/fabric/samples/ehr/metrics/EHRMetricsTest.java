@@ -0,0 +1,90 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.metrics;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.codec.DecodeCache;
+import org.hyperledger.fabric.samples.ehr.ledger.CachingChaincodeStub;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class EHRMetricsTest {
+
+    @Test
+    public void rendersCompletedTransactions() {
+        EHRMetrics metrics = new EHRMetrics();
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getState("key")).thenReturn(new byte[] {1});
+        CachingChaincodeStub cachingStub = new CachingChaincodeStub(stub);
+        cachingStub.getState("key");
+        cachingStub.getState("key");
+        cachingStub.putState("key", new byte[] {2});
+        cachingStub.flush();
+
+        metrics.started("ReadEHRData");
+        metrics.started("ReadEHRData");
+        metrics.completed("ReadEHRData", TimeUnit.MILLISECONDS.toNanos(3), 36, 120, cachingStub);
+
+        assertThat(metrics.render())
+                .contains("# TYPE ehr_transaction_duration_seconds histogram")
+                .contains("ehr_transaction_duration_seconds_bucket{transaction=\"ReadEHRData\",le=\"0.005\"} 1")
+                .contains("ehr_transaction_duration_seconds_bucket{transaction=\"ReadEHRData\",le=\"+Inf\"} 1")
+                .contains("ehr_transaction_duration_seconds_count{transaction=\"ReadEHRData\"} 1")
+                .contains("ehr_transactions_started_total{transaction=\"ReadEHRData\"} 2")
+                .contains("ehr_transaction_payload_bytes_total{transaction=\"ReadEHRData\"} 36")
+                .contains("ehr_transaction_response_bytes_total{transaction=\"ReadEHRData\"} 120")
+                .contains("ehr_state_peer_reads_total{transaction=\"ReadEHRData\"} 1")
+                .contains("ehr_state_cache_hits_total{transaction=\"ReadEHRData\"} 1")
+                .contains("ehr_state_writes_total{transaction=\"ReadEHRData\"} 1");
+    }
+
+    @Test
+    public void rendersTheDecodeCache() {
+        DecodeCache cache = new DecodeCache(1024 * 1024);
+        EHRMetrics metrics = new EHRMetrics(cache);
+        byte[] value = new byte[] {'{', '}'};
+        EHRData ehrData = new EHRData("ehr1", null, null, null, false, null, null, null, null);
+        cache.get(value, bytes -> ehrData);
+        cache.get(value, bytes -> ehrData);
+
+        assertThat(metrics.render())
+                .contains("# TYPE ehr_decode_cache_hits_total counter")
+                .contains("ehr_decode_cache_hits_total 1")
+                .contains("ehr_decode_cache_misses_total 1")
+                .contains("ehr_decode_cache_evictions_total 0")
+                .contains("ehr_decode_cache_entries 1")
+                .contains("ehr_decode_cache_max_bytes 1048576");
+    }
+
+    @Test
+    public void servesMetricsOverHttp() throws Exception {
+        EHRMetrics metrics = new EHRMetrics();
+        metrics.started("CreateEHRData");
+        MetricsServer server = MetricsServer.start(0, metrics);
+        try {
+            URL url = new URL("http://localhost:" + server.getPort() + MetricsServer.PATH);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            assertThat(connection.getContentType()).startsWith("text/plain");
+            try (InputStream body = connection.getInputStream()) {
+                assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8))
+                        .contains("ehr_transactions_started_total{transaction=\"CreateEHRData\"} 1");
+            }
+        } finally {
+            server.stop();
+        }
+    }
+}
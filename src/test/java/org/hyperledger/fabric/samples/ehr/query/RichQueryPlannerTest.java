@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.query;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class RichQueryPlannerTest {
+
+    private final RichQueryPlanner planner = new RichQueryPlanner(CouchDBIndex.SHIPPED);
+
+    @Test
+    public void shippedIndexesMatchIndexFiles() throws IOException {
+        File[] files = new File("META-INF/statedb/couchdb/indexes").listFiles();
+        assertThat(files).isNotNull();
+
+        List<String> shipped = new ArrayList<>();
+        for (CouchDBIndex index : CouchDBIndex.SHIPPED) {
+            shipped.add(index.getDesignDocument() + "/" + index.getName() + index.getFields());
+        }
+
+        List<String> definitions = new ArrayList<>();
+        for (File file : files) {
+            JSONObject definition = new JSONObject(new String(Files.readAllBytes(file.toPath()),
+                    StandardCharsets.UTF_8));
+            JSONArray fields = definition.getJSONObject("index").getJSONArray("fields");
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < fields.length(); i++) {
+                names.add(fields.getJSONObject(i).keySet().iterator().next());
+            }
+            definitions.add(definition.getString("ddoc") + "/" + definition.getString("name") + names);
+        }
+
+        assertThat(definitions).containsExactlyInAnyOrderElementsOf(shipped);
+    }
+
+    @Test
+    public void selectsMostSelectiveIndex() {
+        String query = planner.withIndex("{\"selector\":{\"name\":\"a\",\"createdAt\":{\"$gte\":1}}}");
+
+        assertThat(new JSONObject(query).getJSONArray("use_index").toList())
+                .containsExactly("_design/indexNameCreatedAtDoc", "indexNameCreatedAt");
+    }
+
+    @Test
+    public void collectsFieldsUnderAnd() {
+        String query = planner.withIndex("{\"selector\":{\"$and\":[{\"fileType\":\"pdf\"},{\"doc\":true}]}}");
+
+        assertThat(query).isNotNull();
+        assertThat(new JSONObject(query).getJSONArray("use_index").getString(1)).isIn("indexFileType", "indexDoc");
+    }
+
+    @Test
+    public void rejectsSortNotServedByAnIndex() {
+        assertThat(planner.withIndex("{\"selector\":{\"doc\":true},\"sort\":[{\"createdAt\":\"asc\"}]}")).isNull();
+    }
+
+    @Test
+    public void rejectsUnindexedSelector() {
+        assertThat(planner.withIndex("{\"selector\":{\"textData\":\"x\"}}")).isNull();
+    }
+}
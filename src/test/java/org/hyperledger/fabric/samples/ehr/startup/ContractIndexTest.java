@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.startup;
+
+import org.hyperledger.fabric.contract.routing.ContractDefinition;
+import org.hyperledger.fabric.contract.routing.RoutingRegistry;
+import org.hyperledger.fabric.contract.routing.TxFunction;
+import org.hyperledger.fabric.contract.routing.TypeRegistry;
+import org.hyperledger.fabric.contract.routing.impl.RoutingRegistryImpl;
+import org.hyperledger.fabric.contract.routing.impl.TypeRegistryImpl;
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRDataModification;
+import org.hyperledger.fabric.samples.ehr.EHRDataSummary;
+import org.hyperledger.fabric.samples.ehr.EHRSmartContract;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public final class ContractIndexTest {
+
+    private static Map<String, Set<String>> routes(final RoutingRegistry registry) {
+        Map<String, Set<String>> routes = new TreeMap<>();
+        for (ContractDefinition contract : registry.getAllDefinitions()) {
+            Set<String> transactions = new TreeSet<>();
+            for (TxFunction txFunction : contract.getTxFunctions()) {
+                transactions.add(txFunction.getName());
+            }
+            routes.put(contract.getName(), transactions);
+        }
+        return routes;
+    }
+
+    @Test
+    public void indexesTheContractAndItsDataTypes() {
+        ContractIndex index = ContractIndex.scan();
+
+        assertThat(index.getContracts()).contains(EHRSmartContract.class.getName());
+        assertThat(index.getDataTypes()).contains(EHRData.class.getName(), EHRDataSummary.class.getName(),
+                EHRDataModification.class.getName());
+    }
+
+    @Test
+    public void registersTheRoutesOfTheClasspathScan(@TempDir final Path directory) throws IOException {
+        RoutingRegistry scanned = new RoutingRegistryImpl();
+        scanned.findAndSetContracts(new TypeRegistryImpl());
+        Path file = directory.resolve(ContractIndex.RESOURCE);
+        ContractIndex.scan().write(file);
+
+        ContractIndex index;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            index = ContractIndex.read(reader);
+        }
+        RoutingRegistry registry = new RoutingRegistryImpl();
+        TypeRegistry typeRegistry = new TypeRegistryImpl();
+        index.register(registry, typeRegistry, getClass().getClassLoader());
+
+        assertThat(routes(registry)).isEqualTo(routes(scanned)).containsKey("ehr");
+        assertThat(routes(registry).get("ehr")).contains("CreateEHRData", "ReadEHRData");
+        assertThat(typeRegistry.getDataType(EHRData.class.getSimpleName())).isNotNull();
+    }
+
+    @Test
+    public void rejectsAMalformedIndex() {
+        BufferedReader reader = new BufferedReader(new StringReader("contract\n"));
+
+        assertThatThrownBy(() -> ContractIndex.read(reader)).isInstanceOf(IOException.class)
+                .hasMessageContaining("Malformed entry");
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.startup;
+
+import org.hyperledger.fabric.metrics.Metrics;
+import org.hyperledger.fabric.metrics.MetricsProvider;
+import org.hyperledger.fabric.shim.impl.InvocationTaskExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public final class VirtualThreadDispatchTest {
+
+    private final ThreadPoolExecutor executor = new InvocationTaskExecutor(5, 5, 5000, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(5000), Thread::new, new ThreadPoolExecutor.AbortPolicy());
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void runsTasksOnVirtualThreads() throws InterruptedException, ExecutionException {
+        assumeTrue(VirtualThreadDispatch.isAvailable());
+
+        VirtualThreadDispatch.dispatch(executor, 100);
+
+        assertThat(executor.getMaximumPoolSize()).isEqualTo(100);
+        assertThat(executor.getCorePoolSize()).isEqualTo(100);
+        assertThat(executor.submit(() -> Thread.currentThread().getName()).get())
+                .startsWith("fabric-txinvoke-virtual-");
+    }
+
+    @Test
+    public void switchesTheShimExecutorWhenItIsRegistered() {
+        assumeTrue(VirtualThreadDispatch.isAvailable());
+        Metrics.initialize(new Properties());
+
+        VirtualThreadDispatch.install(new Properties(), 50);
+        MetricsProvider provider = Metrics.getProvider();
+        provider.setTaskMetricsCollector((InvocationTaskExecutor) executor);
+
+        assertThat(provider).isInstanceOf(VirtualThreadDispatch.class);
+        assertThat(executor.getMaximumPoolSize()).isEqualTo(50);
+    }
+
+    @Test
+    public void leavesTheExecutorAloneWithoutVirtualThreads() {
+        assumeFalse(VirtualThreadDispatch.isAvailable());
+
+        assertThatThrownBy(() -> VirtualThreadDispatch.dispatch(executor, 100))
+                .isInstanceOf(UnsupportedOperationException.class).hasMessageContaining("JDK 21");
+        assertThat(executor.getMaximumPoolSize()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import org.hyperledger.fabric.protos.msp.Identities;
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.protos.peer.ProposalPackage;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.json.JSONObject;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * The {@link ChaincodeStub} of one transaction simulated against an {@link InMemoryLedger}.
+ *
+ * As on a peer, reads see committed state only, never the transaction's own writes.
+ * Every key read is added to the read set with its committed version, and every range
+ * or partial composite key query records the keys it returned for phantom detection;
+ * writes and deletes are collected in the write set until the ledger commits them.
+ * Range queries skip composite keys unless a composite key range is asked for. Rich
+ * queries understand the {@link MangoQuery} subset of selectors; unsorted results
+ * come in key order with the next matching key as bookmark, sorted results use the
+ * offset of the next result. As on CouchDB, rich query results are not re-validated.
+ *
+ * Instances are not thread-safe; each transaction gets its own.
+ */
+public final class InMemoryChaincodeStub implements ChaincodeStub {
+
+    /**
+     * A serialized identity with a self-signed certificate, enough for the contract
+     * API to build a client identity.
+     */
+    public static final byte[] CREATOR = Identities.SerializedIdentity.newBuilder()
+            .setMspid("Org1MSP")
+            .setIdBytes(ByteString.copyFromUtf8("-----BEGIN CERTIFICATE-----\n"
+                    + "MIICMjCCAdmgAwIBAgIUIWU5lBcC20rKmxmp45T6f8GcesAwCgYIKoZIzj0EAwIw\n"
+                    + "bjELMAkGA1UEBhMCVVMxFzAVBgNVBAgMDk5vcnRoIENhcm9saW5hMRQwEgYDVQQK\n"
+                    + "DAtIeXBlcmxlZGdlcjEPMA0GA1UECwwGY2xpZW50MR8wHQYDVQQDDBZVc2VyMUBv\n"
+                    + "cmcxLmV4YW1wbGUuY29tMCAXDTI2MTAxODA4MDEzMFoYDzIxMjYwOTI0MDgwMTMw\n"
+                    + "WjBuMQswCQYDVQQGEwJVUzEXMBUGA1UECAwOTm9ydGggQ2Fyb2xpbmExFDASBgNV\n"
+                    + "BAoMC0h5cGVybGVkZ2VyMQ8wDQYDVQQLDAZjbGllbnQxHzAdBgNVBAMMFlVzZXIx\n"
+                    + "QG9yZzEuZXhhbXBsZS5jb20wWTATBgcqhkjOPQIBBggqhkjOPQMBBwNCAAQ18wm0\n"
+                    + "sCtSmfHW3ybi1r7mwe5zgMNyIq0Ni64W8SF626ulIbG/hqy2PN9ETa9xmZ8HV68e\n"
+                    + "UHZG1luATJZDtDs6o1MwUTAdBgNVHQ4EFgQUddHRT9Tf6oJcrOux1VZJbchMMfww\n"
+                    + "HwYDVR0jBBgwFoAUddHRT9Tf6oJcrOux1VZJbchMMfwwDwYDVR0TAQH/BAUwAwEB\n"
+                    + "/zAKBggqhkjOPQQDAgNHADBEAiAi9EF/EHL8jdfPL1IH6S5AhrF6mN9h9t5STlOt\n"
+                    + "dBSwGwIgYLxF4SB6bnrFBN/hv9lnC3cwTgnjnXC6vnNq+N06awI=\n"
+                    + "-----END CERTIFICATE-----\n"))
+            .build()
+            .toByteArray();
+
+    /**
+     * The first key of a range query with no start key; composite keys sort before it.
+     */
+    static final String MIN_SIMPLE_KEY = "\u0001";
+
+    /**
+     * The highest code point, which ends every partial composite key range.
+     */
+    static final String MAX_UNICODE_RUNE = "\uDBFF\uDFFF";
+
+    private final InMemoryLedger ledger;
+    private final String txId;
+    private final Instant txTimestamp;
+
+    private final Map<String, Long> readSet = new LinkedHashMap<>();
+    private final List<InMemoryLedger.RangeRead> rangeReads = new ArrayList<>();
+    private final Map<String, byte[]> writeSet = new LinkedHashMap<>();
+
+    private ChaincodeEventPackage.ChaincodeEvent event;
+
+    InMemoryChaincodeStub(final InMemoryLedger ledger, final String txId, final Instant txTimestamp) {
+        this.ledger = ledger;
+        this.txId = txId;
+        this.txTimestamp = txTimestamp;
+    }
+
+    /**
+     * Returns the committed version of every key the transaction read.
+     *
+     * @return the versions by key, 0 for keys that did not exist
+     */
+    public Map<String, Long> getReadSet() {
+        return Collections.unmodifiableMap(readSet);
+    }
+
+    /**
+     * Returns the writes of the transaction in the order they were first made.
+     *
+     * @return the written values by key, null for deletes
+     */
+    public Map<String, byte[]> getWriteSet() {
+        return Collections.unmodifiableMap(writeSet);
+    }
+
+    List<InMemoryLedger.RangeRead> getRangeReads() {
+        return rangeReads;
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        InMemoryLedger.VersionedValue value = ledger.getWorldState().get(key);
+        readSet.putIfAbsent(key, value == null ? 0L : value.getVersion());
+        return value == null ? null : value.getValue();
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        // As on a peer, writing an empty value deletes the key.
+        writeSet.put(key, value == null || value.length == 0 ? null : value);
+    }
+
+    @Override
+    public void delState(final String key) {
+        writeSet.put(key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        return range(startKey.isEmpty() ? MIN_SIMPLE_KEY : startKey, endKey.isEmpty() ? null : endKey,
+                Integer.MAX_VALUE, "");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+            final String startKey, final String endKey, final int pageSize, final String bookmark) {
+        return range(startKey.isEmpty() ? MIN_SIMPLE_KEY : startKey, endKey.isEmpty() ? null : endKey,
+                pageSize, bookmark);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        return range(compositeKey, compositeKey + MAX_UNICODE_RUNE, Integer.MAX_VALUE, "");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType,
+                                                                        final String... attributes) {
+        return getStateByPartialCompositeKey(createCompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+        String prefix = compositeKey.toString();
+        return range(prefix, prefix + MAX_UNICODE_RUNE, pageSize, bookmark);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        return query(query, Integer.MAX_VALUE, "");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(
+            final String query, final int pageSize, final String bookmark) {
+        return query(query, pageSize, bookmark);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        List<KeyModification> modifications = ledger.getHistory(key);
+        return new QueryResultsIterator<KeyModification>() {
+            @Override
+            public Iterator<KeyModification> iterator() {
+                return modifications.iterator();
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return CREATOR;
+    }
+
+    @Override
+    public String getMspId() {
+        return "Org1MSP";
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public String getChannelId() {
+        return "ehr";
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return txTimestamp;
+    }
+
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+        event = ChaincodeEventPackage.ChaincodeEvent.newBuilder()
+                .setEventName(name)
+                .setPayload(ByteString.copyFrom(payload))
+                .build();
+    }
+
+    @Override
+    public ChaincodeEventPackage.ChaincodeEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getFunction() {
+        return null;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Chaincode.Response invokeChaincode(final String chaincodeName, final List<byte[]> args,
+                                             final String channel) {
+        throw new UnsupportedOperationException("invokeChaincode");
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        return null;
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+        throw new UnsupportedOperationException("setStateValidationParameter");
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateData");
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateDataHash");
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateDataValidationParameter");
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException("putPrivateData");
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key,
+                                                  final byte[] value) {
+        throw new UnsupportedOperationException("setPrivateDataValidationParameter");
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException("delPrivateData");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(final String collection, final String startKey,
+                                                                final String endKey) {
+        throw new UnsupportedOperationException("getPrivateDataByRange");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final String compositeKey) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final CompositeKey compositeKey) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final String objectType,
+                                                                              final String... attributes) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        throw new UnsupportedOperationException("getPrivateDataQueryResult");
+    }
+
+    @Override
+    public ProposalPackage.SignedProposal getSignedProposal() {
+        return null;
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return null;
+    }
+
+    private InMemoryResults range(final String startKey, final String endKey, final int pageSize,
+                                  final String bookmark) {
+        String from = bookmark.isEmpty() ? startKey : bookmark;
+        NavigableMap<String, InMemoryLedger.VersionedValue> state = ledger.getWorldState();
+        NavigableMap<String, InMemoryLedger.VersionedValue> range = endKey == null
+                ? state.tailMap(from, true)
+                : state.subMap(from, true, endKey, false);
+
+        InMemoryLedger.RangeRead rangeRead = new InMemoryLedger.RangeRead(from, endKey);
+        List<KeyValue> results = new ArrayList<>();
+        String nextBookmark = "";
+        for (Map.Entry<String, InMemoryLedger.VersionedValue> entry : range.entrySet()) {
+            if (results.size() == pageSize) {
+                nextBookmark = entry.getKey();
+                break;
+            }
+            rangeRead.add(entry.getKey(), entry.getValue().getVersion());
+            results.add(new InMemoryKeyValue(entry.getKey(), entry.getValue().getValue()));
+        }
+        rangeRead.setExhausted(nextBookmark.isEmpty());
+        rangeReads.add(rangeRead);
+        return new InMemoryResults(results, nextBookmark);
+    }
+
+    private InMemoryResults query(final String query, final int pageSize, final String bookmark) {
+        MangoQuery mangoQuery = MangoQuery.parse(query);
+        NavigableMap<String, InMemoryLedger.VersionedValue> state = ledger.getWorldState();
+
+        if (!mangoQuery.isSorted()) {
+            List<KeyValue> results = new ArrayList<>();
+            String nextBookmark = "";
+            NavigableMap<String, InMemoryLedger.VersionedValue> from = bookmark.isEmpty()
+                    ? state
+                    : state.tailMap(bookmark, true);
+            for (Map.Entry<String, InMemoryLedger.VersionedValue> entry : from.entrySet()) {
+                JSONObject document = entry.getValue().getDocument();
+                if (document == null || !mangoQuery.matches(document)) {
+                    continue;
+                }
+                if (results.size() == pageSize) {
+                    nextBookmark = entry.getKey();
+                    break;
+                }
+                results.add(new InMemoryKeyValue(entry.getKey(), entry.getValue().getValue()));
+            }
+            return new InMemoryResults(results, nextBookmark);
+        }
+
+        List<Map.Entry<String, InMemoryLedger.VersionedValue>> matches = new ArrayList<>();
+        for (Map.Entry<String, InMemoryLedger.VersionedValue> entry : state.entrySet()) {
+            JSONObject document = entry.getValue().getDocument();
+            if (document != null && mangoQuery.matches(document)) {
+                matches.add(entry);
+            }
+        }
+        Comparator<JSONObject> order = mangoQuery.sortOrder();
+        matches.sort((left, right) -> order.compare(left.getValue().getDocument(), right.getValue().getDocument()));
+
+        int offset = bookmark.isEmpty() ? 0 : Integer.parseInt(bookmark);
+        int end = (int) Math.min(matches.size(), (long) offset + pageSize);
+        List<KeyValue> results = new ArrayList<>();
+        for (Map.Entry<String, InMemoryLedger.VersionedValue> entry : matches.subList(Math.min(offset, end), end)) {
+            results.add(new InMemoryKeyValue(entry.getKey(), entry.getValue().getValue()));
+        }
+        return new InMemoryResults(results, end < matches.size() ? Integer.toString(end) : "");
+    }
+
+    private static final class InMemoryKeyValue implements KeyValue {
+
+        private final String key;
+        private final byte[] value;
+
+        InMemoryKeyValue(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class InMemoryResults
+            implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final List<KeyValue> results;
+        private final ChaincodeShim.QueryResponseMetadata metadata;
+
+        InMemoryResults(final List<KeyValue> results, final String bookmark) {
+            this.results = results;
+            this.metadata = ChaincodeShim.QueryResponseMetadata.newBuilder()
+                    .setFetchedRecordsCount(results.size())
+                    .setBookmark(bookmark)
+                    .build();
+        }
+
+        @Override
+        public ChaincodeShim.QueryResponseMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.json.JSONObject;
+
+/**
+ * A sorted, concurrent in-memory ledger that endorses and commits transactions the way
+ * a peer does, so the contract can be load tested on one machine.
+ *
+ * Each transaction is simulated on its own {@link InMemoryChaincodeStub} from
+ * {@link #newTransaction()}. The stub reads committed state only, records the version
+ * of every key and range it reads, and collects its writes. {@link #commit} then
+ * validates the read set against the current state: a key whose version changed is an
+ * MVCC read conflict, and a range that would now return different keys is a phantom
+ * read conflict. Conflicting transactions are rejected without touching the state;
+ * valid ones are applied atomically and recorded in the key history. Commits are
+ * serialized, while any number of transactions may be simulated concurrently.
+ */
+public final class InMemoryLedger {
+
+    /**
+     * The outcome of committing a transaction.
+     */
+    public enum ValidationCode {
+        VALID,
+        MVCC_READ_CONFLICT,
+        PHANTOM_READ_CONFLICT
+    }
+
+    private final ConcurrentSkipListMap<String, VersionedValue> state = new ConcurrentSkipListMap<>();
+    private final Map<String, List<KeyModification>> history = new ConcurrentHashMap<>();
+    private final Map<ValidationCode, AtomicLong> outcomes = new ConcurrentHashMap<>();
+
+    private final AtomicLong transactions = new AtomicLong();
+
+    private volatile long height;
+
+    public InMemoryLedger() {
+        for (ValidationCode code : ValidationCode.values()) {
+            outcomes.put(code, new AtomicLong());
+        }
+    }
+
+    /**
+     * Starts simulating a transaction.
+     *
+     * @return the stub of the transaction
+     */
+    public InMemoryChaincodeStub newTransaction() {
+        String txId = String.format("%064x", transactions.incrementAndGet());
+        return new InMemoryChaincodeStub(this, txId, Instant.now());
+    }
+
+    /**
+     * Starts simulating a transaction proposal with a given ID and timestamp, as each
+     * endorser of the proposal does.
+     *
+     * @param txId the ID of the transaction
+     * @param txTimestamp the timestamp of the proposal
+     * @return the stub of the transaction
+     */
+    public InMemoryChaincodeStub newTransaction(final String txId, final Instant txTimestamp) {
+        return new InMemoryChaincodeStub(this, txId, txTimestamp);
+    }
+
+    /**
+     * Validates a simulated transaction and, if valid, applies its writes.
+     *
+     * @param transaction the stub the transaction was simulated on
+     * @return the validation code of the transaction
+     */
+    public synchronized ValidationCode commit(final InMemoryChaincodeStub transaction) {
+        ValidationCode code = validate(transaction);
+        outcomes.get(code).incrementAndGet();
+        if (code != ValidationCode.VALID) {
+            return code;
+        }
+
+        long version = height + 1;
+        for (Map.Entry<String, byte[]> write : transaction.getWriteSet().entrySet()) {
+            String key = write.getKey();
+            byte[] value = write.getValue();
+            if (value == null) {
+                state.remove(key);
+            } else {
+                state.put(key, new VersionedValue(value, version));
+            }
+            history.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>())
+                    .add(0, new Modification(transaction.getTxId(), value, transaction.getTxTimestamp()));
+        }
+        height = version;
+        return code;
+    }
+
+    /**
+     * Returns the committed value of a key.
+     *
+     * @param key the key
+     * @return the value, or null if the key does not exist
+     */
+    public byte[] getState(final String key) {
+        VersionedValue value = state.get(key);
+        return value == null ? null : value.getValue();
+    }
+
+    /**
+     * Returns the number of committed keys, composite keys included.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return state.size();
+    }
+
+    /**
+     * Returns the number of valid transactions committed so far.
+     *
+     * @return the height of the ledger
+     */
+    public long getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns how many transactions were committed with a validation code.
+     *
+     * @param code the validation code
+     * @return the number of transactions
+     */
+    public long getCount(final ValidationCode code) {
+        return outcomes.get(code).get();
+    }
+
+    NavigableMap<String, VersionedValue> getWorldState() {
+        return state;
+    }
+
+    List<KeyModification> getHistory(final String key) {
+        List<KeyModification> modifications = history.get(key);
+        return modifications == null ? Collections.emptyList() : new ArrayList<>(modifications);
+    }
+
+    private ValidationCode validate(final InMemoryChaincodeStub transaction) {
+        for (Map.Entry<String, Long> read : transaction.getReadSet().entrySet()) {
+            if (versionOf(read.getKey()) != read.getValue()) {
+                return ValidationCode.MVCC_READ_CONFLICT;
+            }
+        }
+        for (RangeRead range : transaction.getRangeReads()) {
+            if (!range.matches(state)) {
+                return ValidationCode.PHANTOM_READ_CONFLICT;
+            }
+        }
+        return ValidationCode.VALID;
+    }
+
+    long versionOf(final String key) {
+        VersionedValue value = state.get(key);
+        return value == null ? 0 : value.getVersion();
+    }
+
+    /**
+     * A committed value and the height at which it was written.
+     */
+    static final class VersionedValue {
+
+        private final byte[] value;
+        private final long version;
+        private volatile JSONObject document;
+        private volatile boolean parsed;
+
+        VersionedValue(final byte[] value, final long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns the value as a rich query document, parsed once.
+         */
+        JSONObject getDocument() {
+            if (!parsed) {
+                document = MangoQuery.toDocument(value);
+                parsed = true;
+            }
+            return document;
+        }
+    }
+
+    /**
+     * The keys and versions a range query returned, to be checked for phantoms at commit.
+     */
+    static final class RangeRead {
+
+        private final String startKey;
+        private final String endKey;
+        private final List<String> keys = new ArrayList<>();
+        private final List<Long> versions = new ArrayList<>();
+        private boolean exhausted;
+
+        RangeRead(final String startKey, final String endKey) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+        }
+
+        void add(final String key, final long version) {
+            keys.add(key);
+            versions.add(version);
+        }
+
+        void setExhausted(final boolean exhausted) {
+            this.exhausted = exhausted;
+        }
+
+        /**
+         * Re-runs the range up to where the query stopped and compares the results.
+         */
+        boolean matches(final NavigableMap<String, VersionedValue> current) {
+            NavigableMap<String, VersionedValue> range;
+            if (!exhausted && !keys.isEmpty()) {
+                range = current.subMap(startKey, true, keys.get(keys.size() - 1), true);
+            } else if (endKey == null) {
+                range = current.tailMap(startKey, true);
+            } else {
+                range = current.subMap(startKey, true, endKey, false);
+            }
+
+            int index = 0;
+            for (Map.Entry<String, VersionedValue> entry : range.entrySet()) {
+                if (index == keys.size() || !keys.get(index).equals(entry.getKey())
+                        || versions.get(index) != entry.getValue().getVersion()) {
+                    return false;
+                }
+                index++;
+            }
+            return index == keys.size();
+        }
+    }
+
+    private static final class Modification implements KeyModification {
+
+        private final String txId;
+        private final byte[] value;
+        private final Instant timestamp;
+
+        Modification(final String txId, final byte[] value, final Instant timestamp) {
+            this.txId = txId;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String getTxId() {
+            return txId;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value == null ? new byte[0] : value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(getValue(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return value == null;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.ledger;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The subset of CouchDB Mango queries the in-memory world state understands.
+ *
+ * Selectors may combine field conditions with $and, $or and $not. A field condition
+ * is either a value, meaning $eq, or an object of the operators $eq, $ne, $gt, $gte,
+ * $lt, $lte, $in, $nin and $exists. Dotted field names reach into nested objects.
+ * Values are compared in CouchDB collation order: null, false, true, numbers,
+ * strings, arrays, objects. A sort on one or more fields is honoured; use_index,
+ * fields, limit and skip are ignored.
+ */
+public final class MangoQuery {
+
+    private final JSONObject selector;
+    private final List<String> sortFields = new ArrayList<>();
+    private final List<Boolean> sortDescending = new ArrayList<>();
+
+    private MangoQuery(final JSONObject selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * Parses a rich query.
+     *
+     * @param query the rich query
+     * @return the parsed query
+     * @throws IllegalArgumentException if the query has no selector or an unsupported operator
+     */
+    public static MangoQuery parse(final String query) {
+        JSONObject json;
+        try {
+            json = new JSONObject(query);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Rich query is not a JSON object: " + query, e);
+        }
+        JSONObject selector = json.optJSONObject("selector");
+        if (selector == null) {
+            throw new IllegalArgumentException("Rich query has no selector: " + query);
+        }
+        validate(selector);
+
+        MangoQuery mangoQuery = new MangoQuery(selector);
+        JSONArray sort = json.optJSONArray("sort");
+        if (sort != null) {
+            for (int i = 0; i < sort.length(); i++) {
+                Object entry = sort.get(i);
+                if (entry instanceof JSONObject) {
+                    String field = ((JSONObject) entry).keys().next();
+                    mangoQuery.sortFields.add(field);
+                    mangoQuery.sortDescending.add("desc".equals(((JSONObject) entry).getString(field)));
+                } else {
+                    mangoQuery.sortFields.add(entry.toString());
+                    mangoQuery.sortDescending.add(false);
+                }
+            }
+        }
+        return mangoQuery;
+    }
+
+    /**
+     * Returns whether the query sorts its results; unsorted results come in key order.
+     *
+     * @return true if the query has a sort
+     */
+    public boolean isSorted() {
+        return !sortFields.isEmpty();
+    }
+
+    /**
+     * Parses a stored value as a document. Values that are not JSON objects are not
+     * documents and never match.
+     *
+     * @param value the stored value
+     * @return the document, or null if the value is not a JSON object
+     */
+    public static JSONObject toDocument(final byte[] value) {
+        int start = 0;
+        while (start < value.length && Character.isWhitespace(value[start])) {
+            start++;
+        }
+        if (start == value.length || value[start] != '{') {
+            return null;
+        }
+        try {
+            return new JSONObject(new String(value, StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tests a document against the selector.
+     *
+     * @param document the document
+     * @return true if the document matches
+     */
+    public boolean matches(final JSONObject document) {
+        return matchesSelector(selector, document);
+    }
+
+    /**
+     * Returns the order of the sort of the query.
+     *
+     * @return a comparator of documents
+     */
+    public Comparator<JSONObject> sortOrder() {
+        return (left, right) -> {
+            for (int i = 0; i < sortFields.size(); i++) {
+                int order = collate(field(left, sortFields.get(i)), field(right, sortFields.get(i)));
+                if (order != 0) {
+                    return sortDescending.get(i) ? -order : order;
+                }
+            }
+            return 0;
+        };
+    }
+
+    private static void validate(final JSONObject selector) {
+        for (String key : selector.keySet()) {
+            Object condition = selector.get(key);
+            switch (key) {
+                case "$and":
+                case "$or":
+                    JSONArray clauses = selector.getJSONArray(key);
+                    for (int i = 0; i < clauses.length(); i++) {
+                        validate(clauses.getJSONObject(i));
+                    }
+                    break;
+                case "$not":
+                    validate(selector.getJSONObject(key));
+                    break;
+                default:
+                    if (key.startsWith("$")) {
+                        throw new IllegalArgumentException("Unsupported selector operator " + key);
+                    }
+                    if (condition instanceof JSONObject) {
+                        validateOperators((JSONObject) condition);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static void validateOperators(final JSONObject condition) {
+        for (String operator : condition.keySet()) {
+            switch (operator) {
+                case "$eq":
+                case "$ne":
+                case "$gt":
+                case "$gte":
+                case "$lt":
+                case "$lte":
+                case "$in":
+                case "$nin":
+                case "$exists":
+                    break;
+                default:
+                    if (operator.startsWith("$")) {
+                        throw new IllegalArgumentException("Unsupported field operator " + operator);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static boolean matchesSelector(final JSONObject selector, final JSONObject document) {
+        for (String key : selector.keySet()) {
+            boolean matches;
+            switch (key) {
+                case "$and":
+                    matches = matchesAll(selector.getJSONArray(key), document);
+                    break;
+                case "$or":
+                    matches = matchesAny(selector.getJSONArray(key), document);
+                    break;
+                case "$not":
+                    matches = !matchesSelector(selector.getJSONObject(key), document);
+                    break;
+                default:
+                    matches = matchesCondition(selector.get(key), field(document, key));
+                    break;
+            }
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesAll(final JSONArray clauses, final JSONObject document) {
+        for (int i = 0; i < clauses.length(); i++) {
+            if (!matchesSelector(clauses.getJSONObject(i), document)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesAny(final JSONArray clauses, final JSONObject document) {
+        for (int i = 0; i < clauses.length(); i++) {
+            if (matchesSelector(clauses.getJSONObject(i), document)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesCondition(final Object condition, final Object value) {
+        boolean present = value != null;
+        if (!isOperatorObject(condition)) {
+            return present && collate(value, condition) == 0;
+        }
+
+        JSONObject operators = (JSONObject) condition;
+        for (String operator : operators.keySet()) {
+            Object operand = operators.get(operator);
+            if ("$exists".equals(operator)) {
+                if (present != operators.getBoolean(operator)) {
+                    return false;
+                }
+                continue;
+            }
+            if ("$ne".equals(operator) || "$nin".equals(operator)) {
+                if (present && ("$ne".equals(operator) ? collate(value, operand) == 0 : contains(operand, value))) {
+                    return false;
+                }
+                continue;
+            }
+            if (!present) {
+                return false;
+            }
+            int order = collate(value, operand);
+            boolean matches;
+            switch (operator) {
+                case "$eq":
+                    matches = order == 0;
+                    break;
+                case "$gt":
+                    matches = order > 0;
+                    break;
+                case "$gte":
+                    matches = order >= 0;
+                    break;
+                case "$lt":
+                    matches = order < 0;
+                    break;
+                case "$lte":
+                    matches = order <= 0;
+                    break;
+                case "$in":
+                    matches = contains(operand, value);
+                    break;
+                default:
+                    matches = false;
+                    break;
+            }
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOperatorObject(final Object condition) {
+        return condition instanceof JSONObject && !((JSONObject) condition).isEmpty()
+                && ((JSONObject) condition).keys().next().startsWith("$");
+    }
+
+    private static boolean contains(final Object operand, final Object value) {
+        JSONArray values = (JSONArray) operand;
+        for (int i = 0; i < values.length(); i++) {
+            if (collate(value, values.get(i)) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value of a possibly dotted field, or null if the document lacks it.
+     */
+    private static Object field(final JSONObject document, final String field) {
+        Object value = document;
+        for (String segment : field.split("\\.")) {
+            if (!(value instanceof JSONObject)) {
+                return null;
+            }
+            value = ((JSONObject) value).opt(segment);
+        }
+        return value;
+    }
+
+    static int collate(final Object left, final Object right) {
+        int leftRank = rank(left);
+        int rightRank = rank(right);
+        if (leftRank != rightRank) {
+            return Integer.compare(leftRank, rightRank);
+        }
+        switch (leftRank) {
+            case 1:
+                return Boolean.compare((Boolean) left, (Boolean) right);
+            case 2:
+                return new BigDecimal(left.toString()).compareTo(new BigDecimal(right.toString()));
+            case 3:
+                return ((String) left).compareTo((String) right);
+            case 4:
+                return compareArrays((JSONArray) left, (JSONArray) right);
+            case 5:
+                return left.toString().compareTo(right.toString());
+            default:
+                return 0;
+        }
+    }
+
+    private static int compareArrays(final JSONArray left, final JSONArray right) {
+        for (int i = 0; i < Math.min(left.length(), right.length()); i++) {
+            int order = collate(left.get(i), right.get(i));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(left.length(), right.length());
+    }
+
+    private static int rank(final Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return 0;
+        }
+        if (value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof Number) {
+            return 2;
+        }
+        if (value instanceof String) {
+            return 3;
+        }
+        if (value instanceof JSONArray) {
+            return 4;
+        }
+        return 5;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.tools;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+/**
+ * Calls the transactions of the EHR chaincode on a channel.
+ *
+ * Implementations must allow calls from several threads at once. A failed call
+ * throws a {@link ChaincodeException} whose message carries the message of the
+ * chaincode or of the peer, such as the error codes of a rejected batch or the
+ * validation code of an invalidated transaction.
+ */
+public interface ChaincodeClient extends AutoCloseable {
+
+    /**
+     * Evaluates a transaction on a peer without ordering it.
+     *
+     * @param function the name of the transaction
+     * @param args the arguments of the transaction
+     * @return the result of the transaction
+     */
+    String evaluate(String function, String... args);
+
+    /**
+     * Submits a transaction and waits until it is committed.
+     *
+     * @param function the name of the transaction
+     * @param args the arguments of the transaction
+     */
+    void submit(String function, String... args);
+
+    @Override
+    default void close() {
+    }
+}
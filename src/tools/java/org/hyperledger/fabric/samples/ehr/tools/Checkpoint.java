@@ -0,0 +1,91 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * The progress of an export or import, kept next to its record file so that an
+ * interrupted run resumes where it stopped. A checkpoint is replaced atomically, so
+ * it always describes a state the record file and the ledger reached.
+ */
+final class Checkpoint {
+
+    private final Path file;
+    private final Properties properties = new Properties();
+
+    private Checkpoint(final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the checkpoint of a record file.
+     *
+     * @param recordFile the record file
+     * @return the checkpoint, empty if the last run completed or there was none
+     * @throws IOException if the checkpoint cannot be read
+     */
+    static Checkpoint of(final Path recordFile) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(recordFile.resolveSibling(recordFile.getFileName() + ".checkpoint"));
+        if (Files.exists(checkpoint.file)) {
+            try (Reader reader = Files.newBufferedReader(checkpoint.file, StandardCharsets.UTF_8)) {
+                checkpoint.properties.load(reader);
+            }
+        }
+        return checkpoint;
+    }
+
+    boolean isEmpty() {
+        return properties.isEmpty();
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    String get(final String key) {
+        return properties.getProperty(key, "");
+    }
+
+    long getLong(final String key) {
+        String value = properties.getProperty(key);
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    Checkpoint put(final String key, final Object value) {
+        properties.setProperty(key, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Replaces the checkpoint on disk.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void save() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the checkpoint once the run is complete.
+     *
+     * @throws IOException if the checkpoint cannot be removed
+     */
+    void delete() throws IOException {
+        properties.clear();
+        Files.deleteIfExists(file);
+    }
+}
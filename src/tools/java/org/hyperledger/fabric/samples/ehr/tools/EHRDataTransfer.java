@@ -0,0 +1,514 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.enums.Errors;
+import org.hyperledger.fabric.samples.ehr.ledger.ChunkedAttachmentStore;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryLedger;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONObject;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Exports the EHR data of a channel to a {@link RecordFile} and imports it into
+ * another, for migrations and for seeding test environments.
+ *
+ * The export pages through ScanEHRData and fetches the attachment of every record,
+ * including chunked ones, so the file is self-contained: it can be imported later,
+ * into another network, or checked offline with a dry run against an in-memory
+ * ledger. The import submits CreateEHRDataBatch transactions with a bounded number
+ * in flight and uploads attachments too large for a batch in chunks. Both keep a
+ * checkpoint next to the file, the bookmark and file offset of the export or the
+ * records of the file known to be committed by the import, so an interrupted run
+ * resumes where it stopped. Records a resumed import finds on the ledger already are
+ * skipped. createdAt and version are assigned again by the importing transactions.
+ *
+ * Usage: {@code export|import --file=ehr-data.ndjson [options]}. The chaincode is
+ * called through the peer command line tool: --peer=peer, --channel=mychannel,
+ * --chaincode=ehr and --peerArgs="--tls --cafile ..." with the options every call
+ * needs. Further options, all optional: --inFlight=4 (calls at once),
+ * --progress=5 (seconds between reports) and --restart to ignore a checkpoint.
+ * Export: --format=ndjson|binary, --pageSize=200 and --pageBytes=1048576. Import:
+ * --batchSize=100, --batchBytes=65536, --chunkBytes=65536, --retries=5 and --dryRun.
+ */
+public final class EHRDataTransfer {
+
+    private static final Genson GENSON = new Genson();
+
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+
+    private final Settings settings;
+    private final ChaincodeClient client;
+
+    private EHRDataTransfer(final Settings settings, final ChaincodeClient client) {
+        this.settings = settings;
+        this.client = client;
+    }
+
+    /**
+     * Runs an export or import.
+     *
+     * @param args the command and its options
+     * @throws Exception if the run cannot complete
+     */
+    public static void main(final String[] args) throws Exception {
+        Settings settings = Settings.parse(args);
+
+        try (ChaincodeClient client = settings.dryRun
+                ? new InMemoryClient(new InMemoryLedger())
+                : new PeerCliClient(settings.peer, settings.channel, settings.chaincode, settings.peerArgs)) {
+            EHRDataTransfer transfer = new EHRDataTransfer(settings, client);
+            if ("export".equals(settings.command)) {
+                transfer.export();
+            } else {
+                transfer.importRecords();
+            }
+        } catch (ChaincodeException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Run the same command again to resume.");
+            System.exit(1);
+        }
+    }
+
+    private void export() throws IOException, InterruptedException {
+        Checkpoint checkpoint = Checkpoint.of(settings.file);
+        if (settings.restart) {
+            checkpoint.delete();
+        }
+        String bookmark = checkpoint.get("bookmark");
+        long exported = checkpoint.getLong("records");
+
+        ExecutorService fetchers = Executors.newFixedThreadPool(settings.inFlight);
+        try (RecordFile.Writer writer = RecordFile.Writer.open(settings.file, settings.format,
+                checkpoint.getLong("offset"));
+             Progress progress = new Progress("exported", exported, settings.progressSeconds, System.out)) {
+            do {
+                JSONObject page = new JSONObject(client.evaluate("ScanEHRData",
+                        Integer.toString(settings.pageSize), Integer.toString(settings.pageBytes), bookmark));
+
+                List<Future<EHRData>> records = new ArrayList<>();
+                for (Object record : page.getJSONArray("data")) {
+                    EHRData ehrData = GENSON.deserialize(record.toString(), EHRData.class);
+                    records.add(fetchers.submit(() -> withAttachment(ehrData)));
+                }
+                for (Future<EHRData> record : records) {
+                    writer.write(resolve(record));
+                }
+
+                bookmark = page.getString("bookMark");
+                exported += records.size();
+                checkpoint.put("bookmark", bookmark).put("offset", writer.checkpoint()).put("records", exported)
+                        .save();
+                progress.add(records.size());
+            } while (!bookmark.isEmpty());
+        } finally {
+            fetchers.shutdownNow();
+        }
+        checkpoint.delete();
+    }
+
+    /**
+     * Returns an exportable copy of a record with its attachment inline.
+     */
+    private EHRData withAttachment(final EHRData ehrData) {
+        String attachment = ehrData.getAttachmentDigest() == null
+                ? ehrData.getBase64String()
+                : readAttachment(ehrData.getId());
+
+        return new EHRData(ehrData.getId(), ehrData.getTextData(), ehrData.getName(), ehrData.getSize(),
+                ehrData.isDoc(), ehrData.getFileType(), ehrData.getFileName(),
+                attachment == null || attachment.isEmpty() ? null : attachment, ehrData.getCreatedAt());
+    }
+
+    private String readAttachment(final String ehrDataId) {
+        try {
+            return client.evaluate("ReadEHRAttachment", ehrDataId);
+        } catch (ChaincodeException e) {
+            // Attachments uploaded in chunks can only be read chunk by chunk.
+            JSONObject manifest;
+            try {
+                manifest = new JSONObject(client.evaluate("ReadEHRAttachmentManifest", ehrDataId));
+            } catch (ChaincodeException noUpload) {
+                throw e;
+            }
+            if (!manifest.getBoolean("complete")) {
+                throw e;
+            }
+
+            ByteArrayOutputStream attachment = new ByteArrayOutputStream();
+            for (int index = 0; index < manifest.getInt("chunks"); index++) {
+                byte[] chunk = Base64.getDecoder().decode(client.evaluate("ReadEHRAttachmentChunk", ehrDataId,
+                        Integer.toString(index)));
+                attachment.write(chunk, 0, chunk.length);
+            }
+            return Base64.getEncoder().encodeToString(attachment.toByteArray());
+        }
+    }
+
+    private void importRecords() throws IOException, InterruptedException {
+        // A dry run imports into an empty ledger, so it neither resumes nor records progress.
+        Checkpoint checkpoint = settings.dryRun ? null : Checkpoint.of(settings.file);
+        if (checkpoint != null && settings.restart) {
+            checkpoint.delete();
+        }
+        long committed = checkpoint == null ? 0 : checkpoint.getLong("records");
+        CommitTracker tracker = new CommitTracker(checkpoint, committed);
+
+        ExecutorService importers = Executors.newFixedThreadPool(settings.inFlight);
+        Semaphore inFlight = new Semaphore(settings.inFlight);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        try (RecordFile.Reader reader = RecordFile.Reader.open(settings.file);
+             Progress progress = new Progress("imported", committed, settings.progressSeconds, System.out)) {
+            reader.skip(committed);
+
+            long sequence = 0;
+            Batch batch = new Batch(sequence);
+            for (EHRData ehrData = reader.next(); ehrData != null && failure.get() == null;
+                 ehrData = reader.next()) {
+                int bytes = GENSON.serialize(ehrData).getBytes(StandardCharsets.UTF_8).length;
+                if (!batch.isEmpty() && (batch.records == settings.batchSize
+                        || batch.bytes + bytes > settings.batchBytes)) {
+                    submit(importers, inFlight, failure, tracker, progress, batch);
+                    batch = new Batch(++sequence);
+                }
+                batch.add(ehrData, bytes, settings.batchBytes);
+            }
+            if (!batch.isEmpty() && failure.get() == null) {
+                submit(importers, inFlight, failure, tracker, progress, batch);
+            }
+
+            inFlight.acquire(settings.inFlight);
+        } finally {
+            importers.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+        if (settings.dryRun) {
+            System.out.printf("Dry run complete, the in-memory ledger holds %d keys%n",
+                    ((InMemoryClient) client).getLedger().size());
+        }
+    }
+
+    private void submit(final ExecutorService importers, final Semaphore inFlight,
+                        final AtomicReference<RuntimeException> failure, final CommitTracker tracker,
+                        final Progress progress, final Batch batch) throws InterruptedException {
+        inFlight.acquire();
+        importers.execute(() -> {
+            try {
+                if (failure.get() == null) {
+                    create(batch.creates);
+                    for (EHRData ehrData : batch.uploads) {
+                        upload(ehrData);
+                    }
+                    tracker.completed(batch.sequence, batch.records);
+                    progress.add(batch.records);
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Creates a batch of records, leaving out those a previous run created and
+     * retrying transactions invalidated by concurrent ones.
+     */
+    private void create(final List<EHRData> records) {
+        List<EHRData> pending = records;
+        for (int attempt = 0; !pending.isEmpty(); attempt++) {
+            try {
+                client.submit("CreateEHRDataBatch", GENSON.serialize(pending));
+                return;
+            } catch (ChaincodeException e) {
+                if (attempt >= settings.retries) {
+                    throw e;
+                }
+                if (String.valueOf(e.getMessage()).contains(Errors.EHR_ALREADY_EXISTS.toString())) {
+                    pending = missing(pending);
+                } else if (isConflict(e)) {
+                    backOff(attempt);
+                } else {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private List<EHRData> missing(final List<EHRData> records) {
+        List<String> ids = new ArrayList<>(records.size());
+        for (EHRData ehrData : records) {
+            ids.add(ehrData.getId());
+        }
+        JSONObject batch = new JSONObject(client.evaluate("ReadEHRDataBatch", GENSON.serialize(ids), "summary"));
+        Set<Object> missingIds = new HashSet<>(batch.getJSONArray("missingIds").toList());
+
+        List<EHRData> missing = new ArrayList<>();
+        for (EHRData ehrData : records) {
+            if (missingIds.contains(ehrData.getId())) {
+                missing.add(ehrData);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Uploads an attachment too large for a batch in chunks, unless a previous run
+     * did. A failed upload is begun again, which discards its chunks.
+     */
+    private void upload(final EHRData ehrData) {
+        byte[] attachment = Base64.getDecoder().decode(ehrData.getBase64String());
+        for (int attempt = 0;; attempt++) {
+            try {
+                JSONObject summary = new JSONObject(client.evaluate("ReadEHRDataSummary", ehrData.getId()));
+                if (summary.getLong("attachmentSize") > 0) {
+                    return;
+                }
+
+                client.submit("BeginEHRAttachmentUpload", ehrData.getId());
+                String digest = "";
+                for (int offset = 0, index = 0; offset < attachment.length; offset += settings.chunkBytes, index++) {
+                    byte[] chunk = Arrays.copyOfRange(attachment, offset,
+                            Math.min(attachment.length, offset + settings.chunkBytes));
+                    client.submit("AppendEHRAttachmentChunk", ehrData.getId(), Integer.toString(index),
+                            Base64.getEncoder().encodeToString(chunk));
+                    digest = ChunkedAttachmentStore.chain(digest, chunk);
+                }
+                client.submit("FinalizeEHRAttachmentUpload", ehrData.getId(), digest);
+                return;
+            } catch (ChaincodeException e) {
+                if (attempt >= settings.retries) {
+                    throw e;
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    private static boolean isConflict(final ChaincodeException e) {
+        String message = String.valueOf(e.getMessage());
+        return message.contains(InMemoryLedger.ValidationCode.MVCC_READ_CONFLICT.toString())
+                || message.contains(InMemoryLedger.ValidationCode.PHANTOM_READ_CONFLICT.toString());
+    }
+
+    private static void backOff(final int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS << Math.min(attempt, 5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChaincodeException("Interrupted while retrying", e);
+        }
+    }
+
+    private static <T> T resolve(final Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * The records of the file submitted in one CreateEHRDataBatch transaction, and the
+     * attachments among them uploaded in chunks afterwards.
+     */
+    private static final class Batch {
+
+        private final long sequence;
+        private final List<EHRData> creates = new ArrayList<>();
+        private final List<EHRData> uploads = new ArrayList<>();
+        private int records;
+        private long bytes;
+
+        Batch(final long sequence) {
+            this.sequence = sequence;
+        }
+
+        boolean isEmpty() {
+            return records == 0;
+        }
+
+        void add(final EHRData ehrData, final int recordBytes, final int batchBytes) {
+            records++;
+            if (recordBytes > batchBytes && ehrData.getBase64String() != null) {
+                uploads.add(ehrData);
+                EHRData metadata = new EHRData(ehrData.getId(), ehrData.getTextData(), ehrData.getName(),
+                        ehrData.getSize(), ehrData.isDoc(), ehrData.getFileType(), ehrData.getFileName(), null,
+                        ehrData.getCreatedAt());
+                creates.add(metadata);
+                bytes += GENSON.serialize(metadata).getBytes(StandardCharsets.UTF_8).length;
+            } else {
+                creates.add(ehrData);
+                bytes += recordBytes;
+            }
+        }
+    }
+
+    /**
+     * Advances the checkpoint of an import over the batches committed without a gap,
+     * as batches in flight complete in any order.
+     */
+    private static final class CommitTracker {
+
+        private final Checkpoint checkpoint;
+        private final TreeMap<Long, Integer> completed = new TreeMap<>();
+        private long nextSequence;
+        private long committed;
+
+        CommitTracker(final Checkpoint checkpoint, final long committed) {
+            this.checkpoint = checkpoint;
+            this.committed = committed;
+        }
+
+        synchronized void completed(final long sequence, final int records) {
+            completed.put(sequence, records);
+            boolean advanced = false;
+            while (completed.containsKey(nextSequence)) {
+                committed += completed.remove(nextSequence++);
+                advanced = true;
+            }
+            if (advanced && checkpoint != null) {
+                try {
+                    checkpoint.put("records", committed).save();
+                } catch (IOException e) {
+                    throw new ChaincodeException("Cannot save the checkpoint " + checkpoint.getFile(), e);
+                }
+            }
+        }
+    }
+
+    private static final class Settings {
+
+        private String command;
+        private Path file;
+        private RecordFile.Format format = RecordFile.Format.NDJSON;
+        private String peer = "peer";
+        private String channel = "mychannel";
+        private String chaincode = "ehr";
+        private List<String> peerArgs = new ArrayList<>();
+        private int inFlight = 4;
+        private int progressSeconds = 5;
+        private boolean restart;
+        private int pageSize = 200;
+        private int pageBytes = 1024 * 1024;
+        private int batchSize = 100;
+        private int batchBytes = 64 * 1024;
+        private int chunkBytes = 64 * 1024;
+        private int retries = 5;
+        private boolean dryRun;
+
+        static Settings parse(final String[] args) {
+            Settings settings = new Settings();
+            if (args.length == 0 || !Arrays.asList("export", "import").contains(args[0])) {
+                throw new IllegalArgumentException("Expected export or import followed by --option=value options");
+            }
+            settings.command = args[0];
+            for (String arg : Arrays.copyOfRange(args, 1, args.length)) {
+                int equals = arg.indexOf('=');
+                String name = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+                String value = equals < 0 ? "true" : arg.substring(equals + 1);
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Expected --option=value, not " + arg);
+                }
+                switch (name) {
+                    case "file":
+                        settings.file = Paths.get(value);
+                        break;
+                    case "format":
+                        settings.format = RecordFile.Format.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "peer":
+                        settings.peer = value;
+                        break;
+                    case "channel":
+                        settings.channel = value;
+                        break;
+                    case "chaincode":
+                        settings.chaincode = value;
+                        break;
+                    case "peerArgs":
+                        settings.peerArgs = value.trim().isEmpty()
+                                ? new ArrayList<>()
+                                : Arrays.asList(value.trim().split("\\s+"));
+                        break;
+                    case "inFlight":
+                        settings.inFlight = Integer.parseInt(value);
+                        break;
+                    case "progress":
+                        settings.progressSeconds = Integer.parseInt(value);
+                        break;
+                    case "restart":
+                        settings.restart = Boolean.parseBoolean(value);
+                        break;
+                    case "pageSize":
+                        settings.pageSize = Integer.parseInt(value);
+                        break;
+                    case "pageBytes":
+                        settings.pageBytes = Integer.parseInt(value);
+                        break;
+                    case "batchSize":
+                        settings.batchSize = Integer.parseInt(value);
+                        break;
+                    case "batchBytes":
+                        settings.batchBytes = Integer.parseInt(value);
+                        break;
+                    case "chunkBytes":
+                        settings.chunkBytes = Integer.parseInt(value);
+                        break;
+                    case "retries":
+                        settings.retries = Integer.parseInt(value);
+                        break;
+                    case "dryRun":
+                        settings.dryRun = Boolean.parseBoolean(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (settings.file == null) {
+                throw new IllegalArgumentException("The record file must be given with --file");
+            }
+            if (settings.dryRun && "export".equals(settings.command)) {
+                throw new IllegalArgumentException("Only an import can be a dry run");
+            }
+            if (settings.inFlight < 1 || settings.pageSize < 1 || settings.batchSize < 1 || settings.chunkBytes < 1
+                    || settings.progressSeconds < 1) {
+                throw new IllegalArgumentException("Sizes, counts and intervals must be positive");
+            }
+            return settings;
+        }
+    }
+}
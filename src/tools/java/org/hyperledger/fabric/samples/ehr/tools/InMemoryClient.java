@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.tools;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.ehr.EHRSmartContract;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.ehr.ledger.InMemoryLedger;
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Calls the contract in process against an {@link InMemoryLedger}, so that the tool
+ * runs without a network, for instance to check an export file before importing it.
+ */
+public final class InMemoryClient implements ChaincodeClient {
+
+    private final EHRSmartContract contract = new EHRSmartContract();
+    private final InMemoryLedger ledger;
+    private final Genson genson = new Genson();
+
+    public InMemoryClient(final InMemoryLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    public InMemoryLedger getLedger() {
+        return ledger;
+    }
+
+    @Override
+    public String evaluate(final String function, final String... args) {
+        Object result = invoke(contract.createContext(ledger.newTransaction()), function, args);
+        return result instanceof String ? (String) result : genson.serialize(result);
+    }
+
+    @Override
+    public void submit(final String function, final String... args) {
+        InMemoryChaincodeStub stub = ledger.newTransaction();
+        Context ctx = contract.createContext(stub);
+        contract.afterTransaction(ctx, invoke(ctx, function, args));
+
+        InMemoryLedger.ValidationCode code = ledger.commit(stub);
+        if (code != InMemoryLedger.ValidationCode.VALID) {
+            throw new ChaincodeException(String.format("%s transaction invalidated with status %s", function, code));
+        }
+    }
+
+    private Object invoke(final Context ctx, final String function, final String... args) {
+        Class<?>[] parameterTypes = new Class<?>[args.length + 1];
+        Object[] arguments = new Object[args.length + 1];
+        parameterTypes[0] = Context.class;
+        arguments[0] = ctx;
+        for (int i = 0; i < args.length; i++) {
+            parameterTypes[i + 1] = String.class;
+            arguments[i + 1] = args[i];
+        }
+
+        Method method;
+        try {
+            method = EHRSmartContract.class.getMethod(function, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new ChaincodeException(String.format("No transaction %s with %d arguments", function, args.length));
+        }
+        try {
+            return method.invoke(contract, arguments);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ChaincodeException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Calls the chaincode through the {@code peer} command line tool, configured by the
+ * usual CORE_PEER_* environment variables, one process per call.
+ *
+ * The arguments of a call are passed on the command line, and Linux limits a single
+ * command line argument to 128 KiB, so calls with larger arguments are refused before
+ * the process is started.
+ */
+public final class PeerCliClient implements ChaincodeClient {
+
+    /**
+     * The largest command line argument Linux accepts (MAX_ARG_STRLEN), including its
+     * terminating null byte.
+     */
+    static final int MAX_ARGUMENT_BYTES = 128 * 1024 - 1;
+
+    private final String peer;
+    private final String channel;
+    private final String chaincode;
+    private final List<String> peerArgs;
+
+    /**
+     * Creates the client.
+     *
+     * @param peer the path of the peer command
+     * @param channel the channel the chaincode is deployed on
+     * @param chaincode the name of the chaincode
+     * @param peerArgs further options of every command, such as --tls, --cafile,
+     *        --orderer and --peerAddresses
+     */
+    public PeerCliClient(final String peer, final String channel, final String chaincode,
+                         final List<String> peerArgs) {
+        this.peer = peer;
+        this.channel = channel;
+        this.chaincode = chaincode;
+        this.peerArgs = peerArgs;
+    }
+
+    @Override
+    public String evaluate(final String function, final String... args) {
+        String output = run("query", function, args);
+        return output.endsWith("\n") ? output.substring(0, output.length() - 1) : output;
+    }
+
+    @Override
+    public void submit(final String function, final String... args) {
+        run("invoke", function, args);
+    }
+
+    private String run(final String command, final String function, final String... args) {
+        String invocation = new JSONObject()
+                .put("function", function)
+                .put("Args", new JSONArray(Arrays.asList(args)))
+                .toString();
+        if (invocation.getBytes(StandardCharsets.UTF_8).length > MAX_ARGUMENT_BYTES) {
+            throw new ChaincodeException(String.format("The arguments of %s are larger than the %d bytes the "
+                    + "peer command line accepts", function, MAX_ARGUMENT_BYTES));
+        }
+
+        List<String> commandLine = new ArrayList<>(Arrays.asList(peer, "chaincode", command,
+                "-C", channel, "-n", chaincode, "-c", invocation));
+        if ("invoke".equals(command)) {
+            commandLine.add("--waitForEvent");
+        }
+        commandLine.addAll(peerArgs);
+
+        try {
+            Process process = new ProcessBuilder(commandLine).start();
+            process.getOutputStream().close();
+            CompletableFuture<String> errors = CompletableFuture.supplyAsync(() -> read(process.getErrorStream()));
+            String output = read(process.getInputStream());
+            if (process.waitFor() != 0) {
+                throw new ChaincodeException(String.format("%s failed: %s", function, errors.join().trim()));
+            }
+            return output;
+        } catch (IOException e) {
+            throw new ChaincodeException(String.format("Cannot run %s: %s", peer, e.getMessage()), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChaincodeException(String.format("Interrupted while calling %s", function), e);
+        }
+    }
+
+    private static String read(final InputStream input) {
+        try (InputStream stream = input) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = stream.read(buffer); read >= 0; read = stream.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
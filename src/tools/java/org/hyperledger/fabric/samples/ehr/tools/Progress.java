@@ -0,0 +1,82 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.tools;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports the records per second of a run at a fixed interval, over the whole run and
+ * over the last interval.
+ */
+final class Progress implements AutoCloseable {
+
+    private final String label;
+    private final PrintStream out;
+    private final long resumedAt;
+    private final long started = System.nanoTime();
+    private final AtomicLong records = new AtomicLong();
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long lastRecords;
+    private long lastReport = started;
+
+    /**
+     * Starts reporting.
+     *
+     * @param label what the records are, such as exported
+     * @param resumedAt the records done by previous runs
+     * @param intervalSeconds the seconds between reports
+     * @param out where to report to
+     */
+    Progress(final String label, final long resumedAt, final int intervalSeconds, final PrintStream out) {
+        this.label = label;
+        this.resumedAt = resumedAt;
+        this.out = out;
+        if (resumedAt > 0) {
+            out.printf("Resuming after %d %s records%n", resumedAt, label);
+        }
+        reporter.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void add(final long count) {
+        records.addAndGet(count);
+    }
+
+    long getRecords() {
+        return records.get();
+    }
+
+    private synchronized void report() {
+        long now = System.nanoTime();
+        long current = records.get();
+        out.printf("%d records %s, %.0f records/s (%.0f records/s overall)%n", resumedAt + current, label,
+                perSecond(current - lastRecords, now - lastReport), perSecond(current, now - started));
+        lastRecords = current;
+        lastReport = now;
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    /**
+     * Stops reporting and prints the totals of the run.
+     */
+    @Override
+    public void close() {
+        reporter.shutdownNow();
+        long nanos = System.nanoTime() - started;
+        out.printf("%d records %s in %.1f s, %.0f records/s%n", records.get(), label, nanos / 1e9,
+                perSecond(records.get(), nanos));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.ehr.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.hyperledger.fabric.samples.ehr.EHRData;
+import org.hyperledger.fabric.samples.ehr.EHRDataJsonCodec;
+import org.hyperledger.fabric.samples.ehr.codec.Compression;
+import org.hyperledger.fabric.samples.ehr.codec.EHRDataCodec;
+
+/**
+ * The file EHR data is exported to and imported from.
+ *
+ * An NDJSON file has one EHR data JSON document per line, readable by any JSON tool.
+ * A binary file starts with {@link #BINARY_HEADER} and holds every record in the
+ * binary format of {@link EHRDataCodec}, deflating large text data, preceded by its
+ * length as a four byte big-endian integer. Attachments are carried inline in the
+ * base64String of a record, as raw bytes in the binary format.
+ */
+public final class RecordFile {
+
+    /**
+     * The formats of a record file.
+     */
+    public enum Format {
+        NDJSON,
+        BINARY
+    }
+
+    static final byte[] BINARY_HEADER = {'E', 'H', 'R', 'D', 'A', 'T', 'A', 0x01};
+
+    private static final int COMPRESSION_THRESHOLD = 1024;
+
+    private static final EHRDataCodec CODEC = new EHRDataCodec(EHRDataCodec.Format.BINARY,
+            new Compression(COMPRESSION_THRESHOLD));
+
+    private RecordFile() {
+    }
+
+    /**
+     * Appends records to a record file.
+     */
+    public static final class Writer implements AutoCloseable {
+
+        private final Format format;
+        private final FileChannel channel;
+        private final DataOutputStream output;
+
+        private Writer(final Format format, final FileChannel channel) {
+            this.format = format;
+            this.channel = channel;
+            this.output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        }
+
+        /**
+         * Opens a record file for writing at an offset returned by {@link #checkpoint()},
+         * dropping whatever was written after it.
+         *
+         * @param file the file
+         * @param format the format of the file
+         * @param offset the offset to write at, 0 to start a new file
+         * @return the writer
+         * @throws IOException if the file cannot be opened
+         */
+        public static Writer open(final Path file, final Format format, final long offset) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(offset);
+            channel.position(offset);
+            Writer writer = new Writer(format, channel);
+            if (offset == 0 && format == Format.BINARY) {
+                writer.output.write(BINARY_HEADER);
+            }
+            return writer;
+        }
+
+        /**
+         * Appends a record.
+         *
+         * @param ehrData the record
+         * @throws IOException if the record cannot be written
+         */
+        public void write(final EHRData ehrData) throws IOException {
+            if (format == Format.NDJSON) {
+                output.write(EHRDataJsonCodec.INSTANCE.toBytes(ehrData));
+                output.write('\n');
+            } else {
+                byte[] record = CODEC.encode(ehrData);
+                output.writeInt(record.length);
+                output.write(record);
+            }
+        }
+
+        /**
+         * Forces the records written so far to the disk.
+         *
+         * @return the offset to resume writing at
+         * @throws IOException if the records cannot be written
+         */
+        public long checkpoint() throws IOException {
+            output.flush();
+            channel.force(false);
+            return channel.position();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads the records of a record file in order, whatever its format.
+     */
+    public static final class Reader implements AutoCloseable {
+
+        private final Format format;
+        private final DataInputStream input;
+        private final BufferedReader lines;
+
+        private Reader(final Format format, final InputStream input) {
+            this.format = format;
+            this.input = new DataInputStream(input);
+            this.lines = format == Format.NDJSON
+                    ? new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))
+                    : null;
+        }
+
+        /**
+         * Opens a record file for reading.
+         *
+         * @param file the file
+         * @return the reader
+         * @throws IOException if the file cannot be opened
+         */
+        public static Reader open(final Path file) throws IOException {
+            BufferedInputStream input = new BufferedInputStream(Files.newInputStream(file));
+            input.mark(BINARY_HEADER.length);
+            byte[] header = new byte[BINARY_HEADER.length];
+            int read = input.readNBytes(header, 0, header.length);
+            if (read == header.length && Arrays.equals(header, BINARY_HEADER)) {
+                return new Reader(Format.BINARY, input);
+            }
+            input.reset();
+            return new Reader(Format.NDJSON, input);
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return the record, or null at the end of the file
+         * @throws IOException if the file cannot be read or is malformed
+         */
+        public EHRData next() throws IOException {
+            if (format == Format.NDJSON) {
+                String line = lines.readLine();
+                while (line != null && line.trim().isEmpty()) {
+                    line = lines.readLine();
+                }
+                return line == null
+                        ? null
+                        : EHRDataJsonCodec.INSTANCE.fromBytes(line.getBytes(StandardCharsets.UTF_8));
+            }
+
+            int length;
+            try {
+                length = input.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            input.readFully(record);
+            return CODEC.decode(record);
+        }
+
+        /**
+         * Skips records, such as those a previous run already imported.
+         *
+         * @param records the number of records to skip
+         * @return the number of records skipped, fewer at the end of the file
+         * @throws IOException if the file cannot be read or is malformed
+         */
+        public long skip(final long records) throws IOException {
+            long skipped = 0;
+            while (skipped < records && next() != null) {
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}